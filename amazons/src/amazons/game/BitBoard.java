@@ -0,0 +1,460 @@
+package amazons.game;
+
+import ai.MCTSOptions;
+import framework.IBoard;
+import framework.IMove;
+import framework.MoveList;
+import framework.PrimitiveMoveBoard;
+import framework.RandomMoveBoard;
+import framework.util.FastTanh;
+import framework.util.StatCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Amazons board that stores the queens of both players and the arrows as bitboards, bit r * 8 + c is set for a
+ * piece on row r, column c. Queen moves and arrow shots are looked up in precomputed ray tables: the first blocker
+ * on a ray cuts off the ray behind it, so no squares are visited one by one and no queen is moved to generate the
+ * shots. The mobility used by the evaluation is cached until the position changes.
+ * Moves and hashes are the same as those of Board.
+ */
+public class BitBoard implements PrimitiveMoveBoard, RandomMoveBoard {
+    private static final int SIZE = Board.SIZE, B_SIZE = Board.B_SIZE, N_QUEENS = Board.N_QUEENS;
+    private static final int EMPTY = Board.EMPTY, ARROW = Board.ARROW;
+    // Encoded moves: from square (6 bits), to square (6 bits) and arrow square (6 bits), same as Board
+    private static final int TO_SHIFT = 6, ARROW_SHIFT = 12, SQUARE_MASK = 63, MAX_MOVES = 5000;
+    // A queen reaches at most MAX_REACH squares, doRandomMove tries MAX_SAMPLES moves before it generates all moves
+    private static final int MAX_REACH = 4 * (SIZE - 1), MAX_SAMPLES = 32;
+    private static final long FILE_A = 0x0101010101010101L, FILE_H = 0x8080808080808080L;
+    // The squares on a ray from a square to the edge of the board, the first four rays go to higher squares
+    private static final long[][] RAYS = new long[8][B_SIZE];
+
+    static {
+        int[] dr = {0, 1, 1, 1, 0, -1, -1, -1}, dc = {1, -1, 0, 1, -1, 1, 0, -1};
+        for (int d = 0; d < 8; d++) {
+            for (int s = 0; s < B_SIZE; s++) {
+                int r = s / SIZE + dr[d], c = s % SIZE + dc[d];
+                while (r >= 0 && r < SIZE && c >= 0 && c < SIZE) {
+                    RAYS[d][s] |= 1L << (r * SIZE + c);
+                    r += dr[d];
+                    c += dc[d];
+                }
+            }
+        }
+    }
+
+    //
+    public final long[] queens = new long[2];
+    public long arrows;
+    private int nMoves, currentPlayer, winner = NONE_WIN;
+    private long zbHash = 0;
+    // The moves made, used to undo moves. Every move shoots an arrow, so there can be no more moves than squares
+    private final int[] pastMoves = new int[B_SIZE];
+    private int nPastMoves = 0;
+    // The mobility of both players, valid until a move is made or undone
+    private final int[] mobility = new int[2];
+    private boolean mobilityValid = false;
+    // The move buffer is allocated on first use, most copies never generate all moves
+    private int[] intMoves;
+    private final int[] queenSquares = new int[N_QUEENS];
+    private final ArrayList<IMove> playoutMoves = new ArrayList<IMove>();
+
+    @Override
+    public IBoard copy() {
+        BitBoard b = new BitBoard();
+        b.queens[0] = queens[0];
+        b.queens[1] = queens[1];
+        b.arrows = arrows;
+        b.nMoves = nMoves;
+        b.currentPlayer = currentPlayer;
+        b.winner = winner;
+        // no need to copy the move stack
+        b.zbHash = zbHash;
+        b.mobility[0] = mobility[0];
+        b.mobility[1] = mobility[1];
+        b.mobilityValid = mobilityValid;
+        return b;
+    }
+
+    @Override
+    public void initialize() {
+        queens[0] = queens[1] = arrows = 0;
+        nMoves = 0;
+        nPastMoves = 0;
+        winner = NONE_WIN;
+        mobilityValid = false;
+        // build the initial hash the same way as Board
+        Board.initZobrist();
+        zbHash = 0;
+        for (int s = 0; s < B_SIZE; s++)
+            zbHash ^= Board.zbnums[s][EMPTY];
+        currentPlayer = P1;
+        zbHash ^= Board.whiteHash;
+        // Setup initial positions
+        for (int i = 0; i < N_QUEENS; i++) {
+            queens[0] |= 1L << Board.initPositions[0][i];
+            zbHash ^= Board.zbnums[Board.initPositions[0][i]][P1];
+            queens[1] |= 1L << Board.initPositions[1][i];
+            zbHash ^= Board.zbnums[Board.initPositions[1][i]][P2];
+        }
+    }
+
+    private long occupied() {
+        return queens[0] | queens[1] | arrows;
+    }
+
+    /**
+     * @return The empty squares a queen (or arrow) on the square can reach
+     */
+    private static long queenMoves(int square, long occupied) {
+        long moves = 0, ray, blockers;
+        for (int d = 0; d < 4; d++) {
+            // Rays to higher squares are blocked by their lowest occupied square
+            ray = RAYS[d][square];
+            blockers = ray & occupied;
+            if (blockers != 0)
+                ray ^= RAYS[d][Long.numberOfTrailingZeros(blockers)];
+            moves |= ray;
+            // Rays to lower squares by their highest
+            ray = RAYS[d + 4][square];
+            blockers = ray & occupied;
+            if (blockers != 0)
+                ray ^= RAYS[d + 4][63 - Long.numberOfLeadingZeros(blockers)];
+            moves |= ray;
+        }
+        return moves & ~occupied;
+    }
+
+    /**
+     * @return The squares next to the squares in the bitboard
+     */
+    private static long neighbours(long squares) {
+        long row = squares | ((squares << 1) & ~FILE_A) | ((squares >>> 1) & ~FILE_H);
+        return (row | (row << SIZE) | (row >>> SIZE)) & ~squares;
+    }
+
+    /**
+     * @return The n-th (from 0) lowest square in the bitboard
+     */
+    private static int square(long squares, int n) {
+        for (int i = 0; i < n; i++)
+            squares &= squares - 1;
+        return Long.numberOfTrailingZeros(squares);
+    }
+
+    /**
+     * Fill queenSquares with the squares of the queens of the player to move, from low to high
+     */
+    private int[] getQueenSquares() {
+        long q = queens[currentPlayer - 1];
+        for (int i = 0; i < N_QUEENS; i++, q &= q - 1)
+            queenSquares[i] = Long.numberOfTrailingZeros(q);
+        return queenSquares;
+    }
+
+    private int[] intMoves() {
+        if (intMoves == null)
+            intMoves = new int[MAX_MOVES];
+        return intMoves;
+    }
+
+    @Override
+    public MoveList getExpandMoves() {
+        int count = 0;
+        int[] squares = getQueenSquares(), intMoves = intMoves();
+        for (int i = 0; i < N_QUEENS; i++) {
+            // Select the location to move from, ie the queen to move
+            count = addQueenMoves(squares[i], intMoves, count);
+        }
+        MoveList moves = new MoveList(count + 1);
+        for (int i = 0; i < count; i++)
+            moves.add(decode(intMoves[i]));
+        return moves;
+    }
+
+    @Override
+    public List<IMove> getPlayoutMoves(boolean heuristics) {
+        playoutMoves.clear();
+        int[] intMoves = intMoves();
+        int count = getPlayoutMoves(intMoves, heuristics);
+        for (int i = 0; i < count; i++)
+            playoutMoves.add(decode(intMoves[i]));
+        return playoutMoves;
+    }
+
+    @Override
+    public int getMaxPlayoutMoves() {
+        return MAX_MOVES;
+    }
+
+    @Override
+    public int getPlayoutMoves(int[] moves, boolean heuristics) {
+        int count = 0;
+        int[] squares = getQueenSquares();
+        if (heuristics) {
+            // Like Board, only the moves of the first queen that can move, starting at a random one
+            int start = MCTSOptions.r.nextInt(N_QUEENS);
+            for (int c = 0; c < N_QUEENS && count == 0; c++)
+                count = addQueenMoves(squares[(start + c) % N_QUEENS], moves, count);
+        }
+        //
+        if (count == 0) {
+            for (int i = 0; i < N_QUEENS; i++)
+                count = addQueenMoves(squares[i], moves, count);
+        }
+        return count;
+    }
+
+    /**
+     * Add all encoded moves of the queen at from to the buffer, starting at index n
+     *
+     * @return the new number of moves in the buffer
+     */
+    private int addQueenMoves(int from, int[] moves, int n) {
+        long occupied = occupied(), lifted = occupied ^ (1L << from);
+        for (long to = queenMoves(from, occupied); to != 0; to &= to - 1) {
+            int t = Long.numberOfTrailingZeros(to);
+            // The queen has left its square, so it can shoot over or onto it
+            for (long shot = queenMoves(t, lifted | (1L << t)); shot != 0; shot &= shot - 1)
+                moves[n++] = from | (t << TO_SHIFT) | (Long.numberOfTrailingZeros(shot) << ARROW_SHIFT);
+        }
+        return n;
+    }
+
+    @Override
+    public boolean doRandomMove(int player, boolean heuristics) {
+        Random r = MCTSOptions.r;
+        int[] squares = getQueenSquares();
+        long occupied = occupied(), empty = ~occupied, moves, shots;
+        int from = -1, queen, to, moveCount, shotCount;
+        if (heuristics) {
+            // Like getPlayoutMoves, only move the first queen that can move, starting at a random one
+            int start = r.nextInt(N_QUEENS);
+            for (int c = 0; c < N_QUEENS && from < 0; c++) {
+                if ((neighbours(1L << squares[(start + c) % N_QUEENS]) & empty) != 0)
+                    from = squares[(start + c) % N_QUEENS];
+            }
+            if (from < 0)
+                return false;
+        }
+        for (int i = 0; i < MAX_SAMPLES; i++) {
+            queen = (from >= 0) ? from : squares[r.nextInt(N_QUEENS)];
+            moves = queenMoves(queen, occupied);
+            moveCount = Long.bitCount(moves);
+            // Rejection sampling as in Board, all moves are equally likely without counting them
+            if (moveCount == 0 || (from < 0 && r.nextInt(MAX_REACH) >= moveCount))
+                continue;
+            to = square(moves, r.nextInt(moveCount));
+            shots = queenMoves(to, occupied ^ (1L << queen) ^ (1L << to));
+            shotCount = Long.bitCount(shots);
+            if (r.nextInt(MAX_REACH) >= shotCount)
+                continue;
+            return doAIMove(queen | (to << TO_SHIFT) | (square(shots, r.nextInt(shotCount)) << ARROW_SHIFT), player);
+        }
+        // Too many samples were rejected, generate all moves (of the chosen queen)
+        int[] intMoves = intMoves();
+        int count = (from >= 0) ? addQueenMoves(from, intMoves, 0) : getPlayoutMoves(intMoves, false);
+        if (count == 0)
+            return false;
+        return doAIMove(intMoves[r.nextInt(count)], player);
+    }
+
+    private static Move decode(int move) {
+        return new Move(move & SQUARE_MASK, (move >> TO_SHIFT) & SQUARE_MASK, (move >> ARROW_SHIFT) & SQUARE_MASK);
+    }
+
+    @Override
+    public boolean doAIMove(IMove move, int player) {
+        return doAIMove(move.getMove()[0] | (move.getMove()[1] << TO_SHIFT) | (move.getType() << ARROW_SHIFT), player);
+    }
+
+    @Override
+    public boolean doAIMove(int move, int player) {
+        int from = move & SQUARE_MASK, to = (move >> TO_SHIFT) & SQUARE_MASK, arrow = (move >> ARROW_SHIFT) & SQUARE_MASK;
+        long[][] zb = Board.zbnums;
+        zbHash ^= zb[from][player] ^ zb[to][EMPTY] ^ zb[arrow][EMPTY];
+        zbHash ^= zb[from][EMPTY] ^ zb[to][player] ^ zb[arrow][ARROW];
+        // Move the queen, then shoot the arrow
+        queens[currentPlayer - 1] ^= (1L << from) | (1L << to);
+        arrows |= 1L << arrow;
+        pastMoves[nPastMoves++] = move;
+        currentPlayer = getOpponent(currentPlayer);
+        zbHash ^= Board.whiteHash ^ Board.blackHash;
+        nMoves++;
+        mobilityValid = false;
+        return true;
+    }
+
+    @Override
+    public void undoMove() {
+        int move = pastMoves[--nPastMoves];
+        int from = move & SQUARE_MASK, to = (move >> TO_SHIFT) & SQUARE_MASK, arrow = (move >> ARROW_SHIFT) & SQUARE_MASK;
+        currentPlayer = getOpponent(currentPlayer);
+        long[][] zb = Board.zbnums;
+        zbHash ^= zb[from][EMPTY] ^ zb[to][currentPlayer] ^ zb[arrow][ARROW];
+        zbHash ^= zb[from][currentPlayer] ^ zb[to][EMPTY] ^ zb[arrow][EMPTY];
+        // Clear the arrow, and replace the queen
+        arrows &= ~(1L << arrow);
+        queens[currentPlayer - 1] ^= (1L << from) | (1L << to);
+        nMoves--;
+        winner = NONE_WIN;
+        zbHash ^= Board.whiteHash ^ Board.blackHash;
+        mobilityValid = false;
+    }
+
+    @Override
+    public int getOpponent(int player) {
+        return (player == P1) ? P2 : P1;
+    }
+
+    @Override
+    public int checkWin() {
+        long empty = ~occupied();
+        // A queen can move if one of the squares next to it is empty
+        if ((neighbours(queens[0]) & empty) == 0) {
+            winner = P2_WIN;
+            return P2_WIN;
+        }
+        if ((neighbours(queens[1]) & empty) == 0) {
+            winner = P1_WIN;
+            return P1_WIN;
+        }
+        winner = NONE_WIN;
+        return NONE_WIN;
+    }
+
+    @Override
+    public int checkPlayoutWin() {
+        return checkWin();
+    }
+
+    @Override
+    public int getPlayerToMove() {
+        return currentPlayer;
+    }
+
+    @Override
+    public int getMaxUniqueMoveId() {
+        return 646465;
+    }
+
+    /**
+     * @return The number of queen moves (without the shots) of the player
+     */
+    private int getFreedom(int player) {
+        if (!mobilityValid) {
+            long occupied = occupied();
+            for (int p = 0; p < 2; p++) {
+                mobility[p] = 0;
+                for (long q = queens[p]; q != 0; q &= q - 1)
+                    mobility[p] += Long.bitCount(queenMoves(Long.numberOfTrailingZeros(q), occupied));
+            }
+            mobilityValid = true;
+        }
+        return mobility[player - 1];
+    }
+
+    /**
+     * Territory (evaluation version 1, Board has no equivalent): the empty squares that a player's amazons reach
+     * in fewer king moves than the opponent's, over empty squares. Squares reached at the same distance are neutral.
+     * The distances of both players are flood filled on the bitboards, one king move per step, each fill passing
+     * through the squares the other player reached first.
+     */
+    public double evaluateTerritory(int player) {
+        long empty = ~occupied(), reached1 = queens[0], reached2 = queens[1], front1 = queens[0], front2 = queens[1];
+        int count1 = 0, count2 = 0;
+        while ((front1 | front2) != 0) {
+            front1 = neighbours(front1) & empty & ~reached1;
+            front2 = neighbours(front2) & empty & ~reached2;
+            reached1 |= front1;
+            reached2 |= front2;
+            // Squares the opponent reached at this distance or before are not owned
+            count1 += Long.bitCount(front1 & ~reached2);
+            count2 += Long.bitCount(front2 & ~reached1);
+        }
+        double p1eval = FastTanh.tanh((count1 - count2) / 10.0);
+        return (player == 1) ? p1eval : -p1eval;
+    }
+
+    /**
+     * Version 0 is the mobility evaluation of Board, version 1 the territory evaluation (evaluateTerritory)
+     */
+    @Override
+    public double evaluate(int player, int version) {
+        if (version == 1)
+            return evaluateTerritory(player);
+        double count = getFreedom(player) - getFreedom(3 - player);
+        // The more available moves the winning player has, the better
+        return FastTanh.tanh(count / (16. * (nMoves / 4.0)));
+    }
+
+    @Override
+    public void initNodePriors(int parentPlayer, StatCounter stats, IMove move, int npvisits) {
+        throw new RuntimeException("unimplemented");
+    }
+
+    @Override
+    public double getQuality() {
+        double count = getFreedom(winner);
+        // The more available moves the winning player has, the better
+        return count / (16.);
+    }
+
+    @Override
+    public MoveList getOrderedMoves() {
+        return getExpandMoves();
+    }
+
+    @Override
+    public long hash() {
+        return zbHash;
+    }
+
+    @Override
+    public boolean poMoves() {
+        return false;
+    }
+
+    @Override
+    public int getNPlayers() {
+        return 2;
+    }
+
+    public String toString() {
+        String str = "";
+        for (int x = 0; x < B_SIZE; x++) {
+            long bit = 1L << x;
+            str += ((queens[0] & bit) != 0) ? "W" : ((queens[1] & bit) != 0) ? "B" : ((arrows & bit) != 0) ? "a" : ".";
+            if (x % SIZE == SIZE - 1)
+                str += "\n";
+        }
+        return str;
+    }
+
+    @Override
+    public void newDeterminization(int myPlayer, boolean postMove) {
+        // Game is fully observable
+    }
+
+    @Override
+    public boolean isPartialObservable() {
+        return false;
+    }
+
+    @Override
+    public int getNMovesMade() {
+        return nMoves;
+    }
+
+    @Override
+    public boolean isLegal(IMove move) {
+        return true;
+    }
+
+    @Override
+    public boolean noMovesIsDraw() {
+        return false;
+    }
+}
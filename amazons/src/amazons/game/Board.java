@@ -1,38 +1,45 @@
 package amazons.game;
 
+import ai.MCTSOptions;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.PrimitiveMoveBoard;
+import framework.RandomMoveBoard;
 import framework.util.FastTanh;
 import framework.util.StatCounter;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.Stack;
 
-public class Board implements IBoard {
+public class Board implements PrimitiveMoveBoard, RandomMoveBoard {
     // The board size
     public static final int SIZE = 8, B_SIZE = SIZE * SIZE, N_QUEENS = 4;
     // Board occupants
     public static final int EMPTY = 0, WHITE_Q = P1, BLACK_Q = P2, ARROW = 3;
+    // Encoded moves: from square (6 bits), to square (6 bits) and arrow square (6 bits)
+    private static final int TO_SHIFT = 6, ARROW_SHIFT = 12, SQUARE_MASK = 63, MAX_MOVES = 5000;
+    // A queen reaches at most MAX_REACH squares, doRandomMove tries MAX_SAMPLES moves before it generates all moves
+    private static final int MAX_REACH = 4 * (SIZE - 1), MAX_SAMPLES = 32;
     // Zobrist stuff
     static long[][] zbnums = null;
     static long whiteHash, blackHash;
     private long zbHash = 0;
     //
-    private static final Random r = new Random();
-    private static final MoveList moves = new MoveList(5000);
-    private static final ArrayList<IMove> playoutMoves = new ArrayList<IMove>();
+    private final ArrayList<IMove> playoutMoves = new ArrayList<IMove>();
     // Initial queen positions
-    private static final int[][] initPositions = {{58, 61, 40, 47}, {2, 5, 16, 23}};
+    static final int[][] initPositions = {{58, 61, 40, 47}, {2, 5, 16, 23}};
     public final int[][] queens = new int[2][4];
     // Board is public for fast access
     public final int[] board;
     public int[] bcopy;
     private final int[] ALL_MOVE_INT = {9, -9, 7, -7, 8, -8, -1, 1};
     private final int[] possibleMoves = new int[40], possibleShots = new int[40];
-    private final Stack<IMove> pastMoves = new Stack<IMove>();
+    private final int[] intMoves = new int[MAX_MOVES];
+    // Every move shoots an arrow, so there can be no more moves than squares
+    private final int[] pastMoves = new int[B_SIZE];
+    private int nPastMoves = 0;
     private int nMoves = 0;
     private int lastFrom, lastTo, currentPlayer;
     private int winner = NONE_WIN;
@@ -94,121 +101,169 @@ public class Board implements IBoard {
 
     @Override
     public MoveList getExpandMoves() {
-        moves.clear();
-        int from, moveCount, shotCount;
+        int count = 0;
         for (int i = 0; i < queens[currentPlayer - 1].length; i++) {
             // Select the location to move from, ie the queen to move
-            from = queens[currentPlayer - 1][i];
-            moveCount = getPossibleMovesFrom(from, possibleMoves);
-            // Move count holds the possible number of moves possible from this position
-            for (int j = 0; j < moveCount; j++) {
-                moveQueen(from, possibleMoves[j], currentPlayer);
-                // Iterate through the possible shots
-                shotCount = getPossibleMovesFrom(possibleMoves[j], possibleShots);
-                for (int k = 0; k < shotCount; k++) {
-                    moves.add(new Move(from, possibleMoves[j], possibleShots[k]));
-                }
-                undoQueenMove(currentPlayer);
-            }
+            count = addQueenMoves(queens[currentPlayer - 1][i], intMoves, count);
         }
-        return moves.copy();
+        MoveList moves = new MoveList(count + 1);
+        for (int i = 0; i < count; i++)
+            moves.add(decode(intMoves[i]));
+        return moves;
     }
 
     @Override
     public List<IMove> getPlayoutMoves(boolean heuristics) {
         playoutMoves.clear();
-        int from, moveCount, shotCount;
+        int count = getPlayoutMoves(intMoves, heuristics);
+        for (int i = 0; i < count; i++)
+            playoutMoves.add(decode(intMoves[i]));
+        return playoutMoves;
+    }
+
+    @Override
+    public int getMaxPlayoutMoves() {
+        return MAX_MOVES;
+    }
+
+    @Override
+    public int getPlayoutMoves(int[] moves, boolean heuristics) {
+        int count = 0;
         if (heuristics) {
-            int start = r.nextInt(N_QUEENS);
+            int start = MCTSOptions.r.nextInt(N_QUEENS);
             int c = 0;
-            while (playoutMoves.isEmpty() && c < N_QUEENS) {
+            while (count == 0 && c < N_QUEENS) {
                 // Select the location to move from, ie the queen to move
-                from = queens[currentPlayer - 1][start];
-                moveCount = getPossibleMovesFrom(from, possibleMoves);
-                // Move count holds the possible number of moves possible from this position
-                for (int j = 0; j < moveCount; j++) {
-                    moveQueen(from, possibleMoves[j], currentPlayer);
-                    // Iterate through the possible shots
-                    shotCount = getPossibleMovesFrom(possibleMoves[j], possibleShots);
-                    for (int k = 0; k < shotCount; k++) {
-                        playoutMoves.add(new Move(from, possibleMoves[j], possibleShots[k]));
-                    }
-                    undoQueenMove(currentPlayer);
-                }
+                count = addQueenMoves(queens[currentPlayer - 1][start], moves, count);
                 // Next queen, in case of no moves
                 start = (start == N_QUEENS - 1) ? 0 : start + 1;
                 c++;
             }
         }
         //
-        if (playoutMoves.isEmpty()) {
+        if (count == 0) {
             for (int i = 0; i < queens[currentPlayer - 1].length; i++) {
                 // Select the location to move from, ie the queen to move
-                from = queens[currentPlayer - 1][i];
-                moveCount = getPossibleMovesFrom(from, possibleMoves);
-                // Move count holds the possible number of moves possible from this position
-                for (int j = 0; j < moveCount; j++) {
-                    moveQueen(from, possibleMoves[j], currentPlayer);
-                    // Iterate through the possible shots
-                    shotCount = getPossibleMovesFrom(possibleMoves[j], possibleShots);
-                    for (int k = 0; k < shotCount; k++) {
-                        playoutMoves.add(new Move(from, possibleMoves[j], possibleShots[k]));
-                    }
-                    undoQueenMove(currentPlayer);
-                }
+                count = addQueenMoves(queens[currentPlayer - 1][i], moves, count);
             }
         }
-        return playoutMoves;
+        return count;
+    }
+
+    /**
+     * Add all encoded moves of the queen at from to the buffer, starting at index n
+     *
+     * @return the new number of moves in the buffer
+     */
+    private int addQueenMoves(int from, int[] moves, int n) {
+        int moveCount = getPossibleMovesFrom(from, possibleMoves), shotCount;
+        // Move count holds the possible number of moves possible from this position
+        for (int j = 0; j < moveCount; j++) {
+            moveQueen(from, possibleMoves[j], currentPlayer);
+            // Iterate through the possible shots
+            shotCount = getPossibleMovesFrom(possibleMoves[j], possibleShots);
+            for (int k = 0; k < shotCount; k++) {
+                moves[n++] = from | (possibleMoves[j] << TO_SHIFT) | (possibleShots[k] << ARROW_SHIFT);
+            }
+            undoQueenMove(currentPlayer);
+        }
+        return n;
     }
 
     @Override
-    public void undoMove() {
-        IMove move = pastMoves.pop();
-        if (move != null) {
-            currentPlayer = getOpponent(currentPlayer);
-
-            // remove zobrist nums from hash of the squares that are changing
-            zbHash ^= zbnums[move.getMove()[0]][EMPTY];
-            zbHash ^= zbnums[move.getMove()[1]][currentPlayer];
-            zbHash ^= zbnums[move.getType()][ARROW];
-
-            // clear the arrow (this has to be done before replacing the queen!)
-            board[move.getType()] = EMPTY;
-            // Replace the queen
-            board[move.getMove()[0]] = board[move.getMove()[1]];
-            board[move.getMove()[1]] = EMPTY;
-            queens[currentPlayer - 1][board[move.getMove()[0]] % 10] = move.getMove()[0];
-
-            // remove zobrist nums from hash of the squares that are changing
-            zbHash ^= zbnums[move.getMove()[0]][currentPlayer];
-            zbHash ^= zbnums[move.getMove()[1]][EMPTY];
-            zbHash ^= zbnums[move.getType()][EMPTY];
-            nMoves--;
-            winner = NONE_WIN;
-            hashCurrentPlayer();
+    public boolean doRandomMove(int player, boolean heuristics) {
+        Random r = MCTSOptions.r;
+        int[] myQueens = queens[currentPlayer - 1];
+        int from = -1, queen, to, moveCount, shotCount;
+        if (heuristics) {
+            // Like getPlayoutMoves, only move the first queen that can move, starting at a random one
+            int start = r.nextInt(N_QUEENS);
+            for (int c = 0; c < N_QUEENS && from < 0; c++) {
+                if (canMakeMoveFrom(myQueens[(start + c) % N_QUEENS]))
+                    from = myQueens[(start + c) % N_QUEENS];
+            }
+            if (from < 0)
+                return false;
+        }
+        for (int i = 0; i < MAX_SAMPLES; i++) {
+            queen = (from >= 0) ? from : myQueens[r.nextInt(N_QUEENS)];
+            moveCount = getPossibleMovesFrom(queen, possibleMoves);
+            // Rejection sampling, queen moves and shots are accepted in proportion to their number, which makes
+            // all moves equally likely without counting them. With heuristics the queen is fixed, only its moves count.
+            if (moveCount == 0 || (from < 0 && r.nextInt(MAX_REACH) >= moveCount))
+                continue;
+            to = possibleMoves[r.nextInt(moveCount)];
+            moveQueen(queen, to, currentPlayer);
+            shotCount = getPossibleMovesFrom(to, possibleShots);
+            undoQueenMove(currentPlayer);
+            if (r.nextInt(MAX_REACH) >= shotCount)
+                continue;
+            return doAIMove(queen | (to << TO_SHIFT) | (possibleShots[r.nextInt(shotCount)] << ARROW_SHIFT), player);
         }
+        // Too many samples were rejected, generate all moves (of the chosen queen)
+        int count = (from >= 0) ? addQueenMoves(from, intMoves, 0) : getPlayoutMoves(intMoves, false);
+        if (count == 0)
+            return false;
+        return doAIMove(intMoves[r.nextInt(count)], player);
+    }
+
+    private static Move decode(int move) {
+        return new Move(move & SQUARE_MASK, (move >> TO_SHIFT) & SQUARE_MASK, (move >> ARROW_SHIFT) & SQUARE_MASK);
+    }
+
+    @Override
+    public void undoMove() {
+        int move = pastMoves[--nPastMoves];
+        int from = move & SQUARE_MASK, to = (move >> TO_SHIFT) & SQUARE_MASK, arrow = (move >> ARROW_SHIFT) & SQUARE_MASK;
+        currentPlayer = getOpponent(currentPlayer);
+
+        // remove zobrist nums from hash of the squares that are changing
+        zbHash ^= zbnums[from][EMPTY];
+        zbHash ^= zbnums[to][currentPlayer];
+        zbHash ^= zbnums[arrow][ARROW];
+
+        // clear the arrow (this has to be done before replacing the queen!)
+        board[arrow] = EMPTY;
+        // Replace the queen
+        board[from] = board[to];
+        board[to] = EMPTY;
+        queens[currentPlayer - 1][board[from] % 10] = from;
+
+        // remove zobrist nums from hash of the squares that are changing
+        zbHash ^= zbnums[from][currentPlayer];
+        zbHash ^= zbnums[to][EMPTY];
+        zbHash ^= zbnums[arrow][EMPTY];
+        nMoves--;
+        winner = NONE_WIN;
+        hashCurrentPlayer();
     }
 
     @Override
     public boolean doAIMove(IMove move, int player) {
+        return doAIMove(move.getMove()[0] | (move.getMove()[1] << TO_SHIFT) | (move.getType() << ARROW_SHIFT), player);
+    }
+
+    @Override
+    public boolean doAIMove(int move, int player) {
+        int from = move & SQUARE_MASK, to = (move >> TO_SHIFT) & SQUARE_MASK, arrow = (move >> ARROW_SHIFT) & SQUARE_MASK;
 
         // remove zobrist nums from hash of the squares that are changing
-        zbHash ^= zbnums[move.getMove()[0]][player];
-        zbHash ^= zbnums[move.getMove()[1]][EMPTY];
-        zbHash ^= zbnums[move.getType()][EMPTY];
+        zbHash ^= zbnums[from][player];
+        zbHash ^= zbnums[to][EMPTY];
+        zbHash ^= zbnums[arrow][EMPTY];
 
-        board[move.getMove()[1]] = board[move.getMove()[0]];
-        board[move.getMove()[0]] = EMPTY;
-        queens[currentPlayer - 1][board[move.getMove()[1]] % 10] = move.getMove()[1];
+        board[to] = board[from];
+        board[from] = EMPTY;
+        queens[currentPlayer - 1][board[to] % 10] = to;
         // Shoot the arrow (after moving the queen!)
-        board[move.getType()] = ARROW;
+        board[arrow] = ARROW;
         //
         // remove zobrist nums from hash of the squares that are changing
-        zbHash ^= zbnums[move.getMove()[0]][EMPTY];
-        zbHash ^= zbnums[move.getMove()[1]][player];
-        zbHash ^= zbnums[move.getType()][ARROW];
+        zbHash ^= zbnums[from][EMPTY];
+        zbHash ^= zbnums[to][player];
+        zbHash ^= zbnums[arrow][ARROW];
         //
-        pastMoves.push(move);
+        pastMoves[nPastMoves++] = move;
         currentPlayer = getOpponent(currentPlayer);
         hashCurrentPlayer();
         nMoves++;
@@ -279,27 +334,12 @@ public class Board implements IBoard {
     @Override
     public void initialize() {
         nMoves = 0;
+        nPastMoves = 0;
         for (int i = 0; i < board.length; i++) {
             board[i] = EMPTY;
         }
 
-        if (zbnums == null) {
-            // init the zobrist numbers
-            Random rng = new Random();
-
-            // 64 locations, 4 states for each location = 192
-            zbnums = new long[SIZE * SIZE][4];
-
-            for (int i = 0; i < zbnums.length; i++) {
-                zbnums[i][0] = rng.nextLong();
-                zbnums[i][1] = rng.nextLong();
-                zbnums[i][2] = rng.nextLong();
-                zbnums[i][3] = rng.nextLong();
-            }
-
-            whiteHash = rng.nextLong();
-            blackHash = rng.nextLong();
-        }
+        initZobrist();
         // now build the initial hash
         zbHash = 0;
         for (int r = 0; r < SIZE * SIZE; r++) {
@@ -622,6 +662,29 @@ public class Board implements IBoard {
         return count / (16.);
     }
 
+    /**
+     * Initialize the zobrist numbers, they are shared by all boards (and BitBoards)
+     */
+    static synchronized void initZobrist() {
+        if (zbnums != null)
+            return;
+        Random rng = new Random();
+
+        // 64 locations, 4 states for each location = 256
+        long[][] nums = new long[SIZE * SIZE][4];
+
+        for (int i = 0; i < nums.length; i++) {
+            nums[i][0] = rng.nextLong();
+            nums[i][1] = rng.nextLong();
+            nums[i][2] = rng.nextLong();
+            nums[i][3] = rng.nextLong();
+        }
+
+        whiteHash = rng.nextLong();
+        blackHash = rng.nextLong();
+        zbnums = nums;
+    }
+
     @Override
     public MoveList getOrderedMoves() {
         return null;
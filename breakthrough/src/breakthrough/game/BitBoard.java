@@ -0,0 +1,526 @@
+package breakthrough.game;
+
+import framework.IBoard;
+import framework.IMove;
+import framework.MoveList;
+import framework.PrimitiveMoveBoard;
+import framework.util.FastTanh;
+import framework.util.StatCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Breakthrough board that stores the position as two bitboards, bit r * 8 + c is set for a piece on row r, column c.
+ * Moves are generated for all pieces at once by shifting the bitboards, the hash, piece values and capture
+ * bonuses are updated incrementally. Moves and hashes are the same as those of Board.
+ */
+public class BitBoard implements PrimitiveMoveBoard {
+    private static final int N_PIECES = 16;
+    // Encoded moves: from square (6 bits), to square (6 bits) and a capture flag, same as Board
+    private static final int TO_SHIFT = 6, CAPTURE_FLAG = 1 << 12, SQUARE_MASK = 63;
+    private static final int MAX_PLAYOUT_MOVES = 384;
+    private static final long FILE_A = 0x0101010101010101L, FILE_H = 0x8080808080808080L;
+    private static final long ROW_0 = 0xFFL, ROW_7 = 0xFFL << 56;
+    // Lorentz piece values per square for white and black
+    private static final int[] lorentzW = new int[64], lorentzB = new int[64];
+
+    static {
+        // these are the values for black (p2)
+        int[][] values = {{5, 15, 15, 5, 5, 15, 15, 5},
+                {2, 3, 3, 3, 3, 3, 3, 2},
+                {4, 6, 6, 6, 6, 6, 6, 4},
+                {7, 10, 10, 10, 10, 10, 10, 7},
+                {11, 15, 15, 15, 15, 15, 15, 11},
+                {16, 21, 21, 21, 21, 21, 21, 16},
+                {20, 28, 28, 28, 28, 28, 28, 20},
+                {36, 36, 36, 36, 36, 36, 36, 36}};
+        for (int r = 0; r < 8; r++) {
+            for (int c = 0; c < 8; c++) {
+                lorentzB[r * 8 + c] = values[r][c];
+                lorentzW[r * 8 + c] = values[7 - r][c];
+            }
+        }
+    }
+
+    //
+    public long white, black;
+    public int nMoves, winner, curPlayer;
+    private int lorentzPV1, lorentzPV2;
+    public int capBonus1, capBonus2;
+    private long zbHash = 0;
+    // The moves made, used to undo moves
+    private int[] pastMoves = new int[256];
+    private int nPastMoves = 0;
+    private final int[] intMoves = new int[MAX_PLAYOUT_MOVES], forcedMoves = new int[N_PIECES * 2];
+    private final ArrayList<IMove> poMoves = new ArrayList<IMove>(MAX_PLAYOUT_MOVES);
+
+    @Override
+    public IBoard copy() {
+        BitBoard b = new BitBoard();
+        b.white = white;
+        b.black = black;
+        b.lorentzPV1 = lorentzPV1;
+        b.lorentzPV2 = lorentzPV2;
+        b.capBonus1 = capBonus1;
+        b.capBonus2 = capBonus2;
+        b.nMoves = nMoves;
+        b.winner = winner;
+        b.curPlayer = curPlayer;
+        // no need to copy the move stack
+        b.zbHash = zbHash;
+        return b;
+    }
+
+    @Override
+    public void initialize() {
+        black = ROW_0 | (ROW_0 << 8);
+        white = ROW_7 | (ROW_7 >>> 8);
+        lorentzPV1 = lorentzPV2 = 0;
+        for (long p = white; p != 0; p &= p - 1)
+            lorentzPV1 += lorentzW[Long.numberOfTrailingZeros(p)];
+        for (long p = black; p != 0; p &= p - 1)
+            lorentzPV2 += lorentzB[Long.numberOfTrailingZeros(p)];
+        capBonus1 = capBonus2 = 0;
+        nMoves = 0;
+        winner = NONE_WIN;
+        nPastMoves = 0;
+        curPlayer = P1;
+        // build the initial hash the same way as Board
+        Board.initZobrist();
+        zbHash = 0;
+        for (int s = 0; s < 64; s++)
+            zbHash ^= Board.zbnums[s][0];
+        zbHash ^= Board.whiteHash;
+    }
+
+    @Override
+    public boolean doAIMove(IMove move, int player) {
+        int[] movearr = move.getMove();
+        int m = (movearr[0] * 8 + movearr[1]) | ((movearr[2] * 8 + movearr[3]) << TO_SHIFT);
+        return doAIMove((move.getType() == Move.CAPTURE) ? m | CAPTURE_FLAG : m, player);
+    }
+
+    @Override
+    public boolean doAIMove(int move, int player) {
+        int from = move & SQUARE_MASK, to = (move >> TO_SHIFT) & SQUARE_MASK;
+        long fromTo = (1L << from) | (1L << to);
+        if (nPastMoves == pastMoves.length)
+            pastMoves = Arrays.copyOf(pastMoves, 2 * nPastMoves);
+        pastMoves[nPastMoves++] = move;
+        long[][] zb = Board.zbnums;
+        zbHash ^= zb[from][curPlayer] ^ zb[from][0] ^ zb[to][curPlayer];
+        if ((move & CAPTURE_FLAG) != 0)
+            zbHash ^= zb[to][3 - curPlayer];
+        else
+            zbHash ^= zb[to][0];
+
+        if (player == 1) {
+            white ^= fromTo;
+            lorentzPV1 += lorentzW[to] - lorentzW[from];
+            if ((move & CAPTURE_FLAG) != 0) {
+                black ^= 1L << to;
+                lorentzPV2 -= lorentzB[to];
+                // cap bonus for capturing on defending side
+                if (to >= 32)
+                    capBonus1++;
+            }
+            if (to < 8 || black == 0)
+                winner = 1;
+        } else {
+            black ^= fromTo;
+            lorentzPV2 += lorentzB[to] - lorentzB[from];
+            if ((move & CAPTURE_FLAG) != 0) {
+                white ^= 1L << to;
+                lorentzPV1 -= lorentzW[to];
+                // cap bonus for capturing on defending side
+                if (to < 32)
+                    capBonus2++;
+            }
+            if (to >= 56 || white == 0)
+                winner = 2;
+        }
+        nMoves++;
+        curPlayer = 3 - curPlayer;
+        zbHash ^= Board.whiteHash ^ Board.blackHash;
+        return true;
+    }
+
+    @Override
+    public void undoMove() {
+        int move = pastMoves[--nPastMoves];
+        nMoves--;
+        curPlayer = 3 - curPlayer;
+        winner = NONE_WIN;
+
+        int from = move & SQUARE_MASK, to = (move >> TO_SHIFT) & SQUARE_MASK;
+        long fromTo = (1L << from) | (1L << to);
+        long[][] zb = Board.zbnums;
+        zbHash ^= zb[from][curPlayer] ^ zb[from][0] ^ zb[to][curPlayer];
+        if ((move & CAPTURE_FLAG) != 0)
+            zbHash ^= zb[to][3 - curPlayer];
+        else
+            zbHash ^= zb[to][0];
+
+        if (curPlayer == 1) {
+            white ^= fromTo;
+            lorentzPV1 -= lorentzW[to] - lorentzW[from];
+            if ((move & CAPTURE_FLAG) != 0) {
+                black ^= 1L << to;
+                lorentzPV2 += lorentzB[to];
+                if (to >= 32)
+                    capBonus1--;
+            }
+        } else {
+            black ^= fromTo;
+            lorentzPV2 -= lorentzB[to] - lorentzB[from];
+            if ((move & CAPTURE_FLAG) != 0) {
+                white ^= 1L << to;
+                lorentzPV1 += lorentzW[to];
+                if (to < 32)
+                    capBonus2--;
+            }
+        }
+        zbHash ^= Board.whiteHash ^ Board.blackHash;
+    }
+
+    /**
+     * Write all moves of the player to move in the buffer.
+     * Diagonal moves to the left are generated first, then those to the right, then forward moves.
+     *
+     * @return the number of moves
+     */
+    private int generateMoves(int[] moves) {
+        long empty = ~(white | black);
+        int n = 0;
+        if (curPlayer == 1) {
+            long targets = white & ~FILE_A;
+            n = addMoves(moves, n, (targets >>> 9) & empty, 9, 0);
+            n = addMoves(moves, n, (targets >>> 9) & black, 9, CAPTURE_FLAG);
+            targets = white & ~FILE_H;
+            n = addMoves(moves, n, (targets >>> 7) & empty, 7, 0);
+            n = addMoves(moves, n, (targets >>> 7) & black, 7, CAPTURE_FLAG);
+            n = addMoves(moves, n, (white >>> 8) & empty, 8, 0);
+        } else {
+            long targets = black & ~FILE_A;
+            n = addMoves(moves, n, (targets << 7) & empty, -7, 0);
+            n = addMoves(moves, n, (targets << 7) & white, -7, CAPTURE_FLAG);
+            targets = black & ~FILE_H;
+            n = addMoves(moves, n, (targets << 9) & empty, -9, 0);
+            n = addMoves(moves, n, (targets << 9) & white, -9, CAPTURE_FLAG);
+            n = addMoves(moves, n, (black << 8) & empty, -8, 0);
+        }
+        return n;
+    }
+
+    /**
+     * Add a move for every square in targets, the piece moves from target + offset
+     */
+    private static int addMoves(int[] moves, int n, long targets, int offset, int flag) {
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            moves[n++] = (to + offset) | (to << TO_SHIFT) | flag;
+        }
+        return n;
+    }
+
+    /**
+     * @return true if none of the squares diagonally in front of the to-square of the move are occupied
+     */
+    private boolean isDefenseless(int to) {
+        long occupied = white | black, guards;
+        int c = to & 7;
+        if (curPlayer == 1) {
+            guards = ((c > 0 && to >= 9) ? 1L << (to - 9) : 0) | ((c < 7 && to >= 7) ? 1L << (to - 7) : 0);
+        } else {
+            guards = ((c > 0 && to < 57) ? 1L << (to + 7) : 0) | ((c < 7 && to < 55) ? 1L << (to + 9) : 0);
+        }
+        return (occupied & guards) == 0;
+    }
+
+    private IMove decode(int move) {
+        int from = move & SQUARE_MASK, to = (move >> TO_SHIFT) & SQUARE_MASK;
+        int type = ((move & CAPTURE_FLAG) != 0) ? Move.CAPTURE : Move.MOVE;
+        return new Move(from / 8, from % 8, to / 8, to % 8, type, getProgress(1), getProgress(2), capBonus1, capBonus2);
+    }
+
+    @Override
+    public MoveList getExpandMoves() {
+        int n = generateMoves(intMoves);
+        MoveList moves = new MoveList(n);
+        for (int i = 0; i < n; i++)
+            moves.add(decode(intMoves[i]));
+        return moves;
+    }
+
+    @Override
+    public List<IMove> getPlayoutMoves(boolean heuristics) {
+        int n = getPlayoutMoves(intMoves, heuristics);
+        poMoves.clear();
+        for (int i = 0; i < n; i++)
+            poMoves.add(decode(intMoves[i]));
+        return poMoves;
+    }
+
+    @Override
+    public int getMaxPlayoutMoves() {
+        return MAX_PLAYOUT_MOVES;
+    }
+
+    @Override
+    public int getPlayoutMoves(int[] moves, boolean heuristics) {
+        int n = generateMoves(moves);
+        if (!heuristics)
+            return n;
+        int nForced = 0, total = n, move, from, to;
+        for (int i = 0; i < n; i++) {
+            move = moves[i];
+            to = (move >> TO_SHIFT) & SQUARE_MASK;
+            // Decisive / anti-decisive moves
+            if (to < 8 || to >= 56) {
+                moves[0] = move;
+                return 1;
+            }
+            if ((move & CAPTURE_FLAG) == 0)
+                continue;
+            // Prefer defenseless capture moves
+            if (isDefenseless(to)) {
+                moves[total++] = move;
+                moves[total++] = move;
+                moves[total++] = move;
+                moves[total++] = move;
+            } else {
+                moves[total++] = move;
+            }
+            from = move & SQUARE_MASK;
+            if (from < 8 || from >= 56)
+                forcedMoves[nForced++] = move;
+        }
+        if (nForced > 0) {
+            System.arraycopy(forcedMoves, 0, moves, 0, nForced);
+            return nForced;
+        }
+        return total;
+    }
+
+    @Override
+    public MoveList getOrderedMoves() {
+        int n = generateMoves(intMoves);
+        MoveList moves = new MoveList(n);
+        int move, to;
+        // decisive, defenseless captures, defensive captures, other captures, regular
+        for (int pass = 0; pass < 5; pass++) {
+            for (int i = 0; i < n; i++) {
+                move = intMoves[i];
+                to = (move >> TO_SHIFT) & SQUARE_MASK;
+                int order;
+                if ((move & CAPTURE_FLAG) != 0) {
+                    if (isDefenseless(to))
+                        order = 1;
+                    else if ((curPlayer == 1 && to >= 32) || (curPlayer == 2 && to < 32))
+                        order = 2;
+                    else
+                        order = 3;
+                } else if (to < 8 || to >= 56) {
+                    order = 0;
+                } else {
+                    order = 4;
+                }
+                if (order == pass)
+                    moves.add(decode(move));
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * @return the row of the furthest piece of the player, counted from its home row
+     */
+    private int getProgress(int player) {
+        if (player == 1)
+            return (white == 0) ? 0 : 7 - Long.numberOfTrailingZeros(white) / 8;
+        else
+            return (black == 0) ? 0 : (63 - Long.numberOfLeadingZeros(black)) / 8;
+    }
+
+    @Override
+    public int getOpponent(int player) {
+        return (3 - player);
+    }
+
+    @Override
+    public int checkWin() {
+        return winner;
+    }
+
+    @Override
+    public int checkPlayoutWin() {
+        return winner;
+    }
+
+    @Override
+    public int getPlayerToMove() {
+        return curPlayer;
+    }
+
+    @Override
+    public int getMaxUniqueMoveId() {
+        return 4095;  // 64*64 - 1
+    }
+
+    public double evaluateSchadd(int player) {
+        int pieces1 = Long.bitCount(white), pieces2 = Long.bitCount(black);
+        int progress1 = getProgress(1), progress2 = getProgress(2);
+        double p1eval;
+        if (progress1 == 7 || pieces2 == 0) p1eval = 1;
+        else if (progress2 == 7 || pieces1 == 0) p1eval = -1;
+        else {
+            double delta = (pieces1 * 10 + progress1 * 2.5) - (pieces2 * 10 + progress2 * 2.5);
+            if (delta < -100) delta = -100;
+            if (delta > 100) delta = 100;
+            // now pass it through tanh;
+            p1eval = FastTanh.tanh(delta / 60.0);
+        }
+        return (player == 1 ? p1eval : -p1eval);
+    }
+
+    public double evaluateLorentz(int player) {
+        double p1eval;
+        if (getProgress(1) == 7 || black == 0) p1eval = 1;
+        else if (getProgress(2) == 7 || white == 0) p1eval = -1;
+        else {
+            double delta = lorentzPV1 - lorentzPV2;
+            // now pass it through tanh;
+            p1eval = FastTanh.tanh(delta / 100.0);
+        }
+        return (player == 1 ? p1eval : -p1eval);
+    }
+
+    @Override
+    public double evaluate(int player, int version) {
+        if (version == 0)
+            return evaluateSchadd(player);
+        else if (version == 1)
+            return evaluateLorentz(player);
+        else {
+            throw new RuntimeException("Evaluation function version unknown! " + version);
+        }
+    }
+
+    @Override
+    public void initNodePriors(int parentPlayer, StatCounter stats, IMove move, int npvisits) {
+        // implements prior values according to Rich Lorenz's paper on Breakthrough, see Board
+        int rp = move.getMove()[2], cp = move.getMove()[3];
+        int to = rp * 8 + cp;
+        boolean whitePiece = (white & (1L << to)) != 0;
+        long mine = whitePiece ? white : black, opp = whitePiece ? black : white;
+        // the squares in front of and behind the piece
+        long front = 0, back = 0;
+        if (rp > 0) {
+            if (cp > 0) front |= 1L << (to - 9);
+            if (cp < 7) front |= 1L << (to - 7);
+        }
+        if (rp < 7) {
+            if (cp > 0) back |= 1L << (to + 7);
+            if (cp < 7) back |= 1L << (to + 9);
+        }
+        if (!whitePiece) {
+            long t = front;
+            front = back;
+            back = t;
+        }
+        // count immediate attackers and defenders
+        int attackers = Long.bitCount(front & opp), defenders = Long.bitCount(back & mine);
+        boolean safeMove = (attackers <= defenders);
+        int distToGoal = (parentPlayer == 1 ? rp : (7 - rp));
+        double winrate = 0.30;
+        if (safeMove) {
+            if (distToGoal == 1)
+                winrate = 1.0;
+            else if (distToGoal == 2)
+                winrate = 0.95;
+            else if (distToGoal == 3)
+                winrate = 0.85;
+            else if (distToGoal == 4)
+                winrate = 0.75;
+            else if (distToGoal == 5)
+                winrate = 0.60;
+        } else {
+            if (move.getType() == Move.CAPTURE)
+                winrate = 0.60;
+        }
+        stats.initWinsLosses(winrate, npvisits);
+    }
+
+    @Override
+    public double getQuality() {
+        int pieces1 = Long.bitCount(white), pieces2 = Long.bitCount(black);
+        if (winner == P1_WIN)
+            return ((double) (pieces1 - pieces2)) / (double) (N_PIECES);
+        else if (winner == P2_WIN)
+            return ((double) (pieces2 - pieces1)) / (double) (N_PIECES);
+        return 1;
+    }
+
+    @Override
+    public long hash() {
+        return zbHash;
+    }
+
+    @Override
+    public boolean poMoves() {
+        return false;
+    }
+
+    @Override
+    public int getNPlayers() {
+        return 2;
+    }
+
+    public String toString() {
+        String rowLabels = "87654321";
+        String colLabels = "abcdefgh";
+
+        String str = "";
+        for (int r = 0; r < 8; r++) {
+            str += (rowLabels.charAt(r));
+            for (int c = 0; c < 8; c++) {
+                long bit = 1L << (r * 8 + c);
+                str += ((white & bit) != 0) ? 'w' : ((black & bit) != 0) ? 'b' : '.';
+            }
+            str += "\n";
+        }
+        str += (" " + colLabels + "\n");
+        str += "\nPieces: " + Long.bitCount(white) + " " + Long.bitCount(black) + ", "
+                + "Progresses: " + getProgress(1) + " " + getProgress(2) + ", "
+                + "nMoves = " + nMoves + "\n";
+        return str;
+    }
+
+    @Override
+    public void newDeterminization(int myPlayer, boolean postMove) {
+        // only need this for imperfect information games
+    }
+
+    @Override
+    public boolean isPartialObservable() {
+        return false;
+    }
+
+    @Override
+    public int getNMovesMade() {
+        return nMoves;
+    }
+
+    @Override
+    public boolean isLegal(IMove move) {
+        // only used in imperfect information
+        return true;
+    }
+
+    @Override
+    public boolean noMovesIsDraw() {
+        return false;
+    }
+}
@@ -1,18 +1,28 @@
 package breakthrough.game;
 
+import ai.MCTSOptions;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.PrimitiveMoveBoard;
+import framework.RandomMoveBoard;
 import framework.util.FastTanh;
 import framework.util.StatCounter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
-import java.util.Stack;
 
-public class Board implements IBoard {
+public class Board implements PrimitiveMoveBoard, RandomMoveBoard {
     private static final int N_PIECES = 16;
+    // Encoded moves: from square (6 bits), to square (6 bits) and a capture flag
+    private static final int TO_SHIFT = 6, CAPTURE_FLAG = 1 << 12, SQUARE_MASK = 63;
+    private static final int MAX_PLAYOUT_MOVES = 384;
+    // Number of random (square, direction) pairs tried by doRandomMove before it generates all moves
+    private static final int MAX_SAMPLES = 64;
+    // Column offsets in the order the moves are generated: diagonal left, diagonal right, forward
+    private static final int[] colDirs = {-1, +1, 0};
     private  final MoveList tempList = new MoveList(3);   // Temp move store for heuristic evaluation
     private  final ArrayList<IMove> poMoves = new ArrayList<IMove>(384);
     private  final MoveList static_moves = new MoveList(384);   // 64*6
@@ -59,7 +69,12 @@ public class Board implements IBoard {
     private int lorentzPV1, lorentzPV2;
     public int capBonus1, capBonus2;
     private long zbHash = 0;
-    private Stack<IMove> pastMoves;
+    // The moves made and the progress and capture bonuses before each move, used to undo moves
+    private int[] pastMoves = new int[256], pastProgress = new int[256];
+    private int nPastMoves = 0;
+    private final int[] forcedMoves = new int[N_PIECES * 2];
+    // Buffer for doRandomMove when it has to generate all moves, allocated when first needed
+    private int[] sampleMoves;
 
     static {
     }
@@ -85,8 +100,7 @@ public class Board implements IBoard {
         b.winner = this.winner;
         b.curPlayer = this.curPlayer;
 
-        // no need to copy the move stack, but need to initialize it
-        b.pastMoves = new Stack<IMove>();
+        // no need to copy the move stack
         b.zbHash = zbHash;
 
         return b;
@@ -135,7 +149,21 @@ public class Board implements IBoard {
     @Override
     public boolean doAIMove(IMove move, int player) {
         int[] movearr = move.getMove();
-        int r = movearr[0], c = movearr[1], rp = movearr[2], cp = movearr[3];
+        return doAIMove(encode(movearr[0], movearr[1], movearr[2], movearr[3], move.getType()), player);
+    }
+
+    @Override
+    public boolean doAIMove(int move, int player) {
+        int from = move & SQUARE_MASK, to = (move >> TO_SHIFT) & SQUARE_MASK;
+        int r = from / 8, c = from % 8, rp = to / 8, cp = to % 8;
+
+        // remember the state that cannot be recomputed when undoing the move
+        if (nPastMoves == pastMoves.length) {
+            pastMoves = Arrays.copyOf(pastMoves, 2 * nPastMoves);
+            pastProgress = Arrays.copyOf(pastProgress, 2 * nPastMoves);
+        }
+        pastMoves[nPastMoves] = move;
+        pastProgress[nPastMoves++] = progress1 | (progress2 << 4) | (capBonus1 << 8) | (capBonus2 << 16);
 
         // remove zobrist nums from hash of the squares that are changing
         zbHash ^= zbnums[r * 8 + c][curPlayer];
@@ -158,7 +186,7 @@ public class Board implements IBoard {
         }
 
         // check for a capture
-        if (move.getType() == Move.CAPTURE) {
+        if ((move & CAPTURE_FLAG) != 0) {
             if (player == 1) {
                 pieces2--;
                 // wiping out this piece could reduce the player's progress
@@ -193,7 +221,6 @@ public class Board implements IBoard {
         zbHash ^= zbnums[r * 8 + c][0];
 
         nMoves++;
-        pastMoves.push(move);
         curPlayer = 3 - curPlayer;
         hashCurrentPlayer();
 
@@ -202,12 +229,13 @@ public class Board implements IBoard {
 
     @Override
     public void undoMove() {
-        Move move = (Move) pastMoves.pop();
+        int move = pastMoves[--nPastMoves];
+        int oldProgress = pastProgress[nPastMoves];
         nMoves--;
         curPlayer = 3 - curPlayer;
 
-        int[] movearr = move.getMove();
-        int r = movearr[0], c = movearr[1], rp = movearr[2], cp = movearr[3];
+        int from = move & SQUARE_MASK, to = (move >> TO_SHIFT) & SQUARE_MASK;
+        int r = from / 8, c = from % 8, rp = to / 8, cp = to % 8;
 
         // remove zobrist nums from hash of the squares that are changing
         zbHash ^= zbnums[rp * 8 + cp][curPlayer];
@@ -229,7 +257,7 @@ public class Board implements IBoard {
         winner = NONE_WIN;
 
         // check if it was a capture
-        if (move.getType() == Move.CAPTURE) {
+        if ((move & CAPTURE_FLAG) != 0) {
             if (curPlayer == 1) {
                 board[rp][cp] = 'b';
                 pieces2++;
@@ -242,12 +270,12 @@ public class Board implements IBoard {
         }
 
         // remove back the progress
-        progress1 = move.getOldProgress1();
-        progress2 = move.getOldProgress2();
+        progress1 = oldProgress & 15;
+        progress2 = (oldProgress >> 4) & 15;
 
         // remove back the capture bonuses
-        capBonus1 = move.getOldCapBonus1();
-        capBonus2 = move.getOldCapBonus2();
+        capBonus1 = (oldProgress >> 8) & 255;
+        capBonus2 = (oldProgress >> 16) & 255;
 
         zbHash ^= zbnums[r * 8 + c][curPlayer];
         if (board[rp][cp] == '.')
@@ -259,6 +287,11 @@ public class Board implements IBoard {
         hashCurrentPlayer();
     }
 
+    private static int encode(int r, int c, int rp, int cp, int type) {
+        int move = (r * 8 + c) | ((rp * 8 + cp) << TO_SHIFT);
+        return (type == Move.CAPTURE) ? move | CAPTURE_FLAG : move;
+    }
+
     @Override
     public MoveList getExpandMoves() {
         static_moves.clear();
@@ -424,6 +457,98 @@ public class Board implements IBoard {
         return poMoves;
     }
 
+    @Override
+    public int getMaxPlayoutMoves() {
+        return MAX_PLAYOUT_MOVES;
+    }
+
+    @Override
+    public int getPlayoutMoves(int[] moves, boolean heuristics) {
+        int n = 0, nForced = 0, move, rp, cp;
+        int dir = (curPlayer == 1) ? -1 : 1, goal = (curPlayer == 1) ? 0 : 7;
+        char me = (curPlayer == 1) ? 'w' : 'b', opp = (curPlayer == 1) ? 'b' : 'w';
+        for (int r = 0; r < 8; r++) {
+            rp = r + dir;
+            if (rp < 0 || rp > 7)
+                continue;
+            for (int c = 0; c < 8; c++) {
+                if (board[r][c] != me)
+                    continue;
+                for (int colDir : colDirs) {
+                    cp = c + colDir;
+                    if (cp < 0 || cp > 7)
+                        continue;
+                    if (colDir != 0 && board[rp][cp] == opp)
+                        move = encode(r, c, rp, cp, Move.CAPTURE);
+                    else if (board[rp][cp] == '.')
+                        move = encode(r, c, rp, cp, Move.MOVE);
+                    else
+                        continue;
+                    moves[n++] = move;
+                    if (!heuristics)
+                        continue;
+                    if ((move & CAPTURE_FLAG) != 0) {
+                        // Prefer defenseless capture moves
+                        if ((!inBounds(rp + dir, cp - 1) || board[rp + dir][cp - 1] == '.')
+                                && (!inBounds(rp + dir, cp + 1) || board[rp + dir][cp + 1] == '.')) {
+                            moves[n++] = move;
+                            moves[n++] = move;
+                            moves[n++] = move;
+                            moves[n++] = move;
+                        } else {
+                            moves[n++] = move;
+                        }
+                    }
+                    // Decisive / anti-decisive moves
+                    if (rp == goal) {
+                        moves[0] = move;
+                        return 1;
+                    } else if ((move & CAPTURE_FLAG) != 0 && (r == 7 || r == 0)) {
+                        forcedMoves[nForced++] = move;
+                    }
+                }
+            }
+        }
+        if (nForced > 0) {
+            System.arraycopy(forcedMoves, 0, moves, 0, nForced);
+            return nForced;
+        }
+        return n;
+    }
+
+    @Override
+    public boolean doRandomMove(int player, boolean heuristics) {
+        Random r = MCTSOptions.r;
+        // The heuristics depend on all moves, without them every move is equally likely
+        if (!heuristics) {
+            int dir = (curPlayer == 1) ? -1 : 1;
+            char me = (curPlayer == 1) ? 'w' : 'b', opp = (curPlayer == 1) ? 'b' : 'w';
+            int sample, from, colDir, rp, cp;
+            for (int i = 0; i < MAX_SAMPLES; i++) {
+                // Rejection sampling of a uniform (square, direction) pair keeps the legal moves uniform
+                sample = r.nextInt(64 * 3);
+                from = sample / 3;
+                colDir = colDirs[sample % 3];
+                if (board[from / 8][from % 8] != me)
+                    continue;
+                rp = from / 8 + dir;
+                cp = from % 8 + colDir;
+                if (rp < 0 || rp > 7 || cp < 0 || cp > 7)
+                    continue;
+                if (colDir != 0 && board[rp][cp] == opp)
+                    return doAIMove(encode(from / 8, from % 8, rp, cp, Move.CAPTURE), player);
+                else if (board[rp][cp] == '.')
+                    return doAIMove(encode(from / 8, from % 8, rp, cp, Move.MOVE), player);
+            }
+        }
+        if (sampleMoves == null)
+            sampleMoves = new int[MAX_PLAYOUT_MOVES];
+        int count = getPlayoutMoves(sampleMoves, heuristics);
+        if (count == 0)
+            return false;
+        return doAIMove(sampleMoves[r.nextInt(count)], player);
+    }
+
     @Override
     public int getOpponent(int player) {
         return (3 - player);
@@ -494,25 +619,11 @@ public class Board implements IBoard {
 
         nMoves = 0;
         winner = NONE_WIN;
-        pastMoves = new Stack<IMove>();
+        nPastMoves = 0;
 
         // initialize the zobrist numbers
 
-        if (zbnums == null) {
-            // init the zobrist numbers
-            Random rng = new Random();
-
-            // 64 locations, 3 states for each location = 192
-            zbnums = new long[8 * 8][3];
-
-            for (int i = 0; i < 8 * 8; i++) {
-                zbnums[i][0] = rng.nextLong();
-                zbnums[i][1] = rng.nextLong();
-                zbnums[i][2] = rng.nextLong();
-            }
-            whiteHash = rng.nextLong();
-            blackHash = rng.nextLong();
-        }
+        initZobrist();
         // now build the initial hash
         zbHash = 0;
         for (int r = 0; r < 8 * 8; r++) {
@@ -522,6 +633,27 @@ public class Board implements IBoard {
         zbHash ^= whiteHash;
     }
 
+    /**
+     * Initialize the zobrist numbers, shared with BitBoard so both boards hash positions alike
+     */
+    static synchronized void initZobrist() {
+        if (zbnums != null)
+            return;
+        Random rng = new Random();
+
+        // 64 locations, 3 states for each location = 192
+        long[][] nums = new long[8 * 8][3];
+
+        for (int i = 0; i < 8 * 8; i++) {
+            nums[i][0] = rng.nextLong();
+            nums[i][1] = rng.nextLong();
+            nums[i][2] = rng.nextLong();
+        }
+        whiteHash = rng.nextLong();
+        blackHash = rng.nextLong();
+        zbnums = nums;
+    }
+
     public double evaluateSchadd(int player) {
         // inspired by ion function in Maarten's thesis
         double p1eval = 0;
@@ -0,0 +1,506 @@
+package checkers.game;
+
+import framework.IBoard;
+import framework.IMove;
+import framework.MoveList;
+import framework.RandomMoveBoard;
+import framework.util.FastTanh;
+import framework.util.StatCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checkers board that stores the position as bitboards of the 32 playable squares, square r * 4 + c / 2 is the
+ * square on row r, column c. The neighbours and jump squares of every square are precomputed, jumps are searched
+ * with the captured pieces in a mask, so the moves are generated into a buffer of longs without allocating.
+ * The Zobrist hash is updated incrementally. All state is kept per instance, so boards can be searched concurrently.
+ * The rules and moves are the same as those of Board, except that the jumping piece leaves its square, so a king
+ * can jump back to it.
+ */
+public class BitBoard implements RandomMoveBoard {
+    private static final int N_SQUARES = 32, N_PIECES = 12, MAX_MOVES = 512, MAX_KING_MOVES = 25;
+    // Encoded moves: the captured squares (32 bits), from square (5 bits), to square (5 bits) and a king flag
+    private static final int FROM_SHIFT = 32, TO_SHIFT = 37, SQUARE_MASK = 31;
+    private static final long KING_FLAG = 1L << 42, PROMOTION_FLAG = 1L << 43;
+    // White moves up (to row 0), black moves down
+    private static final int ROW_0 = 0xF, ROW_7 = 0xF << 28;
+    // The neighbour and the jump square of a square per direction (up-left, up-right, down-left, down-right), or -1
+    private static final int[][] STEP = new int[4][N_SQUARES], JUMP = new int[4][N_SQUARES];
+    // The neighbours in the directions of white men, black men and kings
+    private static final int[] W_MOVES = new int[N_SQUARES], B_MOVES = new int[N_SQUARES], K_MOVES = new int[N_SQUARES];
+    // Zobrist numbers per piece (white man, white king, black man, black king) and square
+    private static final long[][] zbnums = new long[4][N_SQUARES];
+    private static final long whiteHash, blackHash;
+
+    static {
+        int[] dr = {-1, -1, 1, 1}, dc = {-1, 1, -1, 1};
+        for (int s = 0; s < N_SQUARES; s++) {
+            int r = row(s), c = column(s);
+            for (int d = 0; d < 4; d++) {
+                STEP[d][s] = square(r + dr[d], c + dc[d]);
+                JUMP[d][s] = square(r + 2 * dr[d], c + 2 * dc[d]);
+                if (STEP[d][s] >= 0) {
+                    K_MOVES[s] |= 1 << STEP[d][s];
+                    if (d < 2)
+                        W_MOVES[s] |= 1 << STEP[d][s];
+                    else
+                        B_MOVES[s] |= 1 << STEP[d][s];
+                }
+            }
+        }
+        Random rng = new Random();
+        for (int p = 0; p < 4; p++) {
+            for (int s = 0; s < N_SQUARES; s++)
+                zbnums[p][s] = rng.nextLong();
+        }
+        whiteHash = rng.nextLong();
+        blackHash = rng.nextLong();
+    }
+
+    //
+    public int white, black, kings;
+    public int kingMoves = 0; // For the 25 move draw-rule
+    private int nMoves, currentPlayer, winner = NONE_WIN;
+    private long zbHash = 0;
+    // The moves made, the captured kings and the king moves before each move, used to undo moves
+    private long[] pastMoves = new long[128];
+    private int[] pastKings = new int[128], pastKingMoves = new int[128];
+    private int nPastMoves = 0;
+    // Moves are generated into this buffer, all jumps or all slides
+    private final long[] moves = new long[MAX_MOVES];
+    private final ArrayList<IMove> playoutMoves = new ArrayList<IMove>();
+
+    private static int row(int square) {
+        return square / 4;
+    }
+
+    private static int column(int square) {
+        return 2 * (square % 4) + (row(square) & 1);
+    }
+
+    /**
+     * @return The playable square at row r, column c, or -1 if it is off the board
+     */
+    private static int square(int r, int c) {
+        if (r < 0 || r > 7 || c < 0 || c > 7)
+            return -1;
+        return r * 4 + c / 2;
+    }
+
+    @Override
+    public void initialize() {
+        // Black on the first three rows, white on the last three
+        black = 0xFFF;
+        white = 0xFFF << 20;
+        kings = 0;
+        nMoves = 0;
+        kingMoves = 0;
+        nPastMoves = 0;
+        currentPlayer = P1;
+        winner = NONE_WIN;
+        zbHash = whiteHash;
+        for (int p = white; p != 0; p &= p - 1)
+            zbHash ^= zbnums[0][Integer.numberOfTrailingZeros(p)];
+        for (int p = black; p != 0; p &= p - 1)
+            zbHash ^= zbnums[2][Integer.numberOfTrailingZeros(p)];
+    }
+
+    @Override
+    public IBoard copy() {
+        BitBoard b = new BitBoard();
+        b.white = white;
+        b.black = black;
+        b.kings = kings;
+        b.kingMoves = kingMoves;
+        b.nMoves = nMoves;
+        b.currentPlayer = currentPlayer;
+        b.winner = winner;
+        // no need to copy the move stack
+        b.zbHash = zbHash;
+        return b;
+    }
+
+    /**
+     * @return The index of the piece in the Zobrist numbers
+     */
+    private static int piece(int player, boolean king) {
+        return (player == P1 ? 0 : 2) + (king ? 1 : 0);
+    }
+
+    private void doMove(long move) {
+        int from = (int) (move >>> FROM_SHIFT) & SQUARE_MASK, to = (int) (move >>> TO_SHIFT) & SQUARE_MASK;
+        // A king can jump back to its own square, then fromTo is empty
+        int captured = (int) move, fromTo = (1 << from) ^ (1 << to), opp = 3 - currentPlayer;
+        boolean king = (move & KING_FLAG) != 0;
+        if (nPastMoves == pastMoves.length)
+            growPastMoves();
+        // Move the piece
+        if (currentPlayer == P1)
+            white ^= fromTo;
+        else
+            black ^= fromTo;
+        if (king)
+            kings ^= fromTo;
+        zbHash ^= zbnums[piece(currentPlayer, king)][from];
+        // Remove the captured pieces
+        int capturedKings = captured & kings;
+        if (captured != 0) {
+            if (currentPlayer == P1)
+                black &= ~captured;
+            else
+                white &= ~captured;
+            kings &= ~captured;
+            for (int c = captured; c != 0; c &= c - 1) {
+                int s = Integer.numberOfTrailingZeros(c);
+                zbHash ^= zbnums[piece(opp, (capturedKings & (1 << s)) != 0)][s];
+            }
+        }
+        // Check for promotion
+        if (!king && (((currentPlayer == P1) ? ROW_0 : ROW_7) & (1 << to)) != 0) {
+            kings |= 1 << to;
+            move |= PROMOTION_FLAG;
+            zbHash ^= zbnums[piece(currentPlayer, true)][to];
+        } else {
+            zbHash ^= zbnums[piece(currentPlayer, king)][to];
+        }
+        // Remember the number of king-moves before this one
+        pastMoves[nPastMoves] = move;
+        pastKings[nPastMoves] = capturedKings;
+        pastKingMoves[nPastMoves++] = kingMoves;
+        if (king && captured == 0)
+            kingMoves++;
+        else
+            kingMoves = 0;
+        currentPlayer = opp;
+        zbHash ^= whiteHash ^ blackHash;
+        nMoves++;
+    }
+
+    private void growPastMoves() {
+        int size = 2 * pastMoves.length;
+        pastMoves = Arrays.copyOf(pastMoves, size);
+        pastKings = Arrays.copyOf(pastKings, size);
+        pastKingMoves = Arrays.copyOf(pastKingMoves, size);
+    }
+
+    @Override
+    public boolean doAIMove(IMove move, int player) {
+        Move mv = (Move) move;
+        int from = square(mv.move[1], mv.move[0]), to = square(mv.move[3], mv.move[2]), captured = 0;
+        if (mv.getCaptures() != null) {
+            for (int i : mv.getCaptures()) {
+                // Captured kings are encoded times 100, a king on square 1 is 100
+                if (i >= 100)
+                    i /= 100;
+                captured |= 1 << square(i / 8, i % 8);
+            }
+        }
+        doMove(encode(from, to, captured, (kings & (1 << from)) != 0));
+        return true;
+    }
+
+    @Override
+    public void undoMove() {
+        long move = pastMoves[--nPastMoves];
+        int from = (int) (move >>> FROM_SHIFT) & SQUARE_MASK, to = (int) (move >>> TO_SHIFT) & SQUARE_MASK;
+        int captured = (int) move, fromTo = (1 << from) ^ (1 << to), capturedKings = pastKings[nPastMoves];
+        boolean king = (move & KING_FLAG) != 0;
+        currentPlayer = 3 - currentPlayer;
+        int opp = 3 - currentPlayer;
+        zbHash ^= whiteHash ^ blackHash;
+        // Demote, then move the piece back
+        if ((move & PROMOTION_FLAG) != 0) {
+            kings &= ~(1 << to);
+            zbHash ^= zbnums[piece(currentPlayer, true)][to];
+        } else {
+            zbHash ^= zbnums[piece(currentPlayer, king)][to];
+        }
+        zbHash ^= zbnums[piece(currentPlayer, king)][from];
+        if (currentPlayer == P1)
+            white ^= fromTo;
+        else
+            black ^= fromTo;
+        if (king)
+            kings ^= fromTo;
+        // Replace the captured pieces
+        if (captured != 0) {
+            if (currentPlayer == P1)
+                black |= captured;
+            else
+                white |= captured;
+            kings |= capturedKings;
+            for (int c = captured; c != 0; c &= c - 1) {
+                int s = Integer.numberOfTrailingZeros(c);
+                zbHash ^= zbnums[piece(opp, (capturedKings & (1 << s)) != 0)][s];
+            }
+        }
+        // Reset the number of kingmoves
+        kingMoves = pastKingMoves[nPastMoves];
+        nMoves--;
+        winner = NONE_WIN;
+    }
+
+    private static long encode(int from, int to, int captured, boolean king) {
+        return (captured & 0xFFFFFFFFL) | ((long) from << FROM_SHIFT) | ((long) to << TO_SHIFT) | (king ? KING_FLAG : 0);
+    }
+
+    /**
+     * Write all moves of the player to move in the move buffer, only jumps if any jump is possible
+     *
+     * @return The number of moves
+     */
+    private int generateMoves() {
+        int mine = (currentPlayer == P1) ? white : black, opp = (currentPlayer == P1) ? black : white;
+        int occupied = white | black, n = 0;
+        for (int p = mine; p != 0; p &= p - 1) {
+            int s = Integer.numberOfTrailingZeros(p);
+            // The moving piece leaves its square
+            n = addJumps(s, s, 0, (kings & (1 << s)) != 0, opp, occupied & ~(1 << s), n);
+        }
+        if (n > 0)
+            return n;
+        for (int p = mine; p != 0; p &= p - 1) {
+            int s = Integer.numberOfTrailingZeros(p);
+            boolean king = (kings & (1 << s)) != 0;
+            for (int to = neighbours(s, king) & ~occupied; to != 0; to &= to - 1)
+                moves[n++] = encode(s, Integer.numberOfTrailingZeros(to), 0, king);
+        }
+        return n;
+    }
+
+    private int neighbours(int square, boolean king) {
+        if (king)
+            return K_MOVES[square];
+        return (currentPlayer == P1) ? W_MOVES[square] : B_MOVES[square];
+    }
+
+    /**
+     * Add the jump sequences of the piece that moved from from and is now on square, a sequence ends when no more
+     * jumps are possible. Captured pieces stay on the board until the move is made, so they cannot be jumped twice.
+     *
+     * @return The new number of moves in the buffer
+     */
+    private int addJumps(int from, int square, int captured, boolean king, int opp, int occupied, int n) {
+        boolean jumped = false;
+        int first = (king || currentPlayer == P1) ? 0 : 2, last = (king || currentPlayer == P2) ? 4 : 2;
+        for (int d = first; d < last; d++) {
+            int over = STEP[d][square], land = JUMP[d][square];
+            if (land < 0 || (opp & ~captured & (1 << over)) == 0 || (occupied & (1 << land)) != 0)
+                continue;
+            jumped = true;
+            n = addJumps(from, land, captured | (1 << over), king, opp, occupied, n);
+        }
+        if (!jumped && captured != 0) {
+            long move = encode(from, square, captured, king);
+            // A king can take the same pieces in either direction around a circle, add such a move once
+            for (int i = n - 1; i >= 0 && ((int) (moves[i] >>> FROM_SHIFT) & SQUARE_MASK) == from; i--) {
+                if (moves[i] == move)
+                    return n;
+            }
+            moves[n++] = move;
+        }
+        return n;
+    }
+
+    private boolean canPlayerMakeMove(int player) {
+        int mine = (player == P1) ? white : black, opp = (player == P1) ? black : white, empty = ~(white | black);
+        for (int p = mine; p != 0; p &= p - 1) {
+            int s = Integer.numberOfTrailingZeros(p);
+            boolean king = (kings & (1 << s)) != 0;
+            int first = (king || player == P1) ? 0 : 2, last = (king || player == P2) ? 4 : 2;
+            for (int d = first; d < last; d++) {
+                int step = STEP[d][s], jump = JUMP[d][s];
+                if (step < 0)
+                    continue;
+                if ((empty & (1 << step)) != 0)
+                    return true;
+                if (jump >= 0 && (opp & (1 << step)) != 0 && (empty & (1 << jump)) != 0)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private Move decode(long move) {
+        int from = (int) (move >>> FROM_SHIFT) & SQUARE_MASK, to = (int) (move >>> TO_SHIFT) & SQUARE_MASK;
+        int captured = (int) move;
+        boolean king = (move & KING_FLAG) != 0;
+        int[] captures = null;
+        if (captured != 0) {
+            captures = new int[Integer.bitCount(captured)];
+            int i = 0;
+            for (int c = captured; c != 0; c &= c - 1) {
+                int s = Integer.numberOfTrailingZeros(c);
+                // Board's encoding: the square on the 8x8 board, times 100 for a king
+                captures[i++] = (row(s) * 8 + column(s)) * (((kings & (1 << s)) != 0) ? 100 : 1);
+            }
+        }
+        Move mv = new Move(new int[]{column(from), row(from), column(to), row(to)}, captures, king, captured != 0);
+        mv.promotion = !king && (((currentPlayer == P1) ? ROW_0 : ROW_7) & (1 << to)) != 0;
+        return mv;
+    }
+
+    @Override
+    public MoveList getExpandMoves() {
+        int n = generateMoves();
+        MoveList list = new MoveList(n);
+        for (int i = 0; i < n; i++)
+            list.add(decode(moves[i]));
+        return list;
+    }
+
+    @Override
+    public List<IMove> getPlayoutMoves(boolean heuristics) {
+        int n = generateMoves();
+        playoutMoves.clear();
+        for (int i = 0; i < n; i++)
+            playoutMoves.add(decode(moves[i]));
+        return playoutMoves;
+    }
+
+    @Override
+    public boolean doRandomMove(int player, boolean heuristics) {
+        int n = generateMoves();
+        if (n == 0)
+            return false;
+        doMove(moves[ai.MCTSOptions.r.nextInt(n)]);
+        return true;
+    }
+
+    @Override
+    public int getOpponent(int player) {
+        return 3 - player;
+    }
+
+    @Override
+    public int checkWin() {
+        winner = NONE_WIN;
+        if (white == 0)
+            winner = P2_WIN;
+        else if (black == 0)
+            winner = P1_WIN;
+
+        if (winner == NONE_WIN) {
+            // if the current player cannot make a move he loses
+            if (!canPlayerMakeMove(currentPlayer))
+                winner = getOpponent(currentPlayer);
+        }
+        if (winner == NONE_WIN) {
+            // If only two kings left, draw
+            if (Integer.bitCount(white) == 1 && Integer.bitCount(black) == 1 && Integer.bitCount(kings) == 2)
+                winner = DRAW;
+        }
+        // Tournament rule: 25 consecutive king moves without capture = draw
+        if (winner == NONE_WIN && kingMoves >= MAX_KING_MOVES)
+            winner = DRAW;
+        return winner;
+    }
+
+    @Override
+    public int checkPlayoutWin() {
+        return checkWin();
+    }
+
+    @Override
+    public int getPlayerToMove() {
+        return currentPlayer;
+    }
+
+    @Override
+    public int getMaxUniqueMoveId() {
+        return 64 + (100 * 64);
+    }
+
+    @Override
+    public double evaluate(int player, int version) {
+        double diff = (Integer.bitCount(white & kings) * 5 + Integer.bitCount(white))
+                - (Integer.bitCount(black & kings) * 5 + Integer.bitCount(black));
+        double p1eval = FastTanh.tanh(diff / 10.0);
+        if (player == 1)
+            return p1eval;
+        else
+            return -p1eval;
+    }
+
+    @Override
+    public void initNodePriors(int parentPlayer, StatCounter stats, IMove move, int npvisits) {
+        throw new RuntimeException("unimplemented");
+    }
+
+    @Override
+    public double getQuality() {
+        if (winner == P1)
+            return Integer.bitCount(white) / (double) N_PIECES;
+        else
+            return Integer.bitCount(black) / (double) N_PIECES;
+    }
+
+    @Override
+    public MoveList getOrderedMoves() {
+        return getExpandMoves();
+    }
+
+    @Override
+    public long hash() {
+        return zbHash;
+    }
+
+    @Override
+    public boolean poMoves() {
+        return false;
+    }
+
+    @Override
+    public int getNPlayers() {
+        return 2;
+    }
+
+    @Override
+    public void newDeterminization(int myPlayer, boolean postMove) {
+        // Fully observable
+    }
+
+    @Override
+    public boolean isPartialObservable() {
+        return false;
+    }
+
+    @Override
+    public int getNMovesMade() {
+        return nMoves;
+    }
+
+    @Override
+    public boolean isLegal(IMove move) {
+        return true;
+    }
+
+    @Override
+    public boolean noMovesIsDraw() {
+        return false;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int r = 0; r < 8; r++) {
+            for (int c = 0; c < 8; c++) {
+                int s = ((r + c) % 2 == 0) ? square(r, c) : -1, bit = (s >= 0) ? 1 << s : 0;
+                boolean king = (kings & bit) != 0;
+                if ((white & bit) != 0)
+                    sb.append(king ? "W" : "w");
+                else if ((black & bit) != 0)
+                    sb.append(king ? "B" : "b");
+                else
+                    sb.append(".");
+                sb.append(" ");
+            }
+            sb.append("\n");
+        }
+        sb.append("pcs1: " + Integer.bitCount(white) + " pcs2: " + Integer.bitCount(black) + "\n");
+        sb.append("kings1: " + Integer.bitCount(white & kings) + " kings2: " + Integer.bitCount(black & kings) + "\n");
+        return sb.toString();
+    }
+}
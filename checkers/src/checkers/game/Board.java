@@ -10,9 +10,10 @@ import java.util.*;
 
 public class Board implements IBoard {
     public final static int EMPTY = 0, W_PIECE = P1, B_PIECE = P2, W_KING = W_PIECE * 10, B_KING = B_PIECE * 10;
-    private final static long[] seen = new long[64];
     private final static int[] n = {-1, 1}, p1n = {-1}, p2n = {1};
-    private static long seenI = Long.MIN_VALUE;
+    // Marks the squares visited while generating multiple jumps
+    private final long[] seen = new long[64];
+    private long seenI = Long.MIN_VALUE;
     //
     public final MoveList slideMoves = new MoveList(1000), jumpMoves = new MoveList(1000);
     private MoveList moves;
@@ -1,5 +1,6 @@
 package chinesecheckers.game;
 
+import ai.MCTSOptions;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
@@ -32,13 +33,13 @@ public class Board implements IBoard {
     // Neighbour vectors, differs for odd and even fields
     private static final int[] N_VECTOR_ODD = {-10, -9, +1, +11, +10, -1}, N_VECTOR_EVEN = {-11, -10, +1, +10, +9, -1};
     // Move lists
-    private static final MoveList moves = new MoveList(1000);
-    private static final ArrayList<IMove> playoutMoves = new ArrayList<IMove>(100);
-    private static final ArrayList<IMove> homeComingMoves = new ArrayList<IMove>(20);
-    private static final Random random = new Random();
+    private final MoveList moves = new MoveList(MAX_MOVES);
+    private final ArrayList<IMove> playoutMoves = new ArrayList<IMove>(100);
+    private final ArrayList<IMove> homeComingMoves = new ArrayList<IMove>(20);
+    private static final Random random = MCTSOptions.r;
     // List to keep track of positions seen for jumping
-    private static final long[] seen = new long[SIZE];
-    private static long seenIndex = 1;
+    private final long[] seen = new long[SIZE];
+    private long seenIndex = 1;
     // Zobrist stuff
     static long[][] zbnums = null;
     static long blackHash, whiteHash;
@@ -95,7 +96,7 @@ public class Board implements IBoard {
         }
     }
 
-    public static MoveList getMoves() {
+    public MoveList getMoves() {
         return moves;
     }
 
@@ -142,19 +143,7 @@ public class Board implements IBoard {
 
         // initialize the zobrist numbers
 
-        if (zbnums == null) {
-            // init the zobrist numbers
-            Random rng = new Random();
-            //
-            zbnums = new long[occupancy.length][3];
-            for (int i = 0; i < zbnums.length; i++) {
-                zbnums[i][0] = rng.nextLong();
-                zbnums[i][1] = rng.nextLong();
-                zbnums[i][2] = rng.nextLong();
-            }
-            whiteHash = rng.nextLong();
-            blackHash = rng.nextLong();
-        }
+        initZobrist();
         // now build the initial hash
         zbHash = 0;
         for (int r = 0; r < occupancy.length; r++) {
@@ -165,6 +154,25 @@ public class Board implements IBoard {
         zbHash ^= whiteHash;
     }
 
+    /**
+     * Initialize the zobrist numbers, they are shared by all boards
+     */
+    private static synchronized void initZobrist() {
+        if (zbnums != null)
+            return;
+        Random rng = new Random();
+        //
+        long[][] nums = new long[occupancy.length][3];
+        for (int i = 0; i < nums.length; i++) {
+            nums[i][0] = rng.nextLong();
+            nums[i][1] = rng.nextLong();
+            nums[i][2] = rng.nextLong();
+        }
+        whiteHash = rng.nextLong();
+        blackHash = rng.nextLong();
+        zbnums = nums;
+    }
+
     public void doMove(IMove move) {
 
         zbHash ^= zbnums[move.getMove()[0]][currentPlayer];
@@ -148,7 +148,7 @@ public class CCPanel extends JPanel implements MouseListener, MoveCallback {
             g2d.setColor(Color.decode("#FFFFDD"));
         //
         if (selected != -1) {
-            MoveList moves = Board.getMoves();
+            MoveList moves = board.getMoves();
             Color green = new Color(0, 100, 0, 100);
             for (int i = 0; i < moves.size(); i++) {
                 int move = moves.get(i).getMove()[1];
@@ -206,10 +206,10 @@ public class CCPanel extends JPanel implements MouseListener, MoveCallback {
         if (isInsideBoard(clickI, clickJ) && selected != -1 && board.board[position].occupant == null) {
             makeMove(new Move(selected, position, 0));
             selected = -1;
-            Board.getMoves().clear();
+            board.getMoves().clear();
         } else if (selected == -1 || board.board[position].occupant.colour == board.getPlayerToMove()) {
             selected = position;
-            Board.getMoves().clear();
+            board.getMoves().clear();
             board.generateMovesForPiece(position, true);
             repaint();
         }
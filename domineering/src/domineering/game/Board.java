@@ -1,26 +1,35 @@
 package domineering.game;
 
+import ai.MCTSOptions;
 import framework.FiniteBoard;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.PrimitiveMoveBoard;
+import framework.RandomMoveBoard;
 import framework.util.StatCounter;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.Stack;
 
-public class Board implements FiniteBoard {
+public class Board implements FiniteBoard, PrimitiveMoveBoard, RandomMoveBoard {
     private static final int EMPTY = 0;
+    // Encoded moves: (y * size + x) of the first square, shifted left once to store the direction
+    private static final int VERTICAL = 0, HORIZONTAL = 1;
+    // Number of random squares tried by doRandomMove before it generates all moves
+    private static final int MAX_SAMPLES = 64;
     public static boolean CRAM = false;
-    private static final ArrayList<IMove> poMoves = new ArrayList<IMove>(1000);
-    private static final MoveList static_moves = new MoveList(1000);
+    private final ArrayList<IMove> poMoves = new ArrayList<IMove>();
     //
     private final int[][] board;
     private final int size;
     private int nMoves, currentPlayer, freeSquares;
-    private Stack<IMove> pastMoves = new Stack<IMove>();
+    // Every move fills two squares
+    private final int[] pastMoves;
+    private int nPastMoves = 0;
+    // Buffer for getExpandMoves, and for doRandomMove when it has to generate all moves, allocated when first needed
+    private int[] sampleMoves;
     //
     private final long[][] zobristPositions;
     private long zobristHash, whiteHash, blackHash;
@@ -40,6 +49,7 @@ public class Board implements FiniteBoard {
         zobristHash ^= whiteHash;
         this.size = size;
         this.board = new int[size][size];
+        this.pastMoves = new int[(size * size) / 2 + 1];
         this.freeSquares = size * size;
         this.nMoves = 0;
     }
@@ -69,8 +79,16 @@ public class Board implements FiniteBoard {
 
     @Override
     public boolean doAIMove(IMove move, int player) {
-        int x1 = move.getMove()[0], x2 = move.getMove()[2];
-        int y1 = move.getMove()[1], y2 = move.getMove()[3];
+        int x1 = move.getMove()[0], y1 = move.getMove()[1];
+        int direction = (move.getMove()[2] == x1) ? VERTICAL : HORIZONTAL;
+        return doAIMove(((y1 * size + x1) << 1) | direction, player);
+    }
+
+    @Override
+    public boolean doAIMove(int move, int player) {
+        int x1 = (move >> 1) % size, y1 = (move >> 1) / size;
+        int x2 = ((move & 1) == HORIZONTAL) ? x1 + 1 : x1;
+        int y2 = ((move & 1) == VERTICAL) ? y1 + 1 : y1;
         board[y1][x1] = currentPlayer;
         board[y2][x2] = currentPlayer;
         zobristHash ^= zobristPositions[y1 * size + x1][currentPlayer - 1];
@@ -79,54 +97,99 @@ public class Board implements FiniteBoard {
         nMoves++;
         currentPlayer = getOpponent(currentPlayer);
         hashCurrentPlayer();
-        pastMoves.push(move);
+        pastMoves[nPastMoves++] = move;
         return true;
     }
 
     @Override
     public MoveList getExpandMoves() {
-        static_moves.clear();
+        if (sampleMoves == null)
+            sampleMoves = new int[getMaxPlayoutMoves()];
+        int count = getPlayoutMoves(sampleMoves, false);
+        MoveList moves = new MoveList(count + 1);
+        for (int i = 0; i < count; i++) {
+            int x = (sampleMoves[i] >> 1) % size, y = (sampleMoves[i] >> 1) / size;
+            moves.add(((sampleMoves[i] & 1) == VERTICAL) ? new Move(x, y, x, y + 1) : new Move(x, y, x + 1, y));
+        }
+        return moves;
+    }
+
+    @Override
+    public List<IMove> getPlayoutMoves(boolean heuristics) {
+        poMoves.clear();
         for (int i = 0; i < size; i++) {
             for (int j = 0; j < size; j++) {
                 if (board[i][j] == EMPTY) {
                     // if cram, check in all directions
                     if (CRAM || currentPlayer == P1)
-                        if (i + 1 < size && board[i + 1][j] == EMPTY) static_moves.add(new Move(j, i, j, i + 1));
+                        if (i + 1 < size && board[i + 1][j] == EMPTY) poMoves.add(new Move(j, i, j, i + 1));
                     if (CRAM || currentPlayer == P2)
-                        if (j + 1 < size && board[i][j + 1] == EMPTY) static_moves.add(new Move(j, i, j + 1, i));
+                        if (j + 1 < size && board[i][j + 1] == EMPTY) poMoves.add(new Move(j, i, j + 1, i));
                 }
             }
         }
-        return static_moves.copy();
+        return poMoves;
     }
 
     @Override
-    public List<IMove> getPlayoutMoves(boolean heuristics) {
-        poMoves.clear();
+    public int getMaxPlayoutMoves() {
+        return 2 * size * size;
+    }
+
+    @Override
+    public int getPlayoutMoves(int[] moves, boolean heuristics) {
+        int count = 0;
         for (int i = 0; i < size; i++) {
             for (int j = 0; j < size; j++) {
                 if (board[i][j] == EMPTY) {
                     // if cram, check in all directions
                     if (CRAM || currentPlayer == P1)
-                        if (i + 1 < size && board[i + 1][j] == EMPTY) poMoves.add(new Move(j, i, j, i + 1));
+                        if (i + 1 < size && board[i + 1][j] == EMPTY) moves[count++] = ((i * size + j) << 1) | VERTICAL;
                     if (CRAM || currentPlayer == P2)
-                        if (j + 1 < size && board[i][j + 1] == EMPTY) poMoves.add(new Move(j, i, j + 1, i));
+                        if (j + 1 < size && board[i][j + 1] == EMPTY) moves[count++] = ((i * size + j) << 1) | HORIZONTAL;
                 }
             }
         }
-        return poMoves;
+        return count;
+    }
+
+    @Override
+    public boolean doRandomMove(int player, boolean heuristics) {
+        Random r = MCTSOptions.r;
+        int move, x, y;
+        for (int i = 0; i < MAX_SAMPLES; i++) {
+            // Rejection sampling of a uniform square (and direction) keeps the legal moves uniform
+            if (CRAM)
+                move = r.nextInt(2 * size * size);
+            else
+                move = (r.nextInt(size * size) << 1) | ((currentPlayer == P1) ? VERTICAL : HORIZONTAL);
+            x = (move >> 1) % size;
+            y = (move >> 1) / size;
+            if (board[y][x] != EMPTY)
+                continue;
+            if ((move & 1) == VERTICAL ? (y + 1 < size && board[y + 1][x] == EMPTY)
+                    : (x + 1 < size && board[y][x + 1] == EMPTY))
+                return doAIMove(move, player);
+        }
+        if (sampleMoves == null)
+            sampleMoves = new int[getMaxPlayoutMoves()];
+        int count = getPlayoutMoves(sampleMoves, heuristics);
+        if (count == 0)
+            return false;
+        return doAIMove(sampleMoves[r.nextInt(count)], player);
     }
 
     @Override
     public void undoMove() {
-        IMove move = pastMoves.pop();
+        int move = pastMoves[--nPastMoves];
         currentPlayer = getOpponent(currentPlayer);
         nMoves--;
         freeSquares -= 2;
         hashCurrentPlayer();
         //
-        int x1 = move.getMove()[0], x2 = move.getMove()[2];
-        int y1 = move.getMove()[1], y2 = move.getMove()[3];
+        int x1 = (move >> 1) % size, y1 = (move >> 1) / size;
+        int x2 = ((move & 1) == HORIZONTAL) ? x1 + 1 : x1;
+        int y2 = ((move & 1) == VERTICAL) ? y1 + 1 : y1;
         int color = board[y1][x1];
         // return the stone to the hash
         zobristHash ^= zobristPositions[y1 * size + x1][color - 1];
@@ -188,6 +251,7 @@ public class Board implements FiniteBoard {
         }
         freeSquares = size * size;
         nMoves = 0;
+        nPastMoves = 0;
         currentPlayer = P1;
     }
 
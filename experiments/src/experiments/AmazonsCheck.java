@@ -0,0 +1,152 @@
+package experiments;
+
+import amazons.game.BitBoard;
+import amazons.game.Board;
+import framework.IBoard;
+import framework.IMove;
+import framework.MoveList;
+import framework.util.FastTanh;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the Amazons bitboard (amazonsbb) against Board. Random games are played on both boards in lockstep,
+ * after every move the move sets, hashes, wins and the mobility evaluation (version 0) must be equal, and every
+ * move must be undone to the same position. The territory evaluation (version 1) only exists on the bitboard,
+ * it is compared to a breadth-first search of the king distances on Board's squares.
+ * <p/>
+ * Usage: experiments.AmazonsCheck [--games N] [--seed S]
+ */
+public class AmazonsCheck {
+    private static final int[] DR = {-1, -1, -1, 0, 0, 1, 1, 1}, DC = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private int nGames = 300;
+    private long seed = 1;
+    private int errors = 0;
+
+    public static void main(String[] args) {
+        AmazonsCheck check = new AmazonsCheck();
+        check.parseArgs(args);
+        if (!check.run())
+            System.exit(1);
+    }
+
+    public void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--games")) {
+                nGames = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                throw new RuntimeException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    /**
+     * @return true if the boards agreed in every position
+     */
+    public boolean run() {
+        Random r = new Random(seed);
+        int positions = 0;
+        for (int g = 0; g < nGames; g++) {
+            Board board = new Board();
+            BitBoard bitBoard = new BitBoard();
+            board.initialize();
+            bitBoard.initialize();
+            compare(board, bitBoard);
+            while (board.checkWin() == IBoard.NONE_WIN) {
+                MoveList moves = board.getExpandMoves();
+                int player = board.getPlayerToMove();
+                // The random move is made, undone and made again
+                long hash = board.hash();
+                IMove move = moves.get(r.nextInt(moves.size()));
+                board.doAIMove(move, player);
+                bitBoard.doAIMove(move, player);
+                compare(board, bitBoard);
+                board.undoMove();
+                bitBoard.undoMove();
+                if (bitBoard.hash() != hash || bitBoard.getPlayerToMove() != player)
+                    error("undo", board);
+                board.doAIMove(move, player);
+                bitBoard.doAIMove(move, player);
+                positions++;
+            }
+        }
+        System.out.println(nGames + " games, " + positions + " positions, " + errors + " errors");
+        return errors == 0;
+    }
+
+    private void compare(Board board, BitBoard bitBoard) {
+        if (board.hash() != bitBoard.hash())
+            error("hash", board);
+        if (board.checkWin() != bitBoard.checkWin())
+            error("win", board);
+        if (board.getPlayerToMove() != bitBoard.getPlayerToMove())
+            error("player to move", board);
+        if (!Arrays.equals(moveIds(board.getExpandMoves()), moveIds(bitBoard.getExpandMoves())))
+            error("moves", board);
+        for (int player = 1; player <= 2; player++) {
+            // Board divides by the number of moves made, both evaluations are NaN in the initial position
+            if (Double.compare(board.evaluate(player, 0), bitBoard.evaluate(player, 0)) != 0)
+                error("mobility evaluation", board);
+            if (territory(board, player) != bitBoard.evaluate(player, 1))
+                error("territory evaluation", board);
+        }
+    }
+
+    private int[] moveIds(MoveList moves) {
+        int[] ids = new int[moves.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = moves.get(i).getUniqueId();
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * The territory evaluation computed with a breadth-first search from the amazons of each player
+     */
+    private double territory(Board board, int player) {
+        int[] dist1 = distances(board, board.queens[0]), dist2 = distances(board, board.queens[1]);
+        int count1 = 0, count2 = 0;
+        for (int s = 0; s < Board.B_SIZE; s++) {
+            if (board.board[s] != Board.EMPTY)
+                continue;
+            if (dist1[s] < dist2[s])
+                count1++;
+            else if (dist2[s] < dist1[s])
+                count2++;
+        }
+        double p1eval = FastTanh.tanh((count1 - count2) / 10.0);
+        return (player == 1) ? p1eval : -p1eval;
+    }
+
+    private int[] distances(Board board, int[] queens) {
+        int[] dist = new int[Board.B_SIZE], queue = new int[Board.B_SIZE];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        int head = 0, tail = 0;
+        for (int q : queens) {
+            dist[q] = 0;
+            queue[tail++] = q;
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            for (int d = 0; d < DR.length; d++) {
+                int r = s / Board.SIZE + DR[d], c = s % Board.SIZE + DC[d];
+                if (r < 0 || r >= Board.SIZE || c < 0 || c >= Board.SIZE)
+                    continue;
+                int n = r * Board.SIZE + c;
+                if (board.board[n] == Board.EMPTY && dist[n] == Integer.MAX_VALUE) {
+                    dist[n] = dist[s] + 1;
+                    queue[tail++] = n;
+                }
+            }
+        }
+        return dist;
+    }
+
+    private void error(String what, Board board) {
+        if (errors++ < 10)
+            System.out.println("Mismatch in " + what + " after " + board.getNMovesMade() + " moves");
+    }
+}
@@ -0,0 +1,295 @@
+package experiments;
+
+import ai.MCTSOptions;
+import framework.IBoard;
+import framework.IMove;
+import framework.MoveList;
+import framework.RandomMoveBoard;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmarks for the move generation and play-outs of the games.
+ * Every benchmark runs in warm-up and measurement iterations of fixed duration over a set of
+ * positions sampled from random games, and reports the throughput with a 99% confidence interval.
+ * <p/>
+ * Usage: experiments.BoardBench [--game g1,g2,..] [--bench b1,b2,..] [--warmup N] [--iterations N]
+ * [--time ms] [--positions N] [--seed S] [--csv file]
+ * <p/>
+ * Benchmarks:
+ * expand       = getExpandMoves()
+ * playoutmoves = getPlayoutMoves(false)
+ * doundo       = doAIMove + undoMove for each expand move (copy + doAIMove for games without undo)
+ * copy         = copy()
+ * hash         = hash()
+ * playout      = a uniform random play-out to the end of the game
+ * sampled      = the same play-out, with the moves drawn by the board (RandomMoveBoard)
+ */
+public class BoardBench {
+
+    public static final String[] GAMES = {"amazons", "amazonsbb", "breakthrough", "breakthroughbb", "cannon", "checkers",
+            "checkersbb", "chinesecheckers", "domineering8", "kalah", "lostcities", "nogo9", "pentalath", "penguin", "gofish", "phantomdomineering6"};
+    public static final String[] BENCHMARKS = {"expand", "playoutmoves", "doundo", "copy", "hash", "playout", "sampled"};
+    // These boards do not implement undoMove()
+    private static final List<String> NO_UNDO = Arrays.asList("kalah", "gofish", "phantomdomineering");
+    // undoMove() does not restore the generated moves of these boards, play-outs are run on a copy
+    private static final List<String> COPY_PLAYOUT = Arrays.asList("cannon");
+    // Two-sided 99% quantile of the normal distribution
+    private static final double Z99 = 2.576;
+    //
+    private String[] games = GAMES, benchmarks = BENCHMARKS;
+    private int warmup = 3, iterations = 5, time = 1000, nPositions = 64;
+    private long seed = 1;
+    private String csvFile = null;
+    // Results are accumulated here so the JIT cannot remove the benchmarked calls
+    private long sink = 0;
+
+    public static void main(String[] args) {
+        BoardBench bench = new BoardBench();
+        bench.parseArgs(args);
+        bench.run();
+    }
+
+    public void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--game")) {
+                games = args[++i].split(",");
+            } else if (args[i].equals("--bench")) {
+                benchmarks = args[++i].split(",");
+            } else if (args[i].equals("--warmup")) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--iterations")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--time")) {
+                time = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--positions")) {
+                nPositions = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--csv")) {
+                csvFile = args[++i];
+            } else {
+                throw new RuntimeException("Unknown option: " + args[i]);
+            }
+        }
+        if (iterations < 1)
+            throw new RuntimeException("At least one measurement iteration is required");
+    }
+
+    public void run() {
+        PrintWriter csv = null;
+        if (csvFile != null) {
+            try {
+                csv = new PrintWriter(new FileWriter(csvFile));
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot write " + csvFile, e);
+            }
+            csv.println("game,benchmark,iterations,ops_per_s,error_99,unit");
+        }
+        System.out.println(String.format("%-20s %-13s %16s %14s", "Game", "Benchmark", "ops/s", "error (99%)"));
+        for (String game : games) {
+            IBoard[] positions = samplePositions(game);
+            for (String benchmark : benchmarks) {
+                double[] result;
+                try {
+                    result = measure(game, benchmark, positions);
+                } catch (RuntimeException e) {
+                    // Not all boards support every operation
+                    System.out.println(String.format("%-20s %-13s %16s %s", game, benchmark, "failed", e));
+                    continue;
+                }
+                System.out.println(String.format("%-20s %-13s %16.1f %14.1f", game, benchmark, result[0], result[1]));
+                if (csv != null)
+                    csv.println(game + "," + benchmark + "," + iterations + "," + result[0] + "," + result[1] + ",ops/s");
+            }
+        }
+        if (csv != null)
+            csv.close();
+        // Print the sink so the results are used
+        if (sink == 42)
+            System.out.println();
+    }
+
+    /**
+     * Sample positions by playing a random number of random moves from the initial position
+     */
+    private IBoard[] samplePositions(String game) {
+        MCTSOptions.r.setSeed(seed);
+        Random r = new Random(seed);
+        IBoard[] positions = new IBoard[nPositions];
+        int maxPlies = 40;
+        for (int i = 0; i < nPositions; i++) {
+            IBoard board = SimGame.createBoard(game);
+            board.initialize();
+            int plies = r.nextInt(maxPlies);
+            for (int j = 0; j < plies; j++) {
+                if (!doRandomMove(board, r))
+                    break;
+            }
+            // Never benchmark on a finished game, back up a move if required
+            if (board.checkWin() != IBoard.NONE_WIN && !noUndo(game) && board.getNMovesMade() > 0)
+                board.undoMove();
+            positions[i] = board;
+        }
+        return positions;
+    }
+
+    /**
+     * Do a random legal move
+     *
+     * @return false if the game is over
+     */
+    private boolean doRandomMove(IBoard board, Random r) {
+        if (board.checkWin() != IBoard.NONE_WIN)
+            return false;
+        List<IMove> moves = new ArrayList<>(board.getPlayoutMoves(false));
+        int player = board.getPlayerToMove();
+        while (!moves.isEmpty()) {
+            IMove move = moves.get(r.nextInt(moves.size()));
+            if (board.doAIMove(move, player))
+                return true;
+            moves.remove(move);
+        }
+        return false;
+    }
+
+    private boolean noUndo(String game) {
+        for (String g : NO_UNDO)
+            if (game.startsWith(g))
+                return true;
+        return false;
+    }
+
+    private boolean copyPlayout(String game) {
+        return noUndo(game) || COPY_PLAYOUT.contains(game);
+    }
+
+    /**
+     * @return the mean throughput (ops/s) and its 99% confidence interval
+     */
+    private double[] measure(String game, String benchmark, IBoard[] positions) {
+        boolean playout = benchmark.equals("playout") || benchmark.equals("sampled");
+        boolean undo = playout ? !copyPlayout(game) : !noUndo(game);
+        for (int i = 0; i < warmup; i++)
+            iteration(benchmark, positions, undo);
+        double[] ops = new double[iterations];
+        double mean = 0.;
+        for (int i = 0; i < iterations; i++) {
+            ops[i] = iteration(benchmark, positions, undo);
+            mean += ops[i];
+        }
+        mean /= iterations;
+        double var = 0.;
+        for (double o : ops)
+            var += (o - mean) * (o - mean);
+        double error = (iterations > 1) ? Z99 * Math.sqrt(var / (iterations - 1)) / Math.sqrt(iterations) : Double.NaN;
+        return new double[]{mean, error};
+    }
+
+    /**
+     * Run the benchmark for the configured time
+     *
+     * @return the number of operations per second
+     */
+    private double iteration(String benchmark, IBoard[] positions, boolean undo) {
+        long ops = 0, start = System.nanoTime(), end = start + time * 1000000L, now;
+        do {
+            // Check the clock only once per pass over the positions
+            for (IBoard board : positions)
+                ops += operation(benchmark, board, undo);
+            now = System.nanoTime();
+        } while (now < end);
+        return ops / ((now - start) / 1e9);
+    }
+
+    /**
+     * Perform the benchmarked operation once on the given position
+     *
+     * @return the number of operations performed
+     */
+    private int operation(String benchmark, IBoard board, boolean undo) {
+        if (benchmark.equals("expand")) {
+            sink += board.getExpandMoves().size();
+            return 1;
+        } else if (benchmark.equals("playoutmoves")) {
+            sink += board.getPlayoutMoves(false).size();
+            return 1;
+        } else if (benchmark.equals("doundo")) {
+            MoveList moves = board.getExpandMoves();
+            int player = board.getPlayerToMove();
+            for (int i = 0; i < moves.size(); i++) {
+                if (undo) {
+                    if (board.doAIMove(moves.get(i), player))
+                        board.undoMove();
+                } else {
+                    IBoard copy = board.copy();
+                    if (copy.doAIMove(moves.get(i), player))
+                        sink += copy.getNMovesMade();
+                }
+            }
+            return moves.size();
+        } else if (benchmark.equals("copy")) {
+            sink += board.copy().getNMovesMade();
+            return 1;
+        } else if (benchmark.equals("hash")) {
+            sink += board.hash();
+            return 1;
+        } else if (benchmark.equals("playout")) {
+            playOut(undo ? board : board.copy(), undo);
+            return 1;
+        } else if (benchmark.equals("sampled")) {
+            if (!(board instanceof RandomMoveBoard))
+                throw new RuntimeException("Board does not implement RandomMoveBoard");
+            sampledPlayOut((RandomMoveBoard) (undo ? board : board.copy()), undo);
+            return 1;
+        } else {
+            throw new RuntimeException("Unknown benchmark: " + benchmark);
+        }
+    }
+
+    private void playOut(IBoard board, boolean undo) {
+        // Some boards (cannon) can only check for a win after the moves are generated
+        board.getPlayoutMoves(false);
+        int nMoves = 0, winner = board.checkWin();
+        Random r = MCTSOptions.r;
+        while (winner == IBoard.NONE_WIN) {
+            List<IMove> moves = board.getPlayoutMoves(false);
+            int player = board.getPlayerToMove();
+            boolean moveMade = false;
+            while (!moveMade && moves.size() > 0) {
+                IMove move = moves.get(r.nextInt(moves.size()));
+                if (board.doAIMove(move, player)) {
+                    moveMade = true;
+                    nMoves++;
+                    winner = board.checkPlayoutWin();
+                } else {
+                    moves.remove(move);
+                }
+            }
+            if (!moveMade)
+                break;
+        }
+        sink += winner + nMoves;
+        if (undo)
+            for (int i = 0; i < nMoves; i++)
+                board.undoMove();
+    }
+
+    private void sampledPlayOut(RandomMoveBoard board, boolean undo) {
+        int nMoves = 0, winner = board.checkWin();
+        while (winner == IBoard.NONE_WIN && board.doRandomMove(board.getPlayerToMove(), false)) {
+            nMoves++;
+            winner = board.checkPlayoutWin();
+        }
+        sink += winner + nMoves;
+        if (undo)
+            for (int i = 0; i < nMoves; i++)
+                board.undoMove();
+    }
+}
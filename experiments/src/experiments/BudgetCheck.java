@@ -0,0 +1,155 @@
+package experiments;
+
+import ai.MCTSOptions;
+import framework.IBoard;
+import framework.IMove;
+import framework.MoveList;
+import mcts_tt.H_MCTS.HybridNode;
+import mcts_tt.SHOT.SHOTNode;
+import mcts_tt.transpos.State;
+import mcts_tt.transpos.TransposTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks the budget bookkeeping of the parallel rounds of SHOT and H-MCTS (MCTSOptions.budgetThreads).
+ * Both algorithms are run from positions sampled near the end of a game, where the solver proves children while
+ * their siblings are searched in parallel. Afterwards the visits of the root in the transposition table must equal
+ * the sum of the visits of its children, as they do when the rounds are searched one child after another.
+ * <p/>
+ * Usage: experiments.BudgetCheck [--game g] [--threads N] [--positions N] [--budget N] [--seed S]
+ */
+public class BudgetCheck {
+    private String game = "breakthrough";
+    private int nThreads = 4, nPositions = 50, budget = 20000;
+    private long seed = 1;
+
+    public static void main(String[] args) {
+        BudgetCheck check = new BudgetCheck();
+        check.parseArgs(args);
+        if (!check.run())
+            System.exit(1);
+    }
+
+    public void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--game")) {
+                game = args[++i];
+            } else if (args[i].equals("--threads")) {
+                nThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--positions")) {
+                nPositions = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--budget")) {
+                budget = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                throw new RuntimeException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    /**
+     * @return true if the visits of every root matched those of its children
+     */
+    public boolean run() {
+        List<IBoard> positions = createPositions();
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        boolean passed = true;
+        try {
+            System.out.println(String.format("%-10s %10s %11s", "Algorithm", "Positions", "Mismatches"));
+            for (boolean shot : new boolean[]{true, false}) {
+                int mismatches = 0;
+                for (IBoard position : positions) {
+                    if (!check(position.copy(), shot, pool))
+                        mismatches++;
+                }
+                System.out.println(String.format("%-10s %10d %11d", shot ? "SHOT" : "H-MCTS", positions.size(), mismatches));
+                if (mismatches > 0)
+                    passed = false;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println(passed ? "All searches passed" : "Some searches FAILED");
+        return passed;
+    }
+
+    /**
+     * Search the position with a new table, then compare the root's visits to those of its children
+     */
+    private boolean check(final IBoard board, boolean shot, ForkJoinPool pool) {
+        final MCTSOptions options = new MCTSOptions();
+        options.debug = false;
+        options.useHeuristics = false;
+        options.hybrid = true;
+        options.solver = true;
+        options.remove = false;
+        options.rec_halving = false;
+        options.stat_reset = false;
+        options.max_back = false;
+        options.setGame(game);
+        options.budgetThreads = nThreads;
+        final TransposTable tt = new TransposTable();
+        final int player = board.getPlayerToMove();
+        final int[] pl = {0, 0, 0, 0};
+        RecursiveAction search;
+        if (shot) {
+            final SHOTNode root = new SHOTNode(player, null, options, board.hash(), tt);
+            search = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    root.SHOT(board, 0, budget, pl);
+                }
+            };
+        } else {
+            final HybridNode root = new HybridNode(player, null, options, board.hash(), tt);
+            search = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    root.HybridMCTS(board, 0, budget, pl);
+                }
+            };
+        }
+        // Search from a task in the pool, so the rounds below the root can fork
+        pool.invoke(search);
+        State rootState = tt.getState(board.hash(), true);
+        int childVisits = 0;
+        MoveList moves = board.getExpandMoves();
+        for (int i = 0; i < moves.size(); i++) {
+            if (!board.doAIMove(moves.get(i), player))
+                continue;
+            State s = tt.getState(board.hash(), true);
+            if (s != null)
+                childVisits += s.getVisits();
+            board.undoMove();
+        }
+        return rootState.getVisits() == childVisits;
+    }
+
+    /**
+     * Sample positions by playing random moves from the initial position, skipping positions that are decided
+     */
+    private List<IBoard> createPositions() {
+        MCTSOptions.r.setSeed(seed);
+        Random r = new Random(seed);
+        List<IBoard> positions = new ArrayList<>(nPositions);
+        while (positions.size() < nPositions) {
+            IBoard board = SimGame.createBoard(game);
+            board.initialize();
+            int plies = 20 + r.nextInt(40);
+            for (int j = 0; j < plies && board.checkWin() == IBoard.NONE_WIN; j++) {
+                List<IMove> moves = new ArrayList<>(board.getPlayoutMoves(false));
+                int player = board.getPlayerToMove();
+                while (!moves.isEmpty() && !board.doAIMove(moves.remove(r.nextInt(moves.size())), player)) ;
+            }
+            if (board.checkWin() == IBoard.NONE_WIN)
+                positions.add(board);
+        }
+        return positions;
+    }
+}
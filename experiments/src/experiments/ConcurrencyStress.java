@@ -0,0 +1,214 @@
+package experiments;
+
+import ai.MCTSOptions;
+import framework.IBoard;
+import framework.IMove;
+import framework.PrimitiveMoveBoard;
+import framework.util.ThreadRandom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stress test for searching boards on multiple threads.
+ * A set of seeded play-outs is first run on a single thread, then repeatedly by a pool of threads at the same time.
+ * Every play-out runs on its own copy of a position that is shared by all threads. A play-out records the moves,
+ * the number of expand moves in every position and the winner, so any state shared between boards shows up as a
+ * result that differs from the single-threaded one.
+ * <p/>
+ * Usage: experiments.ConcurrencyStress [--game g1,g2,..] [--threads N] [--positions N] [--playouts N]
+ * [--rounds N] [--seed S]
+ */
+public class ConcurrencyStress {
+    // Stop play-outs of games that do not end
+    private static final int MAX_PLIES = 1000;
+    //
+    private String[] games = BoardBench.GAMES;
+    private int nThreads = Runtime.getRuntime().availableProcessors(), nPositions = 16, nPlayouts = 8, rounds = 5;
+    private long seed = 1;
+
+    public static void main(String[] args) {
+        ConcurrencyStress stress = new ConcurrencyStress();
+        stress.parseArgs(args);
+        if (!stress.run())
+            System.exit(1);
+    }
+
+    public void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--game")) {
+                games = args[++i].split(",");
+            } else if (args[i].equals("--threads")) {
+                nThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--positions")) {
+                nPositions = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--playouts")) {
+                nPlayouts = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--rounds")) {
+                rounds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                throw new RuntimeException("Unknown option: " + args[i]);
+            }
+        }
+        if (nThreads < 2)
+            throw new RuntimeException("At least two threads are required");
+    }
+
+    /**
+     * @return true if all parallel play-outs matched the single-threaded ones
+     */
+    public boolean run() {
+        System.out.println(String.format("%-20s %8s %8s %11s %8s %10s", "Game", "Tasks", "Runs", "Mismatches", "Errors", "Time (ms)"));
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        boolean passed = true;
+        try {
+            for (String game : games) {
+                if (!stress(game, pool))
+                    passed = false;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println(passed ? "All boards passed" : "Some boards FAILED");
+        return passed;
+    }
+
+    private boolean stress(String game, ExecutorService pool) {
+        List<PlayOut> tasks = createTasks(game);
+        // The reference results, computed on this thread
+        long[] expected = new long[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                expected[i] = tasks.get(i).call();
+            } catch (RuntimeException e) {
+                // The board crashes without concurrency, count it as an error
+                System.out.println(String.format("%-20s %8s %s", game, "failed", e));
+                return false;
+            }
+        }
+        long start = System.currentTimeMillis();
+        int mismatches = 0, errors = 0;
+        List<Future<Long>> results = new ArrayList<>(tasks.size() * rounds);
+        // Submit all rounds at once, so the same positions are copied by several threads at the same time
+        for (int r = 0; r < rounds; r++) {
+            for (PlayOut task : tasks)
+                results.add(pool.submit(task));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                if (results.get(i).get() != expected[i % tasks.size()])
+                    mismatches++;
+            } catch (InterruptedException e) {
+                throw new RuntimeException("Interrupted while waiting for play-outs", e);
+            } catch (ExecutionException e) {
+                errors++;
+            }
+        }
+        System.out.println(String.format("%-20s %8d %8d %11d %8d %10d", game, tasks.size(), results.size(),
+                mismatches, errors, System.currentTimeMillis() - start));
+        return mismatches == 0 && errors == 0;
+    }
+
+    /**
+     * Sample positions by playing random moves from the initial position, and create the seeded play-outs
+     */
+    private List<PlayOut> createTasks(String game) {
+        MCTSOptions.r.setSeed(seed);
+        Random r = new Random(seed);
+        List<PlayOut> tasks = new ArrayList<>(nPositions * nPlayouts);
+        for (int i = 0; i < nPositions; i++) {
+            IBoard board = SimGame.createBoard(game);
+            board.initialize();
+            int plies = r.nextInt(20);
+            for (int j = 0; j < plies && board.checkWin() == IBoard.NONE_WIN; j++) {
+                List<IMove> moves = new ArrayList<>(board.getPlayoutMoves(false));
+                int player = board.getPlayerToMove();
+                while (!moves.isEmpty() && !board.doAIMove(moves.remove(r.nextInt(moves.size())), player)) ;
+            }
+            for (int j = 0; j < nPlayouts; j++) {
+                // Alternate between IMove and int play-outs on boards that support both
+                boolean primitive = (j % 2 == 1) && board instanceof PrimitiveMoveBoard;
+                tasks.add(new PlayOut(board, r.nextLong(), primitive));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * A seeded random play-out on a copy of a shared position
+     */
+    private static class PlayOut implements Callable<Long> {
+        private final IBoard position;
+        private final long seed;
+        private final boolean primitive;
+
+        PlayOut(IBoard position, long seed, boolean primitive) {
+            this.position = position;
+            this.seed = seed;
+            this.primitive = primitive;
+        }
+
+        @Override
+        public Long call() {
+            final long[] result = new long[1];
+            // The boards draw from MCTSOptions.r, which is seeded for the thread running the play-out
+            ThreadRandom.seeded(new Runnable() {
+                @Override
+                public void run() {
+                    result[0] = playOut(position.copy());
+                }
+            }, seed).run();
+            return result[0];
+        }
+
+        /**
+         * @return A fingerprint of the play-out
+         */
+        private long playOut(IBoard board) {
+            Random r = MCTSOptions.r;
+            int[] intMoves = primitive ? new int[((PrimitiveMoveBoard) board).getMaxPlayoutMoves()] : null;
+            // Some boards (cannon) can only check for a win after the moves are generated
+            board.getPlayoutMoves(false);
+            long fingerprint = 17;
+            int nMoves = 0, winner = board.checkWin();
+            while (winner == IBoard.NONE_WIN && nMoves < MAX_PLIES) {
+                fingerprint = fingerprint * 31 + board.getExpandMoves().size();
+                int player = board.getPlayerToMove(), move = -1;
+                if (primitive) {
+                    PrimitiveMoveBoard pBoard = (PrimitiveMoveBoard) board;
+                    int count = pBoard.getPlayoutMoves(intMoves, false);
+                    while (move < 0 && count > 0) {
+                        int i = r.nextInt(count);
+                        if (pBoard.doAIMove(intMoves[i], player))
+                            move = intMoves[i];
+                        else
+                            intMoves[i] = intMoves[--count];
+                    }
+                } else {
+                    List<IMove> moves = board.getPlayoutMoves(false);
+                    while (move < 0 && moves.size() > 0) {
+                        IMove m = moves.get(r.nextInt(moves.size()));
+                        if (board.doAIMove(m, player))
+                            move = m.getUniqueId();
+                        else
+                            moves.remove(m);
+                    }
+                }
+                if (move < 0)
+                    break;
+                fingerprint = fingerprint * 31 + move;
+                nMoves++;
+                winner = board.checkPlayoutWin();
+            }
+            return (fingerprint * 31 + winner) * 31 + nMoves;
+        }
+    }
+}
@@ -9,12 +9,17 @@ import alphabeta.AlphaBetaOptions;
 import framework.AIPlayer;
 import framework.IBoard;
 import framework.IMove;
+import framework.SearchStats;
 import framework.util.*;
 import mcts2e.BRUE.MCTS2ePlayer;
 import mcts_tt.H_MCTS.HybridPlayer;
 import mcts_tt.SHOT.SHOTPlayer;
 import mcts_tt.uct.UCTPlayer;
 
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
 /**
  * Runs a single experiment. Options are sent by command-line.
  */
@@ -31,9 +36,16 @@ public class SimGame {
     private MCTSOptions options1, options2;
     private int timeLimit;
     public int lastWinner = 0;
+    // Collect garbage before every move, disable this when several games run in the same JVM
+    public boolean collectGarbage = true;
     private long seed;
     private boolean printBoard;
     private boolean mctsDebug;
+    // Per-move search statistics, written to a csv file and/or published as MBeans
+    private String statsFile = null;
+    private boolean jmx = false, timePhases = false;
+    private PrintWriter statsOut = null;
+    private SearchMonitor[] monitors = null;
     // Fopr the time-based experiments in SHOT and H-MCTS
     private boolean timed = false;
     private int timedPlayer = 0;
@@ -75,10 +87,22 @@ public class SimGame {
                 i++;
                 seed = Long.parseLong(args[i]);
                 MCTSOptions.r.setSeed(seed);
+            } else if (args[i].equals("--rng")) {
+                i++;
+                // Set the generator before seeding, the seed restarts the generator
+                ThreadRandom.setGenerator(args[i]);
+                MCTSOptions.r.setSeed(seed);
             } else if (args[i].equals("--printboard")) {
                 printBoard = true;
             } else if (args[i].equals("--mctsdebug")) {
                 mctsDebug = true;
+            } else if (args[i].equals("--stats")) {
+                i++;
+                statsFile = args[i];
+            } else if (args[i].equals("--jmx")) {
+                jmx = true;
+            } else if (args[i].equals("--timephases")) {
+                timePhases = true;
             } else {
                 throw new RuntimeException("Unknown option: " + args[i]);
             }
@@ -101,21 +125,33 @@ public class SimGame {
          *    _detX  = dynamic eart terminations, with X = threshold value (a double)
          *    _efvX  = evaluation function version
          *    _egeX  = epsilon-greedy playouts using the eval func, where X is a double
+         *    _fjX   = (SHOT, H-MCTS) search the budgets of a round in parallel, fork-join with X threads
          *    _h     = enable heuristics
          *    _imX   = enable implicit minimax
          *    _ip    = enable implicit pruning
          *    _mastX = Plays highest MAST move with probability X, X is double
          *    _mbpX  = Maximum backpropagation (X is int, trhreshold for when to switch)
+         *    _mnX   = node budget, keep at most X nodes per tree by removing the least visited subtrees
          *    _npX   = Node priors using the evaluation function, X = number of initialized visits 
          *    _pbX   = progressive bias, weight = X (a double)
          *    _pbd   = progressive bias with decay
          *    _pdX   = enable early playout termination, pdedpth = X, where X is an integer
+         *    _pon   = search on the opponent's time (pondering) in the kept trees, or the TT (mctstt, shot), needs spare cores
+         *             not supported by srmcts, ab and the ismcts players
+         *    _pool  = root-parallel search on trees stored in arrays (PooledTree) instead of TreeNodes
+         *    _lazy  = create a child node when it is first selected instead of at expansion
+         *    _lpX   = leaf-parallel, X play-outs from each new leaf run by a worker pool and averaged
          *    _rbX   = enable the relative bonus with K = X, where X is a double, X is optional
          *    _rbqX  = enable the relative bonus with quality bonus, K = X, where X is a double, X is optional
+         *    _rpX   = root-parallel search with X threads (default, 4 threads)
          *    _sl    = Use a fixed simulation limit as opposed to time
          *    _swX   = enable sliding window UCT, with Wc = X, where X is double
+         *    _tpX   = tree-parallel search on a single shared tree with X threads
+         *    _trX   = keep the tree of the previous move, visits multiplied by X (a double, optional)
+         *    _trnX  = keep at most X nodes per tree when reusing the tree
          *    _uctX  = sets the UCT constant to X, where X is a double
          *    _ucb1t = enables UCB1-Tuned
+         *    _vlX   = virtual loss per thread in tree-parallel search, X is a double
          *    _wX    = enable sliding window UCT with Wc = X, where X is a double
          */
         AIPlayer playerRef = null;
@@ -206,11 +242,37 @@ public class SimGame {
                 } else if (tag.startsWith("mbp")) {
                     options.maxBackprop = true;
                     options.maxBackpropT = Integer.parseInt(tag.substring(3));
+                } else if (tag.startsWith("mn")) {
+                    options.maxNodes = Integer.parseInt(tag.substring(2));
                 } else if (tag.startsWith("np")) {
                     options.nodePriors = true;
                     options.nodePriorsVisits = Integer.parseInt(tag.substring(2));
                 } else if (tag.startsWith("efv")) {
                     options.efVer = Integer.parseInt(tag.substring(3));
+                } else if (tag.equals("pon")) {
+                    options.treeReuse = true;
+                    options.ponder = true;
+                } else if (tag.equals("pool")) {
+                    options.nodePool = true;
+                } else if (tag.equals("lazy")) {
+                    options.lazyExpansion = true;
+                } else if (tag.startsWith("lp")) {
+                    options.leafPlayouts = Integer.parseInt(tag.substring(2));
+                } else if (tag.startsWith("trn")) {
+                    options.treeReuse = true;
+                    options.reuseMaxNodes = Integer.parseInt(tag.substring(3));
+                } else if (tag.startsWith("tr")) {
+                    options.treeReuse = true;
+                    if (tryParseDouble(tag.substring(2)))
+                        options.reuseDecay = Double.parseDouble(tag.substring(2));
+                } else if (tag.startsWith("tp")) {
+                    options.treeParallel = true;
+                    options.nThreads = Integer.parseInt(tag.substring(2));
+                } else if (tag.startsWith("rp")) {
+                    options.treeParallel = false;
+                    options.nThreads = Integer.parseInt(tag.substring(2));
+                } else if (tag.startsWith("vl")) {
+                    options.virtualLoss = Double.parseDouble(tag.substring(2));
                 } else if (tag.startsWith("ph")) {
                     options.history = true;
                     options.progHistory = true;
@@ -281,6 +343,13 @@ public class SimGame {
                 } else if (tag.equals("s")) {
                     options.solver = true;
                     options.setGame(game);
+                } else if (tag.startsWith("fj")) {
+                    options.budgetThreads = Integer.parseInt(tag.substring(2));
+                } else if (tag.equals("pon")) {
+                    // HybridPlayer does not search on the opponent's time
+                    if (!parts[0].equals("shot"))
+                        throw new RuntimeException("Tag " + tag + " is not supported by " + parts[0]);
+                    options.ponder = true;
                 } else if (tag.startsWith("rc")) {
                     options.rc = Integer.parseInt(tag.substring(2));
                 } else if (tag.startsWith("bl")) {
@@ -340,6 +409,13 @@ public class SimGame {
                     alphaBetaOptions.transpositions = true;
                 } else if (tag.startsWith("ev")) {
                     alphaBetaOptions.evVer = Integer.parseInt(tag.substring(2));
+                } else if (tag.startsWith("smp")) {
+                    // Lazy SMP with X helper threads, on the shared transposition table
+                    alphaBetaOptions.transpositions = true;
+                    alphaBetaOptions.helperThreads = Integer.parseInt(tag.substring(3));
+                } else if (tag.equals("pon")) {
+                    // The transposition table is freed after every move, there is nothing to ponder in
+                    throw new RuntimeException("Tag " + tag + " is not supported by ab");
                 }
             }
             playerRef.setOptions(alphaBetaOptions);
@@ -375,10 +451,20 @@ public class SimGame {
                     options.limitD = true;
                 } else if (tag.startsWith("nd")) {
                     options.nDeterminizations = Integer.parseInt(tag.substring(2));
+                } else if (tag.startsWith("rp")) {
+                    // HISMCTSPlayer searches a single tree
+                    if (parts[0].equals("hismcts"))
+                        throw new RuntimeException("Tag " + tag + " is not supported by hismcts");
+                    options.ismctsWorkers = Integer.parseInt(tag.substring(2));
                 } else if (tag.equalsIgnoreCase("so")) {
                     options.forceSO = true;
                 } else if (tag.equals("flat")) {
                     options.flat = true;
+                } else if (tag.startsWith("mn")) {
+                    // The node budget is not applied to the H-ISMCTS tree
+                    if (parts[0].equals("hismcts"))
+                        throw new RuntimeException("Tag " + tag + " is not supported by hismcts");
+                    options.maxNodes = Integer.parseInt(tag.substring(2));
                 } else {
                     throw new RuntimeException("Unrecognised tag " + tag);
                 }
@@ -391,6 +477,7 @@ public class SimGame {
         } else {
             throw new RuntimeException("Unrecognized player: " + label);
         }
+        options.timePhases = timePhases;
         // Now, set the player
         if (player == 1) {
             player1 = playerRef;
@@ -413,10 +500,23 @@ public class SimGame {
     }
 
     public void loadGame() {
+        board = createBoard(game);
+        board.initialize();
+    }
+
+    /**
+     * Create the (uninitialized) board for a game name as used by --game
+     */
+    public static IBoard createBoard(String game) {
+        IBoard board;
         if (game.equals("amazons")) {
             board = new amazons.game.Board();
+        } else if (game.equals("amazonsbb")) {
+            board = new amazons.game.BitBoard();
         } else if (game.equals("breakthrough")) {
             board = new breakthrough.game.Board();
+        } else if (game.equals("breakthroughbb")) {
+            board = new breakthrough.game.BitBoard();
         } else if (game.equals("cannon")) {
             board = new cannon.game.Board();
         } else if (game.equals("chinesecheckers")) {
@@ -429,6 +529,8 @@ public class SimGame {
             board = new pentalath.game.Board();
         } else if (game.equals("checkers")) {
             board = new checkers.game.Board();
+        } else if (game.equals("checkersbb")) {
+            board = new checkers.game.BitBoard();
         } else if (game.startsWith("domineering")) {
             int size = Integer.parseInt(game.substring(11));
             board = new domineering.game.Board(size);
@@ -451,8 +553,7 @@ public class SimGame {
         } else {
             throw new RuntimeException("Unrecognized game: " + game);
         }
-
-        board.initialize();
+        return board;
     }
 
     public void run() {
@@ -472,6 +573,7 @@ public class SimGame {
         loadGame();
         loadPlayer(1, p1label);
         loadPlayer(2, p2label);
+        openStats();
 
         // Initialize the fast... stuff
         FastTanh.tanh(1.);
@@ -495,12 +597,14 @@ public class SimGame {
                 System.out.println(board.toString());
             int p = board.getPlayerToMove();
             AIPlayer aiPlayer = (p == 1 ? player1 : player2);
-            System.gc();
+            if (collectGarbage)
+                System.gc();
 
             long startTime = System.currentTimeMillis();
             aiPlayer.getMove(board.copy(), null, board.getPlayerToMove(), false, m);
             int time = (int) (System.currentTimeMillis() - startTime);
             m = aiPlayer.getBestMove();
+            recordStats(p, (p == 1) ? p1label : p2label, board.getNMovesMade(), aiPlayer);
             board.doAIMove(m, player);
 
             if (m != null)
@@ -524,6 +628,10 @@ public class SimGame {
 //        System.out.println("Fixed: " + fixedTime);
 //        System.out.println("Timed: " + timedTime);
         lastWinner = board.checkWin();
+        closeStats();
+        // Players may still be searching on the opponent's time
+        player1.stop();
+        player2.stop();
 
         // Do not change the format of this line. Used by results aggregator scripts/parseres.perl
         System.out.println("Game over. Winner is " + lastWinner);
@@ -555,6 +663,7 @@ public class SimGame {
 
         loadPlayer(1, p1label);
         loadPlayer(2, p2label);
+        openStats();
 
         kalah.game.Board board = (kalah.game.Board) initBoard.copy();
 
@@ -570,11 +679,13 @@ public class SimGame {
                 System.out.println(board.toString());
 
             AIPlayer aiPlayer = (board.getPlayerToMove() == 1 ? player1 : player2);
-            System.gc();
+            if (collectGarbage)
+                System.gc();
 
             IMove m = null;
             aiPlayer.getMove(board.copy(), null, board.getPlayerToMove(), false, m);
             m = aiPlayer.getBestMove();
+            recordStats(player, (aiPlayer == player1) ? p1label : p2label, board.getNMovesMade(), aiPlayer);
             board.doAIMove(m, player);
 
             if (m != null)
@@ -614,11 +725,13 @@ public class SimGame {
                 System.out.println(board.toString());
 
             AIPlayer aiPlayer = (board.getPlayerToMove() == 1 ? player1 : player2);
-            System.gc();
+            if (collectGarbage)
+                System.gc();
 
             IMove m = null;
             aiPlayer.getMove(board.copy(), null, board.getPlayerToMove(), false, m);
             m = aiPlayer.getBestMove();
+            recordStats(player, (aiPlayer == player1) ? p1label : p2label, board.getNMovesMade(), aiPlayer);
             board.doAIMove(m, player);
 
             if (m != null)
@@ -640,16 +753,47 @@ public class SimGame {
         // Check for a p1label win
         if ((firstgame_p1score > firstgame_p2score && secondgame_p2score >= secondgame_p1score)
                 || (secondgame_p2score > secondgame_p1score && firstgame_p1score >= firstgame_p2score))
-            System.out.println("Game over. Winner is 1");
+            lastWinner = 1;
             // Check for a p2label win
         else if ((firstgame_p2score > firstgame_p1score && secondgame_p1score >= secondgame_p2score)
                 || (secondgame_p1score > secondgame_p2score && firstgame_p2score >= firstgame_p1score))
-            System.out.println("Game over. Winner is 2");
+            lastWinner = 2;
             // else, discard
         else
-            System.out.println("Game over. Winner is 3");
+            lastWinner = 3;
+        closeStats();
+        System.out.println("Game over. Winner is " + lastWinner);
+
+    }
+
+    private void openStats() {
+        if (statsFile != null) {
+            try {
+                statsOut = new PrintWriter(new FileWriter(statsFile));
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot write " + statsFile, e);
+            }
+            statsOut.println("game,seed,move,player,label," + SearchStats.csvHeader());
+        }
+        if (jmx && monitors == null)
+            monitors = new SearchMonitor[]{SearchMonitor.register("P1"), SearchMonitor.register("P2")};
+    }
 
+    private void recordStats(int player, String label, int move, AIPlayer aiPlayer) {
+        if (statsOut == null && monitors == null)
+            return;
+        SearchStats stats = aiPlayer.getStats();
+        if (statsOut != null)
+            statsOut.println(game + "," + seed + "," + move + "," + player + "," + label + "," + stats.toCsv());
+        if (monitors != null)
+            monitors[player - 1].publish(stats);
     }
 
+    private void closeStats() {
+        if (statsOut != null) {
+            statsOut.close();
+            statsOut = null;
+        }
+    }
 }
 
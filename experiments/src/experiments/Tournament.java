@@ -0,0 +1,257 @@
+package experiments;
+
+import framework.IBoard;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs matches between players in a single JVM, several games at the same time on a thread pool.
+ * Every game gets its own board and players through SimGame. Each matchup is played with the same seed
+ * from both seats, like scripts/parallel.perl does. Results are aggregated while the games finish,
+ * wins count as 1 and draws as 0.5, with a 95% confidence interval as computed by scripts/parseres.perl.
+ * <p/>
+ * Usage: experiments.Tournament --game g --matchups p1,p2[;p3,p4..] [--games N] [--timelimit ms]
+ * [--threads N] [--seed S] [--csv file] [--json file] [--verbose]
+ * <p/>
+ * --games is the number of games per matchup per seat. The players' own output is suppressed unless
+ * --verbose is given. Keep the number of threads times the threads per player (4 for mcts by default)
+ * below the number of cores, otherwise time-limited players search less than they would on their own.
+ */
+public class Tournament {
+
+    private String game = null;
+    private List<String[]> matchups = new ArrayList<>();
+    private int gamesPerSeat = 50, timeLimit = 1000;
+    private int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+    private long seed = System.currentTimeMillis();
+    private String csvFile = null, jsonFile = null;
+    private boolean verbose = false;
+    // The statistics per matchup, in view of the first player of the matchup
+    private int[] wins, losses, draws, errors;
+
+    public static void main(String[] args) {
+        Tournament tournament = new Tournament();
+        tournament.parseArgs(args);
+        tournament.run();
+    }
+
+    public void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--game")) {
+                game = args[++i];
+            } else if (args[i].equals("--matchups")) {
+                for (String matchup : args[++i].split(";")) {
+                    String[] players = matchup.split(",");
+                    if (players.length != 2)
+                        throw new RuntimeException("A matchup consists of two players: " + matchup);
+                    matchups.add(players);
+                }
+            } else if (args[i].equals("--games")) {
+                gamesPerSeat = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--timelimit")) {
+                timeLimit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads")) {
+                nThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--csv")) {
+                csvFile = args[++i];
+            } else if (args[i].equals("--json")) {
+                jsonFile = args[++i];
+            } else if (args[i].equals("--verbose")) {
+                verbose = true;
+            } else {
+                throw new RuntimeException("Unknown option: " + args[i]);
+            }
+        }
+        if (game == null || matchups.isEmpty())
+            throw new RuntimeException("Both --game and --matchups are required");
+        if (nThreads < 1 || gamesPerSeat < 1)
+            throw new RuntimeException("At least one thread and one game per seat are required");
+    }
+
+    public void run() {
+        int n = matchups.size();
+        wins = new int[n];
+        losses = new int[n];
+        draws = new int[n];
+        errors = new int[n];
+        // Queue all games, both seats of a matchup share a seed
+        Random r = new Random(seed);
+        List<Game> games = new ArrayList<>();
+        for (int g = 0; g < gamesPerSeat; g++) {
+            for (int m = 0; m < n; m++) {
+                long gameSeed = r.nextInt(100000000) + 1;
+                games.add(new Game(m, false, gameSeed));
+                games.add(new Game(m, true, gameSeed));
+            }
+        }
+        PrintStream out = System.out;
+        if (!verbose) // The players print their moves and statistics
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }));
+        PrintWriter csv = null;
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            if (csvFile != null) {
+                csv = new PrintWriter(new FileWriter(csvFile));
+                csv.println("game,p1,p2,seed,winner,time_ms");
+            }
+            out.println("Game: " + game + ", " + games.size() + " games on " + nThreads + " threads, seed " + seed);
+            CompletionService<Game> completed = new ExecutorCompletionService<>(pool);
+            for (Game g : games)
+                completed.submit(g);
+            for (int i = 1; i <= games.size(); i++) {
+                Game g = completed.take().get();
+                record(g);
+                if (csv != null) {
+                    csv.println(game + "," + g.p1 + "," + g.p2 + "," + g.seed + "," + g.winner + "," + g.time);
+                    csv.flush();
+                }
+                out.println("[" + i + "/" + games.size() + "] " + g.p1 + " vs " + g.p2 + ": "
+                        + ((g.error != null) ? "error " + g.error : "winner " + g.winner) + ", " + summary(g.matchup));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write " + csvFile, e);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while waiting for games", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            System.setOut(out);
+            if (csv != null)
+                csv.close();
+        }
+        out.println();
+        out.println("Results after " + (System.currentTimeMillis() - start) / 1000 + "s:");
+        for (int m = 0; m < n; m++)
+            out.println(summary(m));
+        if (jsonFile != null)
+            writeJson();
+    }
+
+    private synchronized void record(Game g) {
+        // Kalah reports 3 for a pair of games that was not decided
+        boolean draw = g.winner == IBoard.DRAW || g.winner == IBoard.P3_WIN;
+        if (g.error != null)
+            errors[g.matchup]++;
+        else if (draw)
+            draws[g.matchup]++;
+        else if ((g.winner == IBoard.P1_WIN) != g.swapped)
+            wins[g.matchup]++;
+        else
+            losses[g.matchup]++;
+    }
+
+    private int total(int m) {
+        return wins[m] + losses[m] + draws[m];
+    }
+
+    /**
+     * @return The score of the first player of the matchup, wins count 1 and draws 0.5
+     */
+    private double rate(int m) {
+        return (total(m) > 0) ? (wins[m] + .5 * draws[m]) / total(m) : 0.;
+    }
+
+    /**
+     * @return The half-width of the 95% confidence interval of the rate
+     */
+    private double ci95(int m) {
+        int total = total(m);
+        if (total == 0)
+            return 0.;
+        double mean = rate(m);
+        double var = wins[m] * (1. - mean) * (1. - mean) + draws[m] * (.5 - mean) * (.5 - mean)
+                + losses[m] * mean * mean;
+        return 1.96 * Math.sqrt(var / total) / Math.sqrt(total);
+    }
+
+    private String summary(int m) {
+        String[] players = matchups.get(m);
+        return String.format("%s vs %s: %d-%d-%d (%.2f%% +/- %.2f)%s", players[0], players[1], wins[m], losses[m],
+                draws[m], 100. * rate(m), 100. * ci95(m), (errors[m] > 0) ? ", " + errors[m] + " errors" : "");
+    }
+
+    private void writeJson() {
+        try (PrintWriter json = new PrintWriter(new FileWriter(jsonFile))) {
+            json.println("{");
+            json.println("  \"game\": \"" + game + "\",");
+            json.println("  \"timelimit\": " + timeLimit + ",");
+            json.println("  \"seed\": " + seed + ",");
+            json.println("  \"matchups\": [");
+            for (int m = 0; m < matchups.size(); m++) {
+                json.println("    {\"p1\": \"" + matchups.get(m)[0] + "\", \"p2\": \"" + matchups.get(m)[1]
+                        + "\", \"wins\": " + wins[m] + ", \"losses\": " + losses[m] + ", \"draws\": " + draws[m]
+                        + ", \"errors\": " + errors[m] + ", \"rate\": " + rate(m) + ", \"ci95\": " + ci95(m) + "}"
+                        + ((m < matchups.size() - 1) ? "," : ""));
+            }
+            json.println("  ]");
+            json.println("}");
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write " + jsonFile, e);
+        }
+    }
+
+    /**
+     * A single game of a matchup
+     */
+    private class Game implements Callable<Game> {
+        final int matchup;
+        final boolean swapped;
+        final long seed;
+        final String p1, p2;
+        int winner = -1;
+        long time;
+        String error = null;
+
+        Game(int matchup, boolean swapped, long seed) {
+            this.matchup = matchup;
+            this.swapped = swapped;
+            this.seed = seed;
+            String[] players = matchups.get(matchup);
+            this.p1 = swapped ? players[1] : players[0];
+            this.p2 = swapped ? players[0] : players[1];
+        }
+
+        @Override
+        public Game call() {
+            long start = System.currentTimeMillis();
+            try {
+                SimGame sim = new SimGame();
+                sim.collectGarbage = false;
+                // The seed also seeds the random generator of this thread
+                sim.parseArgs(new String[]{"--game", game, "--p1", p1, "--p2", p2,
+                        "--timelimit", Integer.toString(timeLimit), "--seed", Long.toString(seed)});
+                sim.run();
+                winner = sim.lastWinner;
+            } catch (RuntimeException e) {
+                error = e.toString();
+            }
+            time = System.currentTimeMillis() - start;
+            return this;
+        }
+    }
+}
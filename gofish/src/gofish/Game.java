@@ -4,7 +4,7 @@ import ai.ISMCTS.ISMCTSPlayer;
 import ai.MCTSOptions;
 import framework.AIPlayer;
 import gofish.game.Board;
-import gofish.game.Card;
+import gofish.game.Deck;
 import gofish.game.Move;
 
 import java.util.Scanner;
@@ -71,9 +71,9 @@ public class Game {
                     }
                     m = new Move(card);
                     if (t.getPlayerToMove() == Board.P1)
-                        if (!t.checkHand(t.p2Hand, card))
+                        if (!t.checkHand(t.hands[1], card))
                             System.out.println("Go Fish!");
-                        else if (!t.checkHand(t.p1Hand, card))
+                        else if (!t.checkHand(t.hands[0], card))
                             System.out.println("Go Fish!");
                 }
             }
@@ -86,10 +86,12 @@ public class Game {
     }
 
     private static void drawTable(Board board) {
-        for (Card card : board.p2Hand) {
-            if (allAi || card.visible) {
-                System.out.print(getCardString(card.card));
-                if (card.visible)
+        for (long cards = board.hands[1]; cards != 0; cards &= cards - 1) {
+            int card = Long.numberOfTrailingZeros(cards);
+            boolean visible = (board.visible[1] & (1L << card)) != 0;
+            if (allAi || visible) {
+                System.out.print(getCardString(card));
+                if (visible)
                     System.out.print("*");
             } else {
                 System.out.print("#");
@@ -99,9 +101,10 @@ public class Game {
         System.out.println("\n");
         System.out.print("P1 Score: " + board.p1Score);
         System.out.println(" :: P2 Score: " + board.p2Score + " \t Deck: " + board.deck.size() + "\n");
-        for (Card card : board.p1Hand) {
-            System.out.print(getCardString(card.card));
-            if (card.visible)
+        for (long cards = board.hands[0]; cards != 0; cards &= cards - 1) {
+            int card = Long.numberOfTrailingZeros(cards);
+            System.out.print(getCardString(card));
+            if ((board.visible[0] & (1L << card)) != 0)
                 System.out.print("*");
             System.out.print(" ");
         }
@@ -125,7 +128,7 @@ public class Game {
 
     private static String getCardString(int card) {
         StringBuilder sb = new StringBuilder();
-        switch (card / 100) {
+        switch (Deck.suit(card) + 1) {
             case 1:
                 sb.append('\u2660');
                 break;
@@ -140,7 +143,7 @@ public class Game {
                 break;
         }
         //
-        switch (card % 100) {
+        switch (Deck.rank(card)) {
             case 11:
                 sb.append("J");
                 break;
@@ -154,7 +157,7 @@ public class Game {
                 sb.append("A");
                 break;
             default:
-                sb.append(card % 100);
+                sb.append(Deck.rank(card));
         }
         return sb.toString();
     }
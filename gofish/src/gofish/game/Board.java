@@ -6,17 +6,22 @@ import framework.MoveList;
 import framework.util.StatCounter;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 public class Board implements IBoard {
     private static final int[] SCORES = {3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2, 2};
-    private static final int Q_SIZE = 4;
-    //
-    public LinkedList<Card> p1Hand, p2Hand;
+    private static final int HAND_SIZE = 7;
+    // Moves are always the same
+    private static final Move[] MOVES = new Move[Deck.MAX_CARD + 1];
+
+    static {
+        for (int i = 1; i <= Deck.MAX_CARD; i++)
+            MOVES[i] = new Move(i);
+    }
+
+    // The cards in the players' hands, and the cards in their hands that the opponent has seen (see Deck)
+    public final long[] hands = new long[2], visible = new long[2];
     public int p1Score, p2Score;
-    private int[] p1CardCount, p2CardCount;
     public Deck deck;
     private int nMoves, currentPlayer;
     //
@@ -24,26 +29,15 @@ public class Board implements IBoard {
     private final ArrayList<IMove> playoutMoves;
 
     public Board() {
-        // Moves are always the same
         expandMoves = new MoveList(Deck.MAX_CARD);
         playoutMoves = new ArrayList<>(Deck.MAX_CARD);
-        p1CardCount = new int[Deck.MAX_CARD];
-        p2CardCount = new int[Deck.MAX_CARD];
     }
 
     @Override
     public IBoard copy() {
         Board newBoard = new Board();
-        newBoard.p1Hand = new LinkedList<>();
-        for (Card c : p1Hand) {
-            newBoard.p1Hand.add(c.copy());
-        }
-        newBoard.p2Hand = new LinkedList<>();
-        for (Card c : p2Hand) {
-            newBoard.p2Hand.add(c.copy());
-        }
-        System.arraycopy(p1CardCount, 0, newBoard.p1CardCount, 0, p1CardCount.length);
-        System.arraycopy(p2CardCount, 0, newBoard.p2CardCount, 0, p2CardCount.length);
+        System.arraycopy(hands, 0, newBoard.hands, 0, hands.length);
+        System.arraycopy(visible, 0, newBoard.visible, 0, visible.length);
         newBoard.currentPlayer = currentPlayer;
         newBoard.p1Score = p1Score;
         newBoard.p2Score = p2Score;
@@ -54,59 +48,42 @@ public class Board implements IBoard {
 
     @Override
     public void initialize() {
-        deck = new Deck(52);
+        deck = new Deck(Deck.MAX_CARD * Deck.N_SUITS);
         nMoves = 0;
         deck.initialize();
-        p1Hand = new LinkedList<>();
-        p2Hand = new LinkedList<>();
+        hands[0] = hands[1] = visible[0] = visible[1] = 0;
         // Deal first player's hand
-        dealEmptyHand(p1Hand, p1CardCount, P1);
+        dealEmptyHand(P1);
         // Deal second player's hand
-        dealEmptyHand(p2Hand, p2CardCount, P2);
+        dealEmptyHand(P2);
         //
         currentPlayer = P1;
     }
 
-    private void dealEmptyHand(LinkedList<Card> hand, int[] cardCount, int player) {
-        // Deal first player's hand
-        deck.dealHand(hand, 7);
-        for (Card card : hand) {
-            cardCount[(card.card % 100) - 1]++;
-        }
+    private void dealEmptyHand(int player) {
+        hands[player - 1] = deck.dealHand(hands[player - 1], HAND_SIZE);
         checkBook(player);
     }
 
     @Override
     public void newDeterminization(int myPlayer, boolean postMove) {
-        LinkedList<Card> hand = (myPlayer == P1) ? p2Hand : p1Hand;
-        int nCards = hand.size();
-        // Put the invisible player's hand back in the deck, and shuffle it
-        deck.addHandToDek(hand);
+        int i = (myPlayer == P1) ? 1 : 0;
+        int nCards = Long.bitCount(hands[i]);
+        // Put the invisible cards in the player's hand back in the deck, and shuffle it
+        deck.addCardsToDeck(hands[i] & ~visible[i]);
         deck.shuffleDeck();
         // Deal a new hand to the invisible player
-        deck.dealHand(hand, nCards);
-        // Maintain the card counts for the player
-        if (myPlayer == P1) {
-            p2CardCount = new int[Deck.MAX_CARD];
-            for (Card c : hand) {
-                p2CardCount[(c.card % 100) - 1]++;
-            }
-        } else {
-            p1CardCount = new int[Deck.MAX_CARD];
-            for (Card c : hand) {
-                p1CardCount[(c.card % 100) - 1]++;
-            }
-        }
+        hands[i] = deck.dealHand(visible[i], nCards);
     }
 
 
     @Override
     public MoveList getExpandMoves() {
         expandMoves.clear();
-        LinkedList myHand = (currentPlayer == P1) ? p1Hand : p2Hand;
+        long myHand = hands[currentPlayer - 1];
         for (int i = 1; i <= Deck.MAX_CARD; i++) {
             if (checkHand(myHand, i))
-                expandMoves.add(new Move(i));
+                expandMoves.add(MOVES[i]);
         }
         return expandMoves;
     }
@@ -114,64 +91,46 @@ public class Board implements IBoard {
     @Override
     public List<IMove> getPlayoutMoves(boolean heuristics) {
         playoutMoves.clear();
-        LinkedList myHand = (currentPlayer == P1) ? p1Hand : p2Hand;
+        long myHand = hands[currentPlayer - 1];
         for (int i = 1; i <= Deck.MAX_CARD; i++) {
             if (checkHand(myHand, i))
-                playoutMoves.add(new Move(i));
+                playoutMoves.add(MOVES[i]);
         }
         return playoutMoves;
     }
 
-    public boolean checkHand(LinkedList<Card> hand, int rank) {
-        for (Card card : hand) {
-            if (card.card % 100 == rank)
-                return true;
-        }
-        return false;
+    public boolean checkHand(long hand, int rank) {
+        return (hand & Deck.rankMask(rank)) != 0;
     }
 
     @Override
     public boolean doAIMove(IMove move, int player) {
-        LinkedList<Card> opHand = (player == P1) ? p2Hand : p1Hand;
-        LinkedList<Card> myHand = (player == P2) ? p2Hand : p1Hand;
-        int[] myCardCount = (player == P1) ? p1CardCount : p2CardCount;
-        int[] opCardCount = (player == P1) ? p2CardCount : p1CardCount;
-        int opp = getOpponent(currentPlayer);
-        Iterator<Card> it = opHand.iterator();
-        Card card;
-        boolean cardTaken = false;
+        int me = player - 1, opp = getOpponent(player) - 1;
+        int rank = move.getMove()[0];
         // Take all cards of the requested type from the user's hand
-        while (it.hasNext()) {
-            card = it.next();
-            if (card.card % 100 == move.getMove()[0]) {
-                myHand.add(card);
-                card.visible = true;
-                myCardCount[(card.card % 100) - 1]++;
-                opCardCount[(card.card % 100) - 1]--;
-                it.remove();
-                cardTaken = true;
-            }
-        }
-        // The opponent gave all his cards to the player
-        if (cardTaken && opHand.isEmpty())
-            dealEmptyHand(opHand, opCardCount, opp);
-        //
-        int[] book;
-        if (!cardTaken && !deck.isEmpty()) {
-            Card draw = deck.takeCard();
-            myCardCount[(draw.card % 100) - 1]++;
-            myHand.add(draw);
+        long taken = hands[opp] & Deck.rankMask(rank);
+        boolean cardTaken = taken != 0;
+        if (cardTaken) {
+            hands[opp] &= ~taken;
+            visible[opp] &= ~taken;
+            hands[me] |= taken;
+            visible[me] |= taken;
+            // The opponent gave all his cards to the player
+            if (hands[opp] == 0)
+                dealEmptyHand(opp + 1);
+        } else if (!deck.isEmpty()) {
+            int draw = deck.takeCard();
+            hands[me] |= 1L << draw;
             // The player drew the card he asked for
             // therefore he gets another turn
-            if (draw.card % 100 == move.getMove()[0])
+            if (Deck.rank(draw) == rank)
                 cardTaken = true;
         }
-        book = checkBook(player);
         // Keep track of the book
-        if (book != null) {
+        if (checkBook(player)) {
             // The book was the last card in my hand
-            if (myHand.isEmpty())
-                dealEmptyHand(myHand, myCardCount, currentPlayer);
+            if (hands[me] == 0)
+                dealEmptyHand(player);
         }
         if(!cardTaken) {
             // No card taken, opponent's turn
@@ -180,34 +139,25 @@ public class Board implements IBoard {
         return true;
     }
 
-    private int[] checkBook(int player) {
-        int[] cardCount = (player == P1) ? p1CardCount : p2CardCount;
-        LinkedList<Card> hand = (player == P1) ? p1Hand : p2Hand;
-        int index = 0;
-        Card card;
-        int[] book = null;
+    /**
+     * @return true if the player completed a book
+     */
+    private boolean checkBook(int player) {
+        long hand = hands[player - 1];
         // Check for books!
-        for (int i = 0; i < cardCount.length; i++) {
-            if (cardCount[i] >= Q_SIZE) { // The player has 4 cards of this type!
-                if (player == P1) p1Score += SCORES[i];
-                else p2Score += SCORES[i];
-                cardCount[i] -= Q_SIZE;
-                book = new int[Q_SIZE];
-                // Remove the Q_SIZE cards from the hand
-                Iterator<Card> it = hand.iterator();
-                while (it.hasNext() && index < 2) {
-                    card = it.next();
-                    if (card.card % 100 == (1 + i)) {
-                        book[index] = card.card;
-                        index++;
-                        it.remove();
-                    }
-                }
+        for (int i = 1; i <= Deck.MAX_CARD; i++) {
+            long book = Deck.rankMask(i);
+            if ((hand & book) == book) { // The player has 4 cards of this type!
+                if (player == P1) p1Score += SCORES[i - 1];
+                else p2Score += SCORES[i - 1];
+                // Remove the four cards from the hand
+                hands[player - 1] &= ~book;
+                visible[player - 1] &= ~book;
                 // Only a single book can be achieved per turn
-                break;
+                return true;
             }
         }
-        return book;
+        return false;
     }
 
     @Override
@@ -269,7 +219,7 @@ public class Board implements IBoard {
 
     @Override
     public boolean isLegal(IMove move) {
-        return checkHand((currentPlayer == P1) ? p1Hand : p2Hand, move.getMove()[0] % 100);
+        return checkHand(hands[currentPlayer - 1], move.getMove()[0] % 100);
     }
 
     @Override
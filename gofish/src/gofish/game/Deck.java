@@ -1,13 +1,16 @@
 package gofish.game;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import ai.MCTSOptions;
+
 import java.util.Random;
 
+/**
+ * Cards are numbered 0 - 51, the four cards of a rank are consecutive: card = (rank - 1) * 4 + suit.
+ * A set of cards is a long with a bit per card, so the cards of a rank are one nibble of the set.
+ */
 public class Deck {
-    private static final Random rnd = new Random();
-    public static int MAX_CARD = 13;
-    private static int[] COLORS = {100, 200, 300, 400};
+    private static final Random rnd = MCTSOptions.r;
+    public static int MAX_CARD = 13, N_SUITS = 4;
     //
     private final int[] deck;
     private int index, initSize;
@@ -18,6 +21,21 @@ public class Deck {
         this.index = size - 1;
     }
 
+    public static int rank(int card) {
+        return (card / N_SUITS) + 1;
+    }
+
+    public static int suit(int card) {
+        return card % N_SUITS;
+    }
+
+    /**
+     * @return The cards of the given rank, as a set
+     */
+    public static long rankMask(int rank) {
+        return 0xFL << (N_SUITS * (rank - 1));
+    }
+
     public boolean isEmpty() {
         return index < 0;
     }
@@ -34,8 +52,8 @@ public class Deck {
      *
      * @return The top card from the deck
      */
-    public Card takeCard() {
-        return new Card(deck[index--]);
+    public int takeCard() {
+        return deck[index--];
     }
 
     public void returnCard(int card) {
@@ -47,31 +65,27 @@ public class Deck {
     }
 
     /**
-     * Place a player's hand back in the deck, when searching, do this for the non-visible hand.
+     * Place the cards back in the deck, when searching, do this for the non-visible cards in a hand.
      * You probably want to call shuffleDeck() after this method is finished ;)
      *
-     * @param hand The hand(s) to place back
+     * @param cards The set of cards to place back
      */
-    public void addHandToDek(LinkedList<Card> hand) {
-        Iterator<Card> it = hand.iterator();
-        while (it.hasNext()) {
-            Card c = it.next();
-            if (!c.visible) {
-                returnCard(c.card);
-                it.remove();
-            }
+    public void addCardsToDeck(long cards) {
+        while (cards != 0) {
+            returnCard(Long.numberOfTrailingZeros(cards));
+            cards &= cards - 1;
         }
     }
 
     /**
-     * Deal a hand to a player.
+     * Deal cards to a hand until it holds nCards, or the deck is empty.
+     *
+     * @return The hand with the dealt cards
      */
-    public void dealHand(LinkedList<Card> hand, int nCards) {
-        while (hand.size() < nCards) {
-            if (isEmpty())
-                return;
-            hand.offerFirst(takeCard());
-        }
+    public long dealHand(long hand, int nCards) {
+        for (int n = Long.bitCount(hand); n < nCards && !isEmpty(); n++)
+            hand |= 1L << takeCard();
+        return hand;
     }
 
     public Deck copy() {
@@ -82,13 +96,8 @@ public class Deck {
     }
 
     public void initialize() {
-        int index = 0;
-        for (int COLOR : COLORS) {
-            for (int j = 1; j <= MAX_CARD; j++) {
-                deck[index] = COLOR + j;
-                index++;
-            }
-        }
+        for (int i = 0; i < initSize; i++)
+            deck[i] = i;
         // Shuffle!
         shuffleDeck();
         shuffleDeck();
@@ -38,8 +38,8 @@ public class Board implements IBoard {
     public final int[] oppHouse1 = {11, 10, 9, 8, 7, 6};
     public final int[] oppHouse2 = {0, 0, 0, 0, 0, 0, 5, 4, 3, 2, 1, 0};
 
-    private static final ArrayList<IMove> poMoves = new ArrayList<IMove>(10);
-    private static final MoveList static_moves = new MoveList(10);
+    private final ArrayList<IMove> poMoves = new ArrayList<IMove>(10);
+    private final MoveList static_moves = new MoveList(10);
 
     public static long[] zbnums = null;
     public long zbHash = 0;
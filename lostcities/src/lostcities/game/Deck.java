@@ -1,9 +1,11 @@
 package lostcities.game;
 
+import ai.MCTSOptions;
+
 import java.util.Random;
 
 public class Deck {
-    private static final Random rnd = new Random();
+    private static final Random rnd = MCTSOptions.r;
     public static int MAX_CARD = 10, INVESTMENT = 11, N_INVEST_C = 3;
     private static int[] COLORS = {100, 200, 300, 400, 500};
     //
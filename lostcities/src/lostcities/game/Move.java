@@ -7,7 +7,7 @@ public class Move extends IMove {
     public static final int DECK_DRAW = 0, PLAY = 1, DISCARD = -1;
     final int[] move = new int[2];
     final int type;
-    private int prevTopCard = -1, handIndex = -1;
+    private int prevTopCard = -1, handIndex = -1, prevDiscardStackDraws;
 
     public Move(int card, int draw, boolean discard) {
         move[0] = card;
@@ -100,4 +100,12 @@ public class Move extends IMove {
     public void setPrevTopCard(int prevTopCard) {
         this.prevTopCard = prevTopCard;
     }
+
+    public int getPrevDiscardStackDraws() {
+        return prevDiscardStackDraws;
+    }
+
+    public void setPrevDiscardStackDraws(int prevDiscardStackDraws) {
+        this.prevDiscardStackDraws = prevDiscardStackDraws;
+    }
 }
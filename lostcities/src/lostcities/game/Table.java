@@ -1,8 +1,10 @@
 package lostcities.game;
 
+import ai.MCTSOptions;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.UndoableBoard;
 import framework.util.StatCounter;
 
 import java.util.ArrayList;
@@ -10,9 +12,9 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
-public class Table implements IBoard {
+public class Table implements UndoableBoard {
     public final static int P2_EXP_I = 5, P2_HAND_I = 8, EXP_COST = 20, BONUS = 20, N_BONUS_CARDS = 8, MAX_DISC_STACK_DRAW = 2, MIN_NEW_EXP_VAL = 4;
-    private final static Random random = new Random();
+    private final static Random random = MCTSOptions.r;
     private final MoveList moves = new MoveList(625);
     private final ArrayList<IMove> playoutMoves = new ArrayList<IMove>(100), heuristicMoves = new ArrayList<IMove>(100);
     private final java.util.Stack<Move> pastMoves = new java.util.Stack<Move>();
@@ -98,8 +100,9 @@ public class Table implements IBoard {
         // During selection the hand indices are unknown
         if (handIndex == -1)
             handIndex = getHandIndex(card, currentPlayer);
-        // Set the hand index for undoMove
+        // Set the hand index and the discard-stack draws for undoMove
         move.setHandIndex(handIndex);
+        move.setPrevDiscardStackDraws(discardStackDraws[currentPlayer - 1]);
         // Draw a new card
         if (draw == Move.DECK_DRAW) {
             hands[handIndex] = deck.takeCard();
@@ -360,9 +363,8 @@ public class Table implements IBoard {
             winner = NONE_WIN;
         } else {
             stacks[draw - 1].addCard(hands[handIndex]);
-            if (move.getType() == Move.DISCARD)
-                discardStackDraws[currentPlayer - 1]--;
         }
+        discardStackDraws[currentPlayer - 1] = move.getPrevDiscardStackDraws();
         // Return the played card the the player's hand
         int stack = (card / 100) - 1;
         // Type of move
@@ -388,9 +390,9 @@ public class Table implements IBoard {
                 scores[pIndex] -= cardType * multipliers[pStack];
                 expeditionScores[pStack] -= cardType * multipliers[pStack];
                 // Bonus points for more than 8 cards on any given expedition
-                if (numExpeditionCards[pStack] == N_BONUS_CARDS) { // We are taking the 8th card
+                if (numExpeditionCards[pStack] >= N_BONUS_CARDS) { // We are taking the 8th card, or a later one
                     scores[pIndex] -= BONUS;
-                    expeditionCards[pIndex] -= BONUS;
+                    expeditionScores[pStack] -= BONUS;
                 }
             }
             // Keep track of the number of cards per expedition
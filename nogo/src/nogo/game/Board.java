@@ -1,61 +1,109 @@
 package nogo.game;
 
+import ai.MCTSOptions;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.PrimitiveMoveBoard;
+import framework.RandomMoveBoard;
 import framework.util.StatCounter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
-import java.util.Stack;
 
-public class Board implements IBoard {
+/**
+ * NoGo board that keeps the legal moves of both players up to date while moves are made and undone.
+ * Every stone knows the root of its group, and the stones of a group are linked in a ring so the smaller group
+ * can be relabeled when two groups merge, and split off again when the move is undone.
+ * The root of every group stores the liberties of the group as a bitset. A move is legal if it leaves the
+ * new group a liberty and takes no opponent group's last liberty, so it only depends on the groups around it.
+ * After a move, only the points around it and the last liberties of groups in atari are checked again.
+ */
+public class Board implements PrimitiveMoveBoard, RandomMoveBoard {
     public static int SIZE = 9, EMPTY = 0, BLACK = P1, WHITE = P2;
-    private static MoveList moveList = new MoveList(500);
-    private static List<IMove> po_Moves = new ArrayList<>(500);
+    private final List<IMove> po_Moves = new ArrayList<>();
     //
-    private int[][] board;
-    private int movesForPlayer = 0;
+    private final int N, W;
+    // The stones on the board, indexed y * SIZE + x, moves are encoded the same way
+    private final int[] board;
+    // The neighbours of every point, -1 for points off the board
+    private final int[] neighbours;
+    // The root of the group of every stone, the next stone in its group, the liberties of a group are stored at its root
+    private final int[] root, next, size, libCount;
+    private final long[] libs;
+    // The legal moves of black and white, as bitsets and their number
+    private final long[] legal;
+    private final int[] nLegal = new int[2];
     private int nMoves = 0, currentPlayer = BLACK;
-    //
-    private Stack<IMove> movesMade = new Stack<>();
+    // Every move fills a point, so there can be no more moves than points
+    private final int[] movesMade, intMoves;
+    private int nMovesMade = 0;
+    // Journal used to undo moves: per move the groups joined to another root and the saved state of the own
+    // groups that were merged, at most 4 of each per move
+    private final int[] joined, joinedTo, nJoined, saved, nSaved, savedSize, savedCount;
+    private final long[] savedLibs;
+    // Points of which the legality must be checked after a move: the neighbours and last liberties of the groups
+    // around the move, collected before and after it is undone
+    private final int[] affected = new int[20];
+    private int nAffected = 0;
+    private final long[] checked;
+    private long checkedI = 1;
 
     static long[][] zbnums = null;
     static long blackHash, whiteHash;
     private long zbHash = 0;
 
     public Board() {
-        this.board = new int[SIZE][SIZE];
+        N = SIZE * SIZE;
+        W = (N + 63) / 64;
+        board = new int[N];
+        neighbours = new int[N * 4];
+        for (int i = 0; i < N; i++) {
+            int x = i % SIZE, y = i / SIZE;
+            neighbours[i * 4] = (x + 1 < SIZE) ? i + 1 : -1;
+            neighbours[i * 4 + 1] = (x - 1 >= 0) ? i - 1 : -1;
+            neighbours[i * 4 + 2] = (y + 1 < SIZE) ? i + SIZE : -1;
+            neighbours[i * 4 + 3] = (y - 1 >= 0) ? i - SIZE : -1;
+        }
+        root = new int[N];
+        next = new int[N];
+        size = new int[N];
+        libCount = new int[N];
+        libs = new long[N * W];
+        legal = new long[2 * W];
+        movesMade = new int[N];
+        intMoves = new int[N];
+        checked = new long[N];
+        joined = new int[N * 4];
+        joinedTo = new int[N * 4];
+        nJoined = new int[N];
+        saved = new int[N * 4];
+        nSaved = new int[N];
+        savedSize = new int[N * 4];
+        savedCount = new int[N * 4];
+        savedLibs = new long[N * 4 * W];
     }
 
     @Override
     public void initialize() {
         nMoves = 0;
+        nMovesMade = 0;
         currentPlayer = BLACK;
-        movesForPlayer = 0;
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                board[i][j] = EMPTY;
-            }
+        for (int i = 0; i < N; i++) {
+            board[i] = EMPTY;
+            root[i] = i;
+            next[i] = i;
         }
-        // initialize the zobrist numbers
-        if (zbnums == null) {
-            // init the zobrist numbers
-            Random rng = new Random();
-
-            // SIZE locations, 3 states for each location
-            zbnums = new long[SIZE * SIZE][3];
-
-            for (int i = 0; i < zbnums.length; i++) {
-                zbnums[i][0] = rng.nextLong();
-                zbnums[i][1] = rng.nextLong();
-                zbnums[i][2] = rng.nextLong();
-            }
-
-            whiteHash = rng.nextLong();
-            blackHash = rng.nextLong();
+        // Every point is a legal move for both players
+        Arrays.fill(legal, 0);
+        for (int i = 0; i < N; i++) {
+            legal[i >> 6] |= 1L << i;
+            legal[W + (i >> 6)] |= 1L << i;
         }
+        nLegal[0] = nLegal[1] = N;
+        initZobrist();
         // now build the initial hash
         zbHash = 0;
         for (int r = 0; r < SIZE * SIZE; r++) {
@@ -67,164 +115,347 @@ public class Board implements IBoard {
 
     @Override
     public boolean doAIMove(IMove move, int player) {
-        int pos = (move.getMove()[1] * SIZE) + move.getMove()[0];
-        zbHash ^= zbnums[pos][EMPTY];
-        board[move.getMove()[1]][move.getMove()[0]] = currentPlayer;
-        zbHash ^= zbnums[pos][currentPlayer];
+        return doAIMove((move.getMove()[1] * SIZE) + move.getMove()[0], player);
+    }
+
+    @Override
+    public boolean doAIMove(int move, int player) {
+        nAffected = 0;
+        addAffected(move);
+        int m = nMovesMade, nb, r;
+        nJoined[m] = 0;
+        nSaved[m] = 0;
+        zbHash ^= zbnums[move][EMPTY];
+        board[move] = currentPlayer;
+        zbHash ^= zbnums[move][currentPlayer];
+        // The new stone is a group with its empty neighbours as liberties
+        root[move] = move;
+        next[move] = move;
+        size[move] = 1;
+        libCount[move] = 0;
+        Arrays.fill(libs, move * W, move * W + W, 0);
+        for (int k = 0; k < 4; k++) {
+            nb = neighbours[move * 4 + k];
+            if (nb >= 0 && board[nb] == EMPTY) {
+                libs[move * W + (nb >> 6)] |= 1L << nb;
+                libCount[move]++;
+            }
+        }
+        // The move takes a liberty from the opponent groups, save the own groups before they are merged
+        for (int k = 0; k < 4; k++) {
+            nb = neighbours[move * 4 + k];
+            if (nb < 0 || board[nb] == EMPTY)
+                continue;
+            r = root[nb];
+            if ((libs[r * W + (move >> 6)] & (1L << move)) == 0)
+                continue; // Group was seen already
+            if (board[nb] == currentPlayer)
+                save(m, r);
+            libs[r * W + (move >> 6)] &= ~(1L << move);
+            libCount[r]--;
+        }
+        // Merge the new stone with the own groups
+        for (int k = 0; k < 4; k++) {
+            nb = neighbours[move * 4 + k];
+            if (nb >= 0 && board[nb] == currentPlayer)
+                union(m, root[move], root[nb]);
+        }
+        collectAffected(move);
         currentPlayer = getOpponent(currentPlayer);
         hashCurrentPlayer();
-        movesMade.push(move);
-        movesForPlayer = 0;
+        movesMade[nMovesMade++] = move;
         nMoves++;
+        updateLegal();
         return true;
     }
 
     @Override
-    public MoveList getExpandMoves() {
-        boolean free;
-        int opp = getOpponent(currentPlayer);
-        moveList.clear();
-        for (int y = 0; y < SIZE; y++) {
-            for (int x = 0; x < SIZE; x++) {
-                if (board[y][x] == EMPTY) {
-                    board[y][x] = currentPlayer;
-                    seenI++;
-                    // Check the freedom of the position
-                    free = checkFree(x, y, currentPlayer);
-                    // Check the freedom of the surrounding positions
-                    if (free && x + 1 < SIZE && seen[y][x + 1] != seenI && board[y][x + 1] == opp) {
-                        free = checkFree(x + 1, y, board[y][x + 1]);
-                    }
-                    if (free && x - 1 >= 0 && seen[y][x - 1] != seenI && board[y][x - 1] == opp) {
-                        free = checkFree(x - 1, y, board[y][x - 1]);
-                    }
-                    if (free && y + 1 < SIZE && board[y + 1][x] == opp) {
-                        free = checkFree(x, y + 1, board[y + 1][x]);
-                    }
-                    if (free && y - 1 >= 0 && seen[y - 1][x] != seenI && board[y - 1][x] == opp) {
-                        free = checkFree(x, y - 1, board[y - 1][x]);
-                    }
-                    // This move will not reduce any
-                    if (free) {
-                        moveList.add(new Move(x, y));
+    public void undoMove() {
+        if (nMovesMade == 0)
+            throw new RuntimeException("Movesmade stack is empty.");
+
+        int pos = movesMade[--nMovesMade], m = nMovesMade, nb, r;
+        currentPlayer = getOpponent(currentPlayer);
+        nAffected = 0;
+        collectAffected(pos);
+        // Split the groups that were merged and restore their liberties
+        for (int i = nJoined[m] - 1; i >= 0; i--)
+            split(joinedTo[m * 4 + i], joined[m * 4 + i]);
+        for (int i = nSaved[m] - 1; i >= 0; i--) {
+            r = saved[m * 4 + i];
+            size[r] = savedSize[m * 4 + i];
+            libCount[r] = savedCount[m * 4 + i];
+            System.arraycopy(savedLibs, (m * 4 + i) * W, libs, r * W, W);
+        }
+        zbHash ^= zbnums[pos][currentPlayer];
+        board[pos] = EMPTY;
+        zbHash ^= zbnums[pos][EMPTY];
+        // Give the liberty back to the opponent groups
+        for (int k = 0; k < 4; k++) {
+            nb = neighbours[pos * 4 + k];
+            if (nb < 0 || board[nb] != getOpponent(currentPlayer))
+                continue;
+            r = root[nb];
+            if ((libs[r * W + (pos >> 6)] & (1L << pos)) != 0)
+                continue; // Group was seen already
+            libs[r * W + (pos >> 6)] |= 1L << pos;
+            libCount[r]++;
+        }
+        addAffected(pos);
+        collectAffected(pos);
+        hashCurrentPlayer();
+        nMoves--;
+        updateLegal();
+    }
+
+    private void save(int m, int r) {
+        int j = m * 4 + nSaved[m]++;
+        saved[j] = r;
+        savedSize[j] = size[r];
+        savedCount[j] = libCount[r];
+        System.arraycopy(libs, r * W, savedLibs, j * W, W);
+    }
+
+    /**
+     * Join the groups of roots a and b, the stones of the smaller group are relabeled
+     */
+    private void union(int m, int a, int b) {
+        if (a == b)
+            return;
+        if (size[a] < size[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        relabel(b, a);
+        // Swapping the successors of two stones in different rings joins the rings
+        int t = next[a];
+        next[a] = next[b];
+        next[b] = t;
+        joined[m * 4 + nJoined[m]] = b;
+        joinedTo[m * 4 + nJoined[m]++] = a;
+        size[a] += size[b];
+        int count = 0;
+        for (int w = 0; w < W; w++) {
+            libs[a * W + w] |= libs[b * W + w];
+            count += Long.bitCount(libs[a * W + w]);
+        }
+        libCount[a] = count;
+    }
+
+    /**
+     * Undo the union of the groups of roots a and b, b was joined to a
+     */
+    private void split(int a, int b) {
+        // Swapping the successors again splits the rings
+        int t = next[a];
+        next[a] = next[b];
+        next[b] = t;
+        relabel(b, b);
+    }
+
+    private void relabel(int ring, int r) {
+        int s = ring;
+        do {
+            root[s] = r;
+            s = next[s];
+        } while (s != ring);
+    }
+
+    private void addAffected(int point) {
+        affected[nAffected++] = point;
+    }
+
+    /**
+     * The legality of a point can only change if it is next to the changed point,
+     * or if it is the last liberty of a group around the changed point
+     */
+    private void collectAffected(int point) {
+        int nb, r;
+        for (int k = 0; k < 4; k++) {
+            nb = neighbours[point * 4 + k];
+            if (nb < 0)
+                continue;
+            if (board[nb] == EMPTY) {
+                addAffected(nb);
+            } else {
+                r = root[nb];
+                if (libCount[r] == 1) {
+                    for (int w = 0; w < W; w++) {
+                        if (libs[r * W + w] != 0) {
+                            addAffected(w * 64 + Long.numberOfTrailingZeros(libs[r * W + w]));
+                            break;
+                        }
                     }
-                    board[y][x] = EMPTY;
                 }
             }
         }
-        return moveList.copy();
-    }
-
-    private long seen[][] = new long[SIZE][SIZE];
-    private long seenI = Long.MIN_VALUE;
-
-    private boolean checkFree(int x, int y, int color) {
-        seen[y][x] = seenI;
-        if (x + 1 < SIZE && board[y][x + 1] == EMPTY)
-            return true;
-        if (x - 1 >= 0 && board[y][x - 1] == EMPTY)
-            return true;
-        if (y + 1 < SIZE && board[y + 1][x] == EMPTY)
-            return true;
-        if (y - 1 >= 0 && board[y - 1][x] == EMPTY)
-            return true;
-
-        if (x + 1 < SIZE && seen[y][x + 1] != seenI && board[y][x + 1] == color) {
-            if (checkFree(x + 1, y, color))
-                return true;
+    }
+
+    private void updateLegal() {
+        int point, legalFor;
+        for (int i = 0; i < nAffected; i++) {
+            point = affected[i];
+            // Points can be collected more than once
+            if (checked[point] == checkedI)
+                continue;
+            checked[point] = checkedI;
+            legalFor = getLegal(point);
+            setLegal(point, 0, (legalFor & BLACK) != 0);
+            setLegal(point, 1, (legalFor & WHITE) != 0);
         }
-        if (x - 1 >= 0 && seen[y][x - 1] != seenI && board[y][x - 1] == color) {
-            if (checkFree(x - 1, y, color))
-                return true;
+        checkedI++;
+        nAffected = 0;
+    }
+
+    private void setLegal(int point, int p, boolean isLegal) {
+        int w = p * W + (point >> 6);
+        long bit = 1L << point;
+        if (isLegal == ((legal[w] & bit) != 0))
+            return;
+        legal[w] ^= bit;
+        nLegal[p] += isLegal ? 1 : -1;
+    }
+
+    /**
+     * A move is legal if the new group has a liberty and no opponent group loses its last liberty.
+     * A neighbouring group always has the point as a liberty, so it is in atari if it has a single liberty.
+     *
+     * @return BLACK | WHITE for the players that can play at the point
+     */
+    private int getLegal(int point) {
+        if (board[point] != EMPTY)
+            return 0;
+        boolean freeB = false, freeW = false, captureB = false, captureW = false;
+        int nb;
+        for (int k = 0; k < 4; k++) {
+            nb = neighbours[point * 4 + k];
+            if (nb < 0)
+                continue;
+            if (board[nb] == EMPTY) {
+                freeB = freeW = true;
+            } else if (libCount[root[nb]] > 1) {
+                if (board[nb] == BLACK)
+                    freeB = true;
+                else
+                    freeW = true;
+            } else if (board[nb] == BLACK) {
+                captureW = true;
+            } else {
+                captureB = true;
+            }
+        }
+        return ((freeB && !captureB) ? BLACK : 0) | ((freeW && !captureW) ? WHITE : 0);
+    }
+
+    /**
+     * Initialize the zobrist numbers, they are shared by all boards of the same size
+     */
+    private static synchronized void initZobrist() {
+        if (zbnums != null && zbnums.length == SIZE * SIZE)
+            return;
+        Random rng = new Random();
+
+        // SIZE locations, 3 states for each location
+        long[][] nums = new long[SIZE * SIZE][3];
+
+        for (int i = 0; i < nums.length; i++) {
+            nums[i][0] = rng.nextLong();
+            nums[i][1] = rng.nextLong();
+            nums[i][2] = rng.nextLong();
         }
-        if (y + 1 < SIZE && seen[y + 1][x] != seenI && board[y + 1][x] == color) {
-            if (checkFree(x, y + 1, color))
-                return true;
+
+        whiteHash = rng.nextLong();
+        blackHash = rng.nextLong();
+        zbnums = nums;
+    }
+
+    @Override
+    public MoveList getExpandMoves() {
+        int count = generateMoves(intMoves);
+        MoveList moveList = new MoveList(count + 1);
+        for (int i = 0; i < count; i++) {
+            moveList.add(new Move(intMoves[i] % SIZE, intMoves[i] / SIZE));
         }
-        if (y - 1 >= 0 && seen[y - 1][x] != seenI && board[y - 1][x] == color) {
-            if (checkFree(x, y - 1, color))
-                return true;
+        return moveList;
+    }
+
+    /**
+     * Write all legal moves for the current player to the buffer, encoded as y * SIZE + x
+     *
+     * @return The number of legal moves
+     */
+    private int generateMoves(int[] moves) {
+        int count = 0, offset = (currentPlayer - 1) * W;
+        for (int w = 0; w < W; w++) {
+            for (long bits = legal[offset + w]; bits != 0; bits &= bits - 1)
+                moves[count++] = w * 64 + Long.numberOfTrailingZeros(bits);
         }
-        return false;
+        return count;
     }
 
     @Override
     public List<IMove> getPlayoutMoves(boolean heuristics) {
-        // The moves were already generated for a win-check
-        if (movesForPlayer == currentPlayer)
-            return po_Moves;
-
-        boolean free;
         po_Moves.clear();
-        int opp = getOpponent(currentPlayer);
-        for (int y = 0; y < SIZE; y++) {
-            for (int x = 0; x < SIZE; x++) {
-                if (board[y][x] == EMPTY) {
-                    board[y][x] = currentPlayer;
-                    seenI++;
-                    // Check the freedom of the position
-                    free = checkFree(x, y, currentPlayer);
-                    // Check the freedom of the surrounding positions
-                    if (free && x + 1 < SIZE && seen[y][x + 1] != seenI && board[y][x + 1] == opp) {
-                        free = checkFree(x + 1, y, board[y][x + 1]);
-                    }
-                    if (free && x - 1 >= 0 && seen[y][x - 1] != seenI && board[y][x - 1] == opp) {
-                        free = checkFree(x - 1, y, board[y][x - 1]);
-                    }
-                    if (free && y + 1 < SIZE && board[y + 1][x] == opp) {
-                        free = checkFree(x, y + 1, board[y + 1][x]);
-                    }
-                    if (free && y - 1 >= 0 && seen[y - 1][x] != seenI && board[y - 1][x] == opp) {
-                        free = checkFree(x, y - 1, board[y - 1][x]);
-                    }
-                    //
-                    if (free) {
-                        po_Moves.add(new Move(x, y));
-                    }
-                    board[y][x] = EMPTY;
-                }
-            }
+        int count = generateMoves(intMoves);
+        for (int i = 0; i < count; i++) {
+            po_Moves.add(new Move(intMoves[i] % SIZE, intMoves[i] / SIZE));
         }
         return po_Moves;
     }
 
+    @Override
+    public int getMaxPlayoutMoves() {
+        return SIZE * SIZE;
+    }
+
+    @Override
+    public int getPlayoutMoves(int[] moves, boolean heuristics) {
+        return generateMoves(moves);
+    }
+
+    @Override
+    public boolean doRandomMove(int player, boolean heuristics) {
+        int offset = (currentPlayer - 1) * W, k, count;
+        if (nLegal[currentPlayer - 1] == 0)
+            return false;
+        // Find the k-th legal move in the bitset
+        k = MCTSOptions.r.nextInt(nLegal[currentPlayer - 1]);
+        for (int w = 0; w < W; w++) {
+            long bits = legal[offset + w];
+            count = Long.bitCount(bits);
+            if (k >= count) {
+                k -= count;
+                continue;
+            }
+            for (; k > 0; k--)
+                bits &= bits - 1;
+            return doAIMove(w * 64 + Long.numberOfTrailingZeros(bits), player);
+        }
+        throw new RuntimeException("Number of legal moves does not match the legal moves");
+    }
+
     @Override
     public IBoard copy() {
         Board newBoard = new Board();
         newBoard.nMoves = nMoves;
         newBoard.currentPlayer = currentPlayer;
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                newBoard.board[i][j] = board[i][j];
-            }
-        }
+        System.arraycopy(board, 0, newBoard.board, 0, N);
+        System.arraycopy(root, 0, newBoard.root, 0, N);
+        System.arraycopy(next, 0, newBoard.next, 0, N);
+        System.arraycopy(size, 0, newBoard.size, 0, N);
+        System.arraycopy(libCount, 0, newBoard.libCount, 0, N);
+        System.arraycopy(libs, 0, newBoard.libs, 0, libs.length);
+        System.arraycopy(legal, 0, newBoard.legal, 0, legal.length);
+        newBoard.nLegal[0] = nLegal[0];
+        newBoard.nLegal[1] = nLegal[1];
         newBoard.zbHash = zbHash;
         return newBoard;
     }
 
-    @Override
-    public void undoMove() {
-        IMove move = movesMade.pop();
-        if (move == null)
-            throw new RuntimeException("Movesmade stack is empty.");
-
-        currentPlayer = getOpponent(currentPlayer);
-        int pos = (move.getMove()[1] * SIZE) + move.getMove()[0];
-        zbHash ^= zbnums[pos][currentPlayer];
-        board[move.getMove()[1]][move.getMove()[0]] = EMPTY;
-        zbHash ^= zbnums[pos][EMPTY];
-
-        hashCurrentPlayer();
-        nMoves--;
-        movesForPlayer = 0;
-    }
-
     @Override
     public int checkWin() {
-        movesForPlayer = 0;
-        getPlayoutMoves(false);
-        movesForPlayer = currentPlayer;
-        if (po_Moves.isEmpty())
+        if (nLegal[currentPlayer - 1] == 0)
             return getOpponent(currentPlayer);
         else
             return NONE_WIN;
@@ -275,15 +506,6 @@ public class Board implements IBoard {
         }
     }
 
-    private int getZbId(int r, int c) {
-        int id = (r * SIZE + c) * 3;
-        if (board[r][c] == P1)
-            id += 1;
-        else if (board[r][c] == P2)
-            id += 2;
-        return id;
-    }
-
     @Override
     public long hash() {
         return zbHash;
@@ -334,11 +556,11 @@ public class Board implements IBoard {
         String str = "";
         for (int r = 0; r < SIZE; r++) {
             for (int c = 0; c < SIZE; c++) {
-                if (board[r][c] == EMPTY)
+                if (board[r * SIZE + c] == EMPTY)
                     str += ".";
-                if (board[r][c] == BLACK)
+                if (board[r * SIZE + c] == BLACK)
                     str += "b";
-                if (board[r][c] == WHITE)
+                if (board[r * SIZE + c] == WHITE)
                     str += "w";
             }
             str += "\n";
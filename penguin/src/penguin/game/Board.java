@@ -4,18 +4,20 @@ import ai.MCTSOptions;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.RandomMoveBoard;
 import framework.util.FastTanh;
 import framework.util.StatCounter;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.Stack;
 
-public class Board implements IBoard {
-    private static final MoveList tempList = new MoveList(3);   // Temp move store for heuristic evaluation
-    private static final ArrayList<IMove> poMoves = new ArrayList<IMove>(5000);
-    private static final MoveList static_moves = new MoveList(5000);   // 64*6
+public class Board implements RandomMoveBoard {
+    // 4 penguins that can move in 6 directions, at most 7 floes far, or a pass
+    private static final int MAX_MOVES = 4 * 6 * 7 + 1;
+    private final ArrayList<IMove> poMoves = new ArrayList<IMove>(MAX_MOVES);
 
     //
     public int[][] board;
@@ -28,6 +30,8 @@ public class Board implements IBoard {
     private int floes1, floes2;
 
     private Stack<IMove> pastMoves;
+    // The squares of the penguins of the player to move, and the number of floes they can reach per direction
+    private final int[] penguins = new int[4], reach = new int[4 * 6];
 
     @Override
     public IBoard copy() {
@@ -215,58 +219,12 @@ public class Board implements IBoard {
 
     @Override
     public MoveList getExpandMoves() {
-        static_moves.clear();
-
-        //System.out.println("HERE + " + curPlayer + " " + placed1 + " " + placed2);
-
-        // add all moves using static_moves.add(new Move(...))
-        if ((curPlayer == 1 && placed1 != 4) || (curPlayer == 2 && placed2 != 4)) {
-            // player not done placing; search for all 1-fish floes            
-
-            for (int r = 0; r < 8; r++) {
-                for (int c = 0; c < rowSizes[r]; c++) {
-                    // can only place on 1-fish floes
-                    if (board[r][c] == 1)
-                        static_moves.add(new Move(r, c, 0, 0, Move.PLACE, 0));
-                }
-            }
-        } else {
-            // enumerate all moves
-            int base = curPlayer * 100;
-            boolean nomoves = true;
-
-            for (int r = 0; r < 8; r++) {
-                for (int c = 0; c < rowSizes[r]; c++) {
-                    // check for a piece belonging to curPlayer (e.g for player 1: 101, 102, 103)
-                    if (board[r][c] >= base && board[r][c] <= base + 3) {
-                        // now enumerate all the moves for this guy
-
-                        for (int dir = 1; dir <= 6; dir++) {
-                            int rp = r;
-                            int cp = c;
-
-                            while (true) {
-                                int newRow = nextRow(rp, cp, dir);
-                                int newCol = nextCol(rp, cp, dir);
-                                rp = newRow;
-                                cp = newCol;
-
-                                if (!inBounds(rp, cp) || isBlocked(rp, cp))
-                                    break;
-
-                                static_moves.add(new Move(r, c, rp, cp, Move.MOVE, board[r][c] % 100));
-                                nomoves = false;
-                            }
-                        }
-                    }
-                }
-            }
-
-            if (nomoves)
-                static_moves.add(new Move(0, 0, 0, 0, Move.PASS, 0));
-        }
-
-        return static_moves.copy();
+        // The expand moves are the play-out moves, collected in a list of their size
+        List<IMove> generated = getPlayoutMoves(false);
+        MoveList moves = new MoveList(generated.size() + 1);
+        for (int i = 0; i < generated.size(); i++)
+            moves.add(generated.get(i));
+        return moves;
     }
 
     private int nextRow(int r, int c, int dir) {
@@ -317,7 +275,7 @@ public class Board implements IBoard {
         //ArrayList<IMove> forced = new ArrayList<IMove>(); 
         //ArrayList<IMove> forced = null;
 
-        // at the moment, this is the same as getExpandMoves
+        // getExpandMoves returns a copy of these moves
 
         poMoves.clear();
 
@@ -371,6 +329,73 @@ public class Board implements IBoard {
         return poMoves;
     }
 
+    @Override
+    public boolean doRandomMove(int player, boolean heuristics) {
+        Random rnd = MCTSOptions.r;
+        int count = 0, k;
+        if ((curPlayer == 1 && placed1 != 4) || (curPlayer == 2 && placed2 != 4)) {
+            // Place on a random 1-fish floe
+            for (int r = 0; r < 8; r++)
+                for (int c = 0; c < rowSizes[r]; c++)
+                    if (board[r][c] == 1)
+                        count++;
+            if (count == 0)
+                return false;
+            k = rnd.nextInt(count);
+            for (int r = 0; r < 8; r++) {
+                for (int c = 0; c < rowSizes[r]; c++) {
+                    if (board[r][c] == 1 && k-- == 0)
+                        return doAIMove(new Move(r, c, 0, 0, Move.PLACE, 0), player);
+                }
+            }
+        }
+        // Count the floes every penguin can reach in every direction, no moves are created
+        int base = curPlayer * 100, nPenguins = 0, rp, cp, newRow;
+        for (int r = 0; r < 8; r++) {
+            for (int c = 0; c < rowSizes[r]; c++) {
+                if (board[r][c] >= base && board[r][c] <= base + 3) {
+                    penguins[nPenguins] = r * 8 + c;
+                    for (int dir = 1; dir <= 6; dir++) {
+                        int n = 0;
+                        rp = r;
+                        cp = c;
+                        while (true) {
+                            newRow = nextRow(rp, cp, dir);
+                            cp = nextCol(rp, cp, dir);
+                            rp = newRow;
+                            if (!inBounds(rp, cp) || isBlocked(rp, cp))
+                                break;
+                            n++;
+                        }
+                        reach[nPenguins * 6 + dir - 1] = n;
+                        count += n;
+                    }
+                    nPenguins++;
+                }
+            }
+        }
+        if (count == 0)
+            return doAIMove(new Move(0, 0, 0, 0, Move.PASS, 0), player);
+        // Find the k-th move, in the order of getPlayoutMoves
+        k = rnd.nextInt(count);
+        for (int i = 0; i < nPenguins * 6; i++) {
+            if (k >= reach[i]) {
+                k -= reach[i];
+                continue;
+            }
+            int r = penguins[i / 6] / 8, c = penguins[i / 6] % 8, dir = i % 6 + 1;
+            rp = r;
+            cp = c;
+            for (; k >= 0; k--) {
+                newRow = nextRow(rp, cp, dir);
+                cp = nextCol(rp, cp, dir);
+                rp = newRow;
+            }
+            return doAIMove(new Move(r, c, rp, cp, Move.MOVE, board[r][c] % 100), player);
+        }
+        throw new RuntimeException("Move not found");
+    }
+
     @Override
     public int getOpponent(int player) {
         return (3 - player);
@@ -5,6 +5,7 @@ import framework.AIPlayer;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveCallback;
+import framework.SearchStats;
 import pentalath.ai.Transposition;
 import pentalath.game.Board;
 import pentalath.game.Field;
@@ -41,7 +42,7 @@ public class AlphaBeta implements AIPlayer, Runnable {
     private double totalDepth, numMoves, researches;
     // Counters etc.
     private int maxDepth, nodes, collisions, timeCheck, myPlayer, opponent, bestMove, prevBestMove,
-            tt_lookups;
+            tt_lookups, tt_probes;
     private long endTime;
     private boolean forceHalt = false, parallel = true;
     // Transposition table, history, killer moves, butterfly board
@@ -49,6 +50,7 @@ public class AlphaBeta implements AIPlayer, Runnable {
     private int[][] history, bfboard;
     private int[][] killermove;
     private Thread t;
+    private SearchStats stats = new SearchStats();
     // Weights for the features
     // [0] Captures
     // [1] my longest row,
@@ -110,6 +112,10 @@ public class AlphaBeta implements AIPlayer, Runnable {
         return new Move(bestMove);
     }
 
+    public SearchStats getStats() {
+        return stats;
+    }
+
     @Override
     public void getMove(IBoard board, MoveCallback callback, int myPlayer, boolean parallel,
                         IMove lastMove) {
@@ -125,6 +131,7 @@ public class AlphaBeta implements AIPlayer, Runnable {
         bestMove = 0;
         maxDepth = 0;
         tt_lookups = 0;
+        tt_probes = 0;
         timeCheck = TIME_CHECK_INT;
         forceHalt = false;
         //
@@ -146,6 +153,8 @@ public class AlphaBeta implements AIPlayer, Runnable {
 
     @Override
     public void run() {
+        SearchStats stats = new SearchStats();
+        stats.start();
         killermove = new int[Board.SIZE][2];
         tt = new Transposition[TT_SIZE];
         // Decay the history values
@@ -223,6 +232,13 @@ public class AlphaBeta implements AIPlayer, Runnable {
             totalNodes += nodes;
             totalDepth += maxDepth;
         }
+        stats.nodes = nodes;
+        stats.maxDepth = maxDepth;
+        stats.ttLookups = tt_probes;
+        stats.ttHits = tt_lookups - collisions;
+        stats.ttCollisions = collisions;
+        stats.stop();
+        this.stats = stats;
         //
         System.out.println(":: Forced halt: " + forceHalt);
         System.out.println(":: TT Lookups: " + decForm.format(tt_lookups));
@@ -267,6 +283,7 @@ public class AlphaBeta implements AIPlayer, Runnable {
         if (transpositions) {
             // hashPos = getHashPos(board.zobristHash);
             tp = tt[hashPos];
+            tt_probes++;
             // Check if present in transposition table
             if (tp != null) {
                 tt_lookups++;
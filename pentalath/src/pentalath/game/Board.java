@@ -26,8 +26,7 @@ public class Board implements IBoard {
     public static final int FREE = 0;
     public static final int SIZE = 81, REAL_SIZE = 61, WIDTH = 9;
     public static final int NUM_NEIGHBOURS = 6, ROW_SIZE = 5;
-    public static final MoveList moves = new MoveList(REAL_SIZE);
-    public static final ArrayList<IMove> poMoves = new ArrayList<IMove>(REAL_SIZE);
+    private final ArrayList<IMove> poMoves = new ArrayList<IMove>(REAL_SIZE);
     //
     private static final int[] N_VECTOR_ODD = {-9, -8, +1, +10, +9, -1}, N_VECTOR_EVEN = {-10, -9, +1, +9, +8, -1};
     // Move ordering that starts at the centre and spirals outwards
@@ -299,7 +298,7 @@ public class Board implements IBoard {
     public MoveList getExpandMoves() {
         int count = (!firstMove) ? freeSquares : REAL_SIZE;
         int c = 0;
-        moves.clear();
+        MoveList moves = new MoveList(count + 1);
         //
         for (int i = 0; i < SIZE; i++) {
             if (board[i] == null)
@@ -312,7 +311,7 @@ public class Board implements IBoard {
                     break;
             }
         }
-        return moves.copy();
+        return moves;
     }
 
     @Override
@@ -646,24 +645,31 @@ public class Board implements IBoard {
         return SIZE * 2;
     }
 
+    /**
+     * Initialize the zobrist numbers, they are shared by all boards
+     */
+    private static synchronized void initZobrist() {
+        if (zobristPositions != null)
+            return;
+        long[][] positions = new long[SIZE][];
+        Random r = new Random();
+        for (int i = 0; i < SIZE; i++) {
+            if (occupancy[i] == 0)
+                continue;
+            // Generate a random number for each possible occupation
+            positions[i] = new long[2];
+            positions[i][P1 - 1] = r.nextLong();
+            positions[i][P2 - 1] = r.nextLong();
+        }
+        whiteHash = r.nextLong();
+        blackHash = r.nextLong();
+        zobristPositions = positions;
+    }
+
     @Override
     public void initialize() {
         nMoves = 0;
-        if (zobristPositions == null) {
-            zobristPositions = new long[SIZE][];
-            // Use the same seed every time
-            Random r = new Random();
-            for (int i = 0; i < SIZE; i++) {
-                if (occupancy[i] == 0)
-                    continue;
-                // Generate a random number for each possible occupation
-                zobristPositions[i] = new long[2];
-                zobristPositions[i][P1 - 1] = r.nextLong();
-                zobristPositions[i][P2 - 1] = r.nextLong();
-            }
-            whiteHash = r.nextLong();
-            blackHash = r.nextLong();
-        }
+        initZobrist();
         zobristHash = 0;
         currentPlayer = P1;
         zobristHash ^= whiteHash;
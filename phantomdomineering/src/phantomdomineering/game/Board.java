@@ -14,9 +14,10 @@ import java.util.List;
 
 public class Board implements FiniteBoard {
     private static final int EMPTY = 0;
-    private static final ArrayList<IMove> poMoves = new ArrayList<>(1000);
-    private static final MoveList static_moves = new MoveList(1000);
-    private static final IntHashMap<String> impossibles = new IntHashMap<>();
+    private final ArrayList<IMove> poMoves = new ArrayList<>();
+    private final List<IMove> allMoves = new ArrayList<>();
+    // Positions known not to lead to a determinization, shared by all copies of a game
+    private IntHashMap<String> impossibles;
     //
     private final int[][] board;
     private final int size;
@@ -44,6 +45,7 @@ public class Board implements FiniteBoard {
         newBoard.nMoves = nMoves;
         newBoard.currentPlayer = currentPlayer;
         newBoard.lastMoveBy = lastMoveBy;
+        newBoard.impossibles = impossibles;
         return newBoard;
     }
 
@@ -66,7 +68,7 @@ public class Board implements FiniteBoard {
 
     @Override
     public MoveList getExpandMoves() {
-        static_moves.clear();
+        MoveList moves = new MoveList(size * size);
         Move m;
         // Returns all moves in view of the current player.
         // This method assumes that the opponent's stones are not visible to the player
@@ -85,14 +87,13 @@ public class Board implements FiniteBoard {
                     }
                     // Add only the possible moves in view of my player
                     if (m != null && !blocked[currentPlayer - 1].contains(m))
-                        static_moves.add(m);
+                        moves.add(m);
                 }
             }
         }
-        return static_moves.copy();
+        return moves;
     }
 
-    private final static List<IMove> allMoves = new ArrayList<>();
     public List<IMove> getMoves(int player) {
         allMoves.clear();
         IMove m;
@@ -140,7 +141,7 @@ public class Board implements FiniteBoard {
             }
         }
         if (greedy) {
-            Collections.shuffle(poMoves);
+            Collections.shuffle(poMoves, MCTSOptions.r);
             for (IMove m1 : poMoves) {
                 x1 = m1.getMove()[0];
                 x2 = m1.getMove()[2];
@@ -244,7 +245,7 @@ public class Board implements FiniteBoard {
         currentPlayer = P1;
         blocked[0] = new ArrayList();
         blocked[1] = new ArrayList();
-        impossibles.clear();
+        impossibles = new IntHashMap<>();
     }
 
     @Override
@@ -319,7 +320,7 @@ public class Board implements FiniteBoard {
         // Determinize the gamestate
         if (removed > 0) {
             List<IMove> moves = getMoves(opp);
-            Collections.shuffle(moves);
+            Collections.shuffle(moves, MCTSOptions.r);
             List<IMove> moves1 = new ArrayList<>();
             // Shift all moves that coincide with observations to the front of the move list
             for (int i = 0; i < blocked[myPlayer - 1].size(); i++) {
@@ -363,11 +364,12 @@ public class Board implements FiniteBoard {
             if (board[y1][x1] == EMPTY && board[y2][x2] == EMPTY) {
                 board[y1][x1] = 3 - myPlayer;
                 board[y2][x2] = 3 - myPlayer;
-                if (!impossibles.exists(toString().hashCode(), toString())) {
+                String position = toString();
+                if (!isImpossible(position)) {
                     if (determinize(moves, removed - 2, myPlayer))
                         return true;
                     else
-                        impossibles.put(toString().hashCode(), toString());
+                        setImpossible(position);
                 }
                 board[y1][x1] = EMPTY;
                 board[y2][x2] = EMPTY;
@@ -376,6 +378,18 @@ public class Board implements FiniteBoard {
         return false;
     }
 
+    private boolean isImpossible(String position) {
+        synchronized (impossibles) {
+            return impossibles.exists(position.hashCode(), position);
+        }
+    }
+
+    private void setImpossible(String position) {
+        synchronized (impossibles) {
+            impossibles.put(position.hashCode(), position);
+        }
+    }
+
     private boolean checkDeterminization(int myPlayer) {
         if (checkWin() != NONE_WIN)
             return false;
@@ -5,6 +5,8 @@ import framework.AIPlayer;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveCallback;
+import framework.SearchStats;
+import framework.util.ThreadRandom;
 
 public class HISMCTSPlayer implements AIPlayer, Runnable {
 
@@ -16,6 +18,7 @@ public class HISMCTSPlayer implements AIPlayer, Runnable {
     private int myPlayer;
     //
     private MCTSOptions options;
+    private SearchStats stats = new SearchStats();
 
     @Override
     public void getMove(IBoard board, MoveCallback callback, int myPlayer, boolean parallel,
@@ -39,7 +42,7 @@ public class HISMCTSPlayer implements AIPlayer, Runnable {
         interrupted = false;
         if (parallel) {
             // Start the search in a new Thread.
-            Thread t = new Thread(this);
+            Thread t = new Thread(ThreadRandom.seeded(this));
             t.start();
         } else {
             run();
@@ -50,6 +53,8 @@ public class HISMCTSPlayer implements AIPlayer, Runnable {
     public void run() {
         if (options == null)
             throw new RuntimeException("MCTS Options not set.");
+        SearchStats stats = new SearchStats();
+        stats.start();
         // Make a new copy and determinization just in case :)
         IBoard b = board.copy();
         b.newDeterminization(myPlayer, false);
@@ -57,6 +62,9 @@ public class HISMCTSPlayer implements AIPlayer, Runnable {
         // Return the best move found
         ai.ISMCTS.TreeNode bestChild = root.getBestChild();
         bestMove = bestChild.getMove();
+        stats.simulations = (long) root.getnVisits();
+        stats.stop();
+        this.stats = stats;
         // show information on the best move
         if (options.debug) {
             for (ai.ISMCTS.TreeNode t : root.getChildren()) {
@@ -92,5 +100,10 @@ public class HISMCTSPlayer implements AIPlayer, Runnable {
     public IMove getBestMove() {
         return bestMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
 }
 
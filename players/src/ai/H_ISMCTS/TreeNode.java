@@ -49,7 +49,7 @@ public class TreeNode {
         expandAll(board, options);
         // A node for the hidden player in MO-ISMCTS
         if (board.poMoves() && !options.forceSO)
-            hiddenRoot = ai.ISMCTS.TreeNode.expand(board, new ArrayList<ai.ISMCTS.TreeNode>(), options, board.getOpponent(visiblePlayer));
+            hiddenRoot = new ai.ISMCTS.TreeNode(board.getPlayerToMove(), true, options);
 
         sSize = children.size();
         totS = children.size();
@@ -1,23 +1,33 @@
 package ai.ISMCTS;
 
 import ai.MCTSOptions;
+import ai.NodeBudget;
 import framework.AIPlayer;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveCallback;
+import framework.SearchStats;
+import framework.UndoableBoard;
 import framework.util.FastLog;
 import framework.util.StatCounter;
+import framework.util.ThreadRandom;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ISMCTSPlayer implements AIPlayer, Runnable {
 
-    private boolean interrupted = false, parallel = false;
-    public TreeNode root, root2;
+    private volatile boolean interrupted = false;
+    private boolean parallel = false;
     private IBoard board;
     private MoveCallback callback;
     private IMove bestMove;
     private int myPlayer;
     //
     private MCTSOptions options;
+    private SearchStats searchStats = new SearchStats();
 
     @Override
     public void getMove(IBoard board, MoveCallback callback, int myPlayer, boolean parallel,
@@ -29,15 +39,10 @@ public class ISMCTSPlayer implements AIPlayer, Runnable {
         this.callback = callback;
         this.myPlayer = myPlayer;
 
-        // Create a new root, or reuse the old tree
-        root = new TreeNode(myPlayer, options);
-        if (board.poMoves() && !options.forceSO)
-            root2 = new TreeNode(myPlayer, options);
-
         interrupted = false;
         if (parallel) {
             // Start the search in a new Thread.
-            Thread t = new Thread(this);
+            Thread t = new Thread(ThreadRandom.seeded(this));
             t.start();
         } else {
             run();
@@ -45,18 +50,24 @@ public class ISMCTSPlayer implements AIPlayer, Runnable {
     }
 
     double score = 0.;
-    int nd, simulations;
+    int nd;
+    // The simulations of all workers
+    final AtomicInteger simulations = new AtomicInteger();
     StatCounter[] stats;
     IBoard[] boards;
+    // Shared by the workers, every simulation copies it or one of the boards
+    private IBoard b;
+    private long endTime;
 
     @Override
     public void run() {
         if (options == null)
             throw new RuntimeException("MCTS Options not set.");
-        simulations = 0;
+        SearchStats searchStats = new SearchStats();
+        searchStats.start();
+        simulations.set(0);
         score = 0.;
-        IBoard playBoard;
-        IBoard b = board.copy();
+        b = board.copy();
         b.newDeterminization(myPlayer, false);
         nd = options.nDeterminizations;
         // Use bandit selection over the determinizations
@@ -79,55 +90,49 @@ public class ISMCTSPlayer implements AIPlayer, Runnable {
         }
 
         long startTime = System.currentTimeMillis();
-        long endTime = startTime + options.timeInterval;
+        endTime = startTime + options.timeInterval;
 
         if (options.fixedSimulations) {
             // 1 week search
             endTime += 7 * 24 * 60 * 60 * 1000;
         }
-        // Run the MCTS algorithm while time allows it
-        while (!interrupted) {
-            simulations++;
-            options.simsLeft--;
-            int selBoard = -1;
-            if (options.banditD) {
-                selBoard = selectBoard(simulations);
-                playBoard = boards[selBoard].copy();
-            } else {
-                if (options.limitD) {
-                    playBoard = boards[simulations % nd].copy();
-                } else {
-                    playBoard = b.copy();
-                    playBoard.newDeterminization(myPlayer, false);
-                }
+        // (Parallel) Every worker samples its own determinizations and searches its own tree(s),
+        // the first worker runs on this thread
+        Worker[] workers = new Worker[Math.max(1, options.ismctsWorkers)];
+        Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker();
+            if (i > 0) {
+                threads[i] = new Thread(ThreadRandom.seeded(workers[i]));
+                threads[i].start();
             }
-            int res;
-            if (!options.forceSO && playBoard.poMoves())
-                res = TreeNode.MCTS(playBoard, myPlayer, root, root2);
-            else
-                res = root.MCTS(playBoard, myPlayer);
-            //
-            if (options.banditD) {
-                int reward = (res == myPlayer) ? 1 : 0;
-                stats[selBoard].push(reward);
-                score += reward;
+        }
+        workers[0].run();
+        for (int i = 1; i < workers.length; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
             }
-
-            if (!options.fixedSimulations && System.currentTimeMillis() >= endTime)
-                break;
-            else if (options.fixedSimulations && simulations >= options.simulations)
-                break;
         }
+        for (Worker w : workers)
+            searchStats.add(w.searchStats);
 
         // Return the best move found
-        TreeNode bestChild = root.getBestChild();
+        TreeNode bestChild = selectBestChild(workers);
         bestMove = bestChild.getMove();
+        searchStats.simulations = simulations.get();
+        searchStats.stop();
+        this.searchStats = searchStats;
         // show information on the best move
         if (options.debug) {
             System.out.println("Player " + myPlayer);
-            System.out.println("Did " + simulations + " simulations");
+            System.out.println("Did " + simulations.get() + " simulations");
             System.out.println("Best child: " + bestChild);
-            System.out.println("Root visits: " + root.getnVisits());
+            double rootVisits = 0;
+            for (Worker w : workers)
+                rootVisits += w.root.getnVisits();
+            System.out.println("Root visits: " + rootVisits);
             //
             if (options.banditD) {
                 for (int i = 0; i < nd; i++) {
@@ -136,14 +141,158 @@ public class ISMCTSPlayer implements AIPlayer, Runnable {
                 }
             }
         }
-        root = null;
         // Release the board's memory
         board = null;
+        b = null;
+        boards = null;
         // Make the move in the GUI, if parallel
         if (!interrupted && parallel && callback != null)
             callback.makeMove(bestChild.getMove());
     }
 
+    /**
+     * Searches determinizations on its own information set tree(s)
+     */
+    private class Worker implements Runnable {
+        private final TreeNode root, root2;
+        private final SearchStats searchStats = new SearchStats();
+        // (Undoable boards) Copies of the determinizations, undone to the root after each simulation
+        private final boolean undo;
+        private final int rootMoves;
+        private IBoard undoBoard;
+        private IBoard[] undoBoards;
+
+        Worker() {
+            root = new TreeNode(myPlayer, options);
+            root2 = (board.poMoves() && !options.forceSO) ? new TreeNode(myPlayer, options) : null;
+            undo = b instanceof UndoableBoard;
+            rootMoves = b.getNMovesMade();
+            if (undo && (options.banditD || options.limitD))
+                undoBoards = new IBoard[nd];
+        }
+
+        @Override
+        public void run() {
+            IBoard playBoard;
+            TreeNode.setSearchStats(searchStats);
+            // (Node budget) The nodes in the tree(s), counted from the nodes added by the search
+            int nodes = (root2 != null) ? 2 : 1;
+            long counted = searchStats.nodes;
+            // Run the MCTS algorithm while time allows it
+            while (!interrupted) {
+                int simulation = simulations.incrementAndGet();
+                options.simsLeft--;
+                int selBoard = -1;
+                if (options.banditD) {
+                    synchronized (stats) {
+                        selBoard = selectBoard(simulation);
+                    }
+                    playBoard = determinization(selBoard);
+                } else {
+                    if (options.limitD) {
+                        playBoard = determinization(simulation % nd);
+                    } else {
+                        if (!undo)
+                            playBoard = b.copy();
+                        else if (undoBoard == null)
+                            playBoard = undoBoard = b.copy();
+                        else
+                            playBoard = undoBoard;
+                        // Resample the hidden information in place
+                        playBoard.newDeterminization(myPlayer, false);
+                    }
+                }
+                int res;
+                if (!options.forceSO && playBoard.poMoves())
+                    res = TreeNode.MCTS(playBoard, myPlayer, root, root2);
+                else
+                    res = root.MCTS(playBoard, myPlayer);
+                // Restore the board to the root
+                if (undo) {
+                    while (playBoard.getNMovesMade() > rootMoves)
+                        playBoard.undoMove();
+                }
+                //
+                if (options.banditD) {
+                    int reward = (res == myPlayer) ? 1 : 0;
+                    synchronized (stats) {
+                        stats[selBoard].push(reward);
+                        score += reward;
+                    }
+                }
+                if (options.maxNodes > 0) {
+                    nodes = boundTrees(nodes + (int) (searchStats.nodes - counted));
+                    counted = searchStats.nodes;
+                }
+
+                if (!options.fixedSimulations && System.currentTimeMillis() >= endTime)
+                    break;
+                else if (options.fixedSimulations && simulation >= options.simulations)
+                    break;
+            }
+            TreeNode.setSearchStats(null);
+        }
+
+        /**
+         * @return The i-th fixed determinization, copied, or the worker's copy if it is undone after each simulation
+         */
+        private IBoard determinization(int i) {
+            if (!undo)
+                return boards[i].copy();
+            if (undoBoards[i] == null)
+                undoBoards[i] = boards[i].copy();
+            return undoBoards[i];
+        }
+
+        /**
+         * (Node budget) Shrink the worker's tree(s) when they have grown past options.maxNodes.
+         * With two trees (MO-ISMCTS) the budget is shared, and both trees give up half of the nodes.
+         *
+         * @return The number of nodes left in the tree(s)
+         */
+        private int boundTrees(int nodes) {
+            int target = NodeBudget.excess(nodes, options.maxNodes), removed;
+            if (target == 0)
+                return nodes;
+            if (root2 != null)
+                removed = root.evict(target / 2) + root2.evict(target - target / 2);
+            else
+                removed = root.evict(target);
+            if (options.debug)
+                System.out.println("Node budget reached, removed " + removed + " of " + nodes + " nodes");
+            return nodes - removed;
+        }
+    }
+
+    /**
+     * (Parallel) Select the move with the most visits in the trees of all workers
+     */
+    private TreeNode selectBestChild(Worker[] workers) {
+        if (workers.length == 1)
+            return workers[0].root.getBestChild();
+        // The children of the workers are merged by the unique id of their move
+        Map<Integer, Double> visits = new LinkedHashMap<>();
+        Map<Integer, TreeNode> nodes = new HashMap<>();
+        for (Worker w : workers) {
+            for (TreeNode c : w.root.getChildren()) {
+                int move = c.getMove().getUniqueId();
+                Double v = visits.get(move);
+                visits.put(move, (v == null) ? c.getnVisits() : v + c.getnVisits());
+                if (!nodes.containsKey(move))
+                    nodes.put(move, c);
+            }
+        }
+        Integer best = null;
+        for (Integer move : visits.keySet()) {
+            if (best == null || visits.get(move) > visits.get(best))
+                best = move;
+            // For debugging, print the merged visits
+            if (options.debug)
+                System.out.println(nodes.get(move).getMove() + "\tVisits: " + visits.get(move));
+        }
+        return nodes.get(best);
+    }
+
     private int selectBoard(int totSim) {
         int selected = -1;
         double max = Integer.MIN_VALUE, uctV;
@@ -163,10 +312,10 @@ public class ISMCTSPlayer implements AIPlayer, Runnable {
                     uctV = 1. - stats[i].mean();
                     break;
                 case 4:
-                    uctV = stats[i].mean() - (score / (double) simulations);
+                    uctV = stats[i].mean() - (score / (double) simulations.get());
                     break;
                 case 5:
-                    uctV = (score / (double) simulations) - stats[i].mean();
+                    uctV = (score / (double) simulations.get()) - stats[i].mean();
                     break;
                 case 6:
                     uctV = 1. - stats[i].variance();
@@ -189,7 +338,6 @@ public class ISMCTSPlayer implements AIPlayer, Runnable {
 
     @Override
     public void newGame(int myPlayer, String game) {
-        root = new TreeNode(myPlayer, options);
     }
 
     @Override
@@ -201,5 +349,10 @@ public class ISMCTSPlayer implements AIPlayer, Runnable {
     public IMove getBestMove() {
         return bestMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return searchStats;
+    }
 }
 
@@ -1,21 +1,33 @@
 package ai.ISMCTS;
 
 import ai.MCTSOptions;
+import ai.NodeBudget;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.RandomMoveBoard;
+import framework.SearchStats;
 import framework.util.FastLog;
 import framework.util.NPlayerStats;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class TreeNode {
+public class TreeNode implements NodeBudget.Node<TreeNode> {
+    // The statistics of the search thread, set by the player before searching
+    private static final ThreadLocal<SearchStats> searchStats = new ThreadLocal<SearchStats>();
+    // Key of the hidden-move node in the child index
+    private static final int HIDDEN_KEY = -1;
     public int nPrime = 0, playerToMove;
     private final boolean hiddenMove;
     private final MCTSOptions options;
     public NPlayerStats stats; // Stats per player
     private ArrayList<TreeNode> children;
+    // The children indexed by the unique id of their move and their player to move (open addressing)
+    private int[] childKeys, childSlots;
+    // The children that are legal in the determinization of the current simulation, set by expand
+    private long[] legal;
     private IMove move;
     private boolean simulated = false;
 
@@ -54,7 +66,7 @@ public class TreeNode {
         if (children == null)
             children = new ArrayList<>();
         // Expand returns an expanded leaf if any was added to the tree
-        TreeNode child = expand(board, children, options, visiblePlayer);
+        TreeNode child = expand(board, visiblePlayer);
         // Select the best child, if we didn't find a winning position in the expansion
         int result = board.checkWin();
         boolean isTerminal = (result != IBoard.NONE_WIN);
@@ -71,7 +83,8 @@ public class TreeNode {
                     hMove = ml.get(MCTSOptions.r.nextInt(ml.size()));
                 board.doAIMove(hMove, board.getPlayerToMove());
             } else {
-                if(!board.isLegal(child.getMove()) || board.getPlayerToMove() != child.playerToMove)
+                // Expand only selects legal children
+                if (board.getPlayerToMove() != child.playerToMove)
                     throw new RuntimeException("Invalid move!");
                 // Perform the move
                 board.doAIMove(child.getMove(), board.getPlayerToMove());
@@ -99,8 +112,8 @@ public class TreeNode {
 
         // Expand returns an expanded leaf if any was added to the tree
         TreeNode child, child1, child2;
-        child1 = node1.expand(board, node1.children, node1.options, visiblePlayer);
-        child2 = node2.expand(board, node2.children, node2.options, board.getOpponent(visiblePlayer));
+        child1 = node1.expand(board, visiblePlayer);
+        child2 = node2.expand(board, board.getOpponent(visiblePlayer));
         // Select the best child, if we didn't find a winning position in the expansion
         int result = board.checkWin();
         boolean isTerminal = (result != IBoard.NONE_WIN);
@@ -115,7 +128,8 @@ public class TreeNode {
                 child = child1;
             else
                 child = child2;
-            if(!board.isLegal(child.getMove()) || board.getPlayerToMove() != child.playerToMove)
+            // Expand only selects legal children
+            if (board.getPlayerToMove() != child.playerToMove)
                 throw new RuntimeException("Invalid move!");
             // Perform the move
             board.doAIMove(child.getMove(), board.getPlayerToMove());
@@ -138,19 +152,20 @@ public class TreeNode {
     }
 
     /**
-     * Adds a single node to the tree
+     * Adds a single node to the tree, and marks the children that are legal in the board's determinization
      *
      * @param board The Board
      * @return The expanded node
      */
-    public static TreeNode expand(IBoard board, List<TreeNode> children, MCTSOptions options, int visiblePlayer) {
+    private TreeNode expand(IBoard board, int visiblePlayer) {
         if (board.poMoves() && board.getPlayerToMove() != visiblePlayer) {
-            for (TreeNode c : children)
-                if (c.hiddenMove)
-                    return c;
+            int c = findChild(HIDDEN_KEY);
+            if (c >= 0)
+                return children.get(c);
             // The aggregate node for the hidden player was not yet made
             TreeNode newNode = new TreeNode(board.getPlayerToMove(), true, options);
-            children.add(newNode);
+            addChild(newNode);
+            countNode();
             return newNode;
         }
         // Generate all moves
@@ -160,52 +175,133 @@ public class TreeNode {
         // Board is terminal, don't expand
         if (winner != IBoard.NONE_WIN)
             return null;
+        int words = (children.size() + moves.size() + 63) >>> 6;
+        if (legal == null || legal.length < words)
+            legal = new long[words];
+        else
+            Arrays.fill(legal, 0L);
         // Add all moves as children to the current node
         for (int i = 0; i < moves.size(); i++) {
-            boolean exists = false;
+            IMove move = moves.get(i);
             // Check here if the move is already in tree
-            for (TreeNode node : children) {
-                if (board.poMoves() && node.hiddenMove)
-                    continue;
-                if (node.move.equals(moves.get(i)) && node.playerToMove == board.getPlayerToMove()) {
-                    exists = true;
-                    break;
-                }
-            }
+            int c = findChild(key(move, board.getPlayerToMove()));
             // Add the node to the tree if it didn't exist
-            if (!exists) {
-                TreeNode newNode = new TreeNode(board.getPlayerToMove(), moves.get(i), options);
-                children.add(newNode);
+            if (c < 0) {
+                TreeNode newNode = new TreeNode(board.getPlayerToMove(), move, options);
+                c = addChild(newNode);
+                countNode();
                 //
-                if (board.isLegal(moves.get(i))) {
+                if (board.isLegal(move)) {
                     newNode.nPrime++;
                     return newNode;
                 }
+            } else if (board.isLegal(move)) {
+                legal[c >>> 6] |= 1L << c;
             }
         }
         // No (legal) node was added to the tree
         return null;
     }
 
+    private static int key(IMove move, int player) {
+        return (move.getUniqueId() << 1) | (player - 1);
+    }
+
+    private static int key(TreeNode node) {
+        return node.hiddenMove ? HIDDEN_KEY : key(node.move, node.playerToMove);
+    }
+
+    /**
+     * @return The index of the child with the given key, or -1 if it is not in the tree
+     */
+    private int findChild(int key) {
+        if (childSlots == null)
+            return -1;
+        int mask = childSlots.length - 1;
+        for (int i = slot(key, mask); childSlots[i] != 0; i = (i + 1) & mask) {
+            if (childKeys[i] == key)
+                return childSlots[i] - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index of the new child
+     */
+    private int addChild(TreeNode node) {
+        children.add(node);
+        if (childSlots == null || 2 * children.size() > childSlots.length) {
+            // Keep the index at most half full
+            int size = 8;
+            while (size < 4 * children.size())
+                size <<= 1;
+            childKeys = new int[size];
+            childSlots = new int[size];
+            for (int i = 0; i < children.size(); i++)
+                index(key(children.get(i)), i);
+        } else {
+            index(key(node), children.size() - 1);
+        }
+        return children.size() - 1;
+    }
+
+    private void index(int key, int child) {
+        int mask = childSlots.length - 1, i = slot(key, mask);
+        while (childSlots[i] != 0)
+            i = (i + 1) & mask;
+        childKeys[i] = key;
+        childSlots[i] = child + 1;
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * (Node budget) Remove all children, and their index
+     */
+    @Override
+    public void collapse() {
+        children = null;
+        childKeys = null;
+        childSlots = null;
+        legal = null;
+    }
+
+    private static void countNode() {
+        SearchStats searchStats = TreeNode.searchStats.get();
+        if (searchStats != null)
+            searchStats.nodes++;
+    }
+
+    /**
+     * Set the statistics that the searches on the current thread are counted in, null to stop counting
+     */
+    public static void setSearchStats(SearchStats stats) {
+        searchStats.set(stats);
+    }
+
     private TreeNode select(IBoard board) {
-        TreeNode selected = null;
+        TreeNode selected = null, c;
         double bestValue = Double.NEGATIVE_INFINITY, uctValue;
         // Select a child according to the UCT Selection policy
-        for (TreeNode c : children) {
-            // If the game is partially observable, moves in the tree may not be legal
-            if (board.getPlayerToMove() != c.playerToMove || !board.isLegal(c.getMove()))
-                continue;
-            // First, visit all children at least once
-            if (c.getnVisits() == 0)
-                uctValue = 100. + MCTSOptions.r.nextDouble();
-            else
-                uctValue = c.stats.mean(board.getPlayerToMove()) + options.uctC * Math.sqrt(FastLog.log(c.nPrime) / c.getnVisits());
-            // Number of times this node was available
-            c.nPrime++;
-            // Remember the highest UCT value
-            if (uctValue > bestValue) {
-                selected = c;
-                bestValue = uctValue;
+        for (int w = 0; w < legal.length; w++) {
+            // If the game is partially observable, moves in the tree may not be legal, expand marked the legal ones
+            for (long bits = legal[w]; bits != 0; bits &= bits - 1) {
+                c = children.get((w << 6) + Long.numberOfTrailingZeros(bits));
+                // First, visit all children at least once
+                if (c.getnVisits() == 0)
+                    uctValue = 100. + MCTSOptions.r.nextDouble();
+                else
+                    uctValue = c.stats.mean(board.getPlayerToMove()) + options.uctC * Math.sqrt(FastLog.log(c.nPrime) / c.getnVisits());
+                // Number of times this node was available
+                c.nPrime++;
+                // Remember the highest UCT value
+                if (uctValue > bestValue) {
+                    selected = c;
+                    bestValue = uctValue;
+                }
             }
         }
         return selected;
@@ -216,6 +312,16 @@ public class TreeNode {
         List<IMove> moves;
         IMove currentMove;
         while (winner == IBoard.NONE_WIN) {
+            // Let the board draw the move if it can
+            if (board instanceof RandomMoveBoard) {
+                if (!((RandomMoveBoard) board).doRandomMove(board.getPlayerToMove(), options.useHeuristics)) {
+                    // The player to move has no moves left
+                    winner = board.noMovesIsDraw() ? IBoard.DRAW : board.getOpponent(board.getPlayerToMove());
+                    break;
+                }
+                winner = board.checkPlayoutWin();
+                continue;
+            }
             moves = board.getPlayoutMoves(options.useHeuristics);
             currentMove = moves.get(MCTSOptions.r.nextInt(moves.size()));
             // Check if the move can be made, otherwise remove it from the list
@@ -253,6 +359,19 @@ public class TreeNode {
         return children;
     }
 
+    /**
+     * (Node budget) Remove the least visited subtrees below this node, see NodeBudget.evict
+     *
+     * @return The number of nodes removed
+     */
+    public int evict(int nodes) {
+        return NodeBudget.evict(this, nodes);
+    }
+
+    public boolean isLeaf() {
+        return children == null || children.isEmpty();
+    }
+
     public IMove getMove() {
         return move;
     }
@@ -1,12 +1,14 @@
 package ai;
 
 import framework.util.Covariance;
+import framework.util.StatCounter;
+import framework.util.ThreadRandom;
 
 import java.util.Random;
 
 public class MCTSOptions {
-    // Initialize a random generator, separate for each MCTS player
-    public static final Random r = new Random();
+    // Random numbers are drawn from a separate generator for each (search) thread
+    public static final Random r = new ThreadRandom();
     private static int instances = 0;
     // Sliding-window UCT
     public int tempSims, minSWDepth = 2, maxSWDepth = 3;
@@ -15,6 +17,10 @@ public class MCTSOptions {
     // Relative bonus!
     public boolean relativeBonus = false, qualityBonus = false, fullQuality = false;
     public Covariance moveCov = new Covariance(), qualityCov = new Covariance(), moveCov1 = new Covariance();
+    // Play-out length and quality per winner, kept per player so concurrent games do not share them
+    public final StatCounter[] moveStats = {new StatCounter(), new StatCounter()};
+    public final StatCounter[] qualityStats = {new StatCounter(), new StatCounter()};
+    public int bonusPlayer = 0; // The player at the root, whose wins are correlated with the quality
     public double kr = 2.0, kq = 2.0;
     // note: useHeuristics has a different default (false) when using SimGame
     public boolean debug = true, useHeuristics = true, solverFix = true, fixedSimulations = false, treeReuse = false, solver = true;
@@ -29,11 +35,13 @@ public class MCTSOptions {
     public double lambda = .999999;
     public int timeInterval = 1000, simulations = 100000, simsLeft;
     public int nDeterminizations = 10;
+    public int ismctsWorkers = 1; // (ISMCTS) threads that search their own determinizations and trees, merged at the root
     public boolean limitD = false;
     // Successive Rejects
     public int rc = 2, bl = 5;
     public double bp_range = .5;
     public boolean remove = true, stat_reset = false, shot = false;
+    public int budgetThreads = 1; // (SHOT, H-MCTS) threads that search the children's budgets of a round in parallel
     public boolean rec_halving = false, max_back = false, range_back = false, UBLB = false;
     // MAST stuff
     public boolean history = false, to_history = false; // Set this to true to keep track of all results
@@ -44,6 +52,18 @@ public class MCTSOptions {
     public int nResamples = 5, totalResamples = 0;
     //
     public boolean hybrid = false;
+    // Parallel search, either root-parallel (a tree per thread) or tree-parallel (one shared tree)
+    public int nThreads = 4;
+    public boolean treeParallel = false;
+    public double virtualLoss = 1.;             // (Tree-parallel) value of a loss counted per thread in a subtree
+    public boolean nodePool = false;            // (Root-parallel) store the trees in arrays (PooledTree) instead of TreeNodes
+    public boolean lazyExpansion = false;       // Create the children of a node when they are first selected
+    public int leafPlayouts = 1;                // (Leaf-parallel) play-outs per new leaf, averaged, run by a worker pool
+    public double reuseDecay = 1.;              // (Tree reuse) the visits kept from the previous search are multiplied by this
+    public int reuseMaxNodes = 250000;          // (Tree reuse) the nodes kept per tree, the deepest are removed first
+    public boolean ponder = false;              // Search below our move on the opponent's time, in the reused trees or the TT
+    public int maxNodes = 0;                    // Node budget per tree, least visited subtrees are removed (0 = unbounded)
+    public boolean timePhases = false;          // Measure the time spent in selection, expansion, play-out and backprop
     // Marc's stuff (mostly for implicit minimax)
     public boolean earlyEval = false;           // enable dropping down to evaluation function in playouts?
     public int pdepth = 4;                        // number of moves in playout before dropping down to eval func
@@ -91,7 +111,7 @@ public class MCTSOptions {
      */
     public void setGame(String game) {
         rc = 2;
-        if (game.equalsIgnoreCase("amazons")) {
+        if (game.toLowerCase().startsWith("amazons")) {
             uctC = .4;
 //            if (hybrid)
 //                uctC = 0.25;
@@ -100,7 +120,7 @@ public class MCTSOptions {
             // Bonus constants
             kr = 2.2;
             kq = 1.6;
-        } else if (game.equalsIgnoreCase("breakthrough")) {
+        } else if (game.toLowerCase().startsWith("breakthrough")) {
             uctC = .8;
 //            if (hybrid)
 //                uctC = .65;
@@ -149,7 +169,7 @@ public class MCTSOptions {
             nDeterminizations = 250;
         } else if (game.equalsIgnoreCase("kalah")) {
             uctC = 1.;
-        } else if (game.equalsIgnoreCase("checkers")) {
+        } else if (game.toLowerCase().startsWith("checkers")) {
             // Bonus constants
             kr = 2.8;
             kq = 2.0;
@@ -180,7 +200,7 @@ public class MCTSOptions {
                 tempSims = simulations;
             else
                 tempSims = 14 * timeInterval;
-        } else if (game.equalsIgnoreCase("checkers")) {
+        } else if (game.toLowerCase().startsWith("checkers")) {
             if (fixedSimulations)
                 tempSims = simulations;
             else
@@ -195,12 +215,12 @@ public class MCTSOptions {
                 tempSims = simulations;
             else
                 tempSims = 21 * timeInterval;
-        } else if (game.equalsIgnoreCase("amazons")) {
+        } else if (game.toLowerCase().startsWith("amazons")) {
             if (fixedSimulations)
                 tempSims = simulations;
             else
                 tempSims = 3 * timeInterval;
-        } else if (game.equalsIgnoreCase("breakthrough")) {
+        } else if (game.toLowerCase().startsWith("breakthrough")) {
             if (fixedSimulations)
                 tempSims = simulations;
             else
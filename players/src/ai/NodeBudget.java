@@ -0,0 +1,91 @@
+package ai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * (Node budget) Removes the least visited subtrees of the search trees built from object nodes,
+ * used when MCTSOptions.maxNodes is set.
+ */
+public final class NodeBudget {
+
+    /**
+     * A node of a search tree whose subtrees can be removed
+     */
+    public interface Node<N extends Node<N>> {
+        List<N> getChildren();
+
+        boolean isLeaf();
+
+        double getnVisits();
+
+        /**
+         * Remove the node's children, they are created again when the node is selected
+         */
+        void collapse();
+    }
+
+    // The least visited nodes are removed first
+    private static final Comparator<Node<?>> BY_VISITS = new Comparator<Node<?>>() {
+        @Override
+        public int compare(Node<?> o1, Node<?> o2) {
+            return Double.compare(o1.getnVisits(), o2.getnVisits());
+        }
+    };
+
+    private NodeBudget() {
+    }
+
+    /**
+     * A quarter of the budget is freed whenever it is exceeded, so the tree is not traversed after every simulation
+     *
+     * @return The number of nodes to remove from a tree of the given size, 0 if it fits the budget
+     */
+    public static int excess(int nodes, int maxNodes) {
+        return (nodes <= maxNodes) ? 0 : nodes - maxNodes + maxNodes / 4;
+    }
+
+    /**
+     * Remove the children of the least visited nodes whose children are all leaves, until at least the given
+     * number of nodes is removed. The root's own children are kept. No search may be running on the tree.
+     *
+     * @return The number of nodes removed
+     */
+    public static <N extends Node<N>> int evict(N root, int nodes) {
+        int removed = 0, pass;
+        do {
+            List<N> frontier = new ArrayList<N>();
+            if (root.getChildren() != null) {
+                for (N c : root.getChildren())
+                    collectFrontier(c, frontier);
+            }
+            Collections.sort(frontier, BY_VISITS);
+            pass = 0;
+            for (int i = 0; i < frontier.size() && removed + pass < nodes; i++) {
+                pass += frontier.get(i).getChildren().size();
+                frontier.get(i).collapse();
+            }
+            removed += pass;
+        } while (pass > 0 && removed < nodes);
+        return removed;
+    }
+
+    /**
+     * Collect the nodes below and including the given node whose children are all leaves
+     */
+    private static <N extends Node<N>> void collectFrontier(N node, List<N> frontier) {
+        if (node.isLeaf() || node.getChildren().isEmpty())
+            return;
+        boolean leaves = true;
+        for (N c : node.getChildren()) {
+            if (!c.isLeaf()) {
+                leaves = false;
+                collectFrontier(c, frontier);
+            }
+        }
+        if (leaves)
+            frontier.add(node);
+    }
+}
@@ -1,10 +1,13 @@
 package ai.SRCRMCTS;
 
 import ai.MCTSOptions;
+import ai.NodeBudget;
 import framework.AIPlayer;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveCallback;
+import framework.SearchStats;
+import framework.util.ThreadRandom;
 
 public class SRCRMCTSPlayer implements AIPlayer, Runnable {
     private boolean interrupted = false, parallel = true;
@@ -13,6 +16,7 @@ public class SRCRMCTSPlayer implements AIPlayer, Runnable {
     private MoveCallback callback;
     private IMove bestMove;
     private int myPlayer, nMoves = 0;
+    private SearchStats stats = new SearchStats();
     // Fields that must be set
     private MCTSOptions options = null;
     private SelectionPolicy selectionPolicy = null;
@@ -61,7 +65,7 @@ public class SRCRMCTSPlayer implements AIPlayer, Runnable {
         interrupted = false;
         if (parallel) {
             // Start the search in a new Thread.
-            Thread t = new Thread(this);
+            Thread t = new Thread(ThreadRandom.seeded(this));
             t.start();
         } else {
             run();
@@ -72,7 +76,8 @@ public class SRCRMCTSPlayer implements AIPlayer, Runnable {
     public void run() {
         if (options == null)
             throw new RuntimeException("MCTS Options not set.");
-
+        SearchStats stats = new SearchStats();
+        stats.start();
         int simulations = 0;
 
         boolean qb = options.qualityBonus;
@@ -86,6 +91,10 @@ public class SRCRMCTSPlayer implements AIPlayer, Runnable {
         if (sw && nMoves == 0)
             options.swUCT = false;
 
+        TreeNode.setSearchStats(stats);
+        // (Node budget) The nodes in the tree, counted from the nodes added by the search
+        int nodes = (options.maxNodes > 0) ? root.countNodes() : 1;
+        long counted = stats.nodes;
         if (!options.fixedSimulations) {
             // Search for timeInterval seconds
             long endTime = System.currentTimeMillis() + options.timeInterval;
@@ -100,6 +109,10 @@ public class SRCRMCTSPlayer implements AIPlayer, Runnable {
                 // Make one simulation from root to leaf.
                 if (root.MCTS(board, 0) == TreeNode.INF)
                     break; // Break if you find a winning move
+                if (options.maxNodes > 0) {
+                    nodes = boundTree(nodes + (int) (stats.nodes - counted));
+                    counted = stats.nodes;
+                }
             }
             options.tempSims = simulations + (int) (0.1 * simulations);
             options.simsLeft = options.tempSims;
@@ -114,11 +127,19 @@ public class SRCRMCTSPlayer implements AIPlayer, Runnable {
                 // Make one simulation from root to leaf.
                 if (root.MCTS(board, 0) == TreeNode.INF)
                     break; // Break if you find a winning move
+                if (options.maxNodes > 0) {
+                    nodes = boundTree(nodes + (int) (stats.nodes - counted));
+                    counted = stats.nodes;
+                }
             }
         }
+        TreeNode.setSearchStats(null);
         // Return the best move found
         TreeNode bestChild = selectionPolicy.selectBestMove(root);
         bestMove = bestChild.getMove();
+        stats.simulations = simulations;
+        stats.stop();
+        this.stats = stats;
         // show information on the best move
         if (options.debug) {
             System.out.println("Player " + myPlayer);
@@ -156,6 +177,21 @@ public class SRCRMCTSPlayer implements AIPlayer, Runnable {
             callback.makeMove(bestChild.getMove());
     }
 
+    /**
+     * (Node budget) Shrink the tree when the simulations have grown it past options.maxNodes
+     *
+     * @return The number of nodes left in the tree
+     */
+    private int boundTree(int nodes) {
+        int target = NodeBudget.excess(nodes, options.maxNodes);
+        if (target == 0)
+            return nodes;
+        int removed = root.evict(target);
+        if (options.debug)
+            System.out.println("Node budget reached, removed " + removed + " of " + nodes + " nodes");
+        return nodes - removed;
+    }
+
     public void setSelectionPolicy(SelectionPolicy selectionPolicy) {
         this.selectionPolicy = selectionPolicy;
     }
@@ -191,5 +227,10 @@ public class SRCRMCTSPlayer implements AIPlayer, Runnable {
     public IMove getBestMove() {
         return bestMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
 }
 
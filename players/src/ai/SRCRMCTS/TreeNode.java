@@ -1,9 +1,12 @@
 package ai.SRCRMCTS;
 
 import ai.MCTSOptions;
+import ai.NodeBudget;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.RandomMoveBoard;
+import framework.SearchStats;
 import framework.util.FastSigm;
 import framework.util.StatCounter;
 
@@ -12,12 +15,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
 
-public class TreeNode {
+public class TreeNode implements NodeBudget.Node<TreeNode> {
     public static final double INF = 999999;
     private static final Stack<IMove> movesMade = new Stack<IMove>();
     public static StatCounter[] moveStats = {new StatCounter(), new StatCounter()};
     public static StatCounter[] qualityStats = {new StatCounter(), new StatCounter()};
     public static int myPlayer = 0;
+    // The statistics of the search thread, set by the player before searching
+    private static final ThreadLocal<SearchStats> searchStats = new ThreadLocal<SearchStats>();
     //
     private final MCTSOptions options;
     private final SelectionPolicy selectionPolicy;
@@ -137,7 +142,7 @@ public class TreeNode {
         MoveList moves = board.getExpandMoves();
         if (children == null)
             children = new ArrayList<TreeNode>(moves.size());
-        int winner;
+        int winner, nChildren = children.size();
         double value;
 
         // Add all moves as children to the current node
@@ -164,10 +169,20 @@ public class TreeNode {
                 board.undoMove();
             }
         }
+        SearchStats searchStats = TreeNode.searchStats.get();
+        if (searchStats != null)
+            searchStats.nodes += children.size() - nChildren;
         // If one of the nodes is a win, return it.
         return winNode;
     }
 
+    /**
+     * Set the statistics that the searches on the current thread are counted in, null to stop counting
+     */
+    public static void setSearchStats(SearchStats stats) {
+        searchStats.set(stats);
+    }
+
     private int chooseEGreedyEval(IBoard board, List<IMove> moves, int currentPlayer) {
         double roll = MCTSOptions.r.nextDouble();
         double tolerance = 0.0001;
@@ -215,19 +230,26 @@ public class TreeNode {
         boolean gameEnded, moveMade;
         int currentPlayer = board.getPlayerToMove(), moveIndex = -1;
         double mastMax, mastVal, nMoves = 0;
-        List<IMove> moves;
+        List<IMove> moves = null;
         int winner = board.checkWin();
         gameEnded = (winner != IBoard.NONE_WIN);
         IMove currentMove;
         boolean terminateEarly = false;
+        // Let the board draw the moves if it can, epsilon-greedy and MAST play-outs need all moves
+        RandomMoveBoard rBoard = null;
+        if (board instanceof RandomMoveBoard && !options.epsGreedyEval && !(options.useHeuristics && options.MAST))
+            rBoard = (RandomMoveBoard) board;
         while (!gameEnded && !terminateEarly) {
 
-            moves = board.getPlayoutMoves(options.useHeuristics);
+            if (rBoard == null)
+                moves = board.getPlayoutMoves(options.useHeuristics);
             moveMade = false;
 
             while (!moveMade) {
+                if (rBoard != null)
+                    moveMade = rBoard.doRandomMove(currentPlayer, options.useHeuristics);
                 // All moves were thrown away, the game is a draw
-                if (moves.size() == 0) {
+                if ((rBoard != null) ? !moveMade : moves.size() == 0) {
                     gameEnded = true;
                     // The current player has no moves left
                     if (board.noMovesIsDraw())
@@ -238,7 +260,9 @@ public class TreeNode {
                 }
 
                 // Select a move from the available ones
-                if (options.epsGreedyEval) {
+                if (rBoard != null) {
+                    moveIndex = -1;
+                } else if (options.epsGreedyEval) {
                     // If epsilon greedy play-outs, choose the highest eval
                     moveIndex = chooseEGreedyEval(board, moves, currentPlayer);
                 } else if (options.useHeuristics && options.MAST && MCTSOptions.r.nextDouble() < (1. - options.mastEps)) {
@@ -256,9 +280,9 @@ public class TreeNode {
                     // Choose randomly
                     moveIndex = MCTSOptions.r.nextInt(moves.size());
                 }
-                currentMove = moves.get(moveIndex);
+                currentMove = (rBoard != null) ? null : moves.get(moveIndex);
                 // Check if the move can be made, otherwise remove it from the list
-                if (board.doAIMove(currentMove, currentPlayer)) {
+                if (moveMade || board.doAIMove(currentMove, currentPlayer)) {
 
                     nMoves++;
                     moveMade = true;
@@ -354,6 +378,36 @@ public class TreeNode {
         return children;
     }
 
+    /**
+     * @return The number of nodes in the tree below and including this node
+     */
+    public int countNodes() {
+        int nodes = 1;
+        if (children != null) {
+            for (TreeNode c : children)
+                nodes += c.countNodes();
+        }
+        return nodes;
+    }
+
+    /**
+     * (Node budget) Remove the least visited subtrees below this node, see NodeBudget.evict
+     *
+     * @return The number of nodes removed
+     */
+    public int evict(int nodes) {
+        return NodeBudget.evict(this, nodes);
+    }
+
+    /**
+     * (Node budget) Remove the node's children, they are expanded again when the node is selected
+     */
+    @Override
+    public void collapse() {
+        children = null;
+        expanded = false;
+    }
+
     public int getArity() {
         return children == null ? 0 : children.size();
     }
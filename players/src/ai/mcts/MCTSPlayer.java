@@ -1,22 +1,44 @@
 package ai.mcts;
 
 import ai.MCTSOptions;
+import ai.NodeBudget;
 import framework.*;
 import framework.util.StatCounter;
+import framework.util.ThreadRandom;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MCTSPlayer implements AIPlayer, Runnable {
 
     private ArrayList<double[]> allData = new ArrayList(1000);
-    private boolean interrupted = false, parallel = true, retry = false;
+    private volatile boolean interrupted = false;
+    private boolean parallel = true, retry = false;
+    // (Tree-parallel) Simulations performed by all threads on the shared tree
+    private final AtomicInteger treeSimulations = new AtomicInteger();
+    // (Root-parallel) Index of the tree searched by each thread
+    private final AtomicInteger nextThread = new AtomicInteger();
     public TreeNode root;
+    // (Tree reuse, root-parallel) The trees of the threads below our last move
+    private TreeNode[] threadRoots;
+    // (Tree reuse) The number of moves made in the game when the opponent has replied to our last move
+    private int reuseMoves = -1;
+    // (Pondering) The threads searching the trees below our move while the opponent is thinking
+    private Thread[] ponderThreads;
+    private volatile boolean pondering = false;
+    private SearchStats ponderStats;
+    // (Leaf-parallel) The workers that run the extra play-outs from new leaves, shared by the search threads
+    private ExecutorService playoutPool;
     private IBoard board;
     private MoveCallback callback;
     private IMove bestMove;
     private int myPlayer, nMoves = 0;
+    private volatile SearchStats stats = new SearchStats();
     //
     private MCTSOptions options;
 
@@ -25,6 +47,22 @@ public class MCTSPlayer implements AIPlayer, Runnable {
                         IMove lastMove) {
         if (options == null)
             throw new RuntimeException("MCTS Options not set.");
+        if (options.nodePool && options.treeParallel)
+            throw new RuntimeException("The node pool does not support tree-parallel search.");
+        if (options.ponder && (!options.treeReuse || options.nodePool))
+            throw new RuntimeException("Pondering requires tree reuse without the node pool.");
+        if (options.maxNodes > 0 && options.treeParallel)
+            throw new RuntimeException("The node budget does not support tree-parallel search.");
+        if (options.swUCT && options.treeParallel)
+            throw new RuntimeException("Sliding-window UCT does not support tree-parallel search.");
+        if (options.leafPlayouts > 1 && (options.relativeBonus || options.qualityBonus))
+            throw new RuntimeException("Leaf-parallel play-outs do not support the relative or quality bonus.");
+        stopPondering();
+        if (options.leafPlayouts > 1 && playoutPool == null)
+            playoutPool = createPlayoutPool(options.nThreads * (options.leafPlayouts - 1));
+        SearchStats stats = new SearchStats();
+        stats.start();
+        this.stats = stats;
         this.retry = false;
         this.board = board.copy();
         this.callback = callback;
@@ -35,47 +73,36 @@ public class MCTSPlayer implements AIPlayer, Runnable {
         if (options.history)
             options.resetHistory(board.getMaxUniqueMoveId());
 
-        // Create a new root, or reuse the old tree
-        if (!options.treeReuse || root == null || root.getArity() == 0 || lastMove == null) {
+        // Reuse the trees if only the opponent's reply was made since our last move
+        boolean reuse = options.treeReuse && !options.nodePool && board.getNMovesMade() == reuseMoves;
+        if (!reuse || threadRoots == null || threadRoots.length != options.nThreads)
+            threadRoots = new TreeNode[options.nThreads];
+        // (Root-parallel) The threads build their own tree if theirs could not be reused
+        for (int i = 0; i < threadRoots.length; i++)
+            threadRoots[i] = reuse ? reuseTree(threadRoots[i], lastMove) : null;
+        if (options.treeParallel && threadRoots[0] != null)
+            root = threadRoots[0];
+        else
             root = new TreeNode(myPlayer, options);
-        } else if (options.treeReuse) {
-            root.resetVelocities();
-            // Get the opponents last move from the root's children
-            for (TreeNode t : root.getChildren()) {
-                // Don't select the virtual node
-                if (t.isVirtual())
-                    continue;
-                //
-                if (t.getMove().equals(lastMove)) {
-                    root = t;
-                    break;
-                }
-            }
-        }
-        // Possible if new root was not expanded
-        if (root.player != myPlayer) {
-            if (options.debug && root.getChildren() != null)
-                System.err.println("Incorrect player at root, old root has " + root.getArity() + " children");
-            // Create a new root
-            root = new TreeNode(myPlayer, options);
-        }
         if(root.getArity() == 0)
             root.expand(board, 0, myPlayer);
         // Reset the nodes' stats
-        TreeNode.moveStats[0].reset();
-        TreeNode.moveStats[1].reset();
-        TreeNode.qualityStats[0].reset();
-        TreeNode.qualityStats[1].reset();
+        options.moveStats[0].reset();
+        options.moveStats[1].reset();
+        options.qualityStats[0].reset();
+        options.qualityStats[1].reset();
         //
         interrupted = false;
+        treeSimulations.set(0);
+        nextThread.set(0);
 
-        Thread[] t = new Thread[4];
-        for(int i = 0; i < 4; i++) {
+        Thread[] t = new Thread[options.nThreads];
+        for(int i = 0; i < t.length; i++) {
             // Start the search in a new Thread.
-            t[i] = new Thread(this);
+            t[i] = new Thread(ThreadRandom.seeded(this));
             t[i].start();
         }
-        for(int i = 0; i < 4; i++) {
+        for(int i = 0; i < t.length; i++) {
             try {
                 t[i].join();
             } catch (InterruptedException e) {
@@ -83,7 +110,175 @@ public class MCTSPlayer implements AIPlayer, Runnable {
             }
         }
 
-        double max = -1;
+        if (options.treeParallel)
+            selectSharedTreeMove();
+        else
+            selectRootParallelMove();
+        // (Tree reuse) Keep the trees below our move, until the opponent's reply is known
+        if (options.treeReuse) {
+            if (options.treeParallel)
+                threadRoots[0] = root;
+            for (int i = 0; i < threadRoots.length; i++)
+                threadRoots[i] = (threadRoots[i] != null) ? threadRoots[i].getChild(bestMove) : null;
+            reuseMoves = board.getNMovesMade() + 2;
+            if (options.ponder)
+                startPondering(board);
+        }
+        stats.stop();
+
+        nMoves++;
+        // Release the board's memory
+        this.board = null;
+        System.out.println("Move: " + bestMove);
+//        if (parallel) {
+//            // Start the search in a new Thread.
+//            Thread t = new Thread(this);
+//            t.start();
+//        } else {
+//            run();
+//        }
+    }
+
+    /**
+     * (Tree reuse) Continue with the node of the opponent's last move below our last move
+     *
+     * @param node The node of our last move
+     * @return The new root, or null if the opponent's move was not in the tree
+     */
+    private TreeNode reuseTree(TreeNode node, IMove lastMove) {
+        TreeNode newRoot = (node != null) ? node.getChild(lastMove) : null;
+        if (newRoot == null)
+            return null;
+        // (AUCT) Resetting the velocities recomputes the values from the children
+        if (options.auct)
+            newRoot.resetVelocities();
+        int nodes = newRoot.makeRoot(myPlayer, options.reuseDecay, options.reuseMaxNodes);
+        if (options.debug)
+            System.out.println("Reused " + nodes + " nodes, root visits: " + newRoot.getnVisits());
+        return newRoot;
+    }
+
+    /**
+     * (Leaf-parallel) Create the workers for the play-outs, they do not keep the program running once the game is over
+     */
+    private static ExecutorService createPlayoutPool(int workers) {
+        return Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * (Pondering) Search the trees below our move until the opponent's move is known
+     *
+     * @param board The position before our move
+     */
+    private synchronized void startPondering(IBoard board) {
+        IBoard ponderBoard = board.copy();
+        ponderBoard.doAIMove(bestMove, myPlayer);
+        if (ponderBoard.checkWin() != IBoard.NONE_WIN)
+            return;
+        pondering = true;
+        ponderStats = new SearchStats();
+        ponderStats.start();
+        ponderThreads = new Thread[threadRoots.length];
+        for (int i = 0; i < ponderThreads.length; i++) {
+            // (Tree-parallel) All threads search the shared tree
+            TreeNode node = options.treeParallel ? threadRoots[0] : threadRoots[i];
+            if (node == null || Math.abs(node.stats.mean()) == TreeNode.INF)
+                continue;
+            ponderThreads[i] = new Thread(ThreadRandom.seeded(new Ponder(node, ponderBoard.copy())));
+            // Pondering must not keep the program running once the game is over
+            ponderThreads[i].setDaemon(true);
+            ponderThreads[i].start();
+        }
+    }
+
+    /**
+     * (Pondering) Stop searching on the opponent's time, the trees keep what was found
+     */
+    private synchronized void stopPondering() {
+        if (ponderThreads == null)
+            return;
+        pondering = false;
+        for (Thread t : ponderThreads) {
+            if (t == null)
+                continue;
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        ponderThreads = null;
+        ponderStats.stop();
+        if (options.debug)
+            System.out.println("Pondered: " + ponderStats);
+    }
+
+    /**
+     * (Pondering) Runs simulations from the node of our move, as they would run from the root
+     */
+    private class Ponder implements Runnable {
+        private final TreeNode node;
+        private final IBoard board;
+
+        Ponder(TreeNode node, IBoard board) {
+            this.node = node;
+            this.board = board;
+        }
+
+        @Override
+        public void run() {
+            SearchStats threadStats = new SearchStats();
+            TreeNode.setSearchStats(threadStats);
+            TreeNode.setPlayoutPool(playoutPool);
+            threadStats.start();
+            // (Node budget) The tree is bounded while pondering too, each thread ponders on its own tree
+            int nodes = (options.maxNodes > 0) ? node.countNodes() : 1;
+            long counted = threadStats.nodes;
+            while (pondering) {
+                board.newDeterminization(myPlayer, false);
+                // Stop if the position is proven
+                if (Math.abs(node.MCTS(board, 1, myPlayer)) == TreeNode.INF)
+                    break;
+                if (options.maxNodes > 0) {
+                    nodes = boundTree(node, null, nodes + (int) (threadStats.nodes - counted));
+                    counted = threadStats.nodes;
+                }
+            }
+            threadStats.stop();
+            TreeNode.setSearchStats(null);
+            TreeNode.setPlayoutPool(null);
+            ponderStats.add(threadStats);
+        }
+    }
+
+    /**
+     * (Tree-parallel) All threads searched the same tree, select the best child of the root
+     */
+    private void selectSharedTreeMove() {
+        TreeNode bestChild = root.getBestChild(board);
+        if (bestChild == null) {
+            int nChildren = (root.getChildren() == null) ? 0 : root.getChildren().size();
+            throw new RuntimeException("Null bestMove in MCTS player! Root has " + nChildren + " children.");
+        }
+        bestMove = bestChild.getMove();
+        if (options.debug) {
+            System.out.println("Threads: " + options.nThreads + " simulations: " + treeSimulations.get());
+            System.out.println("Root visits: " + root.getnVisits());
+        }
+    }
+
+    /**
+     * (Root-parallel) Each thread searched its own tree, merge the roots' children by move
+     */
+    private void selectRootParallelMove() {
+        double max = Double.NEGATIVE_INFINITY;
         String bestMove = null;
         for(String m : roots.keySet()) {
             if(roots.get(m).mean() > max) {
@@ -103,26 +298,22 @@ public class MCTSPlayer implements AIPlayer, Runnable {
                 break;
             }
         }
-
-        nMoves++;
-        // Release the board's memory
-        this.board = null;
-        System.out.println("Move: " + bestMove);
         roots.clear();
-//        if (parallel) {
-//            // Start the search in a new Thread.
-//            Thread t = new Thread(this);
-//            t.start();
-//        } else {
-//            run();
-//        }
     }
 
     @Override
     public void run() {
         if (options == null)
             throw new RuntimeException("MCTS Options not set.");
-        TreeNode root = new TreeNode(myPlayer, options);
+        // Tree-parallel threads share the player's root, otherwise each thread builds its own tree
+        int thread = nextThread.getAndIncrement();
+        TreeNode root = options.treeParallel ? this.root : threadRoots[thread];
+        PooledTree tree = null;
+        SearchStats threadStats = new SearchStats();
+        if (options.nodePool)
+            tree = new PooledTree(myPlayer, options, threadStats);
+        else if (root == null)
+            root = new TreeNode(myPlayer, options);
 
         int simulations = 0;
         boolean qb = options.qualityBonus;
@@ -135,6 +326,12 @@ public class MCTSPlayer implements AIPlayer, Runnable {
         if (sw && nMoves == 0)
             options.swUCT = false;
         IBoard board = this.board.copy();
+        TreeNode.setSearchStats(threadStats);
+        TreeNode.setPlayoutPool(playoutPool);
+        // (Node budget) The nodes in the tree, counted from the nodes added by the search
+        int nodes = (options.maxNodes > 0 && tree == null) ? root.countNodes() : 1;
+        long counted = threadStats.nodes;
+        long allocated = SearchStats.threadAllocatedBytes(), searchStart = System.nanoTime();
         if (!options.fixedSimulations) {
             double tickInterval = 9900.0;
             double startTime = System.currentTimeMillis();
@@ -144,20 +341,28 @@ public class MCTSPlayer implements AIPlayer, Runnable {
             long endTime = System.currentTimeMillis() + options.timeInterval;
             // Run the MCTS algorithm while time allows it
             while (!interrupted) {
-                simulations++;
+                simulations = options.treeParallel ? treeSimulations.incrementAndGet() : simulations + 1;
                 options.simsLeft--;
                 if (System.currentTimeMillis() >= endTime) {
                     break;
                 } else if (System.currentTimeMillis() >= nextTickTime) {
                     System.out.println("I have searched " + ((System.currentTimeMillis() - startTime) / 1000.0) + " seconds.");
                     nextTickTime = System.currentTimeMillis() + tickInterval;
-                    System.out.println("Best child: " + root.getBestChild(board));
+                    System.out.println("Best child: " + ((tree != null) ? bestChild(tree, board) : root.getBestChild(board)));
                 }
                 board.newDeterminization(myPlayer, false);
                 // Make one simulation from root to leaf.
                 // Note: stats at root node are in view of the root player (also never used)
-                if (root.MCTS(board, 0, root.player) == TreeNode.INF)
+                if (((tree != null) ? tree.MCTS(board) : root.MCTS(board, 0, root.player)) == TreeNode.INF) {
+                    // Stop the other threads searching the shared tree
+                    if (options.treeParallel)
+                        interrupted = true;
                     break; // Break if you find a winning move
+                }
+                if (options.maxNodes > 0) {
+                    nodes = boundTree(root, tree, nodes + (int) (threadStats.nodes - counted));
+                    counted = threadStats.nodes;
+                }
 
 //                Enable this to plot per arm totals
 //                if (options.mapping && simulations % 10 == 0) {
@@ -178,18 +383,45 @@ public class MCTSPlayer implements AIPlayer, Runnable {
             options.tempSims = options.simulations;
             options.simsLeft = options.tempSims;
             // Run as many simulations as allowed
-            while (simulations <= options.simulations) {
-                simulations++;
+            while (!interrupted && simulations <= options.simulations) {
+                simulations = options.treeParallel ? treeSimulations.incrementAndGet() : simulations + 1;
                 options.simsLeft--;
                 board.newDeterminization(myPlayer, false);
                 // Make one simulation from root to leaf.
                 // Note: stats at the root node are in view of the root player (also never used)
-                if (root.MCTS(board, 0, root.player) == TreeNode.INF)
+                if (((tree != null) ? tree.MCTS(board) : root.MCTS(board, 0, root.player)) == TreeNode.INF) {
+                    // Stop the other threads searching the shared tree
+                    if (options.treeParallel)
+                        interrupted = true;
                     break; // Break if you find a winning move
+                }
+                if (options.maxNodes > 0) {
+                    nodes = boundTree(root, tree, nodes + (int) (threadStats.nodes - counted));
+                    counted = threadStats.nodes;
+                }
             }
         }
+        if (options.timePhases) // Whatever is not spent in the other phases is spent on the way back up
+            threadStats.backpropNs = System.nanoTime() - searchStart - threadStats.selectionNs
+                    - threadStats.expansionNs - threadStats.playoutNs;
+        threadStats.allocatedBytes = (allocated < 0) ? -1 : SearchStats.threadAllocatedBytes() - allocated;
+        TreeNode.setSearchStats(null);
+        TreeNode.setPlayoutPool(null);
+        stats.add(threadStats);
+        // The shared tree is evaluated once all threads are done
+        if (options.treeParallel)
+            return;
+        if (tree != null) {
+            System.out.println("Best child: " + bestChild(tree, board));
+            addRoot(tree);
+            if (options.debug)
+                System.out.println("Nodes: " + tree.size() + " root visits: " + tree.getnVisits(0));
+            return;
+        }
         System.out.println("Best child: " + root.getBestChild(board));
         addRoot(root);
+        if (options.treeReuse)
+            threadRoots[thread] = root;
 //        // Return the best move found
 //        TreeNode bestChild = root.getBestChild(board);
 //        // This sometimes happens in experiments
@@ -229,14 +461,14 @@ public class MCTSPlayer implements AIPlayer, Runnable {
             System.out.println("Root visits: " + root.getnVisits());
             //
             if (options.relativeBonus) {
-                System.out.println("Average P1 moves  : " + TreeNode.moveStats[0].true_mean() + " variance: " + TreeNode.moveStats[0].variance());
-                System.out.println("Average P1 moves  : " + TreeNode.moveStats[1].true_mean() + " variance: " + TreeNode.moveStats[1].variance());
+                System.out.println("Average P1 moves  : " + options.moveStats[0].true_mean() + " variance: " + options.moveStats[0].variance());
+                System.out.println("Average P1 moves  : " + options.moveStats[1].true_mean() + " variance: " + options.moveStats[1].variance());
                 System.out.println("c*                : " + options.moveCov.getCovariance() / options.moveCov.variance2());
                 System.out.println("c*                : " + options.moveCov1.getCovariance() / options.moveCov1.variance2());
             }
             if (options.qualityBonus) {
-                System.out.println("Average P1 quality: " + TreeNode.qualityStats[0].true_mean() + " variance: " + TreeNode.qualityStats[0].variance());
-                System.out.println("Average P2 quality: " + TreeNode.qualityStats[1].true_mean() + " variance: " + TreeNode.qualityStats[1].variance());
+                System.out.println("Average P1 quality: " + options.qualityStats[0].true_mean() + " variance: " + options.qualityStats[0].variance());
+                System.out.println("Average P2 quality: " + options.qualityStats[1].true_mean() + " variance: " + options.qualityStats[1].variance());
                 System.out.println("c*                : " + options.qualityCov.getCovariance() / options.qualityCov.variance2());
             }
         }
@@ -271,8 +503,43 @@ public class MCTSPlayer implements AIPlayer, Runnable {
 //            callback.makeMove(bestChild.getMove());
     }
 
+    /**
+     * (Node budget) Shrink the thread's tree, or its node pool, when it has grown past options.maxNodes
+     *
+     * @return The number of nodes left in the tree
+     */
+    private int boundTree(TreeNode root, PooledTree tree, int nodes) {
+        int target = NodeBudget.excess(nodes, options.maxNodes);
+        if (target == 0)
+            return nodes;
+        int removed = (tree != null) ? tree.evict(target) : root.evict(target);
+        if (options.debug)
+            System.out.println("Node budget reached, removed " + removed + " of " + nodes + " nodes");
+        return nodes - removed;
+    }
+
     Map<String, StatCounter> roots = new HashMap<>();
 
+    private String bestChild(PooledTree tree, IBoard board) {
+        int bestChild = tree.getBestChild(board);
+        return (bestChild >= 0) ? tree.toString(bestChild) : null;
+    }
+
+    private void addRoot(PooledTree tree) {
+        synchronized (roots) {
+            for (int i = 0; i < tree.getRootArity(); i++) {
+                int child = tree.getRootChild(i);
+                if (tree.isVirtual(child))
+                    continue;
+                String move = tree.getMove(child).toString();
+                if (roots.containsKey(move))
+                    roots.get(move).add(tree.getStats(child), false);
+                else
+                    roots.put(move, tree.getStats(child));
+            }
+        }
+    }
+
     private void addRoot(TreeNode rootNode) {
        synchronized (roots) {
            for (TreeNode t : rootNode.getChildren()) {
@@ -294,11 +561,18 @@ public class MCTSPlayer implements AIPlayer, Runnable {
 
     @Override
     public void newGame(int myPlayer, String game) {
+        stopPondering();
+        if (playoutPool != null) {
+            playoutPool.shutdown();
+            playoutPool = null;
+        }
         root = new TreeNode(myPlayer, options);
-        TreeNode.moveStats[0].reset();
-        TreeNode.moveStats[1].reset();
-        TreeNode.qualityStats[0].reset();
-        TreeNode.qualityStats[1].reset();
+        threadRoots = null;
+        reuseMoves = -1;
+        options.moveStats[0].reset();
+        options.moveStats[1].reset();
+        options.qualityStats[0].reset();
+        options.qualityStats[1].reset();
         options.qualityCov.reset();
         options.moveCov.reset();
         nMoves = 0;
@@ -311,6 +585,7 @@ public class MCTSPlayer implements AIPlayer, Runnable {
     @Override
     public void stop() {
         interrupted = true;
+        stopPondering();
     }
 
     @Override
@@ -318,6 +593,11 @@ public class MCTSPlayer implements AIPlayer, Runnable {
         return bestMove;
     }
 
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
+
     private void plotAllData() {
         StringBuilder[] sbs = new StringBuilder[2];
         int i = 0;
@@ -0,0 +1,696 @@
+package ai.mcts;
+
+import ai.MCTSOptions;
+import framework.IBoard;
+import framework.IMove;
+import framework.MoveList;
+import framework.SearchStats;
+import framework.util.FastLog;
+import framework.util.MovingAverage;
+import framework.util.StatCounter;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/**
+ * A search tree that stores its nodes in parallel primitive arrays instead of TreeNode objects.
+ * A node is an index in the arrays, the children of a node are a contiguous range of indices,
+ * allocated at once when the node is expanded. The search is the same as TreeNode.MCTS, including
+ * the solver, AUCT, implicit minimax, node priors, progressive bias and sliding-window UCT.
+ * <p/>
+ * The tree is searched by a single thread, so it is used for root-parallel search only.
+ */
+public class PooledTree {
+    public static final double INF = TreeNode.INF;
+    private static final int INIT_CAPACITY = 1 << 12;
+    private static final byte SIMULATED = 1, VIRTUAL = 2, WINDOWED = 4;
+    //
+    private final MCTSOptions options;
+    private final SearchStats searchStats;
+    // Scratch counter for the node priors set by the board
+    private final StatCounter priors = new StatCounter();
+    private int size = 0;
+    // The nodes, firstChild is -1 until the node is expanded
+    private int[] player, firstChild, nChildren, visits;
+    private byte[] flags;
+    private IMove[] move;
+    // The statistics, as kept by StatCounter
+    private double[] sum, m2, mean;
+    private MovingAverage[] window;
+    // AUCT, implicit minimax and progressive bias values
+    private double[] velocity, imVal, imAlpha, imBeta, heval;
+
+    /**
+     * Create the tree with a root for the given player
+     *
+     * @param searchStats The statistics to count the search in, may be null
+     */
+    public PooledTree(int player, MCTSOptions options, SearchStats searchStats) {
+        this.options = options;
+        this.searchStats = searchStats;
+        this.player = new int[INIT_CAPACITY];
+        firstChild = new int[INIT_CAPACITY];
+        nChildren = new int[INIT_CAPACITY];
+        visits = new int[INIT_CAPACITY];
+        flags = new byte[INIT_CAPACITY];
+        move = new IMove[INIT_CAPACITY];
+        sum = new double[INIT_CAPACITY];
+        m2 = new double[INIT_CAPACITY];
+        mean = new double[INIT_CAPACITY];
+        window = new MovingAverage[INIT_CAPACITY];
+        velocity = new double[INIT_CAPACITY];
+        imVal = new double[INIT_CAPACITY];
+        imAlpha = new double[INIT_CAPACITY];
+        imBeta = new double[INIT_CAPACITY];
+        heval = new double[INIT_CAPACITY];
+        options.bonusPlayer = player;
+        allocate(1);
+        initNode(0, player, null, false);
+    }
+
+    /**
+     * Reserve n consecutive nodes
+     *
+     * @return The index of the first node
+     */
+    private int allocate(int n) {
+        int first = size;
+        if (size + n > player.length) {
+            int capacity = Math.max(player.length * 2, size + n);
+            player = Arrays.copyOf(player, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nChildren = Arrays.copyOf(nChildren, capacity);
+            visits = Arrays.copyOf(visits, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            move = Arrays.copyOf(move, capacity);
+            sum = Arrays.copyOf(sum, capacity);
+            m2 = Arrays.copyOf(m2, capacity);
+            mean = Arrays.copyOf(mean, capacity);
+            window = Arrays.copyOf(window, capacity);
+            velocity = Arrays.copyOf(velocity, capacity);
+            imVal = Arrays.copyOf(imVal, capacity);
+            imAlpha = Arrays.copyOf(imAlpha, capacity);
+            imBeta = Arrays.copyOf(imBeta, capacity);
+            heval = Arrays.copyOf(heval, capacity);
+        }
+        size += n;
+        return first;
+    }
+
+    private void initNode(int node, int player, IMove move, boolean windowed) {
+        this.player[node] = player;
+        this.move[node] = move;
+        firstChild[node] = -1;
+        nChildren[node] = 0;
+        visits[node] = 0;
+        flags[node] = windowed ? WINDOWED : 0;
+        sum[node] = 0.;
+        m2[node] = 0.;
+        mean[node] = 0.;
+        window[node] = null;
+        velocity[node] = 1.;
+        imVal[node] = 0.;
+        imAlpha[node] = -INF - 1;
+        imBeta[node] = +INF + 1;
+        heval[node] = 0.;
+    }
+
+    /**
+     * Run a single simulation from the root
+     *
+     * @return The result in view of the root's parent
+     */
+    public double MCTS(IBoard board) {
+        return MCTS(board, 0, 0, player[0]);
+    }
+
+    private double MCTS(IBoard board, int node, int depth, int previousPlayer) {
+        int child = -1;
+        // First add some leafs if required
+        if (isLeaf(node)) {
+            long start = options.timePhases ? System.nanoTime() : 0;
+            // Expand returns any node that leads to a win
+            child = expand(board, node, depth + 1, previousPlayer);
+            if (options.timePhases)
+                searchStats.expansionNs += System.nanoTime() - start;
+        }
+        // Select the best child, if we didn't find a winning position in the expansion
+        if (child < 0) {
+            if (isTerminal(node)) {
+                child = node;
+            } else {
+                long start = options.timePhases ? System.nanoTime() : 0;
+                child = select(board, node);
+                if (options.timePhases)
+                    searchStats.selectionNs += System.nanoTime() - start;
+            }
+        }
+        double result;
+        int nodePlayer = player[node], childPlayer = player[child];
+        // (Solver) Check for proven win / loss / draw
+        if (Math.abs(mean(child)) != INF) {
+            // Execute the move represented by the child
+            if (!isTerminal(node))
+                board.doAIMove(move[child], board.getPlayerToMove());
+            // When a leaf is reached return the result of the playout
+            if ((flags[child] & SIMULATED) == 0 || isTerminal(child)) {
+                long start = options.timePhases ? System.nanoTime() : 0;
+                result = TreeNode.playOuts(board, depth + 1, childPlayer, options);
+                if (options.timePhases)
+                    searchStats.playoutNs += System.nanoTime() - start;
+                if (searchStats != null)
+                    searchStats.simulation(depth + 1);
+                // check for non-negamax, result is in view of the child
+                if (nodePlayer != childPlayer) {
+                    updateStats(child, -result, nodePlayer);
+                    result = -result;
+                } else {
+                    updateStats(child, result, nodePlayer);
+                }
+                flags[child] |= SIMULATED;
+            } else {
+                // check for non-negamax
+                if (nodePlayer != childPlayer)
+                    result = -MCTS(board, child, depth + 1, nodePlayer);
+                else
+                    result = MCTS(board, child, depth + 1, nodePlayer);
+            }
+            // set the board back to its previous configuration
+            if (!isTerminal(node))
+                board.undoMove();
+        } else {
+            result = mean(child);
+        }
+        // result is now in view of me in all cases
+        if (options.solver) {
+            // (Solver) If one of the children is a win, then I'm a win
+            if (result == INF) {
+                // If I have a win, my parent has a loss.
+                mean[node] = (previousPlayer != nodePlayer) ? -INF : INF;
+                return result;
+            } else if (result == -INF) {
+                // (Solver) Check if all children are a loss
+                int first = firstChild[node], end = first + nChildren[node];
+                for (int c = first; c < end; c++) {
+                    // (AUCT) Skip virtual child
+                    if (options.auct && (flags[c] & VIRTUAL) != 0)
+                        continue;
+                    // If the child is not expanded or solved, make sure it is expanded
+                    if (options.solverFix && isLeaf(c) && Math.abs(mean(c)) != INF) {
+                        // Execute the move represented by the child
+                        board.doAIMove(move[c], board.getPlayerToMove());
+                        int winner = expand(board, c, depth + 2, nodePlayer);
+                        board.undoMove();
+                        // We found a winning node below the child, this means the child is a loss.
+                        if (winner >= 0)
+                            mean[c] = (nodePlayer != player[c]) ? -INF : INF;
+                    }
+                    // Are all children a loss?
+                    if (mean(c) != result) {
+                        // (AUCT) Update the virtual node with a loss
+                        if (options.auct && (flags[first] & VIRTUAL) != 0)
+                            push(first, (nodePlayer != player[first]) ? -1 : 1);
+                        // Return a single loss, if not all children are a loss
+                        updateStats(node, (previousPlayer != nodePlayer) ? 1 : -1, previousPlayer);
+                        return -1;
+                    }
+                }
+                // (Solver) If all children lead to a loss for the opponent, then I'm a win
+                mean[node] = (previousPlayer != nodePlayer) ? INF : -INF;
+                return result; // always return in view of me
+            }
+        }
+        // Update the results for the current node
+        // check for non-negamax
+        if (previousPlayer != nodePlayer)
+            updateStats(node, -result, previousPlayer);
+        else
+            updateStats(node, result, previousPlayer);
+        // Back-propagate the result, always return in view of me
+        if (options.test)
+            return result;
+        else
+            return -result;
+    }
+
+    /**
+     * Expand the node, its children are allocated as one range of nodes
+     *
+     * @return A child that leads to a win, or -1
+     */
+    private int expand(IBoard board, int node, int depth, int parentPlayer) {
+        int nodePlayer = player[node], nextPlayer = board.getPlayerToMove(), winNode = -1;
+        // Generate all moves
+        MoveList moves = board.getExpandMoves();
+        int first = allocate(moves.size() + (options.auct ? 1 : 0)), n = 0;
+        // (AUCT) Add an extra virtual node
+        if (options.auct) {
+            // FIXME: non-negamax games
+            initNode(first, nextPlayer, null, false);
+            flags[first] = VIRTUAL;
+            sum[first] = -sum[node];
+            mean[first] = -mean[node];
+            m2[first] = -m2[node];
+            visits[first] = visits[node];
+            velocity[first] = velocity[node];
+            n++;
+        }
+        double value, best_imVal = -INF, best_pbVal = -INF;
+        int winner = board.checkWin();
+        // Board is terminal, don't expand
+        if (winner != IBoard.NONE_WIN) {
+            setChildren(node, first, n);
+            return -1;
+        }
+        // Add all moves as children to the current node
+        for (int i = 0; i < moves.size(); i++) {
+            // If the game is partial observable, we don't want to do the solver part
+            if (!board.isPartialObservable() && board.doAIMove(moves.get(i), nextPlayer)) {
+                int child = first + n++;
+                // Initialize the child
+                initNode(child, nextPlayer, moves.get(i),
+                        options.swUCT && depth >= options.minSWDepth && depth <= options.maxSWDepth);
+                winner = IBoard.NONE_WIN;
+                if (options.solver) {
+                    // Check for a winner, (Solver)
+                    winner = board.checkWin();
+                    if (winner == nodePlayer) {
+                        value = INF;
+                        // This is a win for the expanding node
+                        winNode = child;
+                    } else if (winner == nextPlayer) {
+                        value = -INF;
+                    } else {
+                        value = 0.;
+                    }
+                    // Set the value of the child (0 = nothing, +/-INF win/loss)
+                    mean[child] = value;
+                }
+                // implicit minimax
+                if (options.implicitMM) {
+                    // check for non-negamax, view of parent
+                    if (nodePlayer != nextPlayer)
+                        imVal[child] = -board.evaluate(nextPlayer, options.efVer);
+                    else
+                        imVal[child] = board.evaluate(nextPlayer, options.efVer);
+                    if (imVal[child] > best_imVal)
+                        best_imVal = imVal[child];
+                }
+                // node priors
+                if (winner != nodePlayer && winner != nextPlayer && options.nodePriors) {
+                    priors.init(sum[child], m2[child], mean[child], visits[child]);
+                    board.initNodePriors(nodePlayer, priors, moves.get(i), options.nodePriorsVisits);
+                    sum[child] = priors.m_sum;
+                    m2[child] = priors.m_m2;
+                    mean[child] = priors.m_mean;
+                    visits[child] = priors.totalVisits();
+                }
+                // prog. bias, must be strictly a bonus
+                if (options.progBias) {
+                    heval[child] = -board.evaluate(nextPlayer, options.efVer);
+                    if (options.pbDecay && heval[child] > best_pbVal)
+                        best_pbVal = heval[child];
+                }
+                // reset the board
+                board.undoMove();
+            } else if (board.isPartialObservable()) {
+                // No move-checking for partial observable games
+                // Also, the legality of the move depends on the determinization
+                initNode(first + n++, nextPlayer, moves.get(i), false);
+            }
+        }
+        setChildren(node, first, n);
+        // implicit minimax
+        if (options.implicitMM) {
+            // check for non-negamax
+            imVal[node] = (nodePlayer != parentPlayer) ? -best_imVal : best_imVal;
+            imAlpha[node] = -INF - 1;
+            imBeta[node] = +INF + 1;
+        }
+        if (options.progBias && options.pbDecay)
+            imVal[node] = -best_pbVal;
+        // prog. bias
+        if (options.progBias) {
+            if (!options.pbDecay)
+                heval[node] = -board.evaluate(nodePlayer, options.efVer);
+            else
+                heval[node] = -best_pbVal;
+        }
+        // If one of the nodes is a win, return it.
+        return winNode;
+    }
+
+    private void setChildren(int node, int first, int n) {
+        // Release the nodes reserved for illegal moves, nothing was allocated after them
+        size = first + n;
+        firstChild[node] = first;
+        nChildren[node] = n;
+        if (searchStats != null)
+            searchStats.nodes += n;
+    }
+
+    private int select(IBoard board, int node) {
+        int selected = -1, first = firstChild[node], end = first + nChildren[node];
+        double bestValue = Double.NEGATIVE_INFINITY, uctValue, avgValue, ucbVar, Np, Nc, sumcvisits = 0;
+        // For a chance-move, select a random child
+        if (move[node] != null && move[node].isChance())
+            return first + MCTSOptions.r.nextInt(nChildren[node]);
+        if (options.nodePriors)
+            for (int c = first; c < end; c++)
+                sumcvisits += visits(c);
+        // Select a child according to the UCT Selection policy
+        for (int c = first; c < end; c++) {
+            // Skip virtual nodes
+            if (options.auct && (flags[c] & VIRTUAL) != 0)
+                continue;
+            // If the game is partial observable, moves in the tree may not be legal
+            if (board.isPartialObservable() && !board.isLegal(move[c]))
+                continue;
+            double cMean = mean(c);
+            if (visits(c) == 0 || cMean == INF) {
+                // First, visit all children at least once
+                uctValue = INF + MCTSOptions.r.nextDouble();
+            } else {
+                Nc = visits(c);
+                avgValue = cMean;
+                // Implicit minimax
+                if (options.implicitMM) {
+                    avgValue = (1. - options.imAlpha) * avgValue + (options.imAlpha * imVal[c]);
+                    // pruning: if the child tree is wasteful (according to the bound info), add a large negative value
+                    if (options.imPruning && imAlpha[c] >= (imBeta[c] - 0.000001))
+                        avgValue += MCTSOptions.r.nextDouble() * (-0.5);
+                }
+                // Parent visits can be altered for windowed UCT
+                Np = Math.max(1, visits(node));
+                // with node priors, must add all the children's initial visits
+                if (options.nodePriors)
+                    Np = sumcvisits;
+                if (options.swUCT) {
+                    if (window[c] != null && window[node] == null)
+                        Np = Math.min(Np, window[c].getMaxSize());
+                    else if (window[c] == null && window[node] != null)
+                        Np = visits[node];
+                }
+                // Progressive bias
+                if (options.progBias) {
+                    if (options.pbDecay)
+                        avgValue += options.progBiasWeight * heval[c] / (Nc + 1);
+                    else
+                        avgValue += options.progBiasWeight * heval[c];
+                }
+                if (options.ucbTuned) {
+                    ucbVar = m2[c] / visits[c] + Math.sqrt((2. * FastLog.log(Np)) / Nc);
+                    uctValue = avgValue + Math.sqrt((Math.min(options.maxVar, ucbVar) * FastLog.log(Np)) / Nc);
+                } else {
+                    // Compute the uct value with the (new) average value
+                    uctValue = avgValue + options.uctC * Math.sqrt(FastLog.log(Np) / Nc);
+                }
+            }
+            // Remember the highest UCT value
+            if (uctValue > bestValue) {
+                selected = c;
+                bestValue = uctValue;
+            }
+        }
+        // (AUCT) Update/decay the velocities
+        if (options.auct && selected >= 0) {
+            for (int c = first; c < end; c++)
+                velocity[c] = velocity[c] * options.lambda + ((c == selected) ? 1. : 0.);
+        }
+        return selected;
+    }
+
+    private void updateStats(int node, double value, int previousPlayer) {
+        int first = firstChild[node], end = first + nChildren[node];
+        boolean expanded = first >= 0;
+        if (options.maxBackprop && expanded && visits(node) >= options.maxBackpropT) {
+            double bestVal = -INF - 1;
+            for (int c = first; c < end; c++)
+                bestVal = Math.max(bestVal, mean(c));
+            push(node, (previousPlayer != player[node]) ? -bestVal : bestVal);
+        } else if (!options.auct || !expanded) {
+            // If we are not using AUCT simply add the total value
+            push(node, value);
+        } else {
+            // Compute the auct win ratio
+            double sum_v = 0., sum_v_r = 0.;
+            for (int c = first; c < end; c++) {
+                // Due to the solver, there may be loss-nodes,
+                // these should not be considered in the average node value
+                double cMean = mean(c);
+                if (cMean == -INF)
+                    continue;
+                sum_v += velocity[c];
+                sum_v_r += velocity[c] * cMean;
+            }
+            mean[node] = -1 * (sum_v_r / sum_v);
+        }
+        // implicit minimax backups
+        if (options.implicitMM && expanded) {
+            double bestAlpha = -INF - 1, bestBeta = -INF - 1, bestVal = -INF - 1;
+            for (int c = first; c < end; c++) {
+                if (imVal[c] > bestVal) bestVal = imVal[c];
+                if ((-imBeta[c]) > bestAlpha) bestAlpha = (-imBeta[c]);
+                if ((-imAlpha[c]) > bestBeta) bestBeta = (-imAlpha[c]);
+            }
+            // check for non-negamax; FIXME: implicit pruning does not work for non-negamax
+            imVal[node] = (previousPlayer != player[node]) ? -bestVal : bestVal;  // view of parent
+            imAlpha[node] = bestAlpha;    // view of me
+            imBeta[node] = bestBeta;      // view of me
+        }
+        // prog bias decay
+        if (options.progBias && options.pbDecay && expanded && previousPlayer != player[node]) {
+            double bestVal = -INF - 1;
+            for (int c = first; c < end; c++)
+                if (heval[c] > bestVal) bestVal = heval[c];
+            heval[node] = -bestVal;       // view of parent
+        }
+    }
+
+    /**
+     * Add a sample to the statistics of a node, as StatCounter.push
+     */
+    private void push(int node, double num) {
+        if (Math.abs(mean[node]) == INF)
+            throw new RuntimeException("Mean is INF in push");
+        int n = ++visits[node];
+        // If the node is visited a few times, create the window
+        if ((flags[node] & WINDOWED) != 0 && n == 2) {
+            flags[node] &= ~WINDOWED;
+            // The size of the window is based on the number of simulations remaining
+            int windowSize = options.getWindowSize();
+            if (windowSize > 0) {
+                window[node] = new MovingAverage(windowSize);
+                window[node].add(sum[node]);  // Store the first value, the current one will be added later
+            }
+        }
+        sum[node] += num;
+        double delta = num - mean[node];
+        mean[node] += delta / n;
+        m2[node] += delta * (num - mean[node]);
+        if (window[node] != null)
+            window[node].add(num);
+    }
+
+    private double mean(int node) {
+        if (window[node] == null || Math.abs(mean[node]) == INF)
+            return mean[node];
+        else
+            return window[node].getAverage();
+    }
+
+    private int visits(int node) {
+        if (window[node] == null)
+            return visits[node];
+        else
+            return (int) window[node].getSize();
+    }
+
+    private boolean isLeaf(int node) {
+        return firstChild[node] < 0;
+    }
+
+    private boolean isTerminal(int node) {
+        return firstChild[node] >= 0 && nChildren[node] == (options.auct ? 1 : 0);
+    }
+
+    /**
+     * @return The index of the root's child to play, or -1 if the root has no (legal) children
+     */
+    public int getBestChild(IBoard board) {
+        double max = Double.NEGATIVE_INFINITY, value;
+        int bestChild = -1, first = firstChild[0], end = first + nChildren[0];
+        for (int c = first; c < end; c++) {
+            // (AUCT) Skip virtual children
+            if (options.auct && (flags[c] & VIRTUAL) != 0)
+                continue;
+            // If the game is partial observable, moves in the tree may not be illegal
+            if (board.isPartialObservable() && !board.isLegal(move[c]))
+                continue;
+            // For partial observable games, use the visit count, not the values.
+            if (board.isPartialObservable()) {
+                value = visits(c);
+            } else {
+                // If there are children with INF value, choose one of them
+                double cMean = mean(c);
+                if (cMean == INF)
+                    value = INF + MCTSOptions.r.nextDouble();
+                else if (cMean == -INF)
+                    value = -INF + visits[c] + MCTSOptions.r.nextDouble();
+                else
+                    value = visits[c];
+            }
+            if (value > max) {
+                max = value;
+                bestChild = c;
+            }
+            // For debugging, print the node
+            if (options.debug)
+                System.out.println(toString(c));
+        }
+        return bestChild;
+    }
+
+    /**
+     * @return The number of children of the root, including the AUCT virtual node
+     */
+    public int getRootArity() {
+        return Math.max(0, nChildren[0]);
+    }
+
+    /**
+     * @param i The index of the root's child, 0 <= i < getRootArity()
+     */
+    public int getRootChild(int i) {
+        return firstChild[0] + i;
+    }
+
+    public boolean isVirtual(int node) {
+        return (flags[node] & VIRTUAL) != 0;
+    }
+
+    public IMove getMove(int node) {
+        return move[node];
+    }
+
+    /**
+     * @return The statistics of the node as a StatCounter, for merging the roots of several trees
+     */
+    public StatCounter getStats(int node) {
+        StatCounter stats = new StatCounter();
+        stats.init(sum[node], m2[node], mean(node), visits[node]);
+        return stats;
+    }
+
+    public int getnVisits(int node) {
+        return visits(node);
+    }
+
+    /**
+     * @return The number of nodes in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * (Node budget) Remove the children of the least visited nodes whose children are all leaves, until at least
+     * the given number of nodes is removed. The root's children are kept. The remaining nodes are moved to the
+     * front of the arrays, so the space of the removed nodes is used for the nodes expanded next.
+     *
+     * @return The number of nodes removed
+     */
+    public int evict(int nodes) {
+        int removed = 0, pass;
+        do {
+            // The frontier nodes, sorted by visits
+            long[] frontier = new long[size];
+            int n = 0;
+            for (int node = 1; node < size; node++) {
+                // The children of removed nodes are leaves, so they are never in the frontier
+                if (isLeaf(node) || nChildren[node] == 0)
+                    continue;
+                boolean leaves = true;
+                for (int c = firstChild[node]; c < firstChild[node] + nChildren[node] && leaves; c++)
+                    leaves = isLeaf(c);
+                if (leaves)
+                    frontier[n++] = ((long) visits[node] << 32) | node;
+            }
+            Arrays.sort(frontier, 0, n);
+            pass = 0;
+            for (int i = 0; i < n && removed + pass < nodes; i++) {
+                int node = (int) frontier[i];
+                pass += nChildren[node];
+                firstChild[node] = -1;
+                nChildren[node] = 0;
+            }
+            removed += pass;
+        } while (pass > 0 && removed < nodes);
+        compact();
+        return removed;
+    }
+
+    /**
+     * (Node budget) Number the nodes breadth-first from the root, nodes that cannot be reached are dropped
+     */
+    private void compact() {
+        int[] from = new int[size], first = new int[player.length];
+        int n = 1;
+        for (int i = 0; i < n; i++) {
+            int node = from[i];
+            first[i] = isLeaf(node) ? -1 : n;
+            for (int c = 0; c < nChildren[node]; c++)
+                from[n++] = firstChild[node] + c;
+        }
+        player = gather(player, from, n);
+        nChildren = gather(nChildren, from, n);
+        visits = gather(visits, from, n);
+        flags = gather(flags, from, n);
+        move = gather(move, from, n);
+        sum = gather(sum, from, n);
+        m2 = gather(m2, from, n);
+        mean = gather(mean, from, n);
+        window = gather(window, from, n);
+        velocity = gather(velocity, from, n);
+        imVal = gather(imVal, from, n);
+        imAlpha = gather(imAlpha, from, n);
+        imBeta = gather(imBeta, from, n);
+        heval = gather(heval, from, n);
+        firstChild = first;
+        size = n;
+    }
+
+    private static int[] gather(int[] a, int[] from, int n) {
+        int[] b = new int[a.length];
+        for (int i = 0; i < n; i++)
+            b[i] = a[from[i]];
+        return b;
+    }
+
+    private static byte[] gather(byte[] a, int[] from, int n) {
+        byte[] b = new byte[a.length];
+        for (int i = 0; i < n; i++)
+            b[i] = a[from[i]];
+        return b;
+    }
+
+    private static double[] gather(double[] a, int[] from, int n) {
+        double[] b = new double[a.length];
+        for (int i = 0; i < n; i++)
+            b[i] = a[from[i]];
+        return b;
+    }
+
+    private static <T> T[] gather(T[] a, int[] from, int n) {
+        T[] b = Arrays.copyOf(a, a.length);
+        for (int i = 0; i < n; i++)
+            b[i] = a[from[i]];
+        Arrays.fill(b, n, b.length, null);
+        return b;
+    }
+
+    public String toString(int node) {
+        DecimalFormat df2 = new DecimalFormat("###,##0.00000");
+        return move[node] + "\tValue: " + df2.format(mean(node)) + "\tVisits: " + (double) visits(node);
+    }
+}
@@ -1,39 +1,63 @@
 package ai.mcts;
 
 import ai.MCTSOptions;
+import ai.NodeBudget;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.PrimitiveMoveBoard;
+import framework.RandomMoveBoard;
+import framework.SearchStats;
 import framework.util.FastLog;
 import framework.util.FastSigm;
 import framework.util.StatCounter;
 
 import java.text.DecimalFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-public class TreeNode {
+public class TreeNode implements NodeBudget.Node<TreeNode> {
     public static final double INF = 999999;
+    // (Tree-parallel) The children are published, and virtual losses counted, using CAS
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TreeNode, List> CHILDREN =
+            AtomicReferenceFieldUpdater.newUpdater(TreeNode.class, List.class, "children");
+    private static final AtomicIntegerFieldUpdater<TreeNode> VIRTUAL_LOSS =
+            AtomicIntegerFieldUpdater.newUpdater(TreeNode.class, "virtualLoss");
 //    private static final MoveList[] movesMade = {new MoveList(500), new MoveList(500)};
 //    private static final MoveList mastMoves = new MoveList(100);
-    public static StatCounter[] moveStats = {new StatCounter(), new StatCounter()};
-    public static StatCounter[] qualityStats = {new StatCounter(), new StatCounter()};
-    public static int myPlayer = 0;
+    // Buffer for the play-outs of boards that encode their moves as ints, one per search thread
+    private static final ThreadLocal<int[]> playoutMoves = new ThreadLocal<>();
+    // The statistics of the search thread, set by the player before searching
+    private static final ThreadLocal<SearchStats> searchStats = new ThreadLocal<>();
+    // (Leaf-parallel) The workers that run the extra play-outs of the search thread
+    private static final ThreadLocal<ExecutorService> playoutPool = new ThreadLocal<>();
     public int player, ply;
     //
     private final boolean virtual;
     private final MCTSOptions options;
     public StatCounter stats;
     //
-    private boolean expanded = false, simulated = false;
-    private List<TreeNode> children;
+    private volatile boolean expanded = false, simulated = false;
+    private volatile List<TreeNode> children;
+    private volatile int virtualLoss = 0; // (Tree-parallel) number of searches currently below this node
     private IMove move;
     private double velocity = 1.;
     private double imVal = 0.; // implicit minimax value (in view of parent)
     private double imAlpha = -INF - 1; // implicit lower bound (in view of me)
     private double imBeta = +INF + 1;  // implicit upper bound (in view of me)
     private double heval = 0.; // heuristic evaluation for prog. bias (in view of parent)
+    // (Lazy expansion) the moves that have no child yet
+    private IMove[] untried;
+    private int nUntried = 0;
 
     /**
      * Constructor for the root
@@ -43,7 +67,7 @@ public class TreeNode {
         this.virtual = false;
         this.options = options;
         this.ply = 0;
-        TreeNode.myPlayer = player;
+        options.bonusPlayer = player;
         stats = new StatCounter();
     }
 
@@ -97,33 +121,53 @@ public class TreeNode {
 //        }
         // First add some leafs if required
         if (isLeaf()) {
+            long start = options.timePhases ? System.nanoTime() : 0;
             // Expand returns any node that leads to a win
             child = expand(board, depth + 1, previousPlayer);
+            if (options.timePhases)
+                searchStats.get().expansionNs += System.nanoTime() - start;
         }
         // Select the best child, if we didn't find a winning position in the expansion
         if (child == null) {
-            if (isTerminal())
+            if (isTerminal()) {
                 child = this;
-            else
+            } else {
+                long start = options.timePhases ? System.nanoTime() : 0;
                 child = select(board, depth + 1);
+                if (options.timePhases)
+                    searchStats.get().selectionNs += System.nanoTime() - start;
+                // (Lazy expansion) None of the untried moves was legal
+                if (child == null && isTerminal())
+                    child = this;
+            }
         }
         //
         if (child.player < 0)
             throw new RuntimeException("Child player weird!");
         //
         double result;
+        // (Tree-parallel) Discourage other threads from following this path
+        boolean vLoss = options.treeParallel && child != this;
+        if (vLoss)
+            VIRTUAL_LOSS.incrementAndGet(child);
         // (Solver) Check for proven win / loss / draw
-        if (Math.abs(child.stats.mean()) != INF) {
+        if (Math.abs(mean(child.stats)) != INF) {
             // Execute the move represented by the child
             if (!isTerminal())
-                board.doAIMove(child.getMove(), player);
+                board.doAIMove(child.getMove(), board.getPlayerToMove());
 
 //            if (options.history)
 //                movesMade[player - 1].add(child.getMove());
 
             // When a leaf is reached return the result of the playout
             if (!child.isSimulated() || child.isTerminal()) {
-                result = child.playOut(board, depth + 1);
+                SearchStats searchStats = TreeNode.searchStats.get();
+                long start = options.timePhases ? System.nanoTime() : 0;
+                result = playOuts(board, depth + 1, child.player, options);
+                if (options.timePhases)
+                    searchStats.playoutNs += System.nanoTime() - start;
+                if (searchStats != null)
+                    searchStats.simulation(depth + 1);
                 // check for non-negamax
                 // here, result is in view of the child
                 if (this.player != child.player) {
@@ -147,8 +191,10 @@ public class TreeNode {
             if (!isTerminal())
                 board.undoMove();
         } else {
-            result = child.stats.mean();
+            result = mean(child.stats);
         }
+        if (vLoss)
+            VIRTUAL_LOSS.decrementAndGet(child);
 
         // result is now in view of me in all cases
         if (options.solver) {
@@ -157,9 +203,9 @@ public class TreeNode {
                 // If I have a win, my parent has a loss.
                 // check for non-negamax
                 if (previousPlayer != this.player)
-                    stats.setValue(-INF);
+                    setValue(stats, -INF);
                 else
-                    stats.setValue(INF);
+                    setValue(stats, INF);
                 return result;
             } else if (result == -INF) {
                 // (Solver) Check if all children are a loss
@@ -168,30 +214,30 @@ public class TreeNode {
                     if (options.auct && tn.isVirtual())
                         continue;
                     // If the child is not expanded or solved, make sure it is expanded
-                    if (options.solverFix && tn.isLeaf() && Math.abs(tn.stats.mean()) != INF) {
+                    if (options.solverFix && tn.isLeaf() && Math.abs(mean(tn.stats)) != INF) {
                         // Execute the move represented by the child
-                        board.doAIMove(tn.getMove(), player);
-                        TreeNode winner = tn.expand(board, depth + 2, this.player);
+                        board.doAIMove(tn.getMove(), board.getPlayerToMove());
+                        TreeNode winner = tn.expand(board, depth + 2, this.player, false);
                         board.undoMove();
                         // We found a winning node below the child, this means the child is a loss.
                         if (winner != null) {
                             // check for non-negamax
                             if (player != tn.player)
-                                tn.stats.setValue(-INF);
+                                setValue(tn.stats, -INF);
                             else
-                                tn.stats.setValue(INF);
+                                setValue(tn.stats, INF);
                         }
                     }
-                    // Are all children a loss?
-                    if (tn.stats.mean() != result) {
+                    // Are all children a loss? (Lazy expansion) Untried moves are not proven
+                    if (mean(tn.stats) != result || untried != null) {
                         // (AUCT) Update the virtual node with a loss
                         if (options.auct && children.get(0).isVirtual()) {
                             TreeNode virtChild = children.get(0);
                             // check for non-negamax
                             if (player != virtChild.player)
-                                virtChild.stats.push(-1);
+                                push(virtChild.stats, -1);
                             else
-                                virtChild.stats.push(1);
+                                push(virtChild.stats, 1);
                         }
                         // Return a single loss, if not all children are a loss
                         // check for non-negamax; can't explain why the return value has a different sign
@@ -207,9 +253,9 @@ public class TreeNode {
                 // (Solver) If all children lead to a loss for the opponent, then I'm a win
                 // check for non-negamax
                 if (previousPlayer != this.player)
-                    stats.setValue(INF);
+                    setValue(stats, INF);
                 else
-                    stats.setValue(-INF);
+                    setValue(stats, -INF);
 
                 return result; // always return in view of me
             }
@@ -231,16 +277,40 @@ public class TreeNode {
             return -result;
     }
 
+    /**
+     * Set the statistics that the searches on the current thread are counted in, null to stop counting
+     * The phases of the search are only timed if the options ask for it, this requires statistics to be set.
+     */
+    public static void setSearchStats(SearchStats stats) {
+        searchStats.set(stats);
+    }
+
+    /**
+     * (Leaf-parallel) Set the workers that run the extra play-outs of the current thread, null to play out serially
+     */
+    public static void setPlayoutPool(ExecutorService pool) {
+        playoutPool.set(pool);
+    }
+
     public TreeNode expand(IBoard board, int depth, int parentPlayer) {
-        expanded = true;
+        // Chance nodes select a random child, partial observable games check the moves per determinization
+        boolean lazy = options.lazyExpansion && !options.treeParallel && !board.isPartialObservable()
+                && (move == null || !move.isChance());
+        return expand(board, depth, parentPlayer, lazy);
+    }
+
+    /**
+     * @param lazy (Lazy expansion) only store the moves, the children are created when they are selected
+     */
+    private TreeNode expand(IBoard board, int depth, int parentPlayer, boolean lazy) {
         // check for non-negamax. will sent this later below!
         // If one of the nodes is a win, we don't have to select
         int nextPlayer = board.getPlayerToMove();
         TreeNode winNode = null;
         // Generate all moves
         MoveList moves = board.getExpandMoves();
-        if (children == null)
-            children = new CopyOnWriteArrayList<>();
+        // The children are collected first, and published to the tree when complete
+        List<TreeNode> children = new ArrayList<>(moves.size() + 1);
         // (AUCT) Add an extra virtual node
         if (options.auct) {
             // FIXME: non-negamax games
@@ -249,66 +319,41 @@ public class TreeNode {
             vNode.velocity = velocity;
             children.add(vNode);
         }
-        double value, best_imVal = -INF, best_pbVal = -INF, best_maxBackpropQs = -INF;
+        double best_imVal = -INF, best_pbVal = -INF, best_maxBackpropQs = -INF;
         int winner = board.checkWin();
         // Board is terminal, don't expand
-        if (winner != IBoard.NONE_WIN)
+        if (winner != IBoard.NONE_WIN) {
+            publishChildren(children);
+            return null;
+        }
+        if (lazy) {
+            // (Lazy expansion) Keep the moves, the board may reuse its move list
+            untried = new IMove[moves.size()];
+            for (int i = 0; i < moves.size(); i++)
+                untried[i] = moves.get(i);
+            nUntried = untried.length;
+            publishChildren(children);
+            if (options.implicitMM) {
+                this.imAlpha = -INF - 1;
+                this.imBeta = +INF + 1;
+            }
+            // The values over the children are computed when the stats are updated
+            if (options.progBias && !options.pbDecay)
+                this.heval = -board.evaluate(player, options.efVer);
             return null;
+        }
         // Add all moves as children to the current node
         for (int i = 0; i < moves.size(); i++) {
             // If the game is partial observable, we don't want to do the solver part
-            if (!board.isPartialObservable() && board.doAIMove(moves.get(i), player)) {
-                TreeNode child;
-                // Initialize the child
-                if (options.swUCT && depth >= options.minSWDepth && depth <= options.maxSWDepth)
-                    child = new TreeNode(nextPlayer, depth, moves.get(i), options, true);
-                else
-                    child = new TreeNode(nextPlayer, depth, moves.get(i), options);
-
-                winner = IBoard.NONE_WIN;
-                if (options.solver) {
-                    // Check for a winner, (Solver)
-                    winner = board.checkWin();
-                    //
-                    if (winner == player) {
-                        value = INF;
-                        // This is a win for the expanding node
-                        winNode = child;
-                    } else if (winner == nextPlayer) {
-                        value = -INF;
-                    } else {
-                        value = 0.;
-                    }
-
-                    // Set the value of the child (0 = nothing, +/-INF win/loss)
-                    child.stats.setValue(value);
-                }
-                // implicit minimax
-                if (options.implicitMM) {
-                    // check for non-negamax
-                    if (player != nextPlayer)
-                        child.imVal = -board.evaluate(nextPlayer, options.efVer); // view of parent
-                    else
-                        child.imVal = board.evaluate(nextPlayer, options.efVer); // view of parent
-
-                    if (child.imVal > best_imVal)
-                        best_imVal = child.imVal;
-
-                    child.imAlpha = -INF - 1;
-                    child.imBeta = +INF + 1;
-                }
-                // node priors
-                if (winner != player && winner != nextPlayer && options.nodePriors) {
-                    board.initNodePriors(player, child.stats, moves.get(i), options.nodePriorsVisits);
-                }
-                // prog. bias
-                if (options.progBias) {
-                    // must be strictly a bonus
-                    child.heval = -board.evaluate(nextPlayer, options.efVer);
-
-                    if (options.pbDecay && child.heval > best_pbVal)
-                        best_pbVal = child.heval;
-                }
+            if (!board.isPartialObservable() && board.doAIMove(moves.get(i), nextPlayer)) {
+                TreeNode child = createChild(board, moves.get(i), nextPlayer, depth);
+                // This is a win for the expanding node
+                if (options.solver && child.stats.mean() == INF)
+                    winNode = child;
+                if (options.implicitMM && child.imVal > best_imVal)
+                    best_imVal = child.imVal;
+                if (options.progBias && options.pbDecay && child.heval > best_pbVal)
+                    best_pbVal = child.heval;
                 children.add(child);
                 // reset the board
                 board.undoMove();
@@ -318,6 +363,9 @@ public class TreeNode {
                 children.add(new TreeNode(nextPlayer, ply, moves.get(i), options));
             }
         }
+        // (Tree-parallel) Another thread expanded this node first, use its children instead
+        if (!publishChildren(children))
+            return null;
         // implicit minimax
         if (options.implicitMM) {
             // check for non-negamax; 
@@ -343,17 +391,147 @@ public class TreeNode {
         return winNode;
     }
 
+    /**
+     * Create the child for a move, the move has been made on the board
+     */
+    private TreeNode createChild(IBoard board, IMove move, int nextPlayer, int depth) {
+        TreeNode child;
+        // Initialize the child
+        if (options.swUCT && depth >= options.minSWDepth && depth <= options.maxSWDepth)
+            child = new TreeNode(nextPlayer, depth, move, options, true);
+        else
+            child = new TreeNode(nextPlayer, depth, move, options);
+
+        int winner = IBoard.NONE_WIN;
+        if (options.solver) {
+            double value;
+            // Check for a winner, (Solver)
+            winner = board.checkWin();
+            //
+            if (winner == player) {
+                value = INF;
+            } else if (winner == nextPlayer) {
+                value = -INF;
+            } else {
+                value = 0.;
+            }
+
+            // Set the value of the child (0 = nothing, +/-INF win/loss)
+            child.stats.setValue(value);
+        }
+        // implicit minimax
+        if (options.implicitMM) {
+            // check for non-negamax
+            if (player != nextPlayer)
+                child.imVal = -board.evaluate(nextPlayer, options.efVer); // view of parent
+            else
+                child.imVal = board.evaluate(nextPlayer, options.efVer); // view of parent
+
+            child.imAlpha = -INF - 1;
+            child.imBeta = +INF + 1;
+        }
+        // node priors
+        if (winner != player && winner != nextPlayer && options.nodePriors) {
+            board.initNodePriors(player, child.stats, move, options.nodePriorsVisits);
+        }
+        // prog. bias
+        if (options.progBias) {
+            // must be strictly a bonus
+            child.heval = -board.evaluate(nextPlayer, options.efVer);
+        }
+        return child;
+    }
+
+    /**
+     * (Lazy expansion) Create the child of a random untried move, illegal moves are discarded
+     *
+     * @return The new child, or null if none of the untried moves was legal
+     */
+    private TreeNode addUntriedChild(IBoard board, int depth) {
+        int nextPlayer = board.getPlayerToMove();
+        while (nUntried > 0) {
+            int i = MCTSOptions.r.nextInt(nUntried);
+            IMove move = untried[i];
+            untried[i] = untried[--nUntried];
+            if (board.doAIMove(move, nextPlayer)) {
+                TreeNode child = createChild(board, move, nextPlayer, depth);
+                board.undoMove();
+                children.add(child);
+                SearchStats searchStats = TreeNode.searchStats.get();
+                if (searchStats != null)
+                    searchStats.nodes++;
+                if (nUntried == 0)
+                    untried = null;
+                return child;
+            }
+        }
+        untried = null;
+        return null;
+    }
+
+    /**
+     * Make the expanded children visible in the tree. In tree-parallel mode, only the first
+     * thread to expand the node succeeds, all other threads discard their children.
+     *
+     * @return false if another thread published its children first
+     */
+    private boolean publishChildren(List<TreeNode> newChildren) {
+        SearchStats searchStats = TreeNode.searchStats.get();
+        if (searchStats != null)
+            searchStats.nodes += newChildren.size();
+        boolean published = true;
+        if (options.treeParallel) {
+            published = CHILDREN.compareAndSet(this, null, new CopyOnWriteArrayList<>(newChildren));
+        } else if (children == null) {
+            // (Lazy expansion) Children are added one at a time, which would copy the whole list every time
+            children = (untried != null) ? newChildren : new CopyOnWriteArrayList<>(newChildren);
+        } else {
+            children.addAll(newChildren);
+        }
+        expanded = true;
+        return published;
+    }
+
+    private void push(StatCounter stats, double value) {
+        if (options.treeParallel)
+            stats.pushConcurrent(value);
+        else
+            stats.push(value);
+    }
+
+    private void setValue(StatCounter stats, double value) {
+        if (options.treeParallel)
+            stats.setValueConcurrent(value);
+        else
+            stats.setValue(value);
+    }
+
+    private double mean(StatCounter stats) {
+        return options.treeParallel ? stats.meanConcurrent() : stats.mean();
+    }
+
+    private int visits(StatCounter stats) {
+        return options.treeParallel ? stats.visitsConcurrent() : stats.visits();
+    }
+
     private TreeNode select(IBoard board, int depth) {
         TreeNode selected = null;
         double bestValue = Double.NEGATIVE_INFINITY, uctValue, avgValue, ucbVar, Np, Nc, sumcvisits = 0;
+        double cMean, cVariance;
 
         // For a chance-move, select a random child
         if (move != null && move.isChance()) {
             return children.get(MCTSOptions.r.nextInt(children.size()));
         }
+        // (Lazy expansion) Unvisited children are selected first, so create a child for an untried move
+        if (nUntried > 0) {
+            TreeNode child = addUntriedChild(board, depth);
+            if (child != null)
+                return child;
+        }
 
         for (TreeNode c : children)
-            sumcvisits += c.getnVisits();
+            sumcvisits += visits(c.stats);
 
         // Select a child according to the UCT Selection policy
         for (TreeNode c : children) {
@@ -364,11 +542,29 @@ public class TreeNode {
             if (board.isPartialObservable() && !board.isLegal(c.getMove()))
                 continue;
 
-            if (c.getnVisits() == 0 || c.stats.mean() == INF) {
+            int vl = options.treeParallel ? c.virtualLoss : 0;
+            if (options.treeParallel) {
+                // (Tree-parallel) Read the child's stats as they were after one update, other threads update them
+                synchronized (c.stats) {
+                    Nc = c.stats.visits();
+                    cMean = c.stats.mean();
+                    cVariance = c.stats.variance();
+                }
+            } else {
+                Nc = c.stats.visits();
+                cMean = c.stats.mean();
+                cVariance = c.stats.variance();
+            }
+            if ((Nc == 0 && vl == 0) || cMean == INF) {
                 // First, visit all children at least once
                 uctValue = INF + MCTSOptions.r.nextDouble();
             } else {
-                avgValue = c.stats.mean();
+                avgValue = (Nc > 0) ? cMean : 0.;
+                // (Tree-parallel) Count the searches currently below the child as losses
+                if (vl > 0) {
+                    avgValue = (avgValue * Nc - vl * options.virtualLoss) / (Nc + vl);
+                    Nc += vl;
+                }
                 // Implicit minimax
                 if (options.implicitMM) {
                     // changed to be consistent with Mark + Nathan
@@ -384,8 +580,7 @@ public class TreeNode {
                 }
 
                 // Parent visits can be altered for windowed UCT
-                Np = getnVisits();
-                Nc = c.getnVisits();
+                Np = Math.max(1, visits(stats));
 
                 if (options.nodePriors)
                     Np = sumcvisits;
@@ -411,7 +606,7 @@ public class TreeNode {
                 }
                 //
                 if (options.ucbTuned) {
-                    ucbVar = c.stats.variance() + Math.sqrt((2. * FastLog.log(Np)) / Nc);
+                    ucbVar = cVariance + Math.sqrt((2. * FastLog.log(Np)) / Nc);
                     uctValue = avgValue + Math.sqrt((Math.min(options.maxVar, ucbVar) * FastLog.log(Np)) / Nc);
                 } else {
                     // Compute the uct value with the (new) average value
@@ -437,7 +632,7 @@ public class TreeNode {
         return selected;
     }
 
-    private int chooseEGreedyEval(IBoard board, List<IMove> moves, int currentPlayer) {
+    private static int chooseEGreedyEval(IBoard board, List<IMove> moves, int currentPlayer, MCTSOptions options) {
         double roll = MCTSOptions.r.nextDouble();
         double tolerance = 0.0001;
 
@@ -479,27 +674,79 @@ public class TreeNode {
         return bestMoveIndices.get(idx);
     }
 
+    /**
+     * (Leaf-parallel) Play out the position options.leafPlayouts times, all but the first play-out are run by the
+     * workers on copies of the board. The board is returned to the position afterwards.
+     *
+     * @return The mean result of the play-outs in view of the given player
+     */
+    static double playOuts(IBoard board, final int depth, final int player, final MCTSOptions options) {
+        ExecutorService pool = playoutPool.get();
+        if (pool == null || options.leafPlayouts <= 1 || board.checkWin() != IBoard.NONE_WIN)
+            return playOut(board, depth, player, options);
+        List<Future<Double>> results = new ArrayList<>(options.leafPlayouts - 1);
+        for (int i = 1; i < options.leafPlayouts; i++) {
+            final IBoard copy = board.copy();
+            results.add(pool.submit(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return playOut(copy, depth, player, options);
+                }
+            }));
+        }
+        double result = playOut(board, depth, player, options);
+        try {
+            for (Future<Double> f : results)
+                result += f.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Leaf-parallel play-out failed", e);
+        }
+        return result / options.leafPlayouts;
+    }
+
+    /**
+     * Play a random game from the current position, the board is returned to the position afterwards
+     *
+     * @return The result of the play-out in view of the given player
+     */
     @SuppressWarnings("ConstantConditions")
-    private double playOut(IBoard board, int depth) {
+    static double playOut(IBoard board, int depth, int player, MCTSOptions options) {
         boolean gameEnded, moveMade;
         double detScore = 0;
         int currentPlayer = board.getPlayerToMove(), moveIndex = -1;
         double mastMax, mastVal, nMoves = 0;
         int nMovesInt = 0;
-        List<IMove> moves;
+        List<IMove> moves = null;
         int winner = board.checkWin();
         gameEnded = (winner != IBoard.NONE_WIN);
         IMove currentMove;
         boolean terminateEarly = false;
+        // Let the board draw the moves, or use int-encoded moves if the board supports them.
+        // Epsilon-greedy play-outs need the IMoves
+        RandomMoveBoard rBoard = null;
+        PrimitiveMoveBoard pBoard = null;
+        int[] pMoves = null;
+        int nPMoves = 0;
+        if (board instanceof RandomMoveBoard && !options.epsGreedyEval) {
+            rBoard = (RandomMoveBoard) board;
+        } else if (board instanceof PrimitiveMoveBoard && !options.epsGreedyEval) {
+            pBoard = (PrimitiveMoveBoard) board;
+            pMoves = getPlayoutMoveBuffer(pBoard.getMaxPlayoutMoves());
+        }
 
         while (!gameEnded && !terminateEarly) {
 
-            moves = board.getPlayoutMoves(options.useHeuristics);
+            if (pBoard != null)
+                nPMoves = pBoard.getPlayoutMoves(pMoves, options.useHeuristics);
+            else if (rBoard == null)
+                moves = board.getPlayoutMoves(options.useHeuristics);
             moveMade = false;
 
             while (!moveMade) {
+                if (rBoard != null)
+                    moveMade = rBoard.doRandomMove(currentPlayer, options.useHeuristics);
                 // All moves were thrown away, the game is a draw
-                if (moves.size() == 0) {
+                if ((rBoard != null) ? !moveMade : (pBoard != null) ? nPMoves == 0 : moves.size() == 0) {
                     gameEnded = true;
                     // The current player has no moves left
                     if (board.noMovesIsDraw())
@@ -510,9 +757,21 @@ public class TreeNode {
                 }
 
                 // Select a move from the available ones
-                if (options.epsGreedyEval) {
+                if (rBoard != null) {
+                    currentMove = null;
+                } else if (pBoard != null) {
+                    moveIndex = MCTSOptions.r.nextInt(nPMoves);
+                    if (pBoard.doAIMove(pMoves[moveIndex], currentPlayer)) {
+                        moveMade = true;
+                    } else {
+                        // The move was illegal, remove it from the list.
+                        pMoves[moveIndex] = pMoves[--nPMoves];
+                        continue;
+                    }
+                    currentMove = null;
+                } else if (options.epsGreedyEval) {
                     // If epsilon greedy play-outs, choose the highest eval
-                    moveIndex = chooseEGreedyEval(board, moves, currentPlayer);
+                    moveIndex = chooseEGreedyEval(board, moves, currentPlayer, options);
                     currentMove = moves.get(moveIndex);
 //                } else if (options.useHeuristics && options.MAST && MCTSOptions.r.nextDouble() < options.mastEps) {
 //                    mastMoves.clear();
@@ -536,7 +795,7 @@ public class TreeNode {
                 }
 
                 // Check if the move can be made, otherwise remove it from the list
-                if (board.doAIMove(currentMove, currentPlayer)) {
+                if (moveMade || board.doAIMove(currentMove, currentPlayer)) {
 
 //                    // Keep track of moves made
 //                    if (options.history && !options.to_history)
@@ -587,14 +846,14 @@ public class TreeNode {
 
                 // Relative bonus
                 if (options.relativeBonus && (nMoves + depth) > 0) {
-                    if (options.moveCov.variance2() > 0. && moveStats[w].variance() > 0. && moveStats[w].totalVisits() >= 50) {
-                        double x = (moveStats[w].mean() - (nMoves + depth)) / moveStats[w].stddev();
+                    if (options.moveCov.variance2() > 0. && options.moveStats[w].variance() > 0. && options.moveStats[w].totalVisits() >= 50) {
+                        double x = (options.moveStats[w].mean() - (nMoves + depth)) / options.moveStats[w].stddev();
                         double cStar = options.moveCov.getCovariance() / options.moveCov.variance2();
 //                        score += Math.signum(score) * .25 * FastSigm.sigm(-options.kr * x);
                         score += Math.signum(score) * cStar * FastSigm.sigm(-options.kr * x);
                     }
                     // Maintain the average number of moves per play-out
-                    moveStats[w].push(nMoves + depth);
+                    options.moveStats[w].push(nMoves + depth);
                     int nm = board.getNMovesMade();
                     int n = (winner == player) ? nm : 0;
                     options.moveCov.push(n, nm);
@@ -604,14 +863,14 @@ public class TreeNode {
                 if (options.qualityBonus) {
                     // Only compute the quality if QB is active, since it may be costly to do so
                     double q = board.getQuality();
-                    if (options.qualityCov.getCovariance() > 0. && qualityStats[w].variance() > 0. && qualityStats[w].totalVisits() >= 50) {
-                        double qb = (q - qualityStats[w].mean()) / qualityStats[w].stddev();
+                    if (options.qualityCov.getCovariance() > 0. && options.qualityStats[w].variance() > 0. && options.qualityStats[w].totalVisits() >= 50) {
+                        double qb = (q - options.qualityStats[w].mean()) / options.qualityStats[w].stddev();
                         double cStar = options.qualityCov.getCovariance() / options.qualityCov.variance2();
 //                        score += Math.signum(score) * .25 * FastSigm.sigm(-options.kq * qb);
                         score += Math.signum(score) * cStar * FastSigm.sigm(-options.kq * qb);
                     }
-                    qualityStats[w].push(q);
-                    options.qualityCov.push((winner == myPlayer) ? q : 0, q);
+                    options.qualityStats[w].push(q);
+                    options.qualityCov.push((winner == options.bonusPlayer) ? q : 0, q);
                 }
             }
         } else if (options.detEnabled && terminateEarly && (detScore > options.detThreshold || detScore < -options.detThreshold)) {
@@ -652,6 +911,15 @@ public class TreeNode {
         return score;
     }
 
+    private static int[] getPlayoutMoveBuffer(int size) {
+        int[] buffer = playoutMoves.get();
+        if (buffer == null || buffer.length < size) {
+            buffer = new int[size];
+            playoutMoves.set(buffer);
+        }
+        return buffer;
+    }
+
     public TreeNode getBestChild(IBoard board) {
         double max = Double.NEGATIVE_INFINITY, value;
         TreeNode bestChild = null;
@@ -690,36 +958,37 @@ public class TreeNode {
     private void updateStats(double value, int previousPlayer, int depth) {
 
         // If we are not using AUCT simply add the total value
-        if (options.maxBackprop && children != null && getnVisits() >= options.maxBackpropT) {
+        if (options.maxBackprop && children != null && visits(stats) >= options.maxBackpropT) {
             double bestVal = -INF - 1;
 
             for (TreeNode c : children) {
                 //double childVal = getnVisits() * c.maxBackpropQs; 
                 //double childVal = getnVisits() * c.maxBackpropQs; 
-                double childVal = c.stats.mean();
+                double childVal = mean(c.stats);
 
                 if (childVal > bestVal)
                     bestVal = childVal;
             }
 
             if (previousPlayer != this.player)
-                stats.push(-bestVal);
+                push(stats, -bestVal);
             else
-                stats.push(bestVal);
+                push(stats, bestVal);
         } else if ((!options.auct || isLeaf())) {
-            stats.push(value);
+            push(stats, value);
         } else {
             // Compute the auct win ratio
             double sum_v = 0., sum_v_r = 0.;
             for (TreeNode c : children) {
                 // Due to the solver, there may be loss-nodes,
                 // these should not be considered in the average node value
-                if (c.stats.mean() == -INF)
+                double childVal = mean(c.stats);
+                if (childVal == -INF)
                     continue;
                 sum_v += c.velocity;
-                sum_v_r += c.velocity * c.stats.mean();
+                sum_v_r += c.velocity * childVal;
             }
-            stats.setValue(-1 * (sum_v_r / sum_v));
+            setValue(stats, -1 * (sum_v_r / sum_v));
         }
 
         // implicit minimax backups
@@ -783,9 +1052,9 @@ public class TreeNode {
 
     public boolean isTerminal() {
         if (!options.auct)
-            return children != null && children.size() == 0;
+            return children != null && children.size() == 0 && nUntried == 0;
         else
-            return children != null && children.size() == 1;
+            return children != null && children.size() == 1 && nUntried == 0;
     }
 
     public int getArity() {
@@ -796,6 +1065,90 @@ public class TreeNode {
         return children;
     }
 
+    /**
+     * @return The child that represents the move, or null if the node has no such child
+     */
+    public TreeNode getChild(IMove move) {
+        if (children == null || move == null)
+            return null;
+        for (TreeNode c : children) {
+            // (AUCT) The virtual child has no move
+            if (!c.isVirtual() && move.equals(c.getMove()))
+                return c;
+        }
+        return null;
+    }
+
+    /**
+     * (Tree reuse) Make this node the root of the next search, no search may be running on the tree.
+     * The visits below the node are multiplied by the decay. The tree is cut breadth-first after
+     * maxNodes nodes, nodes that do not fit become leaves again.
+     *
+     * @param rootPlayer The player to move at the node
+     * @return The number of nodes kept
+     */
+    public int makeRoot(int rootPlayer, double decay, int maxNodes) {
+        // The stats of the children are in view of the node's player, which becomes the root player
+        if (player != rootPlayer && children != null) {
+            for (TreeNode c : children) {
+                c.stats.invert();
+                c.imVal = -c.imVal;
+            }
+        }
+        player = rootPlayer;
+        move = null;
+        options.bonusPlayer = rootPlayer;
+        int nodes = 1;
+        ArrayDeque<TreeNode> queue = new ArrayDeque<>();
+        queue.add(this);
+        while (!queue.isEmpty()) {
+            TreeNode node = queue.poll();
+            if (decay < 1.)
+                node.stats.scale(decay);
+            if (node.children == null)
+                continue;
+            if (nodes + node.children.size() > maxNodes) {
+                node.collapse();
+                continue;
+            }
+            nodes += node.children.size();
+            queue.addAll(node.children);
+        }
+        return nodes;
+    }
+
+    /**
+     * @return The number of nodes in the tree below and including this node
+     */
+    public int countNodes() {
+        int nodes = 1;
+        if (children != null) {
+            for (TreeNode c : children)
+                nodes += c.countNodes();
+        }
+        return nodes;
+    }
+
+    /**
+     * (Node budget) Remove the least visited subtrees below this node, see NodeBudget.evict
+     *
+     * @return The number of nodes removed
+     */
+    public int evict(int nodes) {
+        return NodeBudget.evict(this, nodes);
+    }
+
+    /**
+     * Remove the node's children, they are created again when the node is selected
+     */
+    @Override
+    public void collapse() {
+        children = null;
+        expanded = false;
+        untried = null;
+        nUntried = 0;
+    }
+
     public IMove getMove() {
         return move;
     }
@@ -2,6 +2,7 @@ package alphabeta;
 
 import ai.MCTSOptions;
 import framework.*;
+import framework.util.ThreadRandom;
 
 import java.text.DecimalFormat;
 import java.util.Random;
@@ -13,15 +14,15 @@ public class AlphaBeta implements AIPlayer {
     private final double N_INF = -2000000, P_INF = 2000000;
     // The base win value, decreased with D_DECR per depth
     private final double WIN_VAL = 1000000, D_DECR = 5000;
-    // Some contant values (TT_size = 2^25)
-    private final int TT_SIZE = 33554432, TIME_CHECK_INT = 1000, BASE_TIME = 15000;
+    // Some contant values (TT_size = 2^22 positions of three longs)
+    private final int TT_SIZE_LOG2 = 22, TIME_CHECK_INT = 1000, BASE_TIME = 15000;
     private final DecimalFormat decForm = new DecimalFormat("#,###,###,###,##0");
     //
     double DELTA = 60, DEFAULT_DELTA = 60;
     public int R = 2, MAX_DEPTH = 1000;
     public boolean nullmoves = false, historyHeuristic = false,
             killermoves = false, aspiration = false;
-    boolean interupted = false;
+    volatile boolean interupted = false;
     int[] captures = new int[2];
 
     //
@@ -36,15 +37,18 @@ public class AlphaBeta implements AIPlayer {
     private double totalDepth, numMoves, researches;
     // Counters etc.
     private int maxDepth, nodes, collisions, timeCheck, myPlayer, opponent, //bestMove, prevBestMove,
-            tt_lookups;
+            tt_lookups, tt_probes;
     private long endTime;
     private boolean forceHalt = false, parallel = true;
+    // (Lazy SMP) 0 for the main thread, otherwise the number of the helper
+    private int helper = 0;
     // Transposition table, history, killer moves, butterfly board
-    private Transposition[] tt;
+    private TranspositionTable tt;
     private int[][] history, bfboard;
     private int[][] killermove;
     private Thread t;
     private AlphaBetaOptions options;
+    private SearchStats stats = new SearchStats();
 
     public AlphaBeta() {
         // Assuming we never go deeper than the size of the board.
@@ -52,36 +56,30 @@ public class AlphaBeta implements AIPlayer {
         //bfboard = new int[2][Board.SIZE];
     }
 
-    public void newGame(int myPlayer, String game) {
+    /**
+     * (Lazy SMP) A helper that searches the position on the main thread's transposition table
+     */
+    private AlphaBeta(AlphaBeta main, int helper, IBoard board) {
+        this.helper = helper;
+        this.options = main.options;
+        this.tt = main.tt;
+        this.myPlayer = main.myPlayer;
+        this.endTime = main.endTime;
+        this.initBoard = board;
+        this.timeCheck = TIME_CHECK_INT;
     }
 
-    private long MASK = TT_SIZE - 1;
-
-
-    private int getHashPos(long hash) {
-        return (int) (hash & MASK);
+    public void newGame(int myPlayer, String game) {
     }
 
     private void createTT() {
-        tt = new Transposition[TT_SIZE];
-        //for (int i = 0; i < TT_SIZE; i++)
-        //    tt[i] = new Transposition();
-    }
-
-    private void resetTT() {
-        for (int i = 0; i < TT_SIZE; i++)
-            if (tt[i] != null)
-                tt[i].reset();
+        tt = new TranspositionTable(TT_SIZE_LOG2);
     }
 
     private void destroyTT() {
         tt = null;
     }
 
-    private boolean isEmpty(Transposition t) {
-        return (t == null || t.empty());
-    }
-
     public void resetStats() {
         totalDepth = 0;
         numMoves = 0;
@@ -113,6 +111,10 @@ public class AlphaBeta implements AIPlayer {
         return finalBestMove;
     }
 
+    public SearchStats getStats() {
+        return stats;
+    }
+
     public void stop() {
         if (t != null) {
             interupted = true;
@@ -120,6 +122,10 @@ public class AlphaBeta implements AIPlayer {
     }
 
     public void getMove(IBoard board, MoveCallback callback, int myPlayer, boolean parallel, IMove lastMove) {
+        if (options.helperThreads > 0 && !options.transpositions)
+            throw new RuntimeException("Lazy SMP requires the transposition table.");
+        SearchStats stats = new SearchStats();
+        stats.start();
         this.initBoard = board;
         //this.callback = callback;
         this.myPlayer = myPlayer;
@@ -136,9 +142,9 @@ public class AlphaBeta implements AIPlayer {
         bestMove = null;
         maxDepth = 0;
         tt_lookups = 0;
+        tt_probes = 0;
         timeCheck = TIME_CHECK_INT;
         forceHalt = false;
-        double prevVal = 0;
 
         if (options.transpositions && tt == null)
             createTT();
@@ -146,11 +152,87 @@ public class AlphaBeta implements AIPlayer {
         // endTime = 15000; // for testing
         endTime = System.currentTimeMillis() + options.timeLimit;
 
-        //
-        // long lastItStartTime = 0, lastItTime = 0;
-        double val = 0, alpha = N_INF, beta = P_INF;
+        // (Lazy SMP) The helpers run the same iterative deepening, their results reach us through the table
+        AlphaBeta[] helpers = new AlphaBeta[options.helperThreads];
+        Thread[] helperThreads = new Thread[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            final AlphaBeta helper = new AlphaBeta(this, i + 1, board.copy());
+            helpers[i] = helper;
+            helperThreads[i] = new Thread(ThreadRandom.seeded(new Runnable() {
+                @Override
+                public void run() {
+                    helper.deepen();
+                }
+            }));
+            helperThreads[i].setDaemon(true);
+            helperThreads[i].start();
+        }
         boolean wonlost = false;
+        double val = deepen();
+        int helperNodes = 0;
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i].interupted = true;
+            try {
+                helperThreads[i].join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            helperNodes += helpers[i].nodes;
+        }
+        // (Lazy SMP) The helpers compete for the cpu, our first iteration may not have finished
+        if (bestMove == null)
+            bestMove = fallbackMove(helpers);
+        //
+        if (!wonlost) {
+            numMoves++;
+            totalNodes += nodes + helperNodes;
+            totalDepth += maxDepth;
+        }
+
+        finalBestMove = bestMove;
+        stats.nodes = nodes + helperNodes;
+        stats.maxDepth = maxDepth;
+        stats.ttLookups = tt_probes;
+        stats.ttHits = tt_lookups - collisions;
+        stats.ttCollisions = collisions;
+        stats.stop();
+        this.stats = stats;
 
+        //
+        if (options.debugInfoMove) {
+            System.out.println(" - MaxDepth: " + maxDepth);
+            System.out.println(" - Final best value: " + val);
+            System.out.println(" - Final best move : " + finalBestMove);
+            System.out.println(" - Nodes visited: " + decForm.format(nodes));
+            if (helpers.length > 0)
+                System.out.println(" - Helper nodes visited: " + decForm.format(helperNodes));
+
+            System.out.println(":: Forced halt: " + forceHalt);
+            System.out.println(":: TT Lookups: " + decForm.format(tt_lookups));
+            System.out.println(":: Collisions: " + decForm.format(collisions));
+            System.out.println(":: Nodes visited: " + decForm.format(nodes));
+            System.out.println("--------------------------------");
+        }
+        // Free the transposition table for the gc.
+        //tt = null;
+        if (options.transpositions)
+            destroyTT();
+        //resetTT();
+
+        if (!interupted && parallel)
+            callback.makeMove(finalBestMove);
+    }
+
+    /**
+     * Iterative deepening from the initial board until the time is up.
+     * (Lazy SMP) Odd helpers search one ply deeper than the main thread in every iteration.
+     *
+     * @return The value of the best completed iteration, bestMove and maxDepth are set to this iteration
+     */
+    private double deepen() {
+        // long lastItStartTime = 0, lastItTime = 0;
+        double val = 0, prevVal = 0, alpha = N_INF, beta = P_INF;
+        maxDepth = helper % 2;
         while (maxDepth < MAX_DEPTH && !forceHalt && !interupted) {
             maxDepth += 1;
             if (options.debugInfoAB)
@@ -197,36 +279,33 @@ public class AlphaBeta implements AIPlayer {
             val = prevVal;
             maxDepth--;
         }
-        //
-        if (!wonlost) {
-            numMoves++;
-            totalNodes += nodes;
-            totalDepth += maxDepth;
-        }
-
-        finalBestMove = bestMove;
-
-        //
-        if (options.debugInfoMove) {
-            System.out.println(" - MaxDepth: " + maxDepth);
-            System.out.println(" - Final best value: " + val);
-            System.out.println(" - Final best move : " + finalBestMove);
-            System.out.println(" - Nodes visited: " + decForm.format(nodes));
+        return val;
+    }
 
-            System.out.println(":: Forced halt: " + forceHalt);
-            System.out.println(":: TT Lookups: " + decForm.format(tt_lookups));
-            System.out.println(":: Collisions: " + decForm.format(collisions));
-            System.out.println(":: Nodes visited: " + decForm.format(nodes));
-            System.out.println("--------------------------------");
+    /**
+     * (Lazy SMP) The move to play when the main thread did not complete an iteration: the best move of the deepest
+     * iteration a helper completed, the best move of the root in the transposition table, or the first move.
+     */
+    private IMove fallbackMove(AlphaBeta[] helpers) {
+        AlphaBeta deepest = null;
+        for (AlphaBeta h : helpers) {
+            if (h.bestMove != null && (deepest == null || h.maxDepth > deepest.maxDepth))
+                deepest = h;
         }
-        // Free the transposition table for the gc.
-        //tt = null;
-        if (options.transpositions)
-            destroyTT();
-        //resetTT();
-
-        if (!interupted && parallel)
-            callback.makeMove(finalBestMove);
+        if (deepest != null)
+            return deepest.bestMove;
+        MoveList rootMoves = initBoard.getOrderedMoves();
+        if (options.transpositions) {
+            long bhash = initBoard.hash();
+            int entry = tt.entry(bhash);
+            long check = tt.check(entry), tpBits = tt.value(entry), tpInfo = tt.info(entry);
+            if (TranspositionTable.verify(bhash, check, tpBits, tpInfo)) {
+                int index = TranspositionTable.bestMoveIndex(tpInfo);
+                if (index >= 0 && index < rootMoves.size())
+                    return rootMoves.get(index);
+            }
+        }
+        return rootMoves.get(0);
     }
 
     private int getOpponent(int player) {
@@ -255,7 +334,7 @@ public class AlphaBeta implements AIPlayer {
         int inv_depth = maxDepth - depth;
         double value = N_INF, bestValue = N_INF;
         double capsw, capsb, olda = alpha, oldb = beta;
-        int hashPos = 0, color = (player == myPlayer) ? 1 : -1;
+        int entry = 0, color = (player == myPlayer) ? 1 : -1;
         IMove plyBestMove = null;
         boolean valuefound = false, collision = false;
         int curBestMoveIndex = -1;
@@ -266,33 +345,37 @@ public class AlphaBeta implements AIPlayer {
         //int[] currentMoves;
         MoveList currentMoves;
         int tpBestMoveIndex = -1;
-        long bhash = -1;
+        long bhash = -1, tpInfo = 0;
         //
-        Transposition tp = null;
         if (options.transpositions) {
             bhash = board.hash();
-            hashPos = getHashPos(bhash);
-            tp = tt[hashPos];
+            entry = tt.entry(bhash);
+            // (Lazy SMP) Read every word once, another thread may be writing the entry
+            long check = tt.check(entry), tpBits = tt.value(entry);
+            tpInfo = tt.info(entry);
+            tt_probes++;
             // Check if present in transposition table
-            if (!isEmpty(tp)) {
+            if (tpInfo != 0) {
                 tt_lookups++;
                 // Position was evaluated previously
                 // Check for a collision
-                if (tp.hash != bhash) {
+                if (!TranspositionTable.verify(bhash, check, tpBits, tpInfo)) {
                     collisions++;
                     collision = true;
-                } else if (depth <= tp.depth) {
-                    if (tp.flag == Transposition.REAL)
-                        return tp.value;
-                    if (tp.flag == Transposition.L_BOUND && tp.value > alpha)
-                        alpha = tp.value;
-                    else if (tp.flag == Transposition.U_BOUND && tp.value < beta)
-                        beta = tp.value;
+                } else if (depth <= TranspositionTable.depth(tpInfo)) {
+                    int flag = TranspositionTable.flag(tpInfo);
+                    double tpValue = Double.longBitsToDouble(tpBits);
+                    if (flag == TranspositionTable.REAL)
+                        return tpValue;
+                    if (flag == TranspositionTable.L_BOUND && tpValue > alpha)
+                        alpha = tpValue;
+                    else if (flag == TranspositionTable.U_BOUND && tpValue < beta)
+                        beta = tpValue;
                     if (alpha >= beta)
-                        return tp.value;
+                        return tpValue;
                 }
 
-                tpBestMoveIndex = tp.bestMoveIndex;
+                tpBestMoveIndex = TranspositionTable.bestMoveIndex(tpInfo);
             }
         }
         // Check if position is terminal.
@@ -339,6 +422,8 @@ public class AlphaBeta implements AIPlayer {
             // 
             //int startindex = board.startindex, currentmove;
             IMove currentmove = null;
+            // (Lazy SMP) Helpers start with a different move at the root
+            int offset = (depth == maxDepth) ? helper : 0;
 
             double maxHistVal = 1.;
             for (int i = 0; i < currentMoves.size(); i++) {
@@ -359,7 +444,7 @@ public class AlphaBeta implements AIPlayer {
                 //    continue;
                 //else
                 //    currentmove = currentMoves.get(i);
-                currentmove = currentMoves.get(i);
+                currentmove = currentMoves.get((i + offset) % currentMoves.size());
 
                 if (board.doAIMove(currentmove, player)) {
                     // Returns false if suicide
@@ -382,7 +467,7 @@ public class AlphaBeta implements AIPlayer {
                         }
                         //
                         curBestMove = currentmove;
-                        curBestMoveIndex = i;
+                        curBestMoveIndex = (i + offset) % currentMoves.size();
                         bestValue = value;
                         plyBestMove = currentmove;
                     }
@@ -405,31 +490,24 @@ public class AlphaBeta implements AIPlayer {
             }
 
         }
+        // (Lazy SMP) An aborted search is built from the 0s of the aborted children, keep it out of the shared table
+        if (forceHalt || interupted)
+            return bestValue;
         // Update the history useHeuristics for move-ordering
         //if (plyBestMove > -1)
         //    history[player - 1][plyBestMove]++;
         // Replace if deeper or doesn't exist
-        if (options.transpositions && (isEmpty(tp) || (collision && depth > tp.depth))) {
-            //tp = new Transposition();
+        if (options.transpositions && (tpInfo == 0 || (collision && depth > TranspositionTable.depth(tpInfo)))) {
             //tp.bestMove = plyBestMove; killer moves disables
-            if (tt[hashPos] == null) {
-                tp = new Transposition();
-                tt[hashPos] = tp;
-            }
-
-            tp.depth = depth;
-            tp.hash = bhash;
-            //
+            int flag;
             if (bestValue <= olda) {
-                tp.flag = Transposition.U_BOUND;
+                flag = TranspositionTable.U_BOUND;
             } else if (bestValue >= oldb) {
-                tp.flag = Transposition.L_BOUND;
+                flag = TranspositionTable.L_BOUND;
             } else {
-                tp.flag = Transposition.REAL;
+                flag = TranspositionTable.REAL;
             }
-            tp.value = bestValue;
-            tp.bestMove = curBestMove;
-            tp.bestMoveIndex = curBestMoveIndex;
+            tt.store(entry, bhash, depth, flag, bestValue, curBestMoveIndex);
         }
         return bestValue;
     }
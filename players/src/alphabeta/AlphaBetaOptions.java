@@ -8,5 +8,6 @@ public class AlphaBetaOptions extends MCTSOptions {
     public boolean debugInfoAB = false;
     public boolean debugInfoMove = true;
     public boolean transpositions = false;
+    public int helperThreads = 0; // (Lazy SMP) threads searching alongside the main thread, sharing the table
     public int evVer = 0;
 }
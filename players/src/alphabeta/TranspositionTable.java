@@ -0,0 +1,70 @@
+package alphabeta;
+
+/**
+ * Transposition table packed into a long[], three longs per position: a check word, the value and the info word
+ * (depth, flag and the index of the best move). The check word is the hash xor'ed with the other two words.
+ * <p/>
+ * (Lazy SMP) The search threads share the table without locks. An entry that was written by two threads at once
+ * does not verify against the hash of either position, and is treated as a collision.
+ */
+public class TranspositionTable {
+    public static final int REAL = 0, L_BOUND = 1, U_BOUND = 2;
+    // Set in the info word of every stored position, so an empty entry is all zeros
+    private static final long USED = 1L << 2;
+    private final long[] table;
+    private final int mask;
+
+    /**
+     * @param sizeLog2 The table holds 2^sizeLog2 positions
+     */
+    public TranspositionTable(int sizeLog2) {
+        mask = (1 << sizeLog2) - 1;
+        table = new long[3 << sizeLog2];
+    }
+
+    /**
+     * @return The entry of the position, use it to read the words of the entry and to store the position
+     */
+    public int entry(long hash) {
+        return ((int) hash & mask) * 3;
+    }
+
+    public long check(int entry) {
+        return table[entry];
+    }
+
+    public long value(int entry) {
+        return table[entry + 1];
+    }
+
+    public long info(int entry) {
+        return table[entry + 2];
+    }
+
+    /**
+     * @return true if the words read from an entry hold the position
+     */
+    public static boolean verify(long hash, long check, long value, long info) {
+        return info != 0 && (check ^ value ^ info) == hash;
+    }
+
+    public static int depth(long info) {
+        return (int) (info >>> 8) & 0xFFFF;
+    }
+
+    public static int flag(long info) {
+        return (int) info & 3;
+    }
+
+    public static int bestMoveIndex(long info) {
+        return (int) (info >>> 32) - 1;
+    }
+
+    public void store(int entry, long hash, int depth, int flag, double value, int bestMoveIndex) {
+        long v = Double.doubleToLongBits(value);
+        long info = USED | flag | ((long) (depth & 0xFFFF) << 8) | ((long) (bestMoveIndex + 1) << 32);
+        table[entry] = hash ^ v ^ info;
+        table[entry + 1] = v;
+        table[entry + 2] = info;
+    }
+}
@@ -13,5 +13,10 @@ public interface AIPlayer {
     public void setOptions(MCTSOptions options);
 
     public IMove getBestMove();
+
+    /**
+     * @return The statistics of the search for the last move
+     */
+    public SearchStats getStats();
 }
 
@@ -1,5 +1,7 @@
 package framework;
 
+import ai.MCTSOptions;
+
 import java.util.Random;
 
 public class MoveList {
@@ -57,7 +59,7 @@ public class MoveList {
     }
 
     public void shuffle(){
-        Random rnd = new Random();
+        Random rnd = MCTSOptions.r;
         for (int i = size - 1; i > 0; i--)
         {
             int index = rnd.nextInt(i + 1);
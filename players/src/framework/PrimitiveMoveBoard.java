@@ -0,0 +1,31 @@
+package framework;
+
+/**
+ * Optional interface for boards that can encode their moves as a single int.
+ * Play-outs use these methods when available, so no IMove is allocated per legal move per ply.
+ * Moves done with doAIMove(int, int) are undone by the regular undoMove().
+ */
+public interface PrimitiveMoveBoard extends IBoard {
+
+    /**
+     * @return The minimum size of the buffer passed to getPlayoutMoves(int[], boolean)
+     */
+    public int getMaxPlayoutMoves();
+
+    /**
+     * Write all moves that can be used to simulate the current game into the given buffer
+     *
+     * @param moves buffer of at least getMaxPlayoutMoves() elements
+     * @return the number of moves written to the buffer (can contain illegal moves)
+     */
+    public int getPlayoutMoves(int[] moves, boolean heuristics);
+
+    /**
+     * Do a complete AI move encoded as an int, do not check for winning positions in this method
+     *
+     * @param move   The encoded move to perform
+     * @param player The index of the player making the move
+     * @return false if the move was illegal, otherwise true
+     */
+    public boolean doAIMove(int move, int player);
+}
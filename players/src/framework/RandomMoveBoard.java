@@ -0,0 +1,18 @@
+package framework;
+
+/**
+ * Optional interface for boards that can make a random move without generating all play-out moves.
+ * Play-outs use this method when available, so a move costs close to O(1) instead of O(branching factor).
+ * Moves done with doRandomMove are undone by the regular undoMove().
+ */
+public interface RandomMoveBoard extends IBoard {
+
+    /**
+     * Do a random legal move, drawn as the play-outs draw from getPlayoutMoves(heuristics): uniformly from the
+     * legal moves in the list. Do not check for winning positions in this method.
+     *
+     * @param player The index of the player making the move
+     * @return false if the player has no legal move, the board is unchanged in that case
+     */
+    public boolean doRandomMove(int player, boolean heuristics);
+}
@@ -0,0 +1,140 @@
+package framework;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Statistics of the search for a single move, returned by AIPlayer.getStats().
+ * Counters that do not apply to a player are left at 0. Search threads collect their own
+ * statistics and add() them to the statistics of the move when they are done.
+ * <p/>
+ * Garbage collections are counted for the whole JVM, so they include the collections caused
+ * by any other search running at the same time.
+ */
+public class SearchStats {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    //
+    public long timeMs, simulations, nodes, depthSum;
+    public int maxDepth;
+    // Transposition table lookups, positions found and positions replaced by another one
+    public long ttLookups, ttHits, ttCollisions;
+    // Time spent in the phases of the search, only measured if the player is asked to
+    public long selectionNs, expansionNs, playoutNs, backpropNs;
+    // Bytes allocated by the search threads, -1 if the JVM cannot measure this
+    public long allocatedBytes, gcCount, gcTimeMs;
+    //
+    private long startTime, startAllocated, startGcCount, startGcTime;
+
+    /**
+     * Start measuring the time, allocations and garbage collections of the current thread
+     */
+    public void start() {
+        startTime = System.nanoTime();
+        startAllocated = threadAllocatedBytes();
+        long[] gc = gcTotals();
+        startGcCount = gc[0];
+        startGcTime = gc[1];
+    }
+
+    /**
+     * Stop measuring, the allocations of other threads are added to those of the current thread
+     */
+    public void stop() {
+        timeMs = (System.nanoTime() - startTime) / 1000000L;
+        long allocated = threadAllocatedBytes();
+        if (allocated < 0 || startAllocated < 0 || allocatedBytes < 0)
+            allocatedBytes = -1;
+        else
+            allocatedBytes += allocated - startAllocated;
+        long[] gc = gcTotals();
+        gcCount = gc[0] - startGcCount;
+        gcTimeMs = gc[1] - startGcTime;
+    }
+
+    /**
+     * Add the statistics of a search thread
+     */
+    public synchronized void add(SearchStats stats) {
+        simulations += stats.simulations;
+        nodes += stats.nodes;
+        depthSum += stats.depthSum;
+        maxDepth = Math.max(maxDepth, stats.maxDepth);
+        ttLookups += stats.ttLookups;
+        ttHits += stats.ttHits;
+        ttCollisions += stats.ttCollisions;
+        selectionNs += stats.selectionNs;
+        expansionNs += stats.expansionNs;
+        playoutNs += stats.playoutNs;
+        backpropNs += stats.backpropNs;
+        if (stats.allocatedBytes < 0 || allocatedBytes < 0)
+            allocatedBytes = -1;
+        else
+            allocatedBytes += stats.allocatedBytes;
+    }
+
+    /**
+     * Record a simulation that reached the given depth in the tree
+     */
+    public void simulation(int depth) {
+        simulations++;
+        depthSum += depth;
+        if (depth > maxDepth)
+            maxDepth = depth;
+    }
+
+    public double playoutsPerSecond() {
+        return (timeMs > 0) ? (1000. * simulations) / timeMs : 0.;
+    }
+
+    public double averageDepth() {
+        return (simulations > 0) ? depthSum / (double) simulations : 0.;
+    }
+
+    public double ttHitRate() {
+        return (ttLookups > 0) ? ttHits / (double) ttLookups : 0.;
+    }
+
+    public double ttCollisionRate() {
+        return (ttLookups > 0) ? ttCollisions / (double) ttLookups : 0.;
+    }
+
+    public static String csvHeader() {
+        return "time_ms,simulations,playouts_per_s,max_depth,avg_depth,nodes,tt_lookups,tt_hit_rate," +
+                "tt_collision_rate,selection_ms,expansion_ms,playout_ms,backprop_ms,allocated_bytes,gc_count,gc_time_ms";
+    }
+
+    public String toCsv() {
+        return timeMs + "," + simulations + "," + playoutsPerSecond() + "," + maxDepth + "," + averageDepth() + "," +
+                nodes + "," + ttLookups + "," + ttHitRate() + "," + ttCollisionRate() + "," + selectionNs / 1e6 + "," +
+                expansionNs / 1e6 + "," + playoutNs / 1e6 + "," + backpropNs / 1e6 + "," + allocatedBytes + "," +
+                gcCount + "," + gcTimeMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d simulations in %d ms (%.0f/s), depth %d max %.1f avg, %d nodes, %d bytes allocated",
+                simulations, timeMs, playoutsPerSecond(), maxDepth, averageDepth(), nodes, allocatedBytes);
+    }
+
+    /**
+     * @return The number of bytes allocated by the current thread, or -1 if this is not supported
+     */
+    public static long threadAllocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemoryEnabled())
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, gc.getCollectionCount());
+            totals[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return totals;
+    }
+}
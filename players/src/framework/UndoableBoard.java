@@ -0,0 +1,9 @@
+package framework;
+
+/**
+ * Optional interface for partially observable boards whose undoMove() restores the board exactly, including the
+ * hidden cards and the order of the deck, for every move made in the tree and in the play-outs.
+ * ISMCTS then undoes each simulation and resamples the hidden information in place, instead of copying the board.
+ */
+public interface UndoableBoard extends IBoard {
+}
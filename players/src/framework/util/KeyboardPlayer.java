@@ -11,6 +11,7 @@ public class KeyboardPlayer implements AIPlayer {
     private int player;
     private String game;
     private IMove theMove;
+    private SearchStats stats = new SearchStats();
 
     @Override
     public void newGame(int myPlayer, String game) {
@@ -21,7 +22,8 @@ public class KeyboardPlayer implements AIPlayer {
     @Override
     public void getMove(IBoard board, MoveCallback callback, int myPlayer, boolean parallel,
                         IMove lastMove) {
-
+        stats = new SearchStats();
+        stats.start();
         MoveList list = board.getExpandMoves();
 
         try {
@@ -54,6 +56,7 @@ public class KeyboardPlayer implements AIPlayer {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        stats.stop();
     }
 
     @Override
@@ -68,5 +71,10 @@ public class KeyboardPlayer implements AIPlayer {
     public IMove getBestMove() {
         return theMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
 }
 
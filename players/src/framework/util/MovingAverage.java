@@ -67,6 +67,15 @@ public class MovingAverage {
         return total / (double) size;
     }
 
+    /**
+     * Negate the samples in the window
+     */
+    public void invert() {
+        for (int i = 0; i < size; i++)
+            samples[i] = -samples[i];
+        total = -total;
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         int tot = 0;
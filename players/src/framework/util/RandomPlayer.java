@@ -8,6 +8,7 @@ public class RandomPlayer implements AIPlayer {
     private int player;
     private String game;
     private IMove theMove;
+    private SearchStats stats = new SearchStats();
 
     @Override
     public void newGame(int myPlayer, String game) {
@@ -18,10 +19,13 @@ public class RandomPlayer implements AIPlayer {
     @Override
     public void getMove(IBoard board, MoveCallback callback, int myPlayer, boolean parallel,
                         IMove lastMove) {
+        stats = new SearchStats();
+        stats.start();
         // FIXME: does not account for invalid moves!
         MoveList list = board.getExpandMoves();
         int i = (int) (MCTSOptions.r.nextDouble() * list.size());
         theMove = list.get(i);
+        stats.stop();
     }
 
     @Override
@@ -36,5 +40,10 @@ public class RandomPlayer implements AIPlayer {
     public IMove getBestMove() {
         return theMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
 }
 
@@ -0,0 +1,109 @@
+package framework.util;
+
+import framework.SearchStats;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Exposes the search statistics of a player's last move as an MBean, so they can be followed in
+ * jconsole or VisualVM while a game is played. The statistics of every move are published by the caller.
+ */
+public class SearchMonitor implements SearchStatsMXBean {
+    private volatile SearchStats last = new SearchStats();
+    private volatile long moves = 0, totalSimulations = 0;
+
+    /**
+     * Register a new monitor with the platform MBean server as mcts_gameframe:type=Search,name=[name]
+     * A monitor registered earlier under the same name is replaced.
+     */
+    public static SearchMonitor register(String name) {
+        SearchMonitor monitor = new SearchMonitor();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("mcts_gameframe:type=Search,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+            server.registerMBean(monitor, objectName);
+        } catch (JMException e) {
+            throw new RuntimeException("Cannot register search monitor " + name, e);
+        }
+        return monitor;
+    }
+
+    public synchronized void publish(SearchStats stats) {
+        last = stats;
+        moves++;
+        totalSimulations += stats.simulations;
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    public long getTotalSimulations() {
+        return totalSimulations;
+    }
+
+    public long getTimeMs() {
+        return last.timeMs;
+    }
+
+    public long getSimulations() {
+        return last.simulations;
+    }
+
+    public double getPlayoutsPerSecond() {
+        return last.playoutsPerSecond();
+    }
+
+    public int getMaxDepth() {
+        return last.maxDepth;
+    }
+
+    public double getAverageDepth() {
+        return last.averageDepth();
+    }
+
+    public long getNodes() {
+        return last.nodes;
+    }
+
+    public double getTtHitRate() {
+        return last.ttHitRate();
+    }
+
+    public double getTtCollisionRate() {
+        return last.ttCollisionRate();
+    }
+
+    public double getSelectionMs() {
+        return last.selectionNs / 1e6;
+    }
+
+    public double getExpansionMs() {
+        return last.expansionNs / 1e6;
+    }
+
+    public double getPlayoutMs() {
+        return last.playoutNs / 1e6;
+    }
+
+    public double getBackpropMs() {
+        return last.backpropNs / 1e6;
+    }
+
+    public long getAllocatedBytes() {
+        return last.allocatedBytes;
+    }
+
+    public long getGcCount() {
+        return last.gcCount;
+    }
+
+    public long getGcTimeMs() {
+        return last.gcTimeMs;
+    }
+}
@@ -0,0 +1,40 @@
+package framework.util;
+
+/**
+ * Management interface of a SearchMonitor, the attributes describe the last move of a player
+ */
+public interface SearchStatsMXBean {
+    public long getMoves();
+
+    public long getTotalSimulations();
+
+    public long getTimeMs();
+
+    public long getSimulations();
+
+    public double getPlayoutsPerSecond();
+
+    public int getMaxDepth();
+
+    public double getAverageDepth();
+
+    public long getNodes();
+
+    public double getTtHitRate();
+
+    public double getTtCollisionRate();
+
+    public double getSelectionMs();
+
+    public double getExpansionMs();
+
+    public double getPlayoutMs();
+
+    public double getBackpropMs();
+
+    public long getAllocatedBytes();
+
+    public long getGcCount();
+
+    public long getGcTimeMs();
+}
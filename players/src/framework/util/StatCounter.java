@@ -56,6 +56,35 @@ public class StatCounter {
         return newSc;
     }
 
+    /**
+     * Switch the counter to the view of the opponent
+     */
+    public void invert() {
+        int wins = m_wins;
+        m_wins = m_losses;
+        m_losses = wins;
+        m_sum = -m_sum;
+        m_mean = -m_mean;
+        if (ma != null)
+            ma.invert();
+    }
+
+    /**
+     * Multiply the number of samples by the factor, the mean does not change.
+     * Counters with at least one sample keep at least one.
+     */
+    public void scale(double factor) {
+        if (m_n == 0)
+            return;
+        int n = Math.max(1, (int) Math.round(m_n * factor));
+        double f = n / (double) m_n;
+        m_wins = (int) Math.round(m_wins * f);
+        m_losses = (int) Math.round(m_losses * f);
+        m_sum *= f;
+        m_m2 *= f;
+        m_n = n;
+    }
+
     public void reset() {
         m_wins = 0;
         m_losses = 0;
@@ -81,6 +110,17 @@ public class StatCounter {
     }
 
 
+    /**
+     * Set the counter to values that were kept elsewhere (PooledTree), wins and losses are not known
+     */
+    public void init(double sum, double m2, double mean, int n) {
+        reset();
+        m_sum = sum;
+        m_m2 = m2;
+        m_mean = mean;
+        m_n = n;
+    }
+
     public void push(double num) {
         if (Math.abs(m_mean) == TreeNode.INF)
             throw new RuntimeException("Mean is INF in push");
@@ -120,6 +160,38 @@ public class StatCounter {
         m_mean = val;
     }
 
+    /**
+     * Thread-safe version of push, used when the counter is shared between search threads (tree-parallel).
+     * The update holds the counter's lock, so threads that read a shared counter must hold it too, either through
+     * the other *Concurrent methods or by synchronizing on the counter.
+     * Once a value is proven (+/-INF) by another thread, the sample is ignored.
+     */
+    public synchronized void pushConcurrent(double num) {
+        if (Math.abs(m_mean) != TreeNode.INF)
+            push(num);
+    }
+
+    /**
+     * Thread-safe version of setValue, used when the counter is shared between search threads.
+     */
+    public synchronized void setValueConcurrent(double val) {
+        m_mean = val;
+    }
+
+    /**
+     * Thread-safe version of mean, used when the counter is shared between search threads.
+     */
+    public synchronized double meanConcurrent() {
+        return mean();
+    }
+
+    /**
+     * Thread-safe version of visits, used when the counter is shared between search threads.
+     */
+    public synchronized int visitsConcurrent() {
+        return visits();
+    }
+
     public void subtract(StatCounter statCounter, boolean isOpp) {
         if (Math.abs(m_mean) == TreeNode.INF)
             throw new RuntimeException("Left mean is INF in subtract");
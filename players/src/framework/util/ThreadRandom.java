@@ -0,0 +1,138 @@
+package framework.util;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Random that delegates to a separate generator for every thread, so search threads never
+ * contend on a shared seed. The generator type is pluggable (xoroshiro, splitmix or jdk).
+ * <p/>
+ * Seeding is reproducible: setSeed sets the base seed, threads started through seeded(Runnable)
+ * get a seed drawn from the generator of the thread that created them, other threads get a stream
+ * derived from the base seed in the order they first ask for a random number.
+ */
+public class ThreadRandom extends Random {
+    private static final long serialVersionUID = 1L;
+    public static final String XOROSHIRO = "xoroshiro", SPLITMIX = "splitmix", JDK = "jdk";
+    private static volatile String generator = XOROSHIRO;
+    private static volatile long baseSeed = System.nanoTime();
+    private static final AtomicLong streams = new AtomicLong();
+    private static final ThreadLocal<Random> local = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return create(SplitMixRandom.mix(baseSeed + streams.incrementAndGet() * SplitMixRandom.GOLDEN_GAMMA));
+        }
+    };
+    // Random's constructor calls setSeed, which should not reset the base seed
+    private final boolean constructed;
+
+    public ThreadRandom() {
+        constructed = true;
+    }
+
+    /**
+     * @return The generator of the current thread, use this in tight loops
+     */
+    public static Random current() {
+        return local.get();
+    }
+
+    /**
+     * Wraps a task that will be run on a new (search) thread. The new thread's generator is seeded
+     * from the current thread's generator, so seeded runs stay deterministic.
+     */
+    public static Runnable seeded(final Runnable task) {
+        return seeded(task, local.get().nextLong());
+    }
+
+    /**
+     * Wraps a task such that the generator of the thread that runs it is seeded with the given seed
+     */
+    public static Runnable seeded(final Runnable task, final long seed) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                local.set(create(seed));
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Set the type of generator used by threads that have not yet drawn a random number,
+     * and by the current thread.
+     *
+     * @param name xoroshiro, splitmix or jdk
+     */
+    public static void setGenerator(String name) {
+        if (!name.equals(XOROSHIRO) && !name.equals(SPLITMIX) && !name.equals(JDK))
+            throw new RuntimeException("Unknown random generator: " + name);
+        generator = name;
+        local.set(create(baseSeed));
+    }
+
+    private static Random create(long seed) {
+        if (generator.equals(SPLITMIX))
+            return new SplitMixRandom(seed);
+        else if (generator.equals(JDK))
+            return new Random(seed);
+        return new XoRoShiRoRandom(seed);
+    }
+
+    /**
+     * Sets the base seed and restarts the current thread's generator and the per-thread streams
+     */
+    @Override
+    public void setSeed(long seed) {
+        if (!constructed)
+            return;
+        baseSeed = seed;
+        streams.set(0);
+        local.set(create(seed));
+    }
+
+    @Override
+    protected int next(int bits) {
+        return local.get().nextInt() >>> (32 - bits);
+    }
+
+    @Override
+    public int nextInt() {
+        return local.get().nextInt();
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return local.get().nextInt(bound);
+    }
+
+    @Override
+    public long nextLong() {
+        return local.get().nextLong();
+    }
+
+    @Override
+    public double nextDouble() {
+        return local.get().nextDouble();
+    }
+
+    @Override
+    public float nextFloat() {
+        return local.get().nextFloat();
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return local.get().nextBoolean();
+    }
+
+    @Override
+    public double nextGaussian() {
+        return local.get().nextGaussian();
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes) {
+        local.get().nextBytes(bytes);
+    }
+}
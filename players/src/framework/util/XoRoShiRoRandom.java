@@ -0,0 +1,61 @@
+package framework.util;
+
+import java.util.Random;
+
+/**
+ * Xoroshiro128+ generator, not thread-safe. Each search thread should use its own instance,
+ * see ThreadRandom.
+ */
+public class XoRoShiRoRandom extends Random {
+    private static final long serialVersionUID = 1L;
+    private long s0, s1;
+
+    public XoRoShiRoRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        // The state must not be all zeros, SplitMix64 spreads the seed over both words
+        s0 = SplitMixRandom.mix(seed += SplitMixRandom.GOLDEN_GAMMA);
+        s1 = SplitMixRandom.mix(seed + SplitMixRandom.GOLDEN_GAMMA);
+        if (s0 == 0 && s1 == 0)
+            s1 = SplitMixRandom.GOLDEN_GAMMA;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        long a = s0, b = s1, result = a + b;
+        b ^= a;
+        s0 = Long.rotateLeft(a, 24) ^ b ^ (b << 16);
+        s1 = Long.rotateLeft(b, 37);
+        return result;
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("bound must be positive");
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+}
@@ -2,12 +2,13 @@ package mcts2e.BRUE;
 
 import ai.MCTSOptions;
 import framework.*;
+import framework.util.ThreadRandom;
 
 public class MCTS2ePlayer implements AIPlayer, Runnable {
     private final int TT_SIZE = 33554432;
     private final long MASK = TT_SIZE - 1;
     //
-    private static int sigma = 0, horizon = 0, simulations = 0;
+    private int sigma = 0, horizon = 0, simulations = 0;
     //
     private int myPlayer = 0;
     private StateHash[] stateValues;
@@ -17,6 +18,7 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
     private MoveCallback callback = null;
     //
     private MCTSOptions options;
+    private SearchStats stats = new SearchStats();
 
     @Override
     public void newGame(int myPlayer, String game) {
@@ -34,10 +36,12 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
         //
         interrupted = false;
         collisions = 0;
+        lookups = 0;
+        hits = 0;
         simulations = 0;
         if (parallel) {
             // Start the search in a new Thread.
-            Thread t = new Thread(this);
+            Thread t = new Thread(ThreadRandom.seeded(this));
             t.start();
         } else {
             run();
@@ -46,6 +50,8 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
 
     @Override
     public void run() {
+        SearchStats stats = new SearchStats();
+        stats.start();
         stateValues = new StateHash[TT_SIZE];
 
         // Search for timeInterval seconds
@@ -86,6 +92,12 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
         if (bestMove == null) {
             bestMove = moves.get(MCTSOptions.r.nextInt(moves.size()));
         }
+        stats.simulations = simulations;
+        stats.ttLookups = lookups;
+        stats.ttHits = hits;
+        stats.ttCollisions = collisions;
+        stats.stop();
+        this.stats = stats;
         if (options.debug) {
             System.out.println("h:" + board.getStateHash());
             System.out.println("Ran " + simulations + " simulations.");
@@ -152,10 +164,13 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
         return r;
     }
 
-    private int collisions = 0;
+    private int collisions = 0, lookups = 0, hits = 0;
 
     public void updateState(long hash, double r, int d) {
         int hashPos = getHashPos(hash);
+        lookups++;
+        if (stateValues[hashPos] != null && stateValues[hashPos].hash == hash)
+            hits++;
         if (stateValues[hashPos] == null) {
             stateValues[hashPos] = new StateHash(hash, r, 1, d);
             return;
@@ -186,4 +201,9 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
     public IMove getBestMove() {
         return bestMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
 }
@@ -5,6 +5,8 @@ import framework.AIPlayer;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveCallback;
+import framework.SearchStats;
+import framework.util.ThreadRandom;
 
 public class MCTS2ePlayer implements AIPlayer, Runnable {
     private static int simulations = 0;
@@ -16,6 +18,7 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
     private MoveCallback callback = null;
     //
     private MCTSOptions options;
+    private SearchStats stats = new SearchStats();
     private TreeNode root;
 
     @Override
@@ -35,7 +38,7 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
         simulations = 0;
         if (parallel) {
             // Start the search in a new Thread.
-            Thread t = new Thread(this);
+            Thread t = new Thread(ThreadRandom.seeded(this));
             t.start();
         } else {
             run();
@@ -44,6 +47,8 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
 
     @Override
     public void run() {
+        SearchStats stats = new SearchStats();
+        stats.start();
         root = new TreeNode(myPlayer, options);
         // Search for timeInterval seconds
         long endTime = System.currentTimeMillis() + options.timeInterval;
@@ -66,6 +71,9 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
         }
         TreeNode bestChild = root.getBestChild();
         bestMove = bestChild.getMove();
+        stats.simulations = simulations;
+        stats.stop();
+        this.stats = stats;
 
         if (options.debug) {
             System.out.println("Ran " + simulations + " simulations.");
@@ -93,4 +101,9 @@ public class MCTS2ePlayer implements AIPlayer, Runnable {
     public IMove getBestMove() {
         return bestMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
 }
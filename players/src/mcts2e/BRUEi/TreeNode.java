@@ -4,6 +4,7 @@ import ai.MCTSOptions;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveList;
+import framework.RandomMoveBoard;
 import framework.util.StatCounter;
 
 import java.util.ArrayList;
@@ -131,19 +132,26 @@ public class TreeNode {
         boolean gameEnded, moveMade;
         int currentPlayer = board.getPlayerToMove(), moveIndex, nMoves = 0;
 
-        List<IMove> moves;
+        List<IMove> moves = null;
         int winner = board.checkWin();
         gameEnded = (winner != IBoard.NONE_WIN);
         IMove currentMove;
+        // Let the board draw the moves if it can, epsilon-greedy play-outs need all moves
+        RandomMoveBoard rBoard = null;
+        if (board instanceof RandomMoveBoard && !options.epsGreedyEval)
+            rBoard = (RandomMoveBoard) board;
 
         while (!gameEnded) {
 
-            moves = board.getPlayoutMoves(options.useHeuristics);
+            if (rBoard == null)
+                moves = board.getPlayoutMoves(options.useHeuristics);
             moveMade = false;
 
             while (!moveMade) {
+                if (rBoard != null)
+                    moveMade = rBoard.doRandomMove(currentPlayer, options.useHeuristics);
                 // All moves were discarded
-                if (moves.size() == 0) {
+                if ((rBoard != null) ? !moveMade : moves.size() == 0) {
                     gameEnded = true;
                     // The current player has no moves left
                     if (board.noMovesIsDraw())
@@ -154,16 +162,18 @@ public class TreeNode {
                 }
 
                 // Select a move from the available ones
-                if (options.epsGreedyEval) {
+                if (rBoard != null) {
+                    moveIndex = -1;
+                } else if (options.epsGreedyEval) {
                     // If epsilon greedy play-outs, choose the highest eval
                     moveIndex = chooseEGreedyEval(board, moves, currentPlayer);
                 } else {
                     // Choose randomly
                     moveIndex = MCTSOptions.r.nextInt(moves.size());
                 }
-                currentMove = moves.get(moveIndex);
+                currentMove = (rBoard != null) ? null : moves.get(moveIndex);
                 // Check if the move can be made, otherwise remove it from the list
-                if (board.doAIMove(currentMove, currentPlayer)) {
+                if (moveMade || board.doAIMove(currentMove, currentPlayer)) {
 
                     nMoves++;
                     moveMade = true;
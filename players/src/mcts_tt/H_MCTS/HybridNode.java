@@ -10,8 +10,13 @@ import mcts_tt.transpos.TransposTable;
 
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HybridNode {
+    // (Parallel) Rounds with a smaller budget are not worth copying the board for
+    private static final int MIN_FORK_BUDGET = 64;
     private boolean expanded = false, simulated = false;
     private List<HybridNode> C, S;
     private HybridNode bestArm;
@@ -94,25 +99,46 @@ public class HybridNode {
         // :: Cycle
         do {
             int n = 0, b_s = 0;
+            // (Parallel) The children's budgets of the round are independent, search them at once
+            int[] budgets = null;
+            int[][] pls = null;
+            double[] results = null;
+            if (options.budgetThreads > 1 && s > 1 && ForkJoinTask.inForkJoinPool()) {
+                budgets = roundBudgets(b, budget, plStats[3], s);
+                if (sum(budgets) >= MIN_FORK_BUDGET) {
+                    pls = new int[s][4];
+                    results = forkRound(board, depth, budgets, pls);
+                } else {
+                    budgets = null;
+                }
+            }
             // :: Round
             while (n < s) {
                 child = S.get(n++);
                 int[] pl = {0, 0, 0, 0};    // This will store the results of the recursion
                 int b_b = 0;                // This is the actual budget assigned to the child
                 result = 0;
-                // :: Solver win
-                if (!child.isSolved()) {
-                    // :: Actual budget
-                    int b1 = (int) (b - child.getVisits());
-                    if (s == 2 && n == 1 && S.size() > 1)
-                        b1 = (int) Math.max(b1, budget - plStats[3] - (b - S.get(1).getVisits()));
-                    b_b = Math.min(b1, budget - plStats[3]);
-                    if (b_b <= 0)
-                        continue;
-                    // :: Recursion
-                    board.doAIMove(child.getMove(), player);
-                    result = -child.HybridMCTS(board, depth + 1, b_b, pl);
-                    board.undoMove();
+                // :: Solver win, (Parallel) a child may have been solved in its own search
+                if (!child.isSolved() || (budgets != null && budgets[n - 1] > 0)) {
+                    if (budgets != null) {
+                        b_b = budgets[n - 1];
+                        if (b_b <= 0)
+                            continue;
+                        pl = pls[n - 1];
+                        result = results[n - 1];
+                    } else {
+                        // :: Actual budget
+                        int b1 = (int) (b - child.getVisits());
+                        if (s == 2 && n == 1 && S.size() > 1)
+                            b1 = (int) Math.max(b1, budget - plStats[3] - (b - S.get(1).getVisits()));
+                        b_b = Math.min(b1, budget - plStats[3]);
+                        if (b_b <= 0)
+                            continue;
+                        // :: Recursion
+                        board.doAIMove(child.getMove(), player);
+                        result = -child.HybridMCTS(board, depth + 1, b_b, pl);
+                        board.undoMove();
+                    }
                     // 0: playouts, 1: player1, 2: player2, 3: budgetUsed
                     if (!(options.max_back && getBudgetNode() > 0) || n == 1) {
                         // With max backprop, only update results if this is the current best arm
@@ -133,6 +159,9 @@ public class HybridNode {
                     if (solverCheck(result)) {   // Returns true if node is solved
                         if (result == State.INF)
                             bestArm = child;
+                        // (Parallel) The later children of the round were searched as well
+                        if (budgets != null)
+                            addForkedResults(budgets, pls, n, s, plStats);
                         // Update the budgetSpent
                         state.incrBudgetSpent(plStats[3]);
                         return result;
@@ -178,6 +207,82 @@ public class HybridNode {
         return 0;
     }
 
+    /**
+     * (Parallel) The budgets of the first s children in a round, as they are assigned when the children are searched
+     * one after another and each spends its budget
+     *
+     * @param used The budget already spent by the node
+     */
+    private int[] roundBudgets(int b, int budget, int used, int s) {
+        int[] budgets = new int[s];
+        for (int i = 0; i < s && used < budget; i++) {
+            HybridNode child = S.get(i);
+            if (child.isSolved())
+                continue;
+            int b1 = (int) (b - child.getVisits());
+            if (s == 2 && i == 0 && S.size() > 1)
+                b1 = (int) Math.max(b1, budget - used - (b - S.get(1).getVisits()));
+            budgets[i] = Math.min(b1, budget - used);
+            if (budgets[i] > 0)
+                used += budgets[i];
+        }
+        return budgets;
+    }
+
+    /**
+     * (Parallel) Add the results of the forked children from index from on, that the round did not get to because
+     * it ended early, to the node and its play-out statistics
+     */
+    private void addForkedResults(int[] budgets, int[][] pls, int from, int s, int[] plStats) {
+        for (int i = from; i < s; i++) {
+            if (budgets[i] <= 0)
+                continue;
+            int[] pl = pls[i];
+            // With max backprop, only the results of the best arm (the first) are added
+            if (!(options.max_back && getBudgetNode() > 0) || i == 0) {
+                plStats[0] += pl[0];
+                plStats[1] += pl[1];
+                plStats[2] += pl[2];
+            }
+            plStats[3] += pl[3];
+            updateStats(pl);
+        }
+    }
+
+    /**
+     * (Parallel) Search the children with a budget as fork-join tasks, each on its own copy of the board
+     *
+     * @param pls Filled with the play-out statistics of each child
+     * @return The result of each child, in view of this node
+     */
+    private double[] forkRound(IBoard board, final int depth, final int[] budgets, final int[][] pls) {
+        final double[] results = new double[budgets.length];
+        List<RecursiveAction> tasks = new ArrayList<>(budgets.length);
+        for (int i = 0; i < budgets.length; i++) {
+            if (budgets[i] <= 0)
+                continue;
+            final HybridNode child = S.get(i);
+            final IBoard childBoard = board.copy();
+            final int index = i;
+            childBoard.doAIMove(child.getMove(), player);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    results[index] = -child.HybridMCTS(childBoard, depth + 1, budgets[index], pls[index]);
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+        return results;
+    }
+
+    private static int sum(int[] values) {
+        int sum = 0;
+        for (int v : values)
+            sum += Math.max(0, v);
+        return sum;
+    }
+
     private int getBudget(int initVis, int budget, int subS, int totS) {
         return (int) Math.max(1, Math.floor((initVis + budget) / (subS * Math.ceil((options.rc / 2.) * log2(totS)))));
     }
@@ -348,10 +453,10 @@ public class HybridNode {
         }
     };
 
-    public static int totalPlayouts = 0;
+    public static final AtomicInteger totalPlayouts = new AtomicInteger();
 
     private int playOut(IBoard board) {
-        totalPlayouts++;
+        totalPlayouts.incrementAndGet();
         simulated = true;
         boolean gameEnded, moveMade, interrupted = false;
         int cp = board.getPlayerToMove(), nMoves = 0;
@@ -5,17 +5,25 @@ import framework.AIPlayer;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveCallback;
+import framework.SearchStats;
+import framework.util.ThreadRandom;
 import mcts_tt.transpos.TransposTable;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class HybridPlayer implements AIPlayer, Runnable {
 
     private TransposTable tt = new TransposTable();
+    // (Parallel) Searches the children's budgets of the rounds
+    private ForkJoinPool pool;
     private boolean interrupted = false, parallel = true;
     private HybridNode root;
     private IBoard board;
     private MoveCallback callback;
     private IMove bestMove;
     private int myPlayer;
+    private SearchStats stats = new SearchStats();
     public int total = 0;
     public long totalTime = 0;
     // Fields that must be set
@@ -33,12 +41,12 @@ public class HybridPlayer implements AIPlayer, Runnable {
         // Reset the MAST arrays
         if (options.history)
             options.resetHistory(board.getMaxUniqueMoveId());
-        HybridNode.totalPlayouts = 0;
+        HybridNode.totalPlayouts.set(0);
         //
         interrupted = false;
         if (parallel) {
             // Start the search in a new Thread.
-            Thread t = new Thread(this);
+            Thread t = new Thread(ThreadRandom.seeded(this));
             t.start();
         } else {
             run();
@@ -49,23 +57,43 @@ public class HybridPlayer implements AIPlayer, Runnable {
     public void run() {
         if (options == null)
             throw new RuntimeException("MCTS Options not set.");
+        SearchStats stats = new SearchStats();
+        stats.start();
         root = new HybridNode(myPlayer, null, options, board.hash(), tt);
-        int[] pl = {0, 0, 0, 0};
+        final int[] pl = {0, 0, 0, 0};
         long startT = System.currentTimeMillis();
-        root.HybridMCTS(board, 0, options.simulations, pl);
+        if (options.budgetThreads > 1) {
+            if (pool == null || pool.getParallelism() != options.budgetThreads)
+                pool = new ForkJoinPool(options.budgetThreads);
+            // Search from a task in the pool, so the rounds below the root can fork
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    root.HybridMCTS(board, 0, options.simulations, pl);
+                }
+            });
+        } else {
+            root.HybridMCTS(board, 0, options.simulations, pl);
+        }
         long endT = System.currentTimeMillis();
         // Return the best move found
         HybridNode bestChild = root.selectBestMove();
         bestMove = bestChild.getMove();
+        stats.simulations = HybridNode.totalPlayouts.get();
+        stats.ttLookups = tt.lookups;
+        stats.ttHits = tt.recoveries;
+        stats.ttCollisions = tt.collisions;
+        stats.stop();
+        this.stats = stats;
         // show information on the best move
         if (options.debug) {
             System.out.println("Player " + myPlayer);
             System.out.println("Best child: " + bestChild);
             System.out.println("Play-outs: " + pl[3]);
-//            System.out.println("Play-outs check: " + HybridNode.totalPlayouts);
-            System.out.println((int) ((1000. * HybridNode.totalPlayouts) / (endT - startT)) + " playouts per s");
+//            System.out.println("Play-outs check: " + HybridNode.totalPlayouts.get());
+            System.out.println((int) ((1000. * HybridNode.totalPlayouts.get()) / (endT - startT)) + " playouts per s");
         }
-        total += HybridNode.totalPlayouts;
+        total += HybridNode.totalPlayouts.get();
         totalTime += endT - startT;
         int removed = tt.pack(1);
         if (options.debug)
@@ -97,5 +125,10 @@ public class HybridPlayer implements AIPlayer, Runnable {
     public IMove getBestMove() {
         return bestMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
 }
 
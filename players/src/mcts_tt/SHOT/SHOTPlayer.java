@@ -5,12 +5,25 @@ import framework.AIPlayer;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveCallback;
+import framework.SearchStats;
+import framework.util.ThreadRandom;
+import mcts_tt.transpos.State;
 import mcts_tt.transpos.TransposTable;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class SHOTPlayer implements AIPlayer, Runnable {
+    // (Pondering) The budget of a move is pondered in this many parts, pondering stops after the current part
+    private static final int PONDER_PARTS = 10;
 
     private TransposTable tt = new TransposTable();
+    // (Parallel) Searches the children's budgets of the rounds
+    private ForkJoinPool pool;
     private boolean interrupted = false, parallel = true;
+    // (Pondering) Searches the position after our move while the opponent is thinking, the table keeps the results
+    private Thread ponderThread;
+    private volatile boolean pondering = false;
     private SHOTNode root;
     private IBoard board;
     private MoveCallback callback;
@@ -20,12 +33,14 @@ public class SHOTPlayer implements AIPlayer, Runnable {
     public long totalTime = 0;
     // Fields that must be set
     private MCTSOptions options = null;
+    private SearchStats stats = new SearchStats();
 
     @Override
     public void getMove(IBoard board, MoveCallback callback, int myPlayer, boolean parallel,
                         IMove lastMove) {
         if (options == null)
             throw new RuntimeException("MCTS Options not set.");
+        stopPondering();
         this.board = board;
         this.callback = callback;
         this.parallel = parallel;
@@ -35,12 +50,12 @@ public class SHOTPlayer implements AIPlayer, Runnable {
             options.resetHistory(board.getMaxUniqueMoveId());
         //
         SHOTNode.maxDepth = 0;
-        SHOTNode.totalPlayouts = 0;
+        SHOTNode.totalPlayouts.set(0);
         //
         interrupted = false;
         if (parallel) {
             // Start the search in a new Thread.
-            Thread t = new Thread(this);
+            Thread t = new Thread(ThreadRandom.seeded(this));
             t.start();
         } else {
             run();
@@ -51,28 +66,51 @@ public class SHOTPlayer implements AIPlayer, Runnable {
     public void run() {
         if (options == null)
             throw new RuntimeException("MCTS Options not set.");
+        SearchStats stats = new SearchStats();
+        stats.start();
         root = new SHOTNode(myPlayer, null, options, board.hash(), tt);
-        int[] pl = {0, 0, 0, 0};
+        final int[] pl = {0, 0, 0, 0};
         long startT = System.currentTimeMillis();
-        root.SHOT(board, 0, options.simulations, pl);
+        if (options.budgetThreads > 1) {
+            if (pool == null || pool.getParallelism() != options.budgetThreads)
+                pool = new ForkJoinPool(options.budgetThreads);
+            // Search from a task in the pool, so the rounds below the root can fork
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    root.SHOT(board, 0, options.simulations, pl);
+                }
+            });
+        } else {
+            root.SHOT(board, 0, options.simulations, pl);
+        }
         long endT = System.currentTimeMillis();
         // Return the best move found
         SHOTNode bestChild = root.selectBestMove();
         bestMove = bestChild.getMove();
+        stats.simulations = SHOTNode.totalPlayouts.get();
+        stats.maxDepth = SHOTNode.maxDepth;
+        stats.ttLookups = tt.lookups;
+        stats.ttHits = tt.recoveries;
+        stats.ttCollisions = tt.collisions;
+        stats.stop();
+        this.stats = stats;
         // show information on the best move
         if (options.debug) {
             System.out.println("Player " + myPlayer);
             System.out.println("Best child: " + bestChild);
             System.out.println("Play-outs: " + pl[3]);
-            System.out.println("Play-outs check: " + SHOTNode.totalPlayouts);
+            System.out.println("Play-outs check: " + SHOTNode.totalPlayouts.get());
             System.out.println("Max sr depth: " + SHOTNode.maxDepth);
-            System.out.println((int) ((1000. * SHOTNode.totalPlayouts) / (endT - startT)) + " playouts per s");
+            System.out.println((int) ((1000. * SHOTNode.totalPlayouts.get()) / (endT - startT)) + " playouts per s");
         }
-        total += SHOTNode.totalPlayouts;
+        total += SHOTNode.totalPlayouts.get();
         totalTime += endT - startT;
         int removed = tt.pack(0);
         if (options.debug)
             System.out.println("Pack cleaned: " + removed + " transpositions");
+        if (options.ponder)
+            startPondering(board, bestMove);
         root = null;
         // Release the board's memory
         board = null;
@@ -81,6 +119,52 @@ public class SHOTPlayer implements AIPlayer, Runnable {
             callback.makeMove(bestChild.getMove());
     }
 
+    /**
+     * (Pondering) Run SHOT from the position after our move until the opponent's move is known. The budget spent
+     * and the results are kept in the table, the next search continues from them.
+     *
+     * @param board The position before our move
+     */
+    private synchronized void startPondering(IBoard board, IMove move) {
+        // The search was stopped, e.g. because the game is over
+        if (interrupted)
+            return;
+        final IBoard ponderBoard = board.copy();
+        ponderBoard.doAIMove(move, myPlayer);
+        if (ponderBoard.checkWin() != IBoard.NONE_WIN)
+            return;
+        final SHOTNode ponderRoot = new SHOTNode(ponderBoard.getPlayerToMove(), null, options, ponderBoard.hash(), tt);
+        final int budget = Math.max(1, options.simulations / PONDER_PARTS);
+        pondering = true;
+        ponderThread = new Thread(ThreadRandom.seeded(new Runnable() {
+            @Override
+            public void run() {
+                while (pondering) {
+                    // Stop if the position is proven
+                    if (Math.abs(ponderRoot.SHOT(ponderBoard, 0, budget, new int[4])) == State.INF)
+                        break;
+                }
+            }
+        }));
+        // Pondering must not keep the program running once the game is over
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+
+    /**
+     * (Pondering) Stop searching on the opponent's time, the table keeps what was found
+     */
+    private synchronized void stopPondering() {
+        if (ponderThread == null)
+            return;
+        pondering = false;
+        try {
+            ponderThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        ponderThread = null;
+    }
 
     public void setOptions(MCTSOptions options) {
         this.options = options;
@@ -88,17 +172,24 @@ public class SHOTPlayer implements AIPlayer, Runnable {
 
     @Override
     public void newGame(int myPlayer, String game) {
+        stopPondering();
         System.out.println("UCT-C " + options.uctC);
     }
 
     @Override
     public void stop() {
         interrupted = true;
+        stopPondering();
     }
 
     @Override
     public IMove getBestMove() {
         return bestMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
 }
 
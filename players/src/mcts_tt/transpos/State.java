@@ -1,96 +1,146 @@
 package mcts_tt.transpos;
 
-import java.util.Arrays;
-
+/**
+ * Handle to a position in the transposition table, the statistics themselves are stored in the table.
+ * If the position was replaced in the table, it is stored again on the next update.
+ * A handle must only be used by one thread at a time, the table itself may be shared.
+ */
 public class State {
     public static double INF = 999999;
-    public long hash;
-    public int visits = 0, lastVisit = 0, budgetSpent = 0;
-    private int[] wins = {0, 0};
-    private short solvedPlayer = 0;
-    public boolean visited = false;
-    //
-    public String test = null;
-    //
-    public State next = null;
+    public final long hash;
+    private final TransposTable tt;
+    private int slot;
 
-    public State(long hash) {
+    State(TransposTable tt, long hash, int slot) {
+        this.tt = tt;
         this.hash = hash;
+        this.slot = slot;
+    }
+
+    /**
+     * The caller must hold the lock of the position
+     *
+     * @return the slot of this position, or -1 if it is no longer in the table and create is false
+     */
+    private int slot(boolean create) {
+        if (slot < 0 || !tt.holds(slot, hash))
+            slot = tt.find(hash, !create);
+        return slot;
     }
 
     public void updateStats(int winner) {
-        visited = true;
-        if (solvedPlayer != 0)
-            throw new RuntimeException("updateStats called on solved position!");
-        this.wins[winner - 1]++;
-        this.visits++;
+        synchronized (tt.lock(hash)) {
+            int i = slot(true);
+            if (tt.solvedPlayer[i] != 0)
+                throw new RuntimeException("updateStats called on solved position!");
+            if (winner == 1)
+                tt.wins1[i]++;
+            else
+                tt.wins2[i]++;
+            tt.visits[i]++;
+        }
     }
 
     public void setValue(State s) {
         if (s == null)
             throw new NullPointerException("State is null");
-        visited = true;
-        this.visits = s.visits;
-        this.wins[0] = s.wins[0];
-        this.wins[1] = s.wins[1];
+        int visits = 0, wins1 = 0, wins2 = 0;
+        // Read and write under their own lock, so two threads copying values never wait on each other
+        synchronized (s.tt.lock(s.hash)) {
+            int j = s.slot(false);
+            if (j >= 0) {
+                visits = s.tt.visits[j];
+                wins1 = s.tt.wins1[j];
+                wins2 = s.tt.wins2[j];
+            }
+        }
+        synchronized (tt.lock(hash)) {
+            int i = slot(true);
+            tt.visits[i] = visits;
+            tt.wins1[i] = wins1;
+            tt.wins2[i] = wins2;
+        }
     }
 
     public void updateStats(int n, int p1, int p2) {
-        visited = true;
-        this.visits += n;
-        wins[0] += p1;
-        wins[1] += p2;
+        synchronized (tt.lock(hash)) {
+            int i = slot(true);
+            tt.visits[i] += n;
+            tt.wins1[i] += p1;
+            tt.wins2[i] += p2;
+        }
     }
 
     public double getMean(int player) {
         if (player != 1 && player != 2)
             throw new RuntimeException("Invalid player " + player + " in getMean");
-        visited = true;
-        if (solvedPlayer == 0) { // Position is not solved, return mean
-            if (visits > 0)
-                return (wins[player - 1] - wins[(3 - player) - 1]) / (double) visits;
-            else
+        synchronized (tt.lock(hash)) {
+            int i = slot(false);
+            if (i < 0)
                 return 0;
-        } else    // Position is solved, return inf
-            return (player == solvedPlayer) ? INF : -INF;
+            if (tt.solvedPlayer[i] == 0) { // Position is not solved, return mean
+                if (tt.visits[i] > 0) {
+                    int w = tt.wins1[i] - tt.wins2[i];
+                    return ((player == 1) ? w : -w) / (double) tt.visits[i];
+                } else
+                    return 0;
+            } else    // Position is solved, return inf
+                return (player == tt.solvedPlayer[i]) ? INF : -INF;
+        }
     }
 
     public double getWins(int player) {
-        visited = true;
-        if (solvedPlayer == 0) { // Position is not solved, return mean
-            if (visits > 0)
-                return wins[player - 1];
-            else
+        synchronized (tt.lock(hash)) {
+            int i = slot(false);
+            if (i < 0)
                 return 0;
-        } else    // Position is solved, return inf
-            return (player == solvedPlayer) ? INF : -INF;
+            if (tt.solvedPlayer[i] == 0) { // Position is not solved, return mean
+                return (player == 1) ? tt.wins1[i] : tt.wins2[i];
+            } else    // Position is solved, return inf
+                return (player == tt.solvedPlayer[i]) ? INF : -INF;
+        }
     }
 
     public void setSolved(int player) {
         if (player != 1 && player != 2)
             throw new RuntimeException("Invalid player " + player + " in setSolved");
-        visited = true;
-        if (solvedPlayer > 0 && player != solvedPlayer)
-            throw new RuntimeException("setSolved with different player!");
-        this.solvedPlayer = (short) player;
+        synchronized (tt.lock(hash)) {
+            int i = slot(true);
+            if (tt.solvedPlayer[i] > 0 && player != tt.solvedPlayer[i])
+                throw new RuntimeException("setSolved with different player!");
+            tt.solvedPlayer[i] = (byte) player;
+        }
     }
 
     public void incrBudgetSpent(int incr) {
-        this.budgetSpent += incr;
+        synchronized (tt.lock(hash)) {
+            tt.budgetSpent[slot(true)] += incr;
+        }
     }
 
     public int getBudgetSpent() {
-        return budgetSpent;
+        synchronized (tt.lock(hash)) {
+            int i = slot(false);
+            return (i < 0) ? 0 : tt.budgetSpent[i];
+        }
     }
 
     public int getVisits() {
-        return visits;
+        synchronized (tt.lock(hash)) {
+            int i = slot(false);
+            return (i < 0) ? 0 : tt.visits[i];
+        }
     }
 
     public String toString() {
-        if (solvedPlayer == 0)
-            return Arrays.toString(wins) + "\tn:" + visits;
-        else
-            return "solved win P" + solvedPlayer;
+        synchronized (tt.lock(hash)) {
+            int i = slot(false);
+            if (i < 0)
+                return "[0, 0]\tn:0";
+            if (tt.solvedPlayer[i] == 0)
+                return "[" + tt.wins1[i] + ", " + tt.wins2[i] + "]\tn:" + tt.visits[i];
+            else
+                return "solved win P" + tt.solvedPlayer[i];
+        }
     }
 }
@@ -1,104 +1,159 @@
 package mcts_tt.transpos;
 
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Fixed-size transposition table using open addressing over parallel primitive arrays.
+ * A position is stored in one of the PROBES slots of the bucket at its hash index.
+ * Every slot is stamped with the generation in which it was last used, pack() only advances
+ * the generation, so slots that were not used in the last offset generations become free
+ * without sweeping the table. When all probed slots are in use, the least visited one is replaced.
+ * <p/>
+ * Search threads may share the table, every bucket is guarded by one of LOCKS locks.
+ * The lookup counters are not synchronized, they are approximate when the table is shared.
+ */
 public class TransposTable {
-    private final int TT_SIZE = (int) Math.pow(2, 19);
-    private final long MASK = TT_SIZE - 1;
+    private static final int PROBES = 8, GENERATIONS = 256, LOCKS = 1024;
+    private final int TT_SIZE;
+    private final int MASK;
+    private final Object[] locks;
+    //
+    final long[] hashes;
+    final int[] visits, wins1, wins2, budgetSpent, age;
+    final byte[] solvedPlayer;
     //
-    private State[] states;
-    private int moveCounter = 0;
-    public int collisions = 0, positions = 0, recoveries = 0;
+    private final AtomicIntegerArray genCount = new AtomicIntegerArray(GENERATIONS);
+    private int generation = 1, minAge = 1;
+    public int collisions = 0, positions = 0, recoveries = 0, lookups = 0;
 
     public TransposTable() {
-        this.states = new State[TT_SIZE];
+        this(20);
+    }
+
+    /**
+     * @param sizeLog2 The table holds 2^sizeLog2 positions
+     */
+    public TransposTable(int sizeLog2) {
+        if (sizeLog2 < 4 || sizeLog2 > 28)
+            throw new RuntimeException("Invalid transposition table size 2^" + sizeLog2);
+        TT_SIZE = 1 << sizeLog2;
+        MASK = TT_SIZE - 1;
+        hashes = new long[TT_SIZE];
+        visits = new int[TT_SIZE];
+        wins1 = new int[TT_SIZE];
+        wins2 = new int[TT_SIZE];
+        budgetSpent = new int[TT_SIZE];
+        age = new int[TT_SIZE];
+        solvedPlayer = new byte[TT_SIZE];
+        locks = new Object[Math.min(LOCKS, TT_SIZE / PROBES)];
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
     }
 
     public State getState(long hash, boolean existingOnly) {
-        int hashPos = getHashPos(hash);
-        State s = states[hashPos];
-        if (s != null) {
-            while (true) {
-                if (s.hash == hash) {
-                    recoveries++;
-                    return s;
-                }
-                if (s.next == null)
-                    break;
-                s = s.next;
+        int slot;
+        synchronized (lock(hash)) {
+            slot = find(hash, existingOnly);
+        }
+        if (slot < 0)
+            return null;
+        return new State(this, hash, slot);
+    }
+
+    /**
+     * @return The lock that guards the bucket of the position, hold it while using the position's slot
+     */
+    Object lock(long hash) {
+        return locks[(getHashPos(hash) / PROBES) % locks.length];
+    }
+
+    /**
+     * Find the slot of a position, store it if it was not in the table and existingOnly is false
+     *
+     * @return the slot of the position, or -1 if it is not in the table
+     */
+    int find(long hash, boolean existingOnly) {
+        int start = getHashPos(hash), bucket = start & ~(PROBES - 1), victim = -1, slot;
+        lookups++;
+        for (int i = 0; i < PROBES; i++) {
+            // Probe from the hash index, wrapping around within the bucket
+            slot = bucket | ((start + i) & (PROBES - 1));
+            if (age[slot] < minAge) {
+                // Free slot, released positions may precede stored ones so keep probing
+                if (victim < 0 || age[victim] >= minAge)
+                    victim = slot;
+                continue;
+            }
+            if (hashes[slot] == hash) {
+                recoveries++;
+                touch(slot);
+                return slot;
             }
-            //
-            if (existingOnly)
-                return null;
+            // Replace the least visited position, prefer older generations on ties
+            if (victim < 0 || (age[victim] >= minAge && (visits[slot] < visits[victim]
+                    || (visits[slot] == visits[victim] && age[slot] < age[victim]))))
+                victim = slot;
+        }
+        if (existingOnly)
+            return -1;
+        if (age[victim] >= minAge) {
             collisions++;
-            positions++;
-            // Transposition was not found, i.e. collision
-            State newState = new State(hash);
-            s.next = newState;
-            return newState;
-        } else if (!existingOnly) {
-            positions++;
-            // Transposition was not encountered before
-            s = new State(hash);
-            states[hashPos] = s;
-            return s;
+            genCount.decrementAndGet(age[victim] % GENERATIONS);
         } else {
-            return null;
+            positions++;
+        }
+        hashes[victim] = hash;
+        visits[victim] = 0;
+        wins1[victim] = 0;
+        wins2[victim] = 0;
+        budgetSpent[victim] = 0;
+        solvedPlayer[victim] = 0;
+        age[victim] = generation;
+        genCount.incrementAndGet(generation % GENERATIONS);
+        return victim;
+    }
+
+    /**
+     * @return true if the slot still holds the given position
+     */
+    boolean holds(int slot, long hash) {
+        if (hashes[slot] == hash && age[slot] >= minAge) {
+            touch(slot);
+            return true;
         }
+        return false;
     }
 
+    private void touch(int slot) {
+        if (age[slot] != generation) {
+            genCount.decrementAndGet(age[slot] % GENERATIONS);
+            genCount.incrementAndGet(generation % GENERATIONS);
+            age[slot] = generation;
+        }
+    }
+
+    /**
+     * Start a new generation, positions not used in the last offset generations are released.
+     * Must not be called while the table is searched.
+     *
+     * @return the number of released positions
+     */
     public int pack(int offset) {
+        if (offset < 0 || offset >= GENERATIONS)
+            throw new RuntimeException("Invalid pack offset " + offset);
         recoveries = 0;
         collisions = 0;
+        lookups = 0;
         int prePositions = positions;
-        State s, ps;
-        for (int i = 0; i < TT_SIZE; i++) {
-            s = states[i];
-            if (s == null)
-                continue;
-            ps = null;
-            // Check if the states were visited this round
-            while (true) {
-                if (s.visited && offset > 0) {
-                    s.visited = false;
-                    s.lastVisit = moveCounter;
-                    ps = s;
-                } else if (moveCounter - s.lastVisit >= offset) {
-                    if (ps != null) {
-                        ps.next = s.next;
-                        positions--;
-                        ps = s;
-                    } else if (ps == null) {
-                        positions--;
-                        states[i] = s.next;
-                        ps = null;
-                    }
-                }
-                if (s.next == null)
-                    break;
-                s = s.next;
-            }
-        }
-        moveCounter++;
+        generation++;
+        minAge = generation - offset;
+        genCount.set(generation % GENERATIONS, 0);
+        positions = 0;
+        for (int g = Math.max(1, minAge); g <= generation; g++)
+            positions += genCount.get(g % GENERATIONS);
         return (prePositions - positions);
     }
 
-    private int count() {
-        State s;
-        int count = 0;
-        for (int i = 0; i < TT_SIZE; i++) {
-            s = states[i];
-            if (s == null)
-                continue;
-            // Check if the states were visited this round
-            while (true) {
-                count++;
-                if (s.next == null)
-                    break;
-                s = s.next;
-            }
-        }
-        return count;
-    }
-
     private int getHashPos(long hash) {
         return (int) (hash & MASK);
     }
@@ -5,6 +5,8 @@ import framework.AIPlayer;
 import framework.IBoard;
 import framework.IMove;
 import framework.MoveCallback;
+import framework.SearchStats;
+import framework.util.ThreadRandom;
 import mcts_tt.transpos.State;
 import mcts_tt.transpos.TransposTable;
 
@@ -12,6 +14,9 @@ public class UCTPlayer implements AIPlayer, Runnable {
 
     private TransposTable tt = new TransposTable();
     private boolean interrupted = false, parallel = true;
+    // (Pondering) Searches the position after our move while the opponent is thinking, the table keeps the results
+    private Thread ponderThread;
+    private volatile boolean pondering = false;
     public UCTNode root;
     private IBoard board;
     private MoveCallback callback;
@@ -21,12 +26,14 @@ public class UCTPlayer implements AIPlayer, Runnable {
     public long totalT = 0;
     //
     private MCTSOptions options;
+    private SearchStats stats = new SearchStats();
 
     @Override
     public void getMove(IBoard board, MoveCallback callback, int myPlayer, boolean parallel,
                         IMove lastMove) {
         if (options == null)
             throw new RuntimeException("MCTS Options not set.");
+        stopPondering();
         this.board = board;
         this.callback = callback;
         this.parallel = parallel;
@@ -43,7 +50,7 @@ public class UCTPlayer implements AIPlayer, Runnable {
         interrupted = false;
         if (parallel) {
             // Start the search in a new Thread.
-            Thread t = new Thread(this);
+            Thread t = new Thread(ThreadRandom.seeded(this));
             t.start();
         } else {
             run();
@@ -66,6 +73,8 @@ public class UCTPlayer implements AIPlayer, Runnable {
             options.relativeBonus = false;
         if (sw && nMoves == 0)
             options.swUCT = false;
+        SearchStats stats = new SearchStats();
+        stats.start();
         long startT = System.currentTimeMillis();
         if (!options.fixedSimulations) {
             // Search for timeInterval seconds
@@ -104,6 +113,12 @@ public class UCTPlayer implements AIPlayer, Runnable {
         // Return the best move found
         UCTNode bestChild = root.getBestChild();
         bestMove = bestChild.getMove();
+        stats.simulations = simulations;
+        stats.ttLookups = tt.lookups;
+        stats.ttHits = tt.recoveries;
+        stats.ttCollisions = tt.collisions;
+        stats.stop();
+        this.stats = stats;
 
         // show information on the best move
         if (options.debug) {
@@ -126,6 +141,8 @@ public class UCTPlayer implements AIPlayer, Runnable {
         options.relativeBonus = rb;
         options.swUCT = sw;
         nMoves++;
+        if (options.ponder)
+            startPondering(board, bestMove);
         // Set the root to the best child, so in the next move, the opponent's move can become the new root
         root = null;
         // Release the board's memory
@@ -135,12 +152,60 @@ public class UCTPlayer implements AIPlayer, Runnable {
             callback.makeMove(bestChild.getMove());
     }
 
+    /**
+     * (Pondering) Search the position after our move until the opponent's move is known. The next search finds
+     * the positions after the opponent's move in the table.
+     *
+     * @param board The position before our move
+     */
+    private synchronized void startPondering(IBoard board, IMove move) {
+        // The search was stopped, e.g. because the game is over
+        if (interrupted)
+            return;
+        final IBoard ponderBoard = board.copy();
+        ponderBoard.doAIMove(move, myPlayer);
+        if (ponderBoard.checkWin() != IBoard.NONE_WIN)
+            return;
+        final UCTNode ponderRoot = new UCTNode(ponderBoard.getPlayerToMove(), options, ponderBoard, tt);
+        pondering = true;
+        ponderThread = new Thread(ThreadRandom.seeded(new Runnable() {
+            @Override
+            public void run() {
+                while (pondering) {
+                    ponderBoard.newDeterminization(myPlayer, false);
+                    // Stop if the position is proven
+                    if (Math.abs(ponderRoot.MCTS(ponderBoard, 0)[0]) == State.INF)
+                        break;
+                }
+            }
+        }));
+        // Pondering must not keep the program running once the game is over
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+
+    /**
+     * (Pondering) Stop searching on the opponent's time, the table keeps what was found
+     */
+    private synchronized void stopPondering() {
+        if (ponderThread == null)
+            return;
+        pondering = false;
+        try {
+            ponderThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        ponderThread = null;
+    }
+
     public void setOptions(MCTSOptions options) {
         this.options = options;
     }
 
     @Override
     public void newGame(int myPlayer, String game) {
+        stopPondering();
         options.qualityCov.reset();
         options.moveCov.reset();
         nMoves = 0;
@@ -153,11 +218,17 @@ public class UCTPlayer implements AIPlayer, Runnable {
     @Override
     public void stop() {
         interrupted = true;
+        stopPondering();
     }
 
     @Override
     public IMove getBestMove() {
         return bestMove;
     }
+
+    @Override
+    public SearchStats getStats() {
+        return stats;
+    }
 }
 
@@ -19,6 +19,10 @@ java -Xmx2048m -Xms512m -XX:+UseSerialGC -cp $CP $class $@
 #   pentalath.gui.PentalathGui
 #   lostcities.Game
 #   experiments.AITests
+#   experiments.SimGame
+#   experiments.BoardBench
+#   experiments.ConcurrencyStress
+#   experiments.Tournament
 # 
 
 